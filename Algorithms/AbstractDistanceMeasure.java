@@ -1,9 +1,23 @@
 package Algorithms;
 
+import DataStructures.IntList;
 import DataStructures.Line;
+import DataStructures.LineBlock;
+import DataStructures.LineStore;
+import Utilities.VectorUtils;
 
 public abstract class AbstractDistanceMeasure {
 
+	// Candidate block and distances of the range queries of every thread,
+	// reused by its queries so that they do not allocate in the hot loop
+	private static final ThreadLocal<RangeQueryBuffer> RANGE_QUERY_BUFFER =
+			new ThreadLocal<RangeQueryBuffer>() {
+				@Override
+				protected RangeQueryBuffer initialValue() {
+					return new RangeQueryBuffer();
+				}
+			};
+
 	/**
 	 * Overriding methods of subclasses compute the various distances between
 	 * two closest points of the given lines
@@ -15,4 +29,123 @@ public abstract class AbstractDistanceMeasure {
 	 * @return the distance between two closest points of the given lines
 	 */
 	protected abstract double dist(Line line1, Line line2);
+
+	/**
+	 * Overriding methods of subclasses compute the various distances between
+	 * two closest points of the lines of the store, the distance must be the
+	 * same bit for bit when the lines are swapped, so that the
+	 * neighbourhoods are symmetric
+	 * 
+	 * @param lines
+	 *            the store of the measured lines
+	 * @param index1
+	 *            the index of the first 3-D line of the measured
+	 * @param index2
+	 *            the index of the second 3-D line of the measured
+	 * @return the distance between two closest points of the given lines
+	 */
+	protected abstract double dist(LineStore lines, int index1, int index2);
+
+	/**
+	 * Computes the distances between two closest points of every line of the
+	 * block and a line of the store, the i-th distance is the one dist
+	 * returns for the i-th line of the block as the first line. The lines of
+	 * the block must be gathered from the same store. Subclasses computing the
+	 * distance with the kernel of LineUtils override it with its batch
+	 * version, this implementation measures the lines one by one.
+	 * 
+	 * @param block
+	 *            the block of the first 3-D lines of the measured
+	 * @param lines
+	 *            the store of the measured lines
+	 * @param index
+	 *            the index of the second 3-D line of the measured
+	 * @param distances
+	 *            the array to store the distances into, at least of the size
+	 *            of the block
+	 */
+	protected void dist(LineBlock block, LineStore lines, int index,
+			double[] distances) {
+		for (int i = 0; i < block.size(); i++) {
+			distances[i] = dist(lines, block.getLine(i), index);
+		}
+	}
+
+	/**
+	 * Returns the empty candidate block of the range queries of the current
+	 * thread. The block is reused by the next query of the thread, so it must
+	 * be passed to collectWithin before another query starts.
+	 * 
+	 * @return the cleared block
+	 */
+	static LineBlock getCandidateBlock() {
+		LineBlock candidates = RANGE_QUERY_BUFFER.get().candidates;
+		candidates.clear();
+		return candidates;
+	}
+
+	/**
+	 * Measures the candidate lines of a range query in one batch and adds
+	 * the ones within eps of the center line to the neighbours in the order
+	 * of the block
+	 * 
+	 * @param candidates
+	 *            the block of the candidate lines
+	 * @param lines
+	 *            the store of the lines
+	 * @param line
+	 *            the index of the center line
+	 * @param eps
+	 *            the radius of the neighbourhood
+	 * @param neighbours
+	 *            the list to add the neighbours to
+	 */
+	final void collectWithin(LineBlock candidates, LineStore lines, int line,
+			double eps, IntList neighbours) {
+		RangeQueryBuffer buffer = RANGE_QUERY_BUFFER.get();
+		if (buffer.distances.length < candidates.size()) {
+			buffer.distances = new double[Math.max(candidates.size(),
+					2 * buffer.distances.length)];
+		}
+		double[] distances = buffer.distances;
+		dist(candidates, lines, line, distances);
+		for (int i = 0; i < candidates.size(); i++) {
+			if (distances[i] <= eps) {
+				neighbours.add(candidates.getLine(i));
+			}
+		}
+	}
+
+	/**
+	 * Returns the norm the distances of this measure are computed with
+	 * 
+	 * @return one of the norm constants of VectorUtils
+	 */
+	protected abstract int getNorm();
+
+	/**
+	 * Computes the lower bound of the distance between any two lines lying in
+	 * two axis-aligned boxes, which is the norm of the gaps between the boxes
+	 * along each axis
+	 * 
+	 * @param gapX
+	 *            the gap between the boxes along the x axis
+	 * @param gapY
+	 *            the gap between the boxes along the y axis
+	 * @param gapZ
+	 *            the gap between the boxes along the z axis
+	 * @return the lower bound of the distance
+	 */
+	protected double boxDistance(double gapX, double gapY, double gapZ) {
+		return VectorUtils.calculateNorm(gapX, gapY, gapZ, getNorm());
+	}
+
+	/**
+	 * Candidate block and distance array of the range queries of a thread,
+	 * both keep the largest capacity a query has needed
+	 */
+	private static class RangeQueryBuffer {
+		private final LineBlock candidates = new LineBlock();
+		private double[] distances = new double[0];
+	}
 }
@@ -0,0 +1,793 @@
+package Algorithms;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import DataStructures.ConcurrentDisjointSet;
+import DataStructures.IntList;
+import DataStructures.Line;
+import DataStructures.LineStore;
+import DataStructures.Object3D;
+import Utilities.LineUtils;
+
+/**
+ * Rho-approximate DBSCAN for the lines. Every line is put into the cell of
+ * its midpoint in a grid whose cubic cells have the diameter eps in the norm
+ * of the measure, i.e. the edge eps / sqrt(d) for the Eucledian norm. A line
+ * is no farther from another line than from any of its points, so the lines
+ * of a cell are within eps of each other and all the lines of a cell with
+ * more than MinPts lines are core lines without measuring any distance. A
+ * line of another cell is a core line as well if the cells lying entirely
+ * within eps of it hold enough lines, only the remaining lines are
+ * classified by exact range queries of the index. The core lines of a cell
+ * belong to one cluster, so the clusters are formed by connecting the cells.
+ * Two cells whose core lines come close are connected by an approximate
+ * range test: the core lines of a cell are grouped into sub-cells with the
+ * diameter rho * eps, a sub-cell is connected without measuring a distance
+ * if the bound of the distance from the line to the midpoints in the
+ * sub-cell is at most (1 + rho) * eps, and only the sub-cells which are
+ * neither excluded by their bounding boxes nor accepted by the bound are
+ * measured exactly.
+ * <p>
+ * The result has the following guarantees relative to DBSCANAnalyzer with
+ * the same MinPts, up to the rounding of the distance computation: the core
+ * lines are exactly those of the clustering with eps; two core lines of a
+ * cluster of the clustering with eps are in the same approximate cluster;
+ * two core lines of an approximate cluster are in the same cluster of the
+ * clustering with (1 + rho) * eps. The clusters are numbered in the order of
+ * their smallest core line and a border line joins the cluster with the
+ * smallest number among its core neighbours within eps, so the labels are
+ * those of DBSCANAnalyzer whenever no clusters are merged. Smaller rho
+ * values measure more distances.
+ *
+ */
+public class ApproximateDBSCANAnalyzer extends DBSCANAnalyzer {
+
+	// The largest number of the sub-cells along an axis of a cell
+	private static final int MAX_SUB_CELLS = 1024;
+
+	// Bits of a cell coordinate in the keys of the cells
+	private static final int CELL_BITS = 21;
+
+	// The largest number of the cells around a line searched for the cells
+	// lying within eps of it
+	private static final int MAX_SEARCHED_CELLS = 512;
+
+	private double rho;
+
+	/**
+	 * Creates the analyzer
+	 * 
+	 * @param distanceMeasure
+	 *            the measure of the distances
+	 * @param eps
+	 *            the epsilon parameter
+	 * @param rho
+	 *            the approximation factor, the core lines within (1 + rho) *
+	 *            eps of each other may be connected
+	 * @throws IllegalArgumentException
+	 *             if rho is not positive
+	 */
+	public ApproximateDBSCANAnalyzer(AbstractDistanceMeasure distanceMeasure,
+			double eps, double rho) throws IllegalArgumentException {
+		super(distanceMeasure, eps);
+		setRho(rho);
+	}
+
+	/**
+	 * Sets the approximation factor of the following runs
+	 * 
+	 * @param rho
+	 *            the approximation factor
+	 * @throws IllegalArgumentException
+	 *             if rho is not positive
+	 */
+	public void setRho(double rho) throws IllegalArgumentException {
+		if (!(rho > 0) || Double.isInfinite(rho)) {
+			String errorMessage = "The rho argument is not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		this.rho = rho;
+	}
+
+	public double getRho() {
+		return this.rho;
+	}
+
+	/**
+	 * Clusters the lines of the store approximately, see
+	 * performApproximateClustering
+	 */
+	@Override
+	public boolean performClustering(INeighbourhoodIndex index,
+			ClusteringControl control) throws IllegalArgumentException {
+		return performApproximateClustering(index, control).isComplete();
+	}
+
+	/**
+	 * Clusters the lines of the store into classes by applying
+	 * rho-approximate DBSCAN under the control of the handle, the
+	 * eps-neighbourhoods of the lines outside the dense cells are located
+	 * with the given index. The handle is notified of every classified line,
+	 * if the run is stopped all the lines are labelled as noise.
+	 * 
+	 * @param index
+	 *            the neighbourhood index built over the store of the lines to
+	 *            cluster
+	 * @param control
+	 *            the handle of the run, may be null
+	 * @return the summary of the clustering with the approximation factor
+	 * @throws IllegalArgumentException
+	 *             if the index provided is null or eps is too small for the
+	 *             extent of the lines
+	 */
+	public Result performApproximateClustering(INeighbourhoodIndex index,
+			ClusteringControl control) throws IllegalArgumentException {
+		if (index == null) {
+			String errorMessage = "The index argument is not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		long startTime = System.nanoTime();
+		LineStore lines = index.getLines();
+		AbstractDistanceMeasure measure = getDistanceMeasure(control);
+		double eps = getEps();
+		double rho = this.rho;
+		Grid grid = new Grid(lines, measure, eps, rho);
+		if (control != null) {
+			control.start(lines.size());
+		}
+		startTime = recordPhase("cells", lines.size(), startTime);
+
+		// the core lines and the neighbours of the other lines
+		boolean[] core = new boolean[lines.size()];
+		int[][] borderNeighbours = new int[lines.size()][];
+		int denseCellsCount = 0;
+		boolean stopped = false;
+		IntList neighbours = new IntList();
+		for (int cell = 0; cell < grid.cellsCount && !stopped; cell++) {
+			int from = grid.cellStart[cell];
+			int to = grid.cellStart[cell + 1];
+			boolean dense = to - from - 1 >= getMinPts();
+			if (dense) {
+				denseCellsCount++;
+			}
+			for (int i = from; i < to && !stopped; i++) {
+				int line = grid.cellLines[i];
+				if (dense || grid.isCertainlyCore(measure, line, getMinPts())) {
+					core[line] = true;
+				} else {
+					neighbours.clear();
+					index.collectNeighbours(measure, line, eps, neighbours);
+					if (neighbours.size() >= getMinPts()) {
+						core[line] = true;
+					} else {
+						borderNeighbours[line] = neighbours.toArray();
+					}
+				}
+				stopped = control != null && control.lineProcessed();
+			}
+		}
+		startTime = recordPhase("core lines", lines.size(), startTime);
+
+		ConcurrentDisjointSet components = null;
+		if (!stopped) {
+			grid.groupCoreLines(core);
+			components = grid.connect(measure, control);
+			stopped = control != null && control.isStopped();
+			startTime = recordPhase("connecting", lines.size(), startTime);
+		}
+
+		int clustersCount = 0;
+		int coreLinesCount = 0;
+		if (stopped) {
+			for (int line = 0; line < lines.size(); line++) {
+				lines.setCluster(line, Line.NO_CLUSTER_ASSIGNED);
+			}
+		} else {
+			// the clusters are numbered in the order of their smallest core
+			// line
+			int[] clusterIdentifiers = new int[grid.cellsCount];
+			Arrays.fill(clusterIdentifiers, Line.NO_CLUSTER_ASSIGNED);
+			for (int line = 0; line < lines.size(); line++) {
+				if (core[line]) {
+					coreLinesCount++;
+					int root = components.find(grid.cellOfLine[line]);
+					if (clusterIdentifiers[root] == Line.NO_CLUSTER_ASSIGNED) {
+						clusterIdentifiers[root] = clustersCount++;
+						if (control != null) {
+							control.clusterFound();
+						}
+					}
+					lines.setCluster(line, clusterIdentifiers[root]);
+				}
+			}
+			for (int line = 0; line < lines.size(); line++) {
+				if (core[line]) {
+					continue;
+				}
+				int cluster = Line.NO_CLUSTER_ASSIGNED;
+				for (int neighbour : borderNeighbours[line]) {
+					if (core[neighbour]
+							&& (cluster == Line.NO_CLUSTER_ASSIGNED || lines
+									.getCluster(neighbour) < cluster)) {
+						cluster = lines.getCluster(neighbour);
+					}
+				}
+				lines.setCluster(line, cluster);
+			}
+			recordPhase("labelling", lines.size(), startTime);
+		}
+
+		if (getMetrics() != null) {
+			getMetrics().recordClassification(lines, coreLinesCount);
+		}
+		boolean complete = true;
+		if (control != null) {
+			control.finish();
+			complete = !control.isPartial();
+		}
+		return new Result(eps, rho, grid.cellsCount, denseCellsCount,
+				coreLinesCount, clustersCount, complete);
+	}
+
+	/**
+	 * Records the time of the phase if the metrics are collected
+	 * 
+	 * @return the start time of the next phase
+	 */
+	private long recordPhase(String phase, int lines, long startTime) {
+		if (getMetrics() == null) {
+			return startTime;
+		}
+
+		getMetrics().recordPhase(phase, lines, startTime);
+		return System.nanoTime();
+	}
+
+	/**
+	 * Grid of the cells of the midpoints. The cells are numbered in the order
+	 * of their keys, the lines of the cell c are cellLines[cellStart[c]..
+	 * cellStart[c+1]) in ascending order. The core lines of the cell c are
+	 * grouped into the sub-cells subCellStart[c]..subCellStart[c+1], the
+	 * lines of the sub-cell s are subCellLines[subCellLineStart[s]..
+	 * subCellLineStart[s+1]). The boxes are stored as minX, minY, minZ, maxX,
+	 * maxY, maxZ.
+	 */
+	private static class Grid {
+		private final LineStore lines;
+		private final double eps;
+		private final double rho;
+		// The distances the box bounds are compared with and the distance
+		// the upper bounds must not exceed, both allow for the rounding
+		private final double bound;
+		private final double certainDistance;
+		private final double[] low;
+		private final double cellSize;
+		private final int subCellsPerAxis;
+
+		private final int[] cellOfLine;
+		private final long[] cellKeys;
+		private final int cellsCount;
+		private final int[] cellStart;
+		private final int[] cellLines;
+
+		private int[] subCellStart;
+		private double[] subCellCenters;
+		private float[] subCellBoxes;
+		private int[] subCellLineStart;
+		private int[] subCellLines;
+		private float[] cellBoxes;
+
+		/**
+		 * Distributes the lines over the cells
+		 * 
+		 * @throws IllegalArgumentException
+		 *             if eps is too small for the extent of the lines
+		 */
+		public Grid(LineStore lines, AbstractDistanceMeasure measure,
+				double eps, double rho) throws IllegalArgumentException {
+			this.lines = lines;
+			this.eps = eps;
+			this.rho = rho;
+			double maxAbsCoordinate = lines.computeMaxAbsCoordinate();
+			double rounding = LineUtils.DISTANCE_ROUNDING_RATIO
+					* (eps + maxAbsCoordinate);
+			this.bound = eps + rounding;
+			this.certainDistance = eps - rounding;
+
+			// the diameter of a cell leaves room for the rounding
+			this.cellSize = (eps - 2 * rounding) / measure.boxDistance(1, 1, 1);
+			this.subCellsPerAxis = (int) Math.min(MAX_SUB_CELLS,
+					Math.ceil(1 / rho));
+			this.low = new double[Object3D.SPACE_DIMENSION];
+			double[] high = new double[low.length];
+			Arrays.fill(low, Double.POSITIVE_INFINITY);
+			Arrays.fill(high, Double.NEGATIVE_INFINITY);
+			int size = lines.size();
+			for (int line = 0; line < size; line++) {
+				for (int axis = 0; axis < low.length; axis++) {
+					double center = getCenter(lines, line, axis);
+					low[axis] = Math.min(low[axis], center);
+					high[axis] = Math.max(high[axis], center);
+				}
+			}
+			for (int axis = 0; axis < low.length && size > 0; axis++) {
+				if (!(cellSize > 0)
+						|| (high[axis] - low[axis]) / cellSize
+								>= 1 << CELL_BITS) {
+					String errorMessage = "The eps is too small for the "
+							+ "extent of the lines.";
+					throw new IllegalArgumentException(errorMessage);
+				}
+			}
+
+			long[] keys = new long[size];
+			for (int line = 0; line < size; line++) {
+				long key = 0;
+				for (int axis = 0; axis < low.length; axis++) {
+					key = key << CELL_BITS | toCell(lines, line, axis);
+				}
+				keys[line] = key;
+			}
+			long[] sortedKeys = keys.clone();
+			Arrays.sort(sortedKeys);
+			int count = 0;
+			for (int i = 0; i < size; i++) {
+				if (i == 0 || sortedKeys[i] != sortedKeys[i - 1]) {
+					sortedKeys[count++] = sortedKeys[i];
+				}
+			}
+			this.cellKeys = Arrays.copyOf(sortedKeys, count);
+			this.cellsCount = count;
+
+			this.cellOfLine = new int[size];
+			this.cellStart = new int[count + 1];
+			for (int line = 0; line < size; line++) {
+				cellOfLine[line] = Arrays.binarySearch(cellKeys, keys[line]);
+				cellStart[cellOfLine[line] + 1]++;
+			}
+			for (int cell = 0; cell < count; cell++) {
+				cellStart[cell + 1] += cellStart[cell];
+			}
+			this.cellLines = new int[size];
+			int[] next = Arrays.copyOf(cellStart, count);
+			for (int line = 0; line < size; line++) {
+				cellLines[next[cellOfLine[line]]++] = line;
+			}
+		}
+
+		/**
+		 * Counts the lines of the cells lying entirely within eps of the line,
+		 * their midpoints and therefore the lines are within eps of it
+		 * 
+		 * @param measure
+		 *            the measure of the distances
+		 * @param line
+		 *            the index of the line
+		 * @param minPts
+		 *            the minimal number of neighbours of a core line
+		 * @return true if the counted lines make the line a core line, false
+		 *         if it has to be classified by a range query
+		 */
+		public boolean isCertainlyCore(AbstractDistanceMeasure measure,
+				int line, double minPts) {
+			int[] from = new int[low.length];
+			int[] to = new int[low.length];
+			long searchedCells = 1;
+			for (int axis = 0; axis < low.length; axis++) {
+				double start = getAbs(lines, line, axis);
+				double end = start - getDir(lines, line, axis);
+				from[axis] = Math.max(0, (int) Math.floor((Math.min(start, end)
+						- eps - low[axis]) / cellSize));
+				to[axis] = Math.min((1 << CELL_BITS) - 1, (int) ((Math.max(
+						start, end) + eps - low[axis]) / cellSize));
+				searchedCells *= Math.max(0, to[axis] - from[axis] + 1);
+			}
+			if (searchedCells > MAX_SEARCHED_CELLS) {
+				return false;
+			}
+
+			// the line itself is not counted
+			int count = -1;
+			double halfSize = cellSize / 2;
+			for (int x = from[0]; x <= to[0]; x++) {
+				for (int y = from[1]; y <= to[1]; y++) {
+					for (int z = from[2]; z <= to[2]; z++) {
+						if (getUpperBound(measure, line, low[0] + (x + 0.5)
+								* cellSize, low[1] + (y + 0.5) * cellSize,
+								low[2] + (z + 0.5) * cellSize, halfSize)
+								> certainDistance) {
+							continue;
+						}
+						int cell = Arrays.binarySearch(cellKeys,
+								((long) x << CELL_BITS | y) << CELL_BITS | z);
+						if (cell >= 0) {
+							count += cellStart[cell + 1] - cellStart[cell];
+							if (count >= minPts) {
+								return true;
+							}
+						}
+					}
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Groups the core lines of every cell into its sub-cells
+		 * 
+		 * @param core
+		 *            the core flags of the lines
+		 */
+		public void groupCoreLines(boolean[] core) {
+			IntList subCellKeys = new IntList();
+			IntList lineStarts = new IntList();
+			IntList groupedLines = new IntList();
+			subCellStart = new int[cellsCount + 1];
+			double subCellSize = cellSize / subCellsPerAxis;
+			for (int cell = 0; cell < cellsCount; cell++) {
+				subCellStart[cell] = subCellKeys.size();
+
+				// the core lines of the cell sorted by their sub-cell
+				IntList keys = new IntList();
+				for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+					int line = cellLines[i];
+					if (core[line]) {
+						int key = 0;
+						for (int axis = 0; axis < low.length; axis++) {
+							int subCell = (int) ((getCenter(lines, line, axis)
+									- low[axis] - getCell(cell, axis)
+									* cellSize) / subCellSize);
+							key = key * subCellsPerAxis
+									+ Math.max(0,
+											Math.min(subCellsPerAxis - 1,
+													subCell));
+						}
+						keys.add(key);
+						groupedLines.add(line);
+					}
+				}
+				int from = groupedLines.size() - keys.size();
+				long[] sorted = new long[keys.size()];
+				for (int i = 0; i < sorted.length; i++) {
+					sorted[i] = (long) keys.get(i) << 32
+							| groupedLines.get(from + i);
+				}
+				Arrays.sort(sorted);
+				for (int i = 0; i < sorted.length; i++) {
+					groupedLines.set(from + i, (int) sorted[i]);
+					if (i == 0 || sorted[i] >>> 32 != sorted[i - 1] >>> 32) {
+						subCellKeys.add((int) (sorted[i] >>> 32));
+						lineStarts.add(from + i);
+					}
+				}
+			}
+			subCellStart[cellsCount] = subCellKeys.size();
+			lineStarts.add(groupedLines.size());
+			subCellLineStart = lineStarts.toArray();
+			subCellLines = groupedLines.toArray();
+
+			// the centers of the sub-cells and the boxes of their core lines
+			// and of the core lines of the cells
+			subCellCenters = new double[3 * subCellKeys.size()];
+			subCellBoxes = new float[6 * subCellKeys.size()];
+			cellBoxes = new float[6 * cellsCount];
+			for (int cell = 0; cell < cellsCount; cell++) {
+				emptyBox(cellBoxes, 6 * cell);
+				int subCellEnd = subCellStart[cell + 1];
+				for (int s = subCellStart[cell]; s < subCellEnd; s++) {
+					int key = subCellKeys.get(s);
+					for (int axis = low.length - 1; axis >= 0; axis--) {
+						subCellCenters[3 * s + axis] = low[axis]
+								+ getCell(cell, axis) * cellSize
+								+ (key % subCellsPerAxis + 0.5) * subCellSize;
+						key /= subCellsPerAxis;
+					}
+					emptyBox(subCellBoxes, 6 * s);
+					int lineEnd = subCellLineStart[s + 1];
+					for (int i = subCellLineStart[s]; i < lineEnd; i++) {
+						addLineBox(subCellBoxes, 6 * s, subCellLines[i]);
+					}
+					for (int axis = 0; axis < 3; axis++) {
+						cellBoxes[6 * cell + axis] = Math.min(cellBoxes[6
+								* cell + axis], subCellBoxes[6 * s + axis]);
+						cellBoxes[6 * cell + axis + 3] = Math.max(cellBoxes[6
+								* cell + axis + 3], subCellBoxes[6 * s + axis
+								+ 3]);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Connects the cells whose core lines come close, the cells are swept
+		 * in the order of the lower ends of their boxes along the x axis
+		 * 
+		 * @return the forest of the cells, the cells without core lines are
+		 *         not connected
+		 */
+		public ConcurrentDisjointSet connect(AbstractDistanceMeasure measure,
+				ClusteringControl control) {
+			ConcurrentDisjointSet components = new ConcurrentDisjointSet(
+					cellsCount);
+			IntList coreCells = new IntList();
+			for (int cell = 0; cell < cellsCount; cell++) {
+				if (subCellStart[cell + 1] > subCellStart[cell]) {
+					coreCells.add(cell);
+				}
+			}
+			long[] order = new long[coreCells.size()];
+			for (int i = 0; i < order.length; i++) {
+				int bits = Float
+						.floatToIntBits(cellBoxes[6 * coreCells.get(i)]);
+				order[i] = (long) (bits ^ ((bits >> 31) & 0x7FFFFFFF)) << 32
+						| coreCells.get(i);
+			}
+			Arrays.sort(order);
+
+			float[] lineBox = new float[6];
+			for (int i = 0; i < order.length; i++) {
+				if (control != null && control.isStopped()) {
+					break;
+				}
+
+				int cell1 = (int) order[i];
+				for (int j = i + 1; j < order.length; j++) {
+					int cell2 = (int) order[j];
+					if (cellBoxes[6 * cell2] - (double) cellBoxes[6 * cell1 + 3]
+							> bound) {
+						break;
+					}
+					if (!exceeds(measure, cellBoxes, 6 * cell1, cellBoxes,
+							6 * cell2)
+							&& components.find(cell1) != components
+									.find(cell2)
+							&& areConnected(measure, cell1, cell2, lineBox)) {
+						components.union(cell1, cell2);
+					}
+				}
+			}
+			return components;
+		}
+
+		/**
+		 * Tests if a core line of the first cell is within eps of a core line
+		 * of the second cell, the test may also be passed by the lines within
+		 * (1 + rho) * eps
+		 */
+		private boolean areConnected(AbstractDistanceMeasure measure,
+				int cell1, int cell2, float[] lineBox) {
+			double acceptedDistance = (1 + rho) * eps;
+			double halfSize = cellSize / subCellsPerAxis / 2;
+			int subCellEnd = subCellStart[cell1 + 1];
+			int firstSubCell = subCellStart[cell2];
+			int lastSubCell = subCellStart[cell2 + 1];
+
+			// the bounds first, the exact distances only if no bound decides
+			boolean undecided = false;
+			for (int s1 = subCellStart[cell1]; s1 < subCellEnd; s1++) {
+				int lineEnd = subCellLineStart[s1 + 1];
+				for (int i = subCellLineStart[s1]; i < lineEnd; i++) {
+					int line = subCellLines[i];
+					setLineBox(lineBox, line);
+					if (exceeds(measure, lineBox, 0, cellBoxes, 6 * cell2)) {
+						continue;
+					}
+					for (int s2 = firstSubCell; s2 < lastSubCell; s2++) {
+						if (exceeds(measure, lineBox, 0, subCellBoxes,
+								6 * s2)) {
+							continue;
+						}
+						if (getUpperBound(measure, line,
+								subCellCenters[3 * s2],
+								subCellCenters[3 * s2 + 1],
+								subCellCenters[3 * s2 + 2], halfSize)
+								<= acceptedDistance) {
+							return true;
+						}
+						undecided = true;
+					}
+				}
+			}
+			if (!undecided) {
+				return false;
+			}
+
+			for (int s1 = subCellStart[cell1]; s1 < subCellEnd; s1++) {
+				int lineEnd = subCellLineStart[s1 + 1];
+				for (int i = subCellLineStart[s1]; i < lineEnd; i++) {
+					int line = subCellLines[i];
+					setLineBox(lineBox, line);
+					for (int s2 = firstSubCell; s2 < lastSubCell; s2++) {
+						if (exceeds(measure, lineBox, 0, subCellBoxes,
+								6 * s2)) {
+							continue;
+						}
+						int neighbourEnd = subCellLineStart[s2 + 1];
+						for (int j = subCellLineStart[s2]; j < neighbourEnd;
+								j++) {
+							if (measure.dist(lines, subCellLines[j], line)
+									<= eps) {
+								return true;
+							}
+						}
+					}
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Bounds the distance from the line to the lines whose midpoints lie
+		 * in the cube by the distance from the point of the line closest to
+		 * the center of the cube to its farthest corner
+		 */
+		private double getUpperBound(AbstractDistanceMeasure measure,
+				int line, double cx, double cy, double cz, double halfSize) {
+			double ax = lines.getAx(line);
+			double ay = lines.getAy(line);
+			double az = lines.getAz(line);
+			double dx = lines.getDx(line);
+			double dy = lines.getDy(line);
+			double dz = lines.getDz(line);
+			double length = dx * dx + dy * dy + dz * dz;
+			double t = length > 0 ? ((ax - cx) * dx + (ay - cy) * dy + (az - cz)
+					* dz)
+					/ length : 0;
+			t = Math.max(0, Math.min(1, t));
+			return measure.boxDistance(Math.abs(ax - t * dx - cx) + halfSize,
+					Math.abs(ay - t * dy - cy) + halfSize,
+					Math.abs(az - t * dz - cz) + halfSize);
+		}
+
+		/**
+		 * Determines if the boxes at the offsets are farther apart than eps
+		 */
+		private boolean exceeds(AbstractDistanceMeasure measure,
+				float[] boxes1, int offset1, float[] boxes2, int offset2) {
+			return measure.boxDistance(gap(boxes1, offset1, boxes2, offset2, 0),
+					gap(boxes1, offset1, boxes2, offset2, 1),
+					gap(boxes1, offset1, boxes2, offset2, 2)) > bound;
+		}
+
+		private void setLineBox(float[] box, int line) {
+			emptyBox(box, 0);
+			addLineBox(box, 0, line);
+		}
+
+		private void addLineBox(float[] boxes, int offset, int line) {
+			for (int axis = 0; axis < 3; axis++) {
+				double start = getAbs(lines, line, axis);
+				double end = start - getDir(lines, line, axis);
+				boxes[offset + axis] = Math.min(boxes[offset + axis],
+						LowerBoundFilter.roundDown(Math.min(start, end)));
+				boxes[offset + axis + 3] = Math.max(boxes[offset + axis + 3],
+						LowerBoundFilter.roundUp(Math.max(start, end)));
+			}
+		}
+
+		private int toCell(LineStore lines, int line, int axis) {
+			return (int) ((getCenter(lines, line, axis) - low[axis])
+					/ cellSize);
+		}
+
+		private int getCell(int cell, int axis) {
+			int shift = (low.length - 1 - axis) * CELL_BITS;
+			return (int) (cellKeys[cell] >>> shift) & ((1 << CELL_BITS) - 1);
+		}
+	}
+
+	/**
+	 * Computes the gap between two boxes along the axis, which is zero if
+	 * they overlap
+	 */
+	private static double gap(float[] boxes1, int offset1, float[] boxes2,
+			int offset2, int axis) {
+		return Math.max(0, Math.max((double) boxes1[offset1 + axis]
+				- boxes2[offset2 + axis + 3], (double) boxes2[offset2 + axis]
+				- boxes1[offset1 + axis + 3]));
+	}
+
+	private static void emptyBox(float[] boxes, int offset) {
+		Arrays.fill(boxes, offset, offset + 3, Float.POSITIVE_INFINITY);
+		Arrays.fill(boxes, offset + 3, offset + 6, Float.NEGATIVE_INFINITY);
+	}
+
+	private static double getCenter(LineStore lines, int line, int axis) {
+		double start = getAbs(lines, line, axis);
+		return start - getDir(lines, line, axis) / 2;
+	}
+
+	private static double getAbs(LineStore lines, int line, int axis) {
+		switch (axis) {
+		case 0:
+			return lines.getAx(line);
+		case 1:
+			return lines.getAy(line);
+		default:
+			return lines.getAz(line);
+		}
+	}
+
+	private static double getDir(LineStore lines, int line, int axis) {
+		switch (axis) {
+		case 0:
+			return lines.getDx(line);
+		case 1:
+			return lines.getDy(line);
+		default:
+			return lines.getDz(line);
+		}
+	}
+
+	/**
+	 * Summary of an approximate clustering reported with the approximation
+	 * factor it was computed with
+	 */
+	public static class Result {
+
+		private final double eps;
+		private final double rho;
+		private final int cellsCount;
+		private final int denseCellsCount;
+		private final int coreLinesCount;
+		private final int clustersCount;
+		private final boolean complete;
+
+		private Result(double eps, double rho, int cellsCount,
+				int denseCellsCount, int coreLinesCount, int clustersCount,
+				boolean complete) {
+			this.eps = eps;
+			this.rho = rho;
+			this.cellsCount = cellsCount;
+			this.denseCellsCount = denseCellsCount;
+			this.coreLinesCount = coreLinesCount;
+			this.clustersCount = clustersCount;
+			this.complete = complete;
+		}
+
+		public double getEps() {
+			return eps;
+		}
+
+		public double getRho() {
+			return rho;
+		}
+
+		public int getCellsCount() {
+			return cellsCount;
+		}
+
+		public int getDenseCellsCount() {
+			return denseCellsCount;
+		}
+
+		public int getCoreLinesCount() {
+			return coreLinesCount;
+		}
+
+		public int getClustersCount() {
+			return clustersCount;
+		}
+
+		/**
+		 * Determines if all the lines are clustered
+		 * 
+		 * @return false if the run was stopped and all the lines are noise
+		 */
+		public boolean isComplete() {
+			return complete;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "rho-approximate DBSCAN: eps %g, "
+					+ "rho %g, clusters %d, core lines %d, cells %d "
+					+ "(%d dense)%s",
+					eps, rho, clustersCount, coreLinesCount, cellsCount,
+					denseCellsCount, complete ? "" : ", partial");
+		}
+	}
+}
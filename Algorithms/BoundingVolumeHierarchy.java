@@ -0,0 +1,343 @@
+package Algorithms;
+
+import java.util.Arrays;
+
+import DataStructures.DoubleIntHeap;
+import DataStructures.IntList;
+import DataStructures.LineBlock;
+import DataStructures.LineStore;
+import Utilities.LineUtils;
+
+/**
+ * Bounding volume hierarchy over the bounding boxes of the lines. The tree is
+ * bulk loaded by splitting the lines at the median of their box centers along
+ * the longest axis, so it stays balanced whatever the lengths of the lines
+ * are. The subtrees are pruned by the distance between the boxes, which is a
+ * lower bound of the distance between the lines for every distance measure.
+ *
+ */
+public class BoundingVolumeHierarchy implements INearestNeighbourIndex {
+
+	private static final int LEAF_SIZE = 8;
+	private static final int NO_CHILD = -1;
+
+	private final LineStore lines;
+	private final double maxAbsCoordinate;
+	private final LowerBoundFilter filter;
+
+	// Line indices ordered so that every node covers a contiguous range
+	private final int[] order;
+
+	// Bounding boxes of the nodes
+	private float[] nodeMinX;
+	private float[] nodeMinY;
+	private float[] nodeMinZ;
+	private float[] nodeMaxX;
+	private float[] nodeMaxY;
+	private float[] nodeMaxZ;
+
+	// The node covers order[nodeStart..nodeEnd), the left child of an inner
+	// node directly follows it, leaves have no right child
+	private int[] nodeStart;
+	private int[] nodeEnd;
+	private int[] nodeRight;
+	private int nodesCount;
+	private int depth;
+
+	/**
+	 * Builds the hierarchy over the lines of the store
+	 * 
+	 * @param lines
+	 *            the store of the lines to index
+	 * @throws IllegalArgumentException
+	 *             if the store is null
+	 */
+	public BoundingVolumeHierarchy(LineStore lines)
+			throws IllegalArgumentException {
+		if (lines == null) {
+			String errorMessage = "The lines argument is not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		this.lines = lines;
+		this.maxAbsCoordinate = lines.computeMaxAbsCoordinate();
+		this.filter = new LowerBoundFilter(lines);
+		this.order = new int[lines.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+
+		allocateNodes(Math.max(16, 4 * lines.size() / LEAF_SIZE));
+		if (lines.size() > 0) {
+			// doubled centers of the bounding boxes along each axis, in the
+			// order of the line indices
+			float[][] centers = new float[3][lines.size()];
+			for (int line = 0; line < lines.size(); line++) {
+				centers[0][line] = lines.getMinX(line) + lines.getMaxX(line);
+				centers[1][line] = lines.getMinY(line) + lines.getMaxY(line);
+				centers[2][line] = lines.getMinZ(line) + lines.getMaxZ(line);
+			}
+			build(0, order.length, 1, centers);
+		}
+	}
+
+	@Override
+	public LineStore getLines() {
+		return this.lines;
+	}
+
+	@Override
+	public void collectNeighbours(AbstractDistanceMeasure distanceMeasure,
+			int line, double eps, IntList neighbours) {
+		if (nodesCount == 0) {
+			return;
+		}
+
+		double bound = eps + LineUtils.DISTANCE_ROUNDING_RATIO
+				* (eps + maxAbsCoordinate);
+		IntList stack = new IntList(depth + 1);
+		LineBlock candidates = AbstractDistanceMeasure.getCandidateBlock();
+		stack.add(0);
+		while (stack.size() > 0) {
+			int node = stack.removeLast();
+			if (nodeDistance(distanceMeasure, node, line) > bound) {
+				continue;
+			}
+
+			if (nodeRight[node] != NO_CHILD) {
+				stack.add(nodeRight[node]);
+				stack.add(node + 1);
+				continue;
+			}
+
+			for (int i = nodeStart[node]; i < nodeEnd[node]; i++) {
+				int neighbour = order[i];
+				if (neighbour != line
+						&& !filter.exceeds(distanceMeasure, neighbour, line,
+								eps)) {
+					candidates.add(lines, neighbour);
+				}
+			}
+		}
+		distanceMeasure.collectWithin(candidates, lines, line, eps, neighbours);
+	}
+
+	@Override
+	public void findNearestDistances(AbstractDistanceMeasure distanceMeasure,
+			int line, int k, double[] nearest) throws IllegalArgumentException {
+		if (k < 1 || k >= lines.size() || k > nearest.length) {
+			String errorMessage = "The order of the nearest neighbour is "
+					+ "not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		// the k best distances are kept negated, so the top is the largest
+		DoubleIntHeap best = new DoubleIntHeap(k + 1);
+		DoubleIntHeap queue = new DoubleIntHeap(2 * depth + 2);
+		queue.add(nodeDistance(distanceMeasure, 0, line), 0);
+		while (!queue.isEmpty()) {
+			double nodeBound = queue.peekKey();
+			int node = queue.poll();
+			if (best.size() == k && exceeds(nodeBound, -best.peekKey())) {
+				break;
+			}
+
+			if (nodeRight[node] != NO_CHILD) {
+				queue.add(nodeDistance(distanceMeasure, node + 1, line),
+						node + 1);
+				queue.add(nodeDistance(distanceMeasure, nodeRight[node], line),
+						nodeRight[node]);
+				continue;
+			}
+
+			for (int i = nodeStart[node]; i < nodeEnd[node]; i++) {
+				int neighbour = order[i];
+				if (neighbour == line
+						|| (best.size() == k && filter.exceeds(
+								distanceMeasure, neighbour, line,
+								-best.peekKey()))) {
+					continue;
+				}
+
+				double distance = distanceMeasure.dist(lines, neighbour, line);
+				if (best.size() < k) {
+					best.add(-distance, neighbour);
+				} else if (distance < -best.peekKey()) {
+					best.poll();
+					best.add(-distance, neighbour);
+				}
+			}
+		}
+
+		for (int i = k - 1; i >= 0; i--) {
+			nearest[i] = -best.peekKey();
+			best.poll();
+		}
+	}
+
+	/**
+	 * Determines if a box lower bound is larger than the given distance even
+	 * when the rounding of the distance computation is taken into account
+	 */
+	private boolean exceeds(double lowerBound, double distance) {
+		return lowerBound > distance + LineUtils.DISTANCE_ROUNDING_RATIO
+				* (distance + maxAbsCoordinate);
+	}
+
+	/**
+	 * Computes the lower bound of the distance between the line and any line
+	 * of the node
+	 */
+	private double nodeDistance(AbstractDistanceMeasure distanceMeasure,
+			int node, int line) {
+		return distanceMeasure.boxDistance(
+				gap(nodeMinX[node], nodeMaxX[node], lines.getMinX(line),
+						lines.getMaxX(line)),
+				gap(nodeMinY[node], nodeMaxY[node], lines.getMinY(line),
+						lines.getMaxY(line)),
+				gap(nodeMinZ[node], nodeMaxZ[node], lines.getMinZ(line),
+						lines.getMaxZ(line)));
+	}
+
+	/**
+	 * Computes the gap between two intervals, which is zero if they overlap
+	 */
+	private static double gap(double min1, double max1, double min2,
+			double max2) {
+		return Math.max(0, Math.max(min1 - max2, min2 - max1));
+	}
+
+	/**
+	 * Builds the subtree over order[start..end) and returns its root node. The
+	 * centers are kept in the order of the line indices, so that the splits
+	 * scan memory sequentially, and the boxes of the inner nodes are merged
+	 * from the boxes of their children.
+	 */
+	private int build(int start, int end, int level, float[][] centers) {
+		int node = nodesCount++;
+		if (node == nodeStart.length) {
+			allocateNodes(2 * node);
+		}
+		depth = Math.max(depth, level);
+		nodeStart[node] = start;
+		nodeEnd[node] = end;
+		nodeRight[node] = NO_CHILD;
+
+		if (end - start <= LEAF_SIZE) {
+			nodeMinX[node] = Float.POSITIVE_INFINITY;
+			nodeMinY[node] = Float.POSITIVE_INFINITY;
+			nodeMinZ[node] = Float.POSITIVE_INFINITY;
+			nodeMaxX[node] = Float.NEGATIVE_INFINITY;
+			nodeMaxY[node] = Float.NEGATIVE_INFINITY;
+			nodeMaxZ[node] = Float.NEGATIVE_INFINITY;
+			for (int i = start; i < end; i++) {
+				int line = order[i];
+				nodeMinX[node] = Math.min(nodeMinX[node], lines.getMinX(line));
+				nodeMinY[node] = Math.min(nodeMinY[node], lines.getMinY(line));
+				nodeMinZ[node] = Math.min(nodeMinZ[node], lines.getMinZ(line));
+				nodeMaxX[node] = Math.max(nodeMaxX[node], lines.getMaxX(line));
+				nodeMaxY[node] = Math.max(nodeMaxY[node], lines.getMaxY(line));
+				nodeMaxZ[node] = Math.max(nodeMaxZ[node], lines.getMaxZ(line));
+			}
+			return node;
+		}
+
+		// split along the axis with the largest spread of the centers
+		int axis = 0;
+		float largestSpread = -1;
+		for (int i = 0; i < 3; i++) {
+			float[] keys = centers[i];
+			float min = keys[start];
+			float max = keys[start];
+			for (int position = start + 1; position < end; position++) {
+				min = Math.min(min, keys[position]);
+				max = Math.max(max, keys[position]);
+			}
+			if (max - min > largestSpread) {
+				largestSpread = max - min;
+				axis = i;
+			}
+		}
+		int middle = (start + end) >>> 1;
+		select(start, end - 1, middle, axis, centers);
+		int left = build(start, middle, level + 1, centers);
+		int right = build(middle, end, level + 1, centers);
+		nodeRight[node] = right;
+
+		nodeMinX[node] = Math.min(nodeMinX[left], nodeMinX[right]);
+		nodeMinY[node] = Math.min(nodeMinY[left], nodeMinY[right]);
+		nodeMinZ[node] = Math.min(nodeMinZ[left], nodeMinZ[right]);
+		nodeMaxX[node] = Math.max(nodeMaxX[left], nodeMaxX[right]);
+		nodeMaxY[node] = Math.max(nodeMaxY[left], nodeMaxY[right]);
+		nodeMaxZ[node] = Math.max(nodeMaxZ[left], nodeMaxZ[right]);
+		return node;
+	}
+
+	/**
+	 * Reorders the positions left..right so that the line with the k-th
+	 * smallest center along the axis is at position k, with no larger centers
+	 * before it and no smaller centers after it
+	 */
+	private void select(int left, int right, int k, int axis,
+			float[][] centers) {
+		float[] keys = centers[axis];
+		while (right > left) {
+			float pivot = keys[(left + right) >>> 1];
+			int i = left;
+			int j = right;
+			while (i <= j) {
+				while (keys[i] < pivot) {
+					i++;
+				}
+				while (keys[j] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					swap(i, j, centers);
+					i++;
+					j--;
+				}
+			}
+			if (k <= j) {
+				right = j;
+			} else if (k >= i) {
+				left = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	private void swap(int i, int j, float[][] centers) {
+		int line = order[i];
+		order[i] = order[j];
+		order[j] = line;
+		for (float[] keys : centers) {
+			float key = keys[i];
+			keys[i] = keys[j];
+			keys[j] = key;
+		}
+	}
+
+	private void allocateNodes(int capacity) {
+		nodeMinX = copyOf(nodeMinX, capacity);
+		nodeMinY = copyOf(nodeMinY, capacity);
+		nodeMinZ = copyOf(nodeMinZ, capacity);
+		nodeMaxX = copyOf(nodeMaxX, capacity);
+		nodeMaxY = copyOf(nodeMaxY, capacity);
+		nodeMaxZ = copyOf(nodeMaxZ, capacity);
+		nodeStart = copyOf(nodeStart, capacity);
+		nodeEnd = copyOf(nodeEnd, capacity);
+		nodeRight = copyOf(nodeRight, capacity);
+	}
+
+	private static float[] copyOf(float[] values, int capacity) {
+		return values == null ? new float[capacity] : Arrays.copyOf(values,
+				capacity);
+	}
+
+	private static int[] copyOf(int[] values, int capacity) {
+		return values == null ? new int[capacity] : Arrays.copyOf(values,
+				capacity);
+	}
+}
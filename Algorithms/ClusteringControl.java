@@ -0,0 +1,262 @@
+package Algorithms;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Handle of a long clustering or k-distance run. The handle reports the
+ * progress of the run, which can be polled from any thread or pushed to a
+ * listener, and stops the run when it is cancelled or exceeds its wall-clock
+ * or distance evaluation budget. The run checks the handle after every
+ * processed line and returns a partial result, the state of the handle then
+ * tells why it stopped. The cancellation flag is checked on every line, the
+ * budgets every CHECK_INTERVAL lines. A handle can be reused for several runs
+ * one after another, but a cancelled handle stops all of them.
+ *
+ */
+public class ClusteringControl {
+
+	// Budget without a limit
+	public static final long UNLIMITED = Long.MAX_VALUE;
+
+	// States of the run
+	public static final int NOT_STARTED = 0;
+	public static final int RUNNING = 1;
+	public static final int COMPLETED = 2;
+	public static final int CANCELLED = 3;
+	public static final int TIME_BUDGET_EXCEEDED = 4;
+	public static final int DISTANCE_BUDGET_EXCEEDED = 5;
+
+	// Number of the processed lines between the checks of the budgets
+	private static final int CHECK_INTERVAL = 64;
+
+	private final IProgressListener listener;
+	private final long timeBudget;
+	private final long distanceBudget;
+	private final LongAdder distanceEvaluations;
+	private final AtomicInteger state;
+	private final AtomicInteger processedLines;
+	private final AtomicInteger clustersCount;
+	private volatile boolean cancelled;
+	private volatile int totalLines;
+	private long startTime;
+
+	/**
+	 * Creates the handle of a run without a budget
+	 */
+	public ClusteringControl() {
+		this(null, UNLIMITED, UNLIMITED);
+	}
+
+	/**
+	 * Creates the handle of a run without a budget reporting the progress to
+	 * the listener
+	 * 
+	 * @param listener
+	 *            the listener to notify after every processed line
+	 */
+	public ClusteringControl(IProgressListener listener) {
+		this(listener, UNLIMITED, UNLIMITED);
+	}
+
+	/**
+	 * Creates the handle of a run with the budgets
+	 * 
+	 * @param listener
+	 *            the listener to notify after every processed line from the
+	 *            thread processing it, may be null
+	 * @param timeBudget
+	 *            the wall-clock time of the run in milliseconds or UNLIMITED
+	 * @param distanceBudget
+	 *            the number of the distance evaluations of the run or
+	 *            UNLIMITED
+	 * @throws IllegalArgumentException
+	 *             if a budget is negative
+	 */
+	public ClusteringControl(IProgressListener listener, long timeBudget,
+			long distanceBudget) throws IllegalArgumentException {
+		if (timeBudget < 0 || distanceBudget < 0) {
+			String errorMessage = "The budget arguments are not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		this.listener = listener;
+		this.timeBudget = timeBudget;
+		this.distanceBudget = distanceBudget;
+		this.distanceEvaluations = new LongAdder();
+		this.state = new AtomicInteger(NOT_STARTED);
+		this.processedLines = new AtomicInteger();
+		this.clustersCount = new AtomicInteger();
+	}
+
+	/**
+	 * Requests the run to stop at the next processed line, the call returns
+	 * immediately
+	 */
+	public void cancel() {
+		this.cancelled = true;
+	}
+
+	/**
+	 * Determines if the run has been cancelled
+	 * 
+	 * @return true if cancel has been called
+	 */
+	public boolean isCancelled() {
+		return this.cancelled;
+	}
+
+	/**
+	 * Returns the state of the run
+	 * 
+	 * @return one of the state constants
+	 */
+	public int getState() {
+		return this.state.get();
+	}
+
+	/**
+	 * Determines if the run has stopped before processing all the lines
+	 * 
+	 * @return true if the result of the run is partial
+	 */
+	public boolean isPartial() {
+		return getState() > COMPLETED;
+	}
+
+	/**
+	 * Returns the number of the lines processed so far
+	 * 
+	 * @return the number of the processed lines
+	 */
+	public int getProcessedLines() {
+		return this.processedLines.get();
+	}
+
+	/**
+	 * Returns the number of the lines to process
+	 * 
+	 * @return the number of the lines
+	 */
+	public int getTotalLines() {
+		return this.totalLines;
+	}
+
+	/**
+	 * Returns the fraction of the lines processed so far
+	 * 
+	 * @return the progress between 0 and 1
+	 */
+	public double getProgress() {
+		int total = totalLines;
+		return total == 0 ? (getState() == COMPLETED ? 1 : 0)
+				: (double) getProcessedLines() / total;
+	}
+
+	/**
+	 * Returns the number of the clusters found so far, the sequential
+	 * analyzer reports every cluster when it is found, the parallel one only
+	 * after its neighbourhoods are located
+	 * 
+	 * @return the number of the clusters
+	 */
+	public int getClustersCount() {
+		return this.clustersCount.get();
+	}
+
+	/**
+	 * Returns the number of the distance evaluations of the run, they are
+	 * only counted if the run has a distance budget
+	 * 
+	 * @return the number of the counted distance evaluations
+	 */
+	public long getDistanceEvaluations() {
+		return this.distanceEvaluations.sum();
+	}
+
+	/**
+	 * Starts the run
+	 * 
+	 * @param lines
+	 *            the number of the lines to process
+	 */
+	void start(int lines) {
+		totalLines = lines;
+		processedLines.set(0);
+		clustersCount.set(0);
+		distanceEvaluations.reset();
+		startTime = System.nanoTime();
+		state.set(cancelled ? CANCELLED : RUNNING);
+	}
+
+	/**
+	 * Wraps the measure to count its evaluations if the run has a distance
+	 * budget
+	 * 
+	 * @param distanceMeasure
+	 *            the measure of the run
+	 * @return the measure to use in the run
+	 */
+	AbstractDistanceMeasure countDistances(
+			AbstractDistanceMeasure distanceMeasure) {
+		if (distanceBudget == UNLIMITED) {
+			return distanceMeasure;
+		}
+
+		return new CountingDistanceMeasure(distanceMeasure,
+				distanceEvaluations);
+	}
+
+	/**
+	 * Records a processed line, notifies the listener and checks if the run
+	 * must stop. The call may be made from several threads.
+	 * 
+	 * @return true if the run must stop
+	 */
+	boolean lineProcessed() {
+		int processed = processedLines.incrementAndGet();
+		if (listener != null) {
+			listener.progressChanged(processed, totalLines);
+		}
+		if (processed >= totalLines) {
+			return isStopped();
+		}
+
+		if (cancelled) {
+			state.compareAndSet(RUNNING, CANCELLED);
+		} else if (processed % CHECK_INTERVAL == 0) {
+			if (timeBudget != UNLIMITED
+					&& (System.nanoTime() - startTime) / 1000000
+							>= timeBudget) {
+				state.compareAndSet(RUNNING, TIME_BUDGET_EXCEEDED);
+			} else if (distanceBudget != UNLIMITED
+					&& distanceEvaluations.sum() >= distanceBudget) {
+				state.compareAndSet(RUNNING, DISTANCE_BUDGET_EXCEEDED);
+			}
+		}
+		return isStopped();
+	}
+
+	/**
+	 * Records a found cluster
+	 */
+	void clusterFound() {
+		clustersCount.incrementAndGet();
+	}
+
+	/**
+	 * Determines if the run has been stopped
+	 * 
+	 * @return true if the run must not process any more lines
+	 */
+	boolean isStopped() {
+		return state.get() > COMPLETED;
+	}
+
+	/**
+	 * Finishes the run, it is completed unless it has been stopped
+	 */
+	void finish() {
+		state.compareAndSet(RUNNING, COMPLETED);
+	}
+}
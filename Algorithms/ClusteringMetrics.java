@@ -0,0 +1,369 @@
+package Algorithms;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+import DataStructures.Line;
+import DataStructures.LineStore;
+
+/**
+ * Collector of the metrics of the clustering runs of an analyzer: the number
+ * of the distance evaluations and of the range queries, the histograms of the
+ * range query latencies and of the neighbourhood sizes, the numbers of the
+ * core, border and noise lines of the last run and the accumulated wall time
+ * of each phase. The metrics of the successive runs add up until the
+ * collector is reset. Every range query, phase and run is also emitted as a
+ * JFR event, which costs nothing beyond the metrics themselves while no
+ * recording enables the events. The analyzers only collect the metrics if a
+ * collector is set, so a run without one pays a single null check per range
+ * query. The collector may be shared by the threads of a parallel run.
+ *
+ */
+public class ClusteringMetrics {
+
+	// Number of the buckets of the histograms, bucket i of the latencies
+	// counts the queries taking [2^i, 2^(i+1)) ns, bucket 0 of the sizes
+	// counts the empty neighbourhoods and bucket i > 0 the sizes
+	// [2^(i-1), 2^i)
+	public static final int HISTOGRAM_BUCKETS = 64;
+
+	private final LongAdder distanceEvaluations;
+	private final LongAdder rangeQueries;
+	private final AtomicLongArray queryLatencies;
+	private final AtomicLongArray neighbourhoodSizes;
+	private final Map<String, Long> phaseTimes;
+	private int coreLines;
+	private int borderLines;
+	private int noiseLines;
+	private int clusters;
+
+	public ClusteringMetrics() {
+		this.distanceEvaluations = new LongAdder();
+		this.rangeQueries = new LongAdder();
+		this.queryLatencies = new AtomicLongArray(HISTOGRAM_BUCKETS);
+		this.neighbourhoodSizes = new AtomicLongArray(HISTOGRAM_BUCKETS);
+		this.phaseTimes = new LinkedHashMap<String, Long>();
+	}
+
+	/**
+	 * Clears all the collected metrics
+	 */
+	public synchronized void reset() {
+		distanceEvaluations.reset();
+		rangeQueries.reset();
+		for (int bucket = 0; bucket < HISTOGRAM_BUCKETS; bucket++) {
+			queryLatencies.set(bucket, 0);
+			neighbourhoodSizes.set(bucket, 0);
+		}
+		phaseTimes.clear();
+		coreLines = 0;
+		borderLines = 0;
+		noiseLines = 0;
+		clusters = 0;
+	}
+
+	/**
+	 * Takes a consistent copy of the collected metrics, the runs collecting
+	 * them should be finished
+	 * 
+	 * @return the snapshot of the metrics
+	 */
+	public synchronized Snapshot getSnapshot() {
+		long[] latencies = new long[HISTOGRAM_BUCKETS];
+		long[] sizes = new long[HISTOGRAM_BUCKETS];
+		for (int bucket = 0; bucket < HISTOGRAM_BUCKETS; bucket++) {
+			latencies[bucket] = queryLatencies.get(bucket);
+			sizes[bucket] = neighbourhoodSizes.get(bucket);
+		}
+		return new Snapshot(distanceEvaluations.sum(), rangeQueries.sum(),
+				latencies, sizes, new LinkedHashMap<String, Long>(phaseTimes),
+				coreLines, borderLines, noiseLines, clusters);
+	}
+
+	/**
+	 * Wraps the measure to count its distance evaluations
+	 * 
+	 * @param distanceMeasure
+	 *            the measure to count the evaluations of
+	 * @return the counting measure
+	 */
+	AbstractDistanceMeasure countDistances(
+			AbstractDistanceMeasure distanceMeasure) {
+		return new CountingDistanceMeasure(distanceMeasure,
+				distanceEvaluations);
+	}
+
+	/**
+	 * Records a range query
+	 * 
+	 * @param line
+	 *            the index of the center line
+	 * @param neighboursCount
+	 *            the size of the found neighbourhood
+	 * @param latency
+	 *            the time of the query in nanoseconds
+	 */
+	void recordRangeQuery(int line, int neighboursCount, long latency) {
+		rangeQueries.increment();
+		queryLatencies.incrementAndGet(Math.max(0,
+				63 - Long.numberOfLeadingZeros(latency)));
+		neighbourhoodSizes.incrementAndGet(32 - Integer
+				.numberOfLeadingZeros(neighboursCount));
+
+		RangeQueryEvent event = new RangeQueryEvent();
+		if (event.isEnabled()) {
+			event.line = line;
+			event.neighbours = neighboursCount;
+			event.latency = latency;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Adds the time of a phase of a run
+	 * 
+	 * @param phase
+	 *            the name of the phase
+	 * @param lines
+	 *            the number of the lines processed by the phase
+	 * @param startTime
+	 *            the value of System.nanoTime at the start of the phase
+	 */
+	void recordPhase(String phase, int lines, long startTime) {
+		long time = System.nanoTime() - startTime;
+		synchronized (this) {
+			Long total = phaseTimes.get(phase);
+			phaseTimes.put(phase, total == null ? time : total + time);
+		}
+
+		PhaseEvent event = new PhaseEvent();
+		if (event.isEnabled()) {
+			event.phase = phase;
+			event.lines = lines;
+			event.time = time;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Records the classification of the lines after a run
+	 * 
+	 * @param lines
+	 *            the store of the clustered lines
+	 * @param coreLinesCount
+	 *            the number of the core lines
+	 */
+	void recordClassification(LineStore lines, int coreLinesCount) {
+		int noiseLinesCount = 0;
+		int maxCluster = Line.NO_CLUSTER_ASSIGNED;
+		for (int line = 0; line < lines.size(); line++) {
+			int cluster = lines.getCluster(line);
+			if (cluster == Line.NO_CLUSTER_ASSIGNED) {
+				noiseLinesCount++;
+			}
+			maxCluster = Math.max(maxCluster, cluster);
+		}
+
+		synchronized (this) {
+			coreLines = coreLinesCount;
+			borderLines = lines.size() - coreLinesCount - noiseLinesCount;
+			noiseLines = noiseLinesCount;
+			clusters = maxCluster + 1;
+		}
+
+		ClusteringEvent event = new ClusteringEvent();
+		if (event.isEnabled()) {
+			event.lines = lines.size();
+			event.clusters = maxCluster + 1;
+			event.coreLines = coreLinesCount;
+			event.noiseLines = noiseLinesCount;
+			event.distanceEvaluations = distanceEvaluations.sum();
+			event.commit();
+		}
+	}
+
+	/**
+	 * Immutable copy of the collected metrics
+	 */
+	public static class Snapshot {
+
+		private final long distanceEvaluations;
+		private final long rangeQueries;
+		private final long[] queryLatencies;
+		private final long[] neighbourhoodSizes;
+		private final Map<String, Long> phaseTimes;
+		private final int coreLines;
+		private final int borderLines;
+		private final int noiseLines;
+		private final int clusters;
+
+		private Snapshot(long distanceEvaluations, long rangeQueries,
+				long[] queryLatencies, long[] neighbourhoodSizes,
+				Map<String, Long> phaseTimes, int coreLines, int borderLines,
+				int noiseLines, int clusters) {
+			this.distanceEvaluations = distanceEvaluations;
+			this.rangeQueries = rangeQueries;
+			this.queryLatencies = queryLatencies;
+			this.neighbourhoodSizes = neighbourhoodSizes;
+			this.phaseTimes = Collections.unmodifiableMap(phaseTimes);
+			this.coreLines = coreLines;
+			this.borderLines = borderLines;
+			this.noiseLines = noiseLines;
+			this.clusters = clusters;
+		}
+
+		public long getDistanceEvaluations() {
+			return distanceEvaluations;
+		}
+
+		public long getRangeQueries() {
+			return rangeQueries;
+		}
+
+		/**
+		 * Returns the histogram of the range query latencies, see
+		 * HISTOGRAM_BUCKETS
+		 * 
+		 * @return the number of the queries in each bucket
+		 */
+		public long[] getQueryLatencyHistogram() {
+			return queryLatencies.clone();
+		}
+
+		/**
+		 * Returns the histogram of the neighbourhood sizes, see
+		 * HISTOGRAM_BUCKETS
+		 * 
+		 * @return the number of the neighbourhoods in each bucket
+		 */
+		public long[] getNeighbourhoodSizeHistogram() {
+			return neighbourhoodSizes.clone();
+		}
+
+		/**
+		 * Returns the accumulated wall time of the phases
+		 * 
+		 * @return the times in nanoseconds by the phase names in the order of
+		 *         their first appearance
+		 */
+		public Map<String, Long> getPhaseTimes() {
+			return phaseTimes;
+		}
+
+		public int getCoreLines() {
+			return coreLines;
+		}
+
+		public int getBorderLines() {
+			return borderLines;
+		}
+
+		public int getNoiseLines() {
+			return noiseLines;
+		}
+
+		public int getClusters() {
+			return clusters;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder();
+			builder.append("distance evaluations: ")
+					.append(distanceEvaluations).append('\n');
+			builder.append("range queries: ").append(rangeQueries)
+					.append('\n');
+			builder.append("clusters: ").append(clusters).append(", core: ")
+					.append(coreLines).append(", border: ")
+					.append(borderLines).append(", noise: ")
+					.append(noiseLines).append('\n');
+			for (Map.Entry<String, Long> phase : phaseTimes.entrySet()) {
+				builder.append("phase ").append(phase.getKey()).append(": ")
+						.append(phase.getValue() / 1000000).append(" ms\n");
+			}
+			appendHistogram(builder, "query latency [ns]", queryLatencies,
+					false);
+			appendHistogram(builder, "neighbourhood size",
+					neighbourhoodSizes, true);
+			return builder.toString();
+		}
+
+		private static void appendHistogram(StringBuilder builder,
+				String name, long[] histogram, boolean sizes) {
+			builder.append(name).append(':');
+			for (int bucket = 0; bucket < histogram.length; bucket++) {
+				if (histogram[bucket] > 0) {
+					long from = sizes ? (bucket == 0 ? 0 : 1L << (bucket - 1))
+							: 1L << bucket;
+					builder.append(' ').append(from).append("+=")
+							.append(histogram[bucket]);
+				}
+			}
+			builder.append('\n');
+		}
+	}
+
+	@Name("DBSCAN.RangeQuery")
+	@Label("Range Query")
+	@Category("DBSCAN")
+	@Description("Query of the eps-neighbourhood of a line")
+	private static class RangeQueryEvent extends Event {
+
+		@Label("Line")
+		int line;
+
+		@Label("Neighbours")
+		int neighbours;
+
+		@Label("Latency")
+		@Timespan
+		long latency;
+	}
+
+	@Name("DBSCAN.Phase")
+	@Label("Clustering Phase")
+	@Category("DBSCAN")
+	private static class PhaseEvent extends Event {
+
+		@Label("Phase")
+		String phase;
+
+		@Label("Lines")
+		int lines;
+
+		@Label("Time")
+		@Timespan
+		long time;
+	}
+
+	@Name("DBSCAN.Clustering")
+	@Label("Clustering")
+	@Category("DBSCAN")
+	@Description("Classification of the lines after a clustering run")
+	private static class ClusteringEvent extends Event {
+
+		@Label("Lines")
+		int lines;
+
+		@Label("Clusters")
+		int clusters;
+
+		@Label("Core Lines")
+		int coreLines;
+
+		@Label("Noise Lines")
+		int noiseLines;
+
+		@Label("Distance Evaluations")
+		long distanceEvaluations;
+	}
+}
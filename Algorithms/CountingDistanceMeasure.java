@@ -0,0 +1,53 @@
+package Algorithms;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import DataStructures.Line;
+import DataStructures.LineBlock;
+import DataStructures.LineStore;
+
+/**
+ * Measure delegating to another one and counting its evaluations, the
+ * counter may be shared by several threads
+ *
+ */
+class CountingDistanceMeasure extends AbstractDistanceMeasure {
+
+	private final AbstractDistanceMeasure distanceMeasure;
+	private final LongAdder evaluations;
+
+	public CountingDistanceMeasure(AbstractDistanceMeasure distanceMeasure,
+			LongAdder evaluations) {
+		this.distanceMeasure = distanceMeasure;
+		this.evaluations = evaluations;
+	}
+
+	@Override
+	protected double dist(Line line1, Line line2) {
+		evaluations.increment();
+		return distanceMeasure.dist(line1, line2);
+	}
+
+	@Override
+	protected double dist(LineStore lines, int index1, int index2) {
+		evaluations.increment();
+		return distanceMeasure.dist(lines, index1, index2);
+	}
+
+	@Override
+	protected void dist(LineBlock block, LineStore lines, int index,
+			double[] distances) {
+		evaluations.add(block.size());
+		distanceMeasure.dist(block, lines, index, distances);
+	}
+
+	@Override
+	protected int getNorm() {
+		return distanceMeasure.getNorm();
+	}
+
+	@Override
+	protected double boxDistance(double gapX, double gapY, double gapZ) {
+		return distanceMeasure.boxDistance(gapX, gapY, gapZ);
+	}
+}
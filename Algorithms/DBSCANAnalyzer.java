@@ -1,21 +1,32 @@
 package Algorithms;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Map;
 
+import DataStructures.IntList;
 import DataStructures.Line;
+import DataStructures.LineStore;
 import DataStructures.Object3D;
 
 public class DBSCANAnalyzer {
 
+	// Marks the lines which are not yet classified as a cluster member or noise
+	private static final int UNCLASSIFIED = -2;
+
 	private double eps;
 	private final double minPts;
 	private final AbstractDistanceMeasure distanceMeasure;
 
+	// Collector of the metrics and the measure counting the distance
+	// evaluations into it, null if the metrics are not collected
+	private ClusteringMetrics metrics;
+	private AbstractDistanceMeasure countingDistanceMeasure;
+
+	// Cache of the distances and of the neighbourhoods, null if the values
+	// are not cached
+	private NeighbourhoodCache cache;
+
 	public DBSCANAnalyzer(AbstractDistanceMeasure distanceMeasure) {
 		this.distanceMeasure = distanceMeasure;
 		this.minPts = countMinPts(Object3D.SPACE_DIMENSION);
@@ -38,6 +49,108 @@ public class DBSCANAnalyzer {
 		}
 	}
 
+	/**
+	 * Returns the epsilon parameter of the algorithm
+	 * 
+	 * @return the epsilon parameter
+	 */
+	protected double getEps() {
+		return this.eps;
+	}
+
+	/**
+	 * Returns the MinPts parameter of the algorithm
+	 * 
+	 * @return the minimal number of neighbours of a core line
+	 */
+	protected double getMinPts() {
+		return this.minPts;
+	}
+
+	/**
+	 * Returns the measure of the distances between the lines, it counts the
+	 * distance evaluations if the metrics are collected
+	 * 
+	 * @return the distance measure
+	 */
+	protected AbstractDistanceMeasure getDistanceMeasure() {
+		return this.metrics == null ? this.distanceMeasure
+				: this.countingDistanceMeasure;
+	}
+
+	/**
+	 * Returns the measure of the distances between the lines for a run, it
+	 * counts the distance evaluations if the run has a distance budget
+	 * 
+	 * @param control
+	 *            the handle of the run, may be null
+	 * @return the distance measure
+	 */
+	protected AbstractDistanceMeasure getDistanceMeasure(
+			ClusteringControl control) {
+		return control == null ? getDistanceMeasure() : control
+				.countDistances(getDistanceMeasure());
+	}
+
+	/**
+	 * Returns the measure of the distances between the lines for a clustering
+	 * run over the index, it looks the distances up in the cache if there is
+	 * one and it counts the distance evaluations as getDistanceMeasure does
+	 * 
+	 * @param index
+	 *            the neighbourhood index of the run
+	 * @param control
+	 *            the handle of the run, may be null
+	 * @return the distance measure
+	 */
+	protected AbstractDistanceMeasure getDistanceMeasure(
+			INeighbourhoodIndex index, ClusteringControl control) {
+		AbstractDistanceMeasure measure = getDistanceMeasure(control);
+		return cache == null ? measure : cache.bind(index, distanceMeasure,
+				eps, measure);
+	}
+
+	/**
+	 * Sets the cache of the distances and of the neighbourhoods used by the
+	 * following clustering runs
+	 * 
+	 * @param cache
+	 *            the cache or null to stop caching
+	 */
+	public void setCache(NeighbourhoodCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Returns the cache of the distances and of the neighbourhoods
+	 * 
+	 * @return the cache or null if the values are not cached
+	 */
+	public NeighbourhoodCache getCache() {
+		return this.cache;
+	}
+
+	/**
+	 * Sets the collector of the metrics of the following runs
+	 * 
+	 * @param metrics
+	 *            the collector of the metrics or null to stop collecting them
+	 */
+	public void setMetrics(ClusteringMetrics metrics) {
+		this.metrics = metrics;
+		this.countingDistanceMeasure = metrics == null ? null : metrics
+				.countDistances(distanceMeasure);
+	}
+
+	/**
+	 * Returns the collector of the metrics
+	 * 
+	 * @return the collector of the metrics or null if they are not collected
+	 */
+	public ClusteringMetrics getMetrics() {
+		return this.metrics;
+	}
+
 	/**
 	 * Clusters the given lines into classes by applying DBSCAN algorithm
 	 * 
@@ -53,14 +166,94 @@ public class DBSCANAnalyzer {
 			throw new IllegalArgumentException(errorMessage);
 		}
 
-		System.out.println("Performing clustering on lines...");
-		Map<Line, Integer> visited = new HashMap<Line, Integer>();
+		LineStore store = LineStore.fromLines(lines);
+		performClustering(store);
+		store.copyClustersTo(lines);
+	}
+
+	/**
+	 * Clusters the lines of the store into classes by applying DBSCAN
+	 * algorithm, the cluster IDs are assigned in the store
+	 * 
+	 * @param lines
+	 *            the store of the lines to cluster
+	 * @throws IllegalArgumentException
+	 *             if the store provided is null
+	 */
+	public void performClustering(LineStore lines)
+			throws IllegalArgumentException {
+		if (lines == null) {
+			String errorMessage = "The lines argument is not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		performClustering(new LinearScanIndex(lines));
+	}
+
+	/**
+	 * Clusters the lines of the store into classes by applying DBSCAN
+	 * algorithm, the eps-neighbourhoods are located with the given index
+	 * 
+	 * @param index
+	 *            the neighbourhood index built over the store of the lines to
+	 *            cluster
+	 * @throws IllegalArgumentException
+	 *             if the index provided is null
+	 */
+	public void performClustering(INeighbourhoodIndex index)
+			throws IllegalArgumentException {
+		performClustering(index, null);
+	}
+
+	/**
+	 * Clusters the lines of the store into classes by applying DBSCAN
+	 * algorithm under the control of the handle, the eps-neighbourhoods are
+	 * located with the given index. If the run is stopped, the clusters found
+	 * before the last one are complete, the last one keeps the lines reached
+	 * so far and the lines which have not been reached are labelled as noise.
+	 * 
+	 * @param index
+	 *            the neighbourhood index built over the store of the lines to
+	 *            cluster
+	 * @param control
+	 *            the handle of the run, may be null
+	 * @return true if all the lines are clustered, false if the result is
+	 *         partial
+	 * @throws IllegalArgumentException
+	 *             if the index provided is null
+	 */
+	public boolean performClustering(INeighbourhoodIndex index,
+			ClusteringControl control) throws IllegalArgumentException {
+		if (index == null) {
+			String errorMessage = "The index argument is not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		long startTime = System.nanoTime();
+		LineStore lines = index.getLines();
+		AbstractDistanceMeasure measure = getDistanceMeasure(index, control);
+		if (control != null) {
+			control.start(lines.size());
+		}
+		int[] visited = new int[lines.size()];
+		Arrays.fill(visited, UNCLASSIFIED);
+		BitSet enqueued = new BitSet(lines.size());
+		IntList queue = new IntList();
+		IntList neighbours = new IntList();
 		int clusterIdentifier = Line.NO_CLUSTER_ASSIGNED;
-		for (Line line : lines) {
+		int coreLinesCount = 0;
+		for (int line = 0; line < lines.size(); line++) {
 
 			// object is not yet classified
-			if (visited.get(line) == null) {
-				List<Line> neighbours = getNeighbours(line, lines);
+			if (visited[line] == UNCLASSIFIED) {
+
+				// the lines left after a stop are labelled as noise
+				if (control != null && control.isStopped()) {
+					lines.setCluster(line, Line.NO_CLUSTER_ASSIGNED);
+					continue;
+				}
+
+				getCachedNeighbours(line, index, measure, neighbours);
 
 				// line is a core-object
 				if (neighbours.size() >= this.minPts) {
@@ -68,95 +261,193 @@ public class DBSCANAnalyzer {
 					// collect all objects density-reachable from point and
 					// assign them to a new cluster
 					clusterIdentifier++;
-					collectDensityReachableObjects(line, clusterIdentifier,
-							neighbours, lines, visited);
+					if (control != null) {
+						control.clusterFound();
+					}
+					coreLinesCount += collectDensityReachableObjects(line,
+							clusterIdentifier, neighbours, index, measure,
+							visited, enqueued, queue, control);
 				} else {
-					visited.put(line, Line.NO_CLUSTER_ASSIGNED);
+					visited[line] = Line.NO_CLUSTER_ASSIGNED;
+					lines.setCluster(line, Line.NO_CLUSTER_ASSIGNED);
+					if (control != null) {
+						control.lineProcessed();
+					}
 				}
 			}
 		}
 
+		if (metrics != null) {
+			metrics.recordPhase("clustering", lines.size(), startTime);
+			metrics.recordClassification(lines, coreLinesCount);
+		}
+		if (control == null) {
+			return true;
+		}
+
+		control.finish();
+		return !control.isPartial();
 	}
 
 	/**
-	 * Finds and collects all objects density-reachable from the given line
+	 * Finds and collects all objects density-reachable from the given line by
+	 * a breadth-first expansion. A line is enqueued at most once during the
+	 * whole clustering: once it is dequeued it either belongs to a cluster or
+	 * is a border line of another cluster, so no later cluster can change it.
+	 * After the run is stopped the enqueued lines join the cluster without
+	 * being expanded, they are density-reachable from it.
 	 * 
 	 * @param line
-	 *            the core line
+	 *            the index of the core line
 	 * @param clusterIdentifier
 	 *            the current cluster identifier
 	 * @param neighbours
-	 *            the list of a core line's neighbours
-	 * @param lines
-	 *            the lines to cluster
+	 *            the indices of a core line's neighbours, the list is reused
+	 *            for the neighbours of the expanded lines
+	 * @param index
+	 *            the neighbourhood index of the lines to cluster
+	 * @param measure
+	 *            the measure of the distances between the lines
 	 * @param visited
-	 *            the set of already clustered lines
-	 */
-	private void collectDensityReachableObjects(Line line,
-			int clusterIdentifier, List<Line> neighbours, List<Line> lines,
-			Map<Line, Integer> visited) {
-		System.out.println("Collecting density-reachable objects...");
-		line.setCluster(clusterIdentifier);
-		List<Line> neighboursCopy = new ArrayList<Line>(neighbours);
-		for (int i = 0; i < neighboursCopy.size(); i++) {
-			Line current = neighboursCopy.get(i);
-			Integer currentClusterIdentifier = visited.get(current);
+	 *            the cluster identifiers of already classified lines
+	 * @param enqueued
+	 *            the set of the lines which have already been enqueued
+	 * @param queue
+	 *            the queue of the lines to expand, reused between clusters
+	 * @param control
+	 *            the handle of the run, may be null
+	 * @return the number of the core lines of the cluster
+	 */
+	private int collectDensityReachableObjects(int line,
+			int clusterIdentifier, IntList neighbours,
+			INeighbourhoodIndex index, AbstractDistanceMeasure measure,
+			int[] visited, BitSet enqueued, IntList queue,
+			ClusteringControl control) {
+		LineStore lines = index.getLines();
+		int coreLinesCount = 1;
+		boolean stopped = control != null && control.lineProcessed();
+		visited[line] = clusterIdentifier;
+		lines.setCluster(line, clusterIdentifier);
+		enqueued.set(line);
+		queue.clear();
+		enqueue(neighbours, enqueued, queue);
+		for (int head = 0; head < queue.size(); head++) {
+			int current = queue.get(head);
+			int currentClusterIdentifier = visited[current];
 
 			// only check those lines which haven't been visited yet
-			if (currentClusterIdentifier == null) {
-				final List<Line> currentNeighbors = getNeighbours(current,
-						lines);
-				if (currentNeighbors.size() >= minPts) {
+			if (currentClusterIdentifier == UNCLASSIFIED && !stopped) {
+				getCachedNeighbours(current, index, measure, neighbours);
+				if (neighbours.size() >= minPts) {
 					// found the density-reachable, connect it with the set
-					neighboursCopy = union(neighboursCopy, currentNeighbors);
+					enqueue(neighbours, enqueued, queue);
+					coreLinesCount++;
 				}
+				stopped = control != null && control.lineProcessed();
 			}
 
-			if (currentClusterIdentifier == null
+			if (currentClusterIdentifier == UNCLASSIFIED
 					|| currentClusterIdentifier == Line.NO_CLUSTER_ASSIGNED) {
-				visited.put(current, clusterIdentifier);
-				current.setCluster(clusterIdentifier);
+				visited[current] = clusterIdentifier;
+				lines.setCluster(current, clusterIdentifier);
 			}
 		}
+		return coreLinesCount;
 	}
 
 	/**
 	 * Searches for the neighbours of a given line in the area with radius equal
-	 * to eps
+	 * to eps, the query is recorded if the metrics are collected
 	 * 
 	 * @param line
-	 *            the center line to locate the nearest neighbours to
-	 * @param lines
-	 *            the set of data lines
-	 * @return the list of all the neighbours in the eps-radius sphere
-	 */
-	private List<Line> getNeighbours(Line line, List<Line> lines) {
-		List<Line> neighbours = new ArrayList<Line>();
-		for (Line neighbour : lines) {
-			if (!line.equals(neighbour)
-					&& distanceMeasure.dist(neighbour, line) <= this.eps) {
-				neighbours.add(neighbour);
-			}
+	 *            the index of the center line to locate the nearest neighbours
+	 *            to
+	 * @param index
+	 *            the neighbourhood index of data lines
+	 * @param neighbours
+	 *            the list to be filled with the indices of all the neighbours
+	 *            in the eps-radius sphere
+	 */
+	protected void getNeighbours(int line, INeighbourhoodIndex index,
+			IntList neighbours) {
+		getNeighbours(line, index, getDistanceMeasure(), neighbours);
+	}
+
+	/**
+	 * Searches for the neighbours of a given line in the area with radius equal
+	 * to eps using the given measure, the query is recorded if the metrics are
+	 * collected
+	 * 
+	 * @param line
+	 *            the index of the center line
+	 * @param index
+	 *            the neighbourhood index of data lines
+	 * @param measure
+	 *            the measure of the distances between the lines
+	 * @param neighbours
+	 *            the list to be filled with the indices of all the neighbours
+	 *            in the eps-radius sphere
+	 */
+	protected void getNeighbours(int line, INeighbourhoodIndex index,
+			AbstractDistanceMeasure measure, IntList neighbours) {
+		neighbours.clear();
+		if (metrics == null) {
+			index.collectNeighbours(measure, line, this.eps, neighbours);
+			return;
 		}
-		return neighbours;
+
+		long startTime = System.nanoTime();
+		index.collectNeighbours(measure, line, this.eps, neighbours);
+		metrics.recordRangeQuery(line, neighbours.size(), System.nanoTime()
+				- startTime);
 	}
 
 	/**
-	 * Performs the union of two set of lines
+	 * Searches for the neighbours of a given line in the area with radius equal
+	 * to eps, the neighbourhood is taken from the cache if there is one and
+	 * holds it, otherwise it is located as by getNeighbours and cached
 	 * 
-	 * @param firstSet
-	 *            the set to be filled with the lines
-	 * @param secondSet
-	 *            the set to get the lines from
-	 * @return resulting set consisting of the lines from both sets
+	 * @param line
+	 *            the index of the center line
+	 * @param index
+	 *            the neighbourhood index of data lines
+	 * @param measure
+	 *            the measure of the distances between the lines
+	 * @param neighbours
+	 *            the list to be filled with the indices of all the neighbours
+	 *            in the eps-radius sphere
 	 */
-	private List<Line> union(List<Line> firstSet, List<Line> secondSet) {
-		for (Line line : secondSet) {
-			if (!firstSet.contains(line)) {
-				firstSet.add(line);
+	protected void getCachedNeighbours(int line, INeighbourhoodIndex index,
+			AbstractDistanceMeasure measure, IntList neighbours) {
+		NeighbourhoodCache cache = this.cache;
+		if (cache != null && cache.getNeighbours(line, neighbours)) {
+			return;
+		}
+
+		getNeighbours(line, index, measure, neighbours);
+		if (cache != null) {
+			cache.putNeighbours(line, neighbours);
+		}
+	}
+
+	/**
+	 * Appends the lines which have never been enqueued to the queue
+	 * 
+	 * @param lines
+	 *            the indices of the lines to enqueue
+	 * @param enqueued
+	 *            the set of the lines which have already been enqueued
+	 * @param queue
+	 *            the queue of the lines to expand
+	 */
+	private void enqueue(IntList lines, BitSet enqueued, IntList queue) {
+		for (int i = 0; i < lines.size(); i++) {
+			int line = lines.get(i);
+			if (!enqueued.get(line)) {
+				enqueued.set(line);
+				queue.add(line);
 			}
 		}
-		return firstSet;
 	}
 
 	/**
@@ -178,39 +469,24 @@ public class DBSCANAnalyzer {
 	}
 
 	/**
-	 * Performs the k-th distance calculation from the given line
+	 * Calculates the MinPts-distance values for the user to select the
+	 * "border object"
 	 * 
 	 * @param lines
 	 *            a list of lines to be clustered
-	 * @param o
-	 *            the center line to locate the distance from
-	 * @param k
-	 *            the order of the nearest neighbour
-	 * @return the k-th distance value
+	 * @return MinPts-distance plot values in descending order
 	 * @throws IllegalArgumentException
-	 *             if a set of data lines is null or the order of the nearest
-	 *             neighbour exceeds the cardinality of a data set
+	 *             if a set of data lines is null
 	 */
-	private double calculateKDistance(List<Line> lines, Line o, int k)
+	public double[] getDistanceValuesForEpsilonEstimate(List<Line> lines)
 			throws IllegalArgumentException {
-		if (lines == null) {
-			String errorMessage = "The lines argument is null.";
-			throw new IllegalArgumentException(errorMessage);
-		}
-
-		if (k > lines.size()) {
-			String errorMessage = "The order of the nearest neighbour can not exceed the cardinality of a set";
-			throw new IllegalArgumentException(errorMessage);
+		if (lines != null) {
+			return getDistanceValuesForEpsilonEstimate(LineStore
+					.fromLines(lines));
 		}
 
-		double[] distances = new double[lines.size()];
-		for (int i = 0; i < lines.size(); i++) {
-			if (!lines.get(i).equals(o)) {
-				distances[i] = distanceMeasure.dist(lines.get(i), o);
-			}
-		}
-		Arrays.sort(distances);
-		return distances[k];
+		String errorMessage = "The dataset argument is not valid.";
+		throw new IllegalArgumentException(errorMessage);
 	}
 
 	/**
@@ -218,29 +494,372 @@ public class DBSCANAnalyzer {
 	 * "border object"
 	 * 
 	 * @param lines
-	 *            a list of lines to be clustered
-	 * @return MinPts-distance plot values
+	 *            a store of lines to be clustered
+	 * @return MinPts-distance plot values in descending order
 	 * @throws IllegalArgumentException
 	 *             if a set of data lines is null
 	 */
-	public Double[] getDistanceValuesForEpsilonEstimate(List<Line> lines)
+	public double[] getDistanceValuesForEpsilonEstimate(LineStore lines)
 			throws IllegalArgumentException {
 		if (lines != null) {
-			final Double[] kDistancePlotValues = new Double[lines.size()];
-			for (int i = 0; i < lines.size(); i++) {
-				kDistancePlotValues[i] = calculateKDistance(lines,
-						lines.get(i), countMinPts(Object3D.SPACE_DIMENSION));
-			}
-			Arrays.sort(kDistancePlotValues, new Comparator<Double>() {
-				@Override
-				public int compare(Double o1, Double o2) {
-					return -Double.compare(o1, o2);
-				}
-			});
-			return kDistancePlotValues;
+			return getDistanceValuesForEpsilonEstimate(new LinearScanIndex(
+					lines));
 		}
 
 		String errorMessage = "The dataset argument is not valid.";
 		throw new IllegalArgumentException(errorMessage);
 	}
+
+	/**
+	 * Calculates the MinPts-distance values for the user to select the
+	 * "border object", the nearest neighbours are located with the given
+	 * index
+	 * 
+	 * @param index
+	 *            the nearest neighbour index built over the store of the lines
+	 *            to be clustered
+	 * @return MinPts-distance plot values in descending order
+	 * @throws IllegalArgumentException
+	 *             if the index is null or the order of the nearest neighbour
+	 *             exceeds the cardinality of a data set
+	 */
+	public double[] getDistanceValuesForEpsilonEstimate(
+			INearestNeighbourIndex index) throws IllegalArgumentException {
+		return getDistanceValuesForEpsilonEstimate(index,
+				(IProgressListener) null);
+	}
+
+	/**
+	 * Calculates the MinPts-distance values for the user to select the
+	 * "border object" reporting the progress to the listener
+	 * 
+	 * @param index
+	 *            the nearest neighbour index built over the store of the lines
+	 *            to be clustered
+	 * @param listener
+	 *            the listener to notify after every line, may be null
+	 * @return MinPts-distance plot values in descending order
+	 * @throws IllegalArgumentException
+	 *             if the index is null or the order of the nearest neighbour
+	 *             exceeds the cardinality of a data set
+	 */
+	public double[] getDistanceValuesForEpsilonEstimate(
+			INearestNeighbourIndex index, IProgressListener listener)
+			throws IllegalArgumentException {
+		int[] orders = { countMinPts(Object3D.SPACE_DIMENSION) };
+		return getDistanceValuesForEpsilonEstimate(index, orders, listener)[0];
+	}
+
+	/**
+	 * Calculates the k-distance plot values for several orders of the nearest
+	 * neighbour at once. The distances from every line to its nearest
+	 * neighbours are computed once for the largest order and all the plots
+	 * are taken from them.
+	 * 
+	 * @param index
+	 *            the nearest neighbour index built over the store of the lines
+	 *            to be clustered
+	 * @param orders
+	 *            the orders k of the nearest neighbour, e.g. MinPts - 1,
+	 *            MinPts and MinPts + 1
+	 * @return the k-distance plot values in descending order for each of the
+	 *         orders
+	 * @throws IllegalArgumentException
+	 *             if the index is null or an order of the nearest neighbour is
+	 *             not positive or exceeds the cardinality of a data set
+	 */
+	public double[][] getDistanceValuesForEpsilonEstimate(
+			INearestNeighbourIndex index, int[] orders)
+			throws IllegalArgumentException {
+		return getDistanceValuesForEpsilonEstimate(index, orders,
+				(ClusteringControl) null);
+	}
+
+	/**
+	 * Calculates the k-distance plot values for several orders of the nearest
+	 * neighbour at once reporting the progress to the listener
+	 * 
+	 * @param index
+	 *            the nearest neighbour index built over the store of the lines
+	 *            to be clustered
+	 * @param orders
+	 *            the orders k of the nearest neighbour, e.g. MinPts - 1,
+	 *            MinPts and MinPts + 1
+	 * @param listener
+	 *            the listener to notify after every line, may be null
+	 * @return the k-distance plot values in descending order for each of the
+	 *         orders
+	 * @throws IllegalArgumentException
+	 *             if the index is null or an order of the nearest neighbour is
+	 *             not positive or exceeds the cardinality of a data set
+	 */
+	public double[][] getDistanceValuesForEpsilonEstimate(
+			INearestNeighbourIndex index, int[] orders,
+			IProgressListener listener) throws IllegalArgumentException {
+		return getDistanceValuesForEpsilonEstimate(index, orders,
+				listener == null ? null : new ClusteringControl(listener));
+	}
+
+	/**
+	 * Calculates the MinPts-distance values for the user to select the
+	 * "border object" under the control of the handle
+	 * 
+	 * @param index
+	 *            the nearest neighbour index built over the store of the lines
+	 *            to be clustered
+	 * @param control
+	 *            the handle of the run, may be null
+	 * @return MinPts-distance plot values in descending order, only of the
+	 *         processed lines if the run is stopped
+	 * @throws IllegalArgumentException
+	 *             if the index is null or the order of the nearest neighbour
+	 *             exceeds the cardinality of a data set
+	 */
+	public double[] getDistanceValuesForEpsilonEstimate(
+			INearestNeighbourIndex index, ClusteringControl control)
+			throws IllegalArgumentException {
+		int[] orders = { countMinPts(Object3D.SPACE_DIMENSION) };
+		return getDistanceValuesForEpsilonEstimate(index, orders, control)[0];
+	}
+
+	/**
+	 * Calculates the k-distance plot values for several orders of the nearest
+	 * neighbour at once under the control of the handle. If the run is
+	 * stopped, the plots only have the values of the processed lines.
+	 * 
+	 * @param index
+	 *            the nearest neighbour index built over the store of the lines
+	 *            to be clustered
+	 * @param orders
+	 *            the orders k of the nearest neighbour, e.g. MinPts - 1,
+	 *            MinPts and MinPts + 1
+	 * @param control
+	 *            the handle of the run, may be null
+	 * @return the k-distance plot values in descending order for each of the
+	 *         orders
+	 * @throws IllegalArgumentException
+	 *             if the index is null or an order of the nearest neighbour is
+	 *             not positive or exceeds the cardinality of a data set
+	 */
+	public double[][] getDistanceValuesForEpsilonEstimate(
+			INearestNeighbourIndex index, int[] orders,
+			ClusteringControl control) throws IllegalArgumentException {
+		if (index == null || orders == null || orders.length == 0) {
+			String errorMessage = "The dataset argument is not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		int maxOrder = 0;
+		for (int k : orders) {
+			if (k < 1 || k >= index.getLines().size()) {
+				String errorMessage = "The order of the nearest neighbour can "
+						+ "not exceed the cardinality of a set";
+				throw new IllegalArgumentException(errorMessage);
+			}
+			maxOrder = Math.max(maxOrder, k);
+		}
+
+		int size = index.getLines().size();
+		double[][] kDistancePlotValues = new double[orders.length][size];
+		long startTime = System.nanoTime();
+		if (control != null) {
+			for (double[] values : kDistancePlotValues) {
+				Arrays.fill(values, Double.NaN);
+			}
+			control.start(size);
+		}
+		calculateKDistances(index, maxOrder, orders, kDistancePlotValues,
+				control);
+		if (metrics != null) {
+			metrics.recordPhase("kDistances", size, startTime);
+			startTime = System.nanoTime();
+		}
+		for (int i = 0; i < orders.length; i++) {
+			if (control != null && control.isStopped()) {
+				kDistancePlotValues[i] = removeMissingValues(
+						kDistancePlotValues[i]);
+			}
+			sortDescending(kDistancePlotValues[i]);
+		}
+		if (control != null) {
+			control.finish();
+		}
+		if (metrics != null) {
+			metrics.recordPhase("sorting", size, startTime);
+		}
+		return kDistancePlotValues;
+	}
+
+	/**
+	 * Estimates the MinPts-distance plot from a sample of the lines, for the
+	 * data sets too large to compute the distance of every line, reporting
+	 * the progress over the sampled lines to the listener
+	 * 
+	 * @param index
+	 *            the nearest neighbour index built over the store of the lines
+	 *            to be clustered
+	 * @param sampler
+	 *            the parameters of the sample
+	 * @param listener
+	 *            the listener to notify after every sampled line, may be null
+	 * @return the plot estimated with its confidence bands and its knee
+	 * @throws IllegalArgumentException
+	 *             if an argument is null or the order of the nearest
+	 *             neighbour exceeds the cardinality of a data set
+	 */
+	public SampledKDistancePlot getSampledDistanceValuesForEpsilonEstimate(
+			INearestNeighbourIndex index, KDistanceSampler sampler,
+			IProgressListener listener) throws IllegalArgumentException {
+		return getSampledDistanceValuesForEpsilonEstimate(index, sampler,
+				listener == null ? null : new ClusteringControl(listener));
+	}
+
+	/**
+	 * Estimates the MinPts-distance plot from a sample of the lines under the
+	 * control of the handle. The k-distances of the sampled lines are
+	 * computed against all the lines, so the cost grows with the size of the
+	 * sample instead of the square of the size of the data set.
+	 * 
+	 * @param index
+	 *            the nearest neighbour index built over the store of the lines
+	 *            to be clustered
+	 * @param sampler
+	 *            the parameters of the sample
+	 * @param control
+	 *            the handle of the run counting the sampled lines, may be
+	 *            null
+	 * @return the plot estimated with its confidence bands and its knee, from
+	 *         the lines sampled so far if the run is stopped
+	 * @throws IllegalArgumentException
+	 *             if an argument is null or the order of the nearest
+	 *             neighbour exceeds the cardinality of a data set
+	 */
+	public SampledKDistancePlot getSampledDistanceValuesForEpsilonEstimate(
+			INearestNeighbourIndex index, KDistanceSampler sampler,
+			ClusteringControl control) throws IllegalArgumentException {
+		if (index == null || sampler == null) {
+			String errorMessage = "The dataset argument is not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		int order = countMinPts(Object3D.SPACE_DIMENSION);
+		if (order >= index.getLines().size()) {
+			String errorMessage = "The order of the nearest neighbour can not "
+					+ "exceed the cardinality of a set";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		long startTime = System.nanoTime();
+		SampledKDistancePlot plot = sampler.sample(this, index, order,
+				control);
+		if (control != null) {
+			control.finish();
+		}
+		if (metrics != null) {
+			metrics.recordPhase("sampledKDistances", plot.getSampleSize(),
+					startTime);
+		}
+		return plot;
+	}
+
+	/**
+	 * Performs the k-th distance calculation from every line for each of the
+	 * orders
+	 * 
+	 * @param index
+	 *            the nearest neighbour index of the lines
+	 * @param maxOrder
+	 *            the largest of the orders
+	 * @param orders
+	 *            the orders of the nearest neighbour
+	 * @param kDistances
+	 *            the arrays to store the k-th distances of the lines into, one
+	 *            for each of the orders
+	 * @param control
+	 *            the handle of the run to notify after every line, may be
+	 *            null, the distances of the lines left after a stop are not
+	 *            computed
+	 */
+	protected void calculateKDistances(INearestNeighbourIndex index,
+			int maxOrder, int[] orders, double[][] kDistances,
+			ClusteringControl control) {
+		int size = index.getLines().size();
+		AbstractDistanceMeasure measure = getDistanceMeasure(control);
+		double[] nearest = new double[maxOrder];
+		for (int line = 0; line < size; line++) {
+			index.findNearestDistances(measure, line, maxOrder, nearest);
+			for (int i = 0; i < orders.length; i++) {
+				kDistances[i][line] = nearest[orders[i] - 1];
+			}
+			if (control != null && control.lineProcessed()) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Performs the k-th distance calculation from the sampled lines
+	 * 
+	 * @param index
+	 *            the nearest neighbour index of all the lines
+	 * @param order
+	 *            the order of the nearest neighbour
+	 * @param sample
+	 *            the sampled lines
+	 * @param from
+	 *            the first sampled line to compute the distance of, the
+	 *            earlier ones are already computed
+	 * @param kDistances
+	 *            the array to store the k-th distances of the sampled lines
+	 *            into
+	 * @param control
+	 *            the handle of the run to notify after every line, may be
+	 *            null, the distances of the lines left after a stop are not
+	 *            computed
+	 */
+	protected void calculateSampleKDistances(INearestNeighbourIndex index,
+			int order, int[] sample, int from, double[] kDistances,
+			ClusteringControl control) {
+		AbstractDistanceMeasure measure = getDistanceMeasure(control);
+		double[] nearest = new double[order];
+		for (int i = from; i < sample.length; i++) {
+			index.findNearestDistances(measure, sample[i], order, nearest);
+			kDistances[i] = nearest[order - 1];
+			if (control != null && control.lineProcessed()) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Drops the values of the lines which have not been processed
+	 * 
+	 * @param values
+	 *            the values with NaN for the missing ones
+	 * @return the computed values
+	 */
+	private static double[] removeMissingValues(double[] values) {
+		int count = 0;
+		for (double value : values) {
+			if (!Double.isNaN(value)) {
+				values[count++] = value;
+			}
+		}
+		return Arrays.copyOf(values, count);
+	}
+
+	/**
+	 * Sorts the values in descending order
+	 * 
+	 * @param values
+	 *            the values to sort
+	 */
+	private static void sortDescending(double[] values) {
+		Arrays.sort(values);
+		for (int i = 0, j = values.length - 1; i < j; i++, j--) {
+			double value = values[i];
+			values[i] = values[j];
+			values[j] = value;
+		}
+	}
 }
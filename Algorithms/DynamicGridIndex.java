@@ -0,0 +1,386 @@
+package Algorithms;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import DataStructures.HeapLineStore;
+import DataStructures.IntList;
+import DataStructures.Line;
+import DataStructures.LineStore;
+import Utilities.LineUtils;
+
+/**
+ * Uniform grid over the bounding boxes of a changing set of lines. The lines
+ * are kept in a store which grows on demand, the index of a removed line is
+ * reused by the next added line. As in GridIndex a line is put into all the
+ * cells its bounding box overlaps and a query only visits the cells around
+ * the center line, so adding, removing and querying a line costs time
+ * proportional to the lines around it. The free indices of the store hold no
+ * line and have no neighbours.
+ *
+ */
+public class DynamicGridIndex implements INeighbourhoodIndex {
+
+	private static final int EMPTY_SLOT = -1;
+	private static final int INITIAL_CAPACITY = 16;
+
+	// Bound of the cell coordinates, see GridIndex
+	private static final int MAX_CELL = 1 << 30;
+
+	private final double cellSize;
+	private LineStore lines;
+	private final BitSet used;
+	private final IntList freeLines;
+	private int usedCount;
+	private int linesEnd;
+
+	// Only grows, the padding of the queries stays valid for removed lines
+	private double maxAbsCoordinate;
+
+	// Hash table of the cells: cell coordinates and cell number
+	private int[] slotCellX;
+	private int[] slotCellY;
+	private int[] slotCellZ;
+	private int[] slotCell;
+
+	// Lines of the cells by the cell number, the cells which became empty
+	// are dropped when the table is rebuilt
+	private IntList[] cellLines;
+	private int cellsCount;
+	private int emptyCellsCount;
+
+	/**
+	 * Creates the empty grid
+	 * 
+	 * @param cellSize
+	 *            the edge length of the cubic grid cells, it should be about
+	 *            eps and not much smaller than the typical line extent
+	 * @throws IllegalArgumentException
+	 *             if the cell size is not positive
+	 */
+	public DynamicGridIndex(double cellSize) throws IllegalArgumentException {
+		if (!(cellSize > 0)) {
+			String errorMessage = "The cell size argument is not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		this.cellSize = cellSize;
+		this.lines = new HeapLineStore(INITIAL_CAPACITY);
+		this.used = new BitSet();
+		this.freeLines = new IntList();
+		allocateSlots(INITIAL_CAPACITY);
+		this.cellLines = new IntList[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Returns the store of the lines, its size is the number of the indices
+	 * in use or free. The store is replaced when it grows.
+	 */
+	@Override
+	public LineStore getLines() {
+		return this.lines;
+	}
+
+	/**
+	 * Returns the edge length of the grid cells
+	 * 
+	 * @return the cell size
+	 */
+	public double getCellSize() {
+		return this.cellSize;
+	}
+
+	/**
+	 * Returns the number of the lines in the grid
+	 * 
+	 * @return the number of the lines
+	 */
+	public int size() {
+		return this.usedCount;
+	}
+
+	/**
+	 * Returns the bound of the indices which have ever been used
+	 * 
+	 * @return the largest used index plus one
+	 */
+	public int getLinesEnd() {
+		return this.linesEnd;
+	}
+
+	/**
+	 * Determines if the index holds a line
+	 * 
+	 * @param line
+	 *            the index of the line
+	 * @return true if the line is in the grid
+	 */
+	public boolean contains(int line) {
+		return line >= 0 && used.get(line);
+	}
+
+	/**
+	 * Adds the line to the grid, the most recently freed index of the store
+	 * is reused for it
+	 * 
+	 * @return the index of the added line
+	 */
+	public int addLine(float absX, float absY, float absZ, float dirX,
+			float dirY, float dirZ) {
+		int line;
+		if (freeLines.size() > 0) {
+			line = freeLines.removeLast();
+		} else {
+			line = linesEnd++;
+			if (line == lines.size()) {
+				growStore(2 * lines.size());
+			}
+		}
+
+		lines.setLine(line, absX, absY, absZ, dirX, dirY, dirZ);
+		lines.setCluster(line, Line.NO_CLUSTER_ASSIGNED);
+		used.set(line);
+		usedCount++;
+		maxAbsCoordinate = Math.max(maxAbsCoordinate,
+				Math.max(-lines.getMinX(line), lines.getMaxX(line)));
+		maxAbsCoordinate = Math.max(maxAbsCoordinate,
+				Math.max(-lines.getMinY(line), lines.getMaxY(line)));
+		maxAbsCoordinate = Math.max(maxAbsCoordinate,
+				Math.max(-lines.getMinZ(line), lines.getMaxZ(line)));
+		putLine(line);
+		return line;
+	}
+
+	/**
+	 * Removes the line from the grid, its index becomes free
+	 * 
+	 * @param line
+	 *            the index of the line
+	 * @throws IllegalArgumentException
+	 *             if the grid does not hold the line
+	 */
+	public void removeLine(int line) throws IllegalArgumentException {
+		if (!contains(line)) {
+			String errorMessage = "The line argument is not in the grid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		int maxX = toCell(lines.getMaxX(line));
+		int maxY = toCell(lines.getMaxY(line));
+		int maxZ = toCell(lines.getMaxZ(line));
+		for (int x = toCell(lines.getMinX(line)); x <= maxX; x++) {
+			for (int y = toCell(lines.getMinY(line)); y <= maxY; y++) {
+				for (int z = toCell(lines.getMinZ(line)); z <= maxZ; z++) {
+					IntList cell = cellLines[findCell(x, y, z)];
+					cell.remove(line);
+					if (cell.size() == 0) {
+						emptyCellsCount++;
+					}
+				}
+			}
+		}
+
+		lines.setCluster(line, Line.NO_CLUSTER_ASSIGNED);
+		used.clear(line);
+		usedCount--;
+		freeLines.add(line);
+		if (emptyCellsCount > INITIAL_CAPACITY
+				&& 2 * emptyCellsCount > cellsCount) {
+			rebuild();
+		}
+	}
+
+	@Override
+	public void collectNeighbours(AbstractDistanceMeasure distanceMeasure,
+			int line, double eps, IntList neighbours) {
+		if (!contains(line)) {
+			return;
+		}
+
+		double padding = eps + LineUtils.DISTANCE_ROUNDING_RATIO
+				* (eps + maxAbsCoordinate);
+		int minX = toCell(lines.getMinX(line) - padding);
+		int minY = toCell(lines.getMinY(line) - padding);
+		int minZ = toCell(lines.getMinZ(line) - padding);
+		int maxX = toCell(lines.getMaxX(line) + padding);
+		int maxY = toCell(lines.getMaxY(line) + padding);
+		int maxZ = toCell(lines.getMaxZ(line) + padding);
+		for (int x = minX; x <= maxX; x++) {
+			for (int y = minY; y <= maxY; y++) {
+				for (int z = minZ; z <= maxZ; z++) {
+					int cell = findCell(x, y, z);
+					if (cell == EMPTY_SLOT) {
+						continue;
+					}
+
+					IntList cellContent = cellLines[cell];
+					for (int i = 0; i < cellContent.size(); i++) {
+						int neighbour = cellContent.get(i);
+
+						// a line overlapping several visited cells is only
+						// checked in the first cell shared with the query
+						if (neighbour != line
+								&& isFirstSharedCell(x, y, z, minX, minY, minZ,
+										neighbour)
+								&& distanceMeasure.dist(lines, neighbour,
+										line) <= eps) {
+							neighbours.add(neighbour);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Determines if the given cell is the first one in which the cell range of
+	 * the query and the cell range of the line intersect
+	 * 
+	 * @return true if the line should be checked in this cell
+	 */
+	private boolean isFirstSharedCell(int x, int y, int z, int minX,
+			int minY, int minZ, int line) {
+		return x == Math.max(minX, toCell(lines.getMinX(line)))
+				&& y == Math.max(minY, toCell(lines.getMinY(line)))
+				&& z == Math.max(minZ, toCell(lines.getMinZ(line)));
+	}
+
+	/**
+	 * Puts the line into all the cells its bounding box overlaps
+	 */
+	private void putLine(int line) {
+		int maxX = toCell(lines.getMaxX(line));
+		int maxY = toCell(lines.getMaxY(line));
+		int maxZ = toCell(lines.getMaxZ(line));
+		for (int x = toCell(lines.getMinX(line)); x <= maxX; x++) {
+			for (int y = toCell(lines.getMinY(line)); y <= maxY; y++) {
+				for (int z = toCell(lines.getMinZ(line)); z <= maxZ; z++) {
+					int cellNumber = findOrAddCell(x, y, z);
+					IntList cell = cellLines[cellNumber];
+					if (cell.size() == 0) {
+						emptyCellsCount--;
+					}
+					cell.add(line);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drops the empty cells by putting all the lines into a new table
+	 */
+	private void rebuild() {
+		int capacity = INITIAL_CAPACITY;
+		while (capacity < 2 * (cellsCount - emptyCellsCount)) {
+			capacity <<= 1;
+		}
+		allocateSlots(capacity);
+		cellLines = new IntList[capacity];
+		cellsCount = 0;
+		emptyCellsCount = 0;
+		for (int line = used.nextSetBit(0); line >= 0; line = used
+				.nextSetBit(line + 1)) {
+			putLine(line);
+		}
+	}
+
+	/**
+	 * Replaces the store with a larger copy
+	 */
+	private void growStore(int capacity) {
+		LineStore grown = new HeapLineStore(capacity);
+		for (int line = 0; line < lines.size(); line++) {
+			grown.setLine(line, lines.getAx(line), lines.getAy(line),
+					lines.getAz(line), lines.getDx(line), lines.getDy(line),
+					lines.getDz(line));
+			grown.setCluster(line, lines.getCluster(line));
+		}
+		lines = grown;
+	}
+
+	/**
+	 * Looks up the number of the cell with the given coordinates
+	 * 
+	 * @return the cell number or EMPTY_SLOT if the cell is not in the table
+	 */
+	private int findCell(int x, int y, int z) {
+		int mask = slotCell.length - 1;
+		for (int slot = hash(x, y, z) & mask;; slot = (slot + 1) & mask) {
+			if (slotCell[slot] == EMPTY_SLOT) {
+				return EMPTY_SLOT;
+			}
+			if (slotCellX[slot] == x && slotCellY[slot] == y
+					&& slotCellZ[slot] == z) {
+				return slotCell[slot];
+			}
+		}
+	}
+
+	/**
+	 * Looks up the number of the cell with the given coordinates, an empty
+	 * cell is added for a cell seen for the first time
+	 * 
+	 * @return the cell number
+	 */
+	private int findOrAddCell(int x, int y, int z) {
+		int cell = findCell(x, y, z);
+		if (cell != EMPTY_SLOT) {
+			return cell;
+		}
+
+		if (2 * (cellsCount + 1) > slotCell.length) {
+			int[] oldX = slotCellX;
+			int[] oldY = slotCellY;
+			int[] oldZ = slotCellZ;
+			int[] oldCell = slotCell;
+			allocateSlots(oldCell.length * 2);
+			for (int slot = 0; slot < oldCell.length; slot++) {
+				if (oldCell[slot] != EMPTY_SLOT) {
+					putCell(oldX[slot], oldY[slot], oldZ[slot], oldCell[slot]);
+				}
+			}
+		}
+		if (cellsCount == cellLines.length) {
+			cellLines = Arrays.copyOf(cellLines, 2 * cellLines.length);
+		}
+
+		putCell(x, y, z, cellsCount);
+		cellLines[cellsCount] = new IntList(4);
+		emptyCellsCount++;
+		return cellsCount++;
+	}
+
+	private void putCell(int x, int y, int z, int cell) {
+		int mask = slotCell.length - 1;
+		int slot = hash(x, y, z) & mask;
+		while (slotCell[slot] != EMPTY_SLOT) {
+			slot = (slot + 1) & mask;
+		}
+		slotCellX[slot] = x;
+		slotCellY[slot] = y;
+		slotCellZ[slot] = z;
+		slotCell[slot] = cell;
+	}
+
+	private void allocateSlots(int capacity) {
+		slotCellX = new int[capacity];
+		slotCellY = new int[capacity];
+		slotCellZ = new int[capacity];
+		slotCell = new int[capacity];
+		Arrays.fill(slotCell, EMPTY_SLOT);
+	}
+
+	private static int hash(int x, int y, int z) {
+		int hash = x * 0x9E3779B1 + y * 0x85EBCA77 + z * 0xC2B2AE3D;
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Computes the cell coordinate of the coordinate clamped to
+	 * [-MAX_CELL, MAX_CELL]
+	 */
+	private int toCell(double coordinate) {
+		double cell = Math.floor(coordinate / cellSize);
+		return (int) Math.max(-MAX_CELL, Math.min(MAX_CELL, cell));
+	}
+}
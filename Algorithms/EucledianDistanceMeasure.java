@@ -1,9 +1,10 @@
 package Algorithms;
 
 import DataStructures.Line;
-import DataStructures.Object3D;
-import DataStructures.Pair;
+import DataStructures.LineBlock;
+import DataStructures.LineStore;
 import Utilities.LineUtils;
+import Utilities.VectorUtils;
 
 public class EucledianDistanceMeasure extends AbstractDistanceMeasure {
 
@@ -19,12 +20,51 @@ public class EucledianDistanceMeasure extends AbstractDistanceMeasure {
 	 */
 	@Override
 	protected double dist(Line line1, Line line2) {
-		Pair<Object3D, Object3D> closestPoints = LineUtils
-				.findClosestPointsBetweenTheLines(line1, line2);
-		Object3D point1 = closestPoints.getLeftElement();
-		Object3D point2 = closestPoints.getRightElement();
-		return Math.sqrt(Math.pow(point1.getX() - point2.getX(), 2)
-				+ Math.pow(point1.getY() - point2.getY(), 2)
-				+ Math.pow(point1.getZ() - point2.getZ(), 2));
+		return LineUtils.computeDistanceBetweenTheLines(line1, line2,
+				getNorm(), null);
+	}
+
+	/**
+	 * Computes the Eucledian 2-norm distance between two closest points of the
+	 * lines of the store
+	 * 
+	 * @param lines
+	 *            the store of the measured lines
+	 * @param index1
+	 *            the index of the first 3-D line of the measured
+	 * @param index2
+	 *            the index of the second 3-D line of the measured
+	 * @return the distance between two closest points of the given lines
+	 */
+	@Override
+	protected double dist(LineStore lines, int index1, int index2) {
+		return LineUtils.computeDistanceBetweenTheLines(lines, index1, index2,
+				getNorm(), null);
+	}
+
+	/**
+	 * Computes the Eucledian 2-norm distances between two closest points of the
+	 * lines of the block and a line of the store in one pass over the
+	 * columns of the block
+	 * 
+	 * @param block
+	 *            the block of the first 3-D lines of the measured
+	 * @param lines
+	 *            the store of the measured lines
+	 * @param index
+	 *            the index of the second 3-D line of the measured
+	 * @param distances
+	 *            the array to store the distances into
+	 */
+	@Override
+	protected void dist(LineBlock block, LineStore lines, int index,
+			double[] distances) {
+		LineUtils.computeDistancesBetweenTheLines(block, lines, index,
+				getNorm(), distances);
+	}
+
+	@Override
+	protected int getNorm() {
+		return VectorUtils.EUCLEDIAN_NORM;
 	}
 }
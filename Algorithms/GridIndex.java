@@ -0,0 +1,265 @@
+package Algorithms;
+
+import java.util.Arrays;
+
+import DataStructures.IntList;
+import DataStructures.LineBlock;
+import DataStructures.LineStore;
+import Utilities.LineUtils;
+
+/**
+ * Uniform grid over the bounding boxes of the lines. Every line is put into
+ * all the cells its bounding box overlaps, a neighbourhood query only visits
+ * the cells overlapping the center line's box expanded by eps and computes the
+ * exact distances to the lines found there. The grid is sparse, only the
+ * non-empty cells are kept in a hash table.
+ *
+ */
+public class GridIndex implements INeighbourhoodIndex {
+
+	private static final int EMPTY_SLOT = -1;
+
+	// Bound of the cell coordinates, the cells beyond it are merged into the
+	// outermost ones so that the loops over the cell ranges can not overflow
+	private static final int MAX_CELL = 1 << 30;
+
+	private final LineStore lines;
+	private final double cellSize;
+	private final double maxAbsCoordinate;
+	private final LowerBoundFilter filter;
+
+	// Hash table of the non-empty cells: cell coordinates and cell number
+	private int[] slotCellX;
+	private int[] slotCellY;
+	private int[] slotCellZ;
+	private int[] slotCell;
+	private int cellsCount;
+
+	// Lines of the cell number c are cellLines[cellStart[c]..cellStart[c+1])
+	private int[] cellStart;
+	private int[] cellLines;
+
+	/**
+	 * Builds the grid over the lines of the store
+	 * 
+	 * @param lines
+	 *            the store of the lines to index
+	 * @param cellSize
+	 *            the edge length of the cubic grid cells, it should be about
+	 *            eps and not much smaller than the typical line extent
+	 * @throws IllegalArgumentException
+	 *             if the store is null or the cell size is not positive
+	 */
+	public GridIndex(LineStore lines, double cellSize)
+			throws IllegalArgumentException {
+		if (lines == null || !(cellSize > 0)) {
+			String errorMessage = "The grid arguments are not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		this.lines = lines;
+		this.cellSize = cellSize;
+		this.maxAbsCoordinate = lines.computeMaxAbsCoordinate();
+		this.filter = new LowerBoundFilter(lines);
+		build();
+	}
+
+	@Override
+	public LineStore getLines() {
+		return this.lines;
+	}
+
+	/**
+	 * Returns the edge length of the grid cells
+	 * 
+	 * @return the cell size
+	 */
+	public double getCellSize() {
+		return this.cellSize;
+	}
+
+	@Override
+	public void collectNeighbours(AbstractDistanceMeasure distanceMeasure,
+			int line, double eps, IntList neighbours) {
+		double padding = eps + LineUtils.DISTANCE_ROUNDING_RATIO
+				* (eps + maxAbsCoordinate);
+		int minX = toCell(lines.getMinX(line) - padding);
+		int minY = toCell(lines.getMinY(line) - padding);
+		int minZ = toCell(lines.getMinZ(line) - padding);
+		int maxX = toCell(lines.getMaxX(line) + padding);
+		int maxY = toCell(lines.getMaxY(line) + padding);
+		int maxZ = toCell(lines.getMaxZ(line) + padding);
+		LineBlock candidates = AbstractDistanceMeasure.getCandidateBlock();
+		for (int x = minX; x <= maxX; x++) {
+			for (int y = minY; y <= maxY; y++) {
+				for (int z = minZ; z <= maxZ; z++) {
+					int cell = findCell(x, y, z);
+					if (cell == EMPTY_SLOT) {
+						continue;
+					}
+
+					int end = cellStart[cell + 1];
+					for (int i = cellStart[cell]; i < end; i++) {
+						int neighbour = cellLines[i];
+
+						// a line overlapping several visited cells is only
+						// checked in the first cell shared with the query
+						if (neighbour != line
+								&& isFirstSharedCell(x, y, z, minX, minY, minZ,
+										neighbour)
+								&& !filter.exceeds(distanceMeasure, neighbour,
+										line, eps)) {
+							candidates.add(lines, neighbour);
+						}
+					}
+				}
+			}
+		}
+		distanceMeasure.collectWithin(candidates, lines, line, eps, neighbours);
+	}
+
+	/**
+	 * Determines if the given cell is the first one in which the cell range of
+	 * the query and the cell range of the line intersect
+	 * 
+	 * @return true if the line should be checked in this cell
+	 */
+	private boolean isFirstSharedCell(int x, int y, int z, int minX,
+			int minY, int minZ, int line) {
+		return x == Math.max(minX, toCell(lines.getMinX(line)))
+				&& y == Math.max(minY, toCell(lines.getMinY(line)))
+				&& z == Math.max(minZ, toCell(lines.getMinZ(line)));
+	}
+
+	/**
+	 * Distributes the lines over the cells in two passes: counting the lines
+	 * per cell and then filling the cell ranges
+	 */
+	private void build() {
+		int capacity = 16;
+		while (capacity < lines.size()) {
+			capacity <<= 1;
+		}
+		allocateSlots(capacity);
+
+		IntList counts = new IntList();
+		for (int line = 0; line < lines.size(); line++) {
+			int maxX = toCell(lines.getMaxX(line));
+			int maxY = toCell(lines.getMaxY(line));
+			int maxZ = toCell(lines.getMaxZ(line));
+			for (int x = toCell(lines.getMinX(line)); x <= maxX; x++) {
+				for (int y = toCell(lines.getMinY(line)); y <= maxY; y++) {
+					for (int z = toCell(lines.getMinZ(line)); z <= maxZ; z++) {
+						int cell = findOrAddCell(x, y, z);
+						if (cell == counts.size()) {
+							counts.add(0);
+						}
+						counts.set(cell, counts.get(cell) + 1);
+					}
+				}
+			}
+		}
+
+		cellStart = new int[cellsCount + 1];
+		for (int cell = 0; cell < cellsCount; cell++) {
+			cellStart[cell + 1] = cellStart[cell] + counts.get(cell);
+		}
+
+		int[] fill = Arrays.copyOf(cellStart, cellsCount);
+		cellLines = new int[cellStart[cellsCount]];
+		for (int line = 0; line < lines.size(); line++) {
+			int maxX = toCell(lines.getMaxX(line));
+			int maxY = toCell(lines.getMaxY(line));
+			int maxZ = toCell(lines.getMaxZ(line));
+			for (int x = toCell(lines.getMinX(line)); x <= maxX; x++) {
+				for (int y = toCell(lines.getMinY(line)); y <= maxY; y++) {
+					for (int z = toCell(lines.getMinZ(line)); z <= maxZ; z++) {
+						cellLines[fill[findCell(x, y, z)]++] = line;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Looks up the number of the cell with the given coordinates
+	 * 
+	 * @return the cell number or EMPTY_SLOT if the cell holds no lines
+	 */
+	private int findCell(int x, int y, int z) {
+		int mask = slotCell.length - 1;
+		for (int slot = hash(x, y, z) & mask;; slot = (slot + 1) & mask) {
+			if (slotCell[slot] == EMPTY_SLOT) {
+				return EMPTY_SLOT;
+			}
+			if (slotCellX[slot] == x && slotCellY[slot] == y
+					&& slotCellZ[slot] == z) {
+				return slotCell[slot];
+			}
+		}
+	}
+
+	/**
+	 * Looks up the number of the cell with the given coordinates, a new
+	 * number is assigned to a cell seen for the first time
+	 * 
+	 * @return the cell number
+	 */
+	private int findOrAddCell(int x, int y, int z) {
+		int cell = findCell(x, y, z);
+		if (cell != EMPTY_SLOT) {
+			return cell;
+		}
+
+		if (2 * (cellsCount + 1) > slotCell.length) {
+			int[] oldX = slotCellX;
+			int[] oldY = slotCellY;
+			int[] oldZ = slotCellZ;
+			int[] oldCell = slotCell;
+			allocateSlots(oldCell.length * 2);
+			for (int slot = 0; slot < oldCell.length; slot++) {
+				if (oldCell[slot] != EMPTY_SLOT) {
+					putCell(oldX[slot], oldY[slot], oldZ[slot], oldCell[slot]);
+				}
+			}
+		}
+
+		putCell(x, y, z, cellsCount);
+		return cellsCount++;
+	}
+
+	private void putCell(int x, int y, int z, int cell) {
+		int mask = slotCell.length - 1;
+		int slot = hash(x, y, z) & mask;
+		while (slotCell[slot] != EMPTY_SLOT) {
+			slot = (slot + 1) & mask;
+		}
+		slotCellX[slot] = x;
+		slotCellY[slot] = y;
+		slotCellZ[slot] = z;
+		slotCell[slot] = cell;
+	}
+
+	private void allocateSlots(int capacity) {
+		slotCellX = new int[capacity];
+		slotCellY = new int[capacity];
+		slotCellZ = new int[capacity];
+		slotCell = new int[capacity];
+		Arrays.fill(slotCell, EMPTY_SLOT);
+	}
+
+	private static int hash(int x, int y, int z) {
+		int hash = x * 0x9E3779B1 + y * 0x85EBCA77 + z * 0xC2B2AE3D;
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Computes the cell coordinate of the coordinate clamped to
+	 * [-MAX_CELL, MAX_CELL], the clamping keeps the order of the coordinates
+	 * so the cell ranges of overlapping boxes still overlap
+	 */
+	private int toCell(double coordinate) {
+		double cell = Math.floor(coordinate / cellSize);
+		return (int) Math.max(-MAX_CELL, Math.min(MAX_CELL, cell));
+	}
+}
@@ -0,0 +1,28 @@
+package Algorithms;
+
+public interface IClusterChangeListener {
+
+	/**
+	 * Called when the cluster of a line in the window has changed, including
+	 * a line which has just entered the window and is not a noise line
+	 * 
+	 * @param line
+	 *            the index of the line
+	 * @param oldCluster
+	 *            the previous cluster of the line or NO_COMPONENT
+	 * @param newCluster
+	 *            the current cluster of the line or NO_COMPONENT
+	 */
+	public void clusterChanged(int line, int oldCluster, int newCluster);
+
+	/**
+	 * Called when a line has left the window, its index may be reused by the
+	 * lines entering the window later
+	 * 
+	 * @param line
+	 *            the index of the line
+	 * @param cluster
+	 *            the last cluster of the line or NO_COMPONENT
+	 */
+	public void lineExpired(int line, int cluster);
+}
@@ -0,0 +1,8 @@
+package Algorithms;
+
+/**
+ * Processing step applied to a single line by a LineRangeAction
+ */
+interface ILineProcessor {
+	public void process(int line);
+}
@@ -0,0 +1,24 @@
+package Algorithms;
+
+public interface INearestNeighbourIndex extends INeighbourhoodIndex {
+
+	/**
+	 * Finds the distances from a given line to its k nearest neighbours, the
+	 * line itself is not its own neighbour
+	 * 
+	 * @param distanceMeasure
+	 *            the measure to compute the distances between the lines with
+	 * @param line
+	 *            the index of the center line to locate the neighbours to
+	 * @param k
+	 *            the number of the nearest neighbours
+	 * @param nearest
+	 *            the array to store the k smallest distances into, in
+	 *            ascending order
+	 * @throws IllegalArgumentException
+	 *             if k exceeds the number of the other lines or the length of
+	 *             the array
+	 */
+	public void findNearestDistances(AbstractDistanceMeasure distanceMeasure,
+			int line, int k, double[] nearest) throws IllegalArgumentException;
+}
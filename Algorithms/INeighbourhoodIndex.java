@@ -0,0 +1,31 @@
+package Algorithms;
+
+import DataStructures.IntList;
+import DataStructures.LineStore;
+
+public interface INeighbourhoodIndex {
+
+	/**
+	 * Returns the store of the lines this index is built over
+	 * 
+	 * @return the store of the indexed lines
+	 */
+	public LineStore getLines();
+
+	/**
+	 * Collects the neighbours of a given line in the area with radius equal to
+	 * eps, the line itself is not its own neighbour
+	 * 
+	 * @param distanceMeasure
+	 *            the measure to compute the distances between the lines with
+	 * @param line
+	 *            the index of the center line to locate the neighbours to
+	 * @param eps
+	 *            the radius of the neighbourhood
+	 * @param neighbours
+	 *            the list to append the indices of the neighbours to, in no
+	 *            particular order
+	 */
+	public void collectNeighbours(AbstractDistanceMeasure distanceMeasure,
+			int line, double eps, IntList neighbours);
+}
@@ -0,0 +1,16 @@
+package Algorithms;
+
+public interface IProgressListener {
+
+	/**
+	 * Called when another line has been processed by a long computation. The
+	 * computation is stopped if the method throws an unchecked exception,
+	 * e.g. CancellationException, which is then rethrown to the caller.
+	 * 
+	 * @param processedLines
+	 *            the number of the lines processed so far
+	 * @param totalLines
+	 *            the number of the lines to process
+	 */
+	public void progressChanged(int processedLines, int totalLines);
+}
@@ -0,0 +1,570 @@
+package Algorithms;
+
+import java.util.Arrays;
+
+import DataStructures.IntList;
+import DataStructures.Line;
+import DataStructures.LineStore;
+
+/**
+ * DBSCAN analyzer maintaining the clustering of a changing set of lines. The
+ * eps-neighbourhood of every line is kept in a dynamic grid together with the
+ * connected components of the core lines, so adding or removing a line only
+ * queries the neighbourhood of that line. Merged components are relabeled
+ * from the smaller side. A component which may have split is searched from
+ * all the affected core lines at once and the search stops as soon as a
+ * single part is left, so only the split off parts are traversed completely.
+ * The cluster IDs assigned by assignClusters are those of a DBSCAN run from
+ * scratch over the lines in the order of their indices.
+ *
+ */
+public class IncrementalDBSCANAnalyzer extends DBSCANAnalyzer {
+
+	// Component of the lines which are not core lines
+	public static final int NO_COMPONENT = -1;
+
+	private DynamicGridIndex index;
+
+	// Neighbourhoods and core line components by the line index
+	private IntList[] neighbours;
+	private int[] components;
+
+	// Number of the core lines in each component and the free component IDs
+	private final IntList componentSizes;
+	private final IntList freeComponents;
+
+	// Marks of the split searches, valid while the stamp is current
+	private int[] searchStamps;
+	private int[] searchMarks;
+	private int stamp;
+
+	public IncrementalDBSCANAnalyzer(AbstractDistanceMeasure distanceMeasure,
+			double eps) throws IllegalArgumentException {
+		this(distanceMeasure, eps, eps);
+	}
+
+	public IncrementalDBSCANAnalyzer(AbstractDistanceMeasure distanceMeasure,
+			double eps, double cellSize) throws IllegalArgumentException {
+		super(distanceMeasure, eps);
+		if (!(eps > 0) || !(cellSize > 0)) {
+			String errorMessage = "The eps and cell size arguments must be "
+					+ "positive.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		this.index = new DynamicGridIndex(cellSize);
+		this.neighbours = new IntList[0];
+		this.components = new int[0];
+		this.componentSizes = new IntList();
+		this.freeComponents = new IntList();
+		this.searchStamps = new int[0];
+		this.searchMarks = new int[0];
+		ensureCapacity();
+	}
+
+	/**
+	 * Sets the epsilon parameter and recomputes the neighbourhoods and the
+	 * components of all the lines
+	 * 
+	 * @param eps
+	 *            the epsilon parameter
+	 */
+	@Override
+	public void setEps(double eps) throws IllegalArgumentException {
+		if (!(eps > 0)) {
+			String errorMessage = "The eps argument must be positive.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+		if (eps == getEps()) {
+			return;
+		}
+
+		super.setEps(eps);
+		componentSizes.clear();
+		freeComponents.clear();
+		for (int line = 0; line < index.getLinesEnd(); line++) {
+			if (index.contains(line)) {
+				getNeighbours(line, index, neighbours[line]);
+				lineChanged(line);
+			}
+			components[line] = NO_COMPONENT;
+		}
+		for (int line = 0; line < index.getLinesEnd(); line++) {
+			if (isCore(line) && components[line] == NO_COMPONENT) {
+				int component = createComponent();
+				componentSizes.set(component, relabel(line, NO_COMPONENT,
+						component));
+			}
+		}
+	}
+
+	/**
+	 * Returns the index of the lines, its store holds the coordinates and the
+	 * assigned cluster IDs
+	 * 
+	 * @return the dynamic grid of the lines
+	 */
+	public DynamicGridIndex getIndex() {
+		return this.index;
+	}
+
+	/**
+	 * Returns the store of the lines, see DynamicGridIndex.getLines
+	 * 
+	 * @return the store of the lines
+	 */
+	public LineStore getLines() {
+		return this.index.getLines();
+	}
+
+	/**
+	 * Returns the number of the lines being clustered
+	 * 
+	 * @return the number of the lines
+	 */
+	public int size() {
+		return this.index.size();
+	}
+
+	/**
+	 * Determines if the analyzer holds a line with the given index
+	 * 
+	 * @param line
+	 *            the index of the line
+	 * @return true if the line is being clustered
+	 */
+	public boolean contains(int line) {
+		return this.index.contains(line);
+	}
+
+	/**
+	 * Determines if the line is a core line
+	 * 
+	 * @param line
+	 *            the index of the line
+	 * @return true if the line has at least MinPts neighbours
+	 */
+	public boolean isCore(int line) {
+		return index.contains(line) && neighbours[line].size() >= getMinPts();
+	}
+
+	/**
+	 * Returns the number of the neighbours of the line
+	 * 
+	 * @param line
+	 *            the index of the line
+	 * @return the size of the eps-neighbourhood without the line itself
+	 */
+	public int getNeighboursCount(int line) {
+		return index.contains(line) ? neighbours[line].size() : 0;
+	}
+
+	/**
+	 * Returns the component of the line, which stays the same while the
+	 * component is not split or merged into a larger one. A border line gets
+	 * the smallest component of its core neighbours.
+	 * 
+	 * @param line
+	 *            the index of the line
+	 * @return the component or NO_COMPONENT for a noise line
+	 */
+	public int getComponent(int line) {
+		if (!index.contains(line)) {
+			return NO_COMPONENT;
+		}
+		if (components[line] != NO_COMPONENT) {
+			return components[line];
+		}
+
+		int component = NO_COMPONENT;
+		IntList lineNeighbours = neighbours[line];
+		for (int i = 0; i < lineNeighbours.size(); i++) {
+			int neighbourComponent = components[lineNeighbours.get(i)];
+			if (neighbourComponent != NO_COMPONENT
+					&& (component == NO_COMPONENT
+							|| neighbourComponent < component)) {
+				component = neighbourComponent;
+			}
+		}
+		return component;
+	}
+
+	/**
+	 * Adds the line to the clustering
+	 * 
+	 * @param line
+	 *            the line to add
+	 * @return the index of the line in the store
+	 * @throws IllegalArgumentException
+	 *             if the line is null
+	 */
+	public int addLine(Line line) throws IllegalArgumentException {
+		if (line == null) {
+			String errorMessage = "The line argument is not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		return addLine(line.getAx(), line.getAy(), line.getAz(), line.getDx(),
+				line.getDy(), line.getDz());
+	}
+
+	/**
+	 * Adds the line to the clustering. The lines which become core lines get
+	 * new components which are merged with the components of their core
+	 * neighbours.
+	 * 
+	 * @return the index of the line in the store
+	 */
+	public int addLine(float absX, float absY, float absZ, float dirX,
+			float dirY, float dirZ) {
+		int line = index.addLine(absX, absY, absZ, dirX, dirY, dirZ);
+		ensureCapacity();
+		IntList lineNeighbours = neighbours[line];
+		getNeighbours(line, index, lineNeighbours);
+		components[line] = NO_COMPONENT;
+		lineChanged(line);
+
+		IntList newCores = new IntList();
+		if (isCore(line)) {
+			newCores.add(line);
+		}
+		for (int i = 0; i < lineNeighbours.size(); i++) {
+			int neighbour = lineNeighbours.get(i);
+			boolean wasCore = isCore(neighbour);
+			neighbours[neighbour].add(line);
+			if (!wasCore && isCore(neighbour)) {
+				newCores.add(neighbour);
+			}
+		}
+
+		for (int i = 0; i < newCores.size(); i++) {
+			int core = newCores.get(i);
+			int component = createComponent();
+			components[core] = component;
+			componentSizes.set(component, 1);
+			componentChanged(core);
+			IntList coreNeighbours = neighbours[core];
+			for (int j = 0; j < coreNeighbours.size(); j++) {
+				int neighbour = coreNeighbours.get(j);
+				if (components[neighbour] != NO_COMPONENT
+						&& components[neighbour] != components[core]) {
+					merge(core, neighbour);
+				}
+			}
+		}
+		return line;
+	}
+
+	/**
+	 * Removes the line from the clustering. The components of the lines which
+	 * stop being core lines are checked for splits.
+	 * 
+	 * @param line
+	 *            the index of the line
+	 * @throws IllegalArgumentException
+	 *             if the analyzer does not hold the line
+	 */
+	public void removeLine(int line) throws IllegalArgumentException {
+		if (!index.contains(line)) {
+			String errorMessage = "The line argument is not being clustered.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		IntList lostCores = new IntList();
+		if (components[line] != NO_COMPONENT) {
+			lostCores.add(line);
+		}
+		IntList lineNeighbours = neighbours[line];
+		for (int i = 0; i < lineNeighbours.size(); i++) {
+			int neighbour = lineNeighbours.get(i);
+			boolean wasCore = isCore(neighbour);
+			neighbours[neighbour].remove(line);
+			if (wasCore && !isCore(neighbour)) {
+				lostCores.add(neighbour);
+			}
+		}
+
+		for (int i = 0; i < lostCores.size(); i++) {
+			int core = lostCores.get(i);
+			int component = components[core];
+			components[core] = NO_COMPONENT;
+			componentChanged(core);
+			componentSizes.set(component, componentSizes.get(component) - 1);
+			if (componentSizes.get(component) == 0) {
+				freeComponents.add(component);
+			}
+		}
+
+		// the remaining core neighbours of the lost core lines may have been
+		// connected through them only, they are grouped by their component
+		IntList seeds = new IntList();
+		for (int i = 0; i < lostCores.size(); i++) {
+			IntList coreNeighbours = neighbours[lostCores.get(i)];
+			for (int j = 0; j < coreNeighbours.size(); j++) {
+				int neighbour = coreNeighbours.get(j);
+				if (neighbour != line
+						&& components[neighbour] != NO_COMPONENT) {
+					seeds.add(neighbour);
+				}
+			}
+		}
+		lineNeighbours.clear();
+		index.removeLine(line);
+		lineChanged(line);
+
+		long[] keys = new long[seeds.size()];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = ((long) components[seeds.get(i)] << 32) | seeds.get(i);
+		}
+		Arrays.sort(keys);
+		IntList componentSeeds = new IntList();
+		for (int i = 0; i < keys.length; i++) {
+			if (i == 0 || keys[i] != keys[i - 1]) {
+				componentSeeds.add((int) keys[i]);
+			}
+			if (i + 1 == keys.length
+					|| (keys[i + 1] >>> 32) != (keys[i] >>> 32)) {
+				split((int) (keys[i] >>> 32), componentSeeds);
+				componentSeeds.clear();
+			}
+		}
+	}
+
+	/**
+	 * Assigns the cluster IDs to the lines in the store. The components are
+	 * numbered in the order of their smallest core line and a border line
+	 * gets the smallest cluster ID of its core neighbours, which is the
+	 * labeling of DBSCANAnalyzer on the lines in the order of their indices.
+	 * 
+	 * @return the number of the clusters
+	 */
+	public int assignClusters() {
+		LineStore lines = index.getLines();
+		int[] clusterIdentifiers = new int[componentSizes.size()];
+		Arrays.fill(clusterIdentifiers, Line.NO_CLUSTER_ASSIGNED);
+		int clustersCount = 0;
+		for (int line = 0; line < index.getLinesEnd(); line++) {
+			int component = components[line];
+			if (component != NO_COMPONENT
+					&& clusterIdentifiers[component]
+							== Line.NO_CLUSTER_ASSIGNED) {
+				clusterIdentifiers[component] = clustersCount++;
+			}
+		}
+
+		for (int line = 0; line < index.getLinesEnd(); line++) {
+			int cluster = Line.NO_CLUSTER_ASSIGNED;
+			if (components[line] != NO_COMPONENT) {
+				cluster = clusterIdentifiers[components[line]];
+			} else if (index.contains(line)) {
+				IntList lineNeighbours = neighbours[line];
+				for (int i = 0; i < lineNeighbours.size(); i++) {
+					int component = components[lineNeighbours.get(i)];
+					if (component != NO_COMPONENT
+							&& (cluster == Line.NO_CLUSTER_ASSIGNED
+									|| clusterIdentifiers[component]
+											< cluster)) {
+						cluster = clusterIdentifiers[component];
+					}
+				}
+			}
+			lines.setCluster(line, cluster);
+		}
+		return clustersCount;
+	}
+
+	/**
+	 * Joins the components of two neighbouring core lines by relabeling the
+	 * smaller one
+	 */
+	private void merge(int core1, int core2) {
+		int component1 = components[core1];
+		int component2 = components[core2];
+		if (componentSizes.get(component1) < componentSizes.get(component2)) {
+			int core = core1;
+			core1 = core2;
+			core2 = core;
+			int component = component1;
+			component1 = component2;
+			component2 = component;
+		}
+
+		int moved = relabel(core2, component2, component1);
+		componentSizes.set(component1, componentSizes.get(component1) + moved);
+		componentSizes.set(component2, 0);
+		freeComponents.add(component2);
+	}
+
+	/**
+	 * Searches the component from all the seeds at once, one line per seed in
+	 * turn. The searches meeting each other are joined, a search which ends
+	 * while others go on has found a separate part which gets a new
+	 * component. The last part keeps the component.
+	 * 
+	 * @param component
+	 *            the component which may have split
+	 * @param seeds
+	 *            the distinct core lines of the component to search from
+	 */
+	private void split(int component, IntList seeds) {
+		int searchesCount = seeds.size();
+		if (searchesCount < 2) {
+			return;
+		}
+
+		stamp++;
+		IntList[] queues = new IntList[searchesCount];
+		int[] heads = new int[searchesCount];
+		int[] parents = new int[searchesCount];
+		int[] activeSearches = new int[searchesCount];
+		for (int search = 0; search < searchesCount; search++) {
+			int seed = seeds.get(search);
+			queues[search] = new IntList();
+			queues[search].add(seed);
+			parents[search] = search;
+			activeSearches[search] = 1;
+			searchStamps[seed] = stamp;
+			searchMarks[seed] = search;
+		}
+
+		int partsCount = searchesCount;
+		while (partsCount > 1) {
+			for (int search = 0; search < searchesCount && partsCount > 1;
+					search++) {
+				IntList queue = queues[search];
+				if (heads[search] == queue.size()) {
+					continue;
+				}
+
+				int root = find(parents, search);
+				IntList coreNeighbours = neighbours[queue.get(heads[search]++)];
+				for (int i = 0; i < coreNeighbours.size() && partsCount > 1;
+						i++) {
+					int neighbour = coreNeighbours.get(i);
+					if (components[neighbour] != component) {
+						continue;
+					}
+					if (searchStamps[neighbour] != stamp) {
+						searchStamps[neighbour] = stamp;
+						searchMarks[neighbour] = search;
+						queue.add(neighbour);
+					} else {
+						int otherRoot = find(parents, searchMarks[neighbour]);
+						if (otherRoot != root) {
+							parents[otherRoot] = root;
+							activeSearches[root] += activeSearches[otherRoot];
+							partsCount--;
+						}
+					}
+				}
+
+				if (heads[search] == queue.size()
+						&& --activeSearches[root] == 0 && partsCount > 1) {
+					int part = createComponent();
+					int moved = 0;
+					for (int other = 0; other < searchesCount; other++) {
+						if (find(parents, other) == root) {
+							for (int i = 0; i < queues[other].size(); i++) {
+								components[queues[other].get(i)] = part;
+								componentChanged(queues[other].get(i));
+							}
+							moved += queues[other].size();
+						}
+					}
+					componentSizes.set(part, moved);
+					componentSizes.set(component, componentSizes.get(component)
+							- moved);
+					partsCount--;
+				}
+			}
+		}
+	}
+
+	private static int find(int[] parents, int search) {
+		while (parents[search] != search) {
+			parents[search] = parents[parents[search]];
+			search = parents[search];
+		}
+		return search;
+	}
+
+	/**
+	 * Moves the core lines connected to the start line from one component to
+	 * another by a breadth-first search
+	 * 
+	 * @return the number of the moved core lines
+	 */
+	private int relabel(int start, int from, int to) {
+		IntList queue = new IntList();
+		components[start] = to;
+		lineChanged(start);
+		queue.add(start);
+		for (int head = 0; head < queue.size(); head++) {
+			IntList lineNeighbours = neighbours[queue.get(head)];
+			for (int i = 0; i < lineNeighbours.size(); i++) {
+				int neighbour = lineNeighbours.get(i);
+				lineChanged(neighbour);
+				if (components[neighbour] == from && isCore(neighbour)) {
+					components[neighbour] = to;
+					queue.add(neighbour);
+				}
+			}
+		}
+		return queue.size();
+	}
+
+	/**
+	 * Called for every line whose component may have changed, the line may
+	 * also have just been added or removed. The default implementation does
+	 * nothing.
+	 * 
+	 * @param line
+	 *            the index of the line
+	 */
+	protected void lineChanged(int line) {
+	}
+
+	/**
+	 * Reports the core line and its neighbours, which may be border lines of
+	 * the core line's component, as changed
+	 */
+	private void componentChanged(int core) {
+		lineChanged(core);
+		IntList coreNeighbours = neighbours[core];
+		for (int i = 0; i < coreNeighbours.size(); i++) {
+			lineChanged(coreNeighbours.get(i));
+		}
+	}
+
+	/**
+	 * Takes a free component ID or a new one
+	 */
+	private int createComponent() {
+		if (freeComponents.size() > 0) {
+			return freeComponents.removeLast();
+		}
+
+		componentSizes.add(0);
+		return componentSizes.size() - 1;
+	}
+
+	/**
+	 * Grows the arrays by the line index to the size of the store
+	 */
+	private void ensureCapacity() {
+		int capacity = index.getLines().size();
+		if (neighbours.length >= capacity) {
+			return;
+		}
+
+		int oldCapacity = neighbours.length;
+		neighbours = Arrays.copyOf(neighbours, capacity);
+		for (int line = oldCapacity; line < capacity; line++) {
+			neighbours[line] = new IntList(4);
+		}
+		components = Arrays.copyOf(components, capacity);
+		Arrays.fill(components, oldCapacity, capacity, NO_COMPONENT);
+		searchStamps = Arrays.copyOf(searchStamps, capacity);
+		searchMarks = Arrays.copyOf(searchMarks, capacity);
+	}
+}
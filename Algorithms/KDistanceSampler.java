@@ -0,0 +1,526 @@
+package Algorithms;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import DataStructures.IntList;
+
+/**
+ * Sampling estimate of the k-distance plot for data sets too large to compute
+ * the k-distance of every line. The k-distances of a sample of the lines are
+ * computed against the whole data set with the nearest neighbour index, the
+ * descending plot of all the lines is reconstructed from the quantiles of the
+ * sample and the confidence bands of the plot and of its knee are taken from
+ * bootstrap resamples of the sample. The sample is doubled until the knee
+ * moves by at most the tolerance between two rounds or the largest sample
+ * size is reached, every round keeps the k-distances of the previous ones.
+ * The cost is the number of the sampled lines times the cost of one nearest
+ * neighbour query, which is far below the quadratic cost of the exact plot
+ * with any index and sublinear in the number of the lines with a hierarchy.
+ *
+ * A stratified sample takes one line from each of the equal ranges of the
+ * store, so the sample is spread over the files and bundles the store has
+ * been filled from, a random sample is drawn uniformly without replacement.
+ * If the sample would reach the size of the data set, all the lines are
+ * taken and the plot is exact. The knee is the point of the normalised plot
+ * lying farthest below the chord between its ends.
+ *
+ */
+public class KDistanceSampler {
+
+	// Defaults of the sampling parameters
+	public static final int DEFAULT_INITIAL_SAMPLE_SIZE = 1024;
+	public static final int DEFAULT_MAX_SAMPLE_SIZE = 65536;
+	public static final int DEFAULT_BOOTSTRAP_COUNT = 200;
+	public static final double DEFAULT_CONFIDENCE = 0.95;
+	public static final double DEFAULT_KNEE_TOLERANCE = 0.02;
+	public static final int DEFAULT_RESOLUTION = 512;
+
+	private final long seed;
+	private int initialSampleSize = DEFAULT_INITIAL_SAMPLE_SIZE;
+	private int maxSampleSize = DEFAULT_MAX_SAMPLE_SIZE;
+	private boolean stratified = true;
+	private int bootstrapCount = DEFAULT_BOOTSTRAP_COUNT;
+	private double confidence = DEFAULT_CONFIDENCE;
+	private double kneeTolerance = DEFAULT_KNEE_TOLERANCE;
+	private int resolution = DEFAULT_RESOLUTION;
+
+	/**
+	 * Creates the sampler with the default parameters
+	 * 
+	 * @param seed
+	 *            the seed of the random sample and of the resamples, the same
+	 *            seed gives the same plot
+	 */
+	public KDistanceSampler(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Sets the sizes of the sample
+	 * 
+	 * @param initialSampleSize
+	 *            the number of the lines of the first round
+	 * @param maxSampleSize
+	 *            the largest number of the sampled lines
+	 * @throws IllegalArgumentException
+	 *             if a size is not positive or the initial size exceeds the
+	 *             largest one
+	 */
+	public void setSampleSizes(int initialSampleSize, int maxSampleSize)
+			throws IllegalArgumentException {
+		if (initialSampleSize < 1 || maxSampleSize < initialSampleSize) {
+			String errorMessage = "The sample sizes are not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		this.initialSampleSize = initialSampleSize;
+		this.maxSampleSize = maxSampleSize;
+	}
+
+	public int getInitialSampleSize() {
+		return this.initialSampleSize;
+	}
+
+	public int getMaxSampleSize() {
+		return this.maxSampleSize;
+	}
+
+	/**
+	 * Selects the stratified or the random sample
+	 * 
+	 * @param stratified
+	 *            true to take one line from each range of the store
+	 */
+	public void setStratified(boolean stratified) {
+		this.stratified = stratified;
+	}
+
+	public boolean isStratified() {
+		return this.stratified;
+	}
+
+	/**
+	 * Sets the bootstrap of the confidence bands
+	 * 
+	 * @param bootstrapCount
+	 *            the number of the resamples
+	 * @param confidence
+	 *            the confidence level of the bands, e.g. 0.95
+	 * @throws IllegalArgumentException
+	 *             if the count is not positive or the level is not between 0
+	 *             and 1
+	 */
+	public void setBootstrap(int bootstrapCount, double confidence)
+			throws IllegalArgumentException {
+		if (bootstrapCount < 1 || !(confidence > 0 && confidence < 1)) {
+			String errorMessage = "The bootstrap arguments are not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		this.bootstrapCount = bootstrapCount;
+		this.confidence = confidence;
+	}
+
+	public int getBootstrapCount() {
+		return this.bootstrapCount;
+	}
+
+	public double getConfidence() {
+		return this.confidence;
+	}
+
+	/**
+	 * Sets the relative change of the knee between two rounds at which the
+	 * sample stops growing
+	 * 
+	 * @param kneeTolerance
+	 *            the tolerance relative to the k-distance of the knee
+	 * @throws IllegalArgumentException
+	 *             if the tolerance is negative
+	 */
+	public void setKneeTolerance(double kneeTolerance)
+			throws IllegalArgumentException {
+		if (!(kneeTolerance >= 0)) {
+			String errorMessage = "The knee tolerance is not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		this.kneeTolerance = kneeTolerance;
+	}
+
+	public double getKneeTolerance() {
+		return this.kneeTolerance;
+	}
+
+	/**
+	 * Sets the number of the points of the reconstructed plot
+	 * 
+	 * @param resolution
+	 *            the number of the points, at least 2
+	 * @throws IllegalArgumentException
+	 *             if the resolution is less than 2
+	 */
+	public void setResolution(int resolution) throws IllegalArgumentException {
+		if (resolution < 2) {
+			String errorMessage = "The resolution is not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		this.resolution = resolution;
+	}
+
+	public int getResolution() {
+		return this.resolution;
+	}
+
+	/**
+	 * Estimates the k-distance plot of the lines of the index
+	 * 
+	 * @param analyzer
+	 *            the analyzer computing the k-distances of the sampled lines
+	 * @param index
+	 *            the nearest neighbour index built over the store of the
+	 *            lines
+	 * @param order
+	 *            the order k of the nearest neighbour
+	 * @param control
+	 *            the handle of the run counting the sampled lines, may be
+	 *            null, after a stop the plot is estimated from the lines
+	 *            sampled so far
+	 * @return the estimated plot
+	 */
+	SampledKDistancePlot sample(DBSCANAnalyzer analyzer,
+			INearestNeighbourIndex index, int order,
+			ClusteringControl control) {
+		int size = index.getLines().size();
+		int largestSample = Math.min(maxSampleSize, size);
+		if (control != null) {
+			control.start(largestSample);
+		}
+
+		Random random = new Random(seed);
+		LineSample lineSample = stratified ? new StratifiedSample(size, random)
+				: new RandomSample(size, random);
+		IntList lines = new IntList();
+		double[] kDistances = new double[0];
+		int target = Math.min(initialSampleSize, largestSample);
+		double previousKnee = Double.NaN;
+		while (true) {
+			boolean exact = target >= size;
+			int from = lines.size();
+			if (exact) {
+				lineSample.drawRemaining(lines);
+			} else {
+				lineSample.draw(target, lines);
+			}
+			int[] sampleLines = lines.toArray();
+			kDistances = Arrays.copyOf(kDistances, sampleLines.length);
+			Arrays.fill(kDistances, from, sampleLines.length, Double.NaN);
+			analyzer.calculateSampleKDistances(index, order, sampleLines,
+					from, kDistances, control);
+
+			boolean stopped = control != null && control.isStopped();
+			SampledKDistancePlot plot = estimate(size, order,
+					stopped ? removeMissingValues(kDistances) : kDistances,
+					exact, !stopped, previousKnee, random);
+			if (stopped || plot.isStable()
+					|| plot.getSampleSize() >= largestSample) {
+				return plot;
+			}
+
+			previousKnee = plot.getKneeValue();
+			target = Math.min(2 * plot.getSampleSize(), largestSample);
+		}
+	}
+
+	/**
+	 * Reconstructs the plot of all the lines from the k-distances of the
+	 * sample and bootstraps its confidence bands
+	 * 
+	 * @param size
+	 *            the number of all the lines
+	 * @param order
+	 *            the order of the nearest neighbour
+	 * @param kDistances
+	 *            the k-distances of the sampled lines
+	 * @param exact
+	 *            true if all the lines are sampled
+	 * @param complete
+	 *            false if the run has been stopped
+	 * @param previousKnee
+	 *            the k-distance of the knee of the previous round or NaN
+	 * @param random
+	 *            the generator of the resamples
+	 * @return the plot
+	 */
+	private SampledKDistancePlot estimate(int size, int order,
+			double[] kDistances, boolean exact, boolean complete,
+			double previousKnee, Random random) {
+		int sampleSize = kDistances.length;
+		double[] sorted = kDistances.clone();
+		sortDescending(sorted);
+		int pointsCount = sampleSize == 0 ? 0 : Math.min(resolution, size);
+		int[] ranks = new int[pointsCount];
+		for (int point = 1; point < pointsCount; point++) {
+			ranks[point] = (int) ((long) point * (size - 1)
+					/ (pointsCount - 1));
+		}
+		double[] values = interpolate(sorted, ranks, size);
+		int knee = findKnee(ranks, values, size);
+		double kneeValue = knee < 0 ? Double.NaN : values[knee];
+		boolean stable = exact || isStable(previousKnee, kneeValue);
+		if (exact || sampleSize == 0) {
+			return new SampledKDistancePlot(size, order, sampleSize, ranks,
+					values, values.clone(), values.clone(), confidence, knee,
+					kneeValue, kneeValue, exact, stable, complete);
+		}
+
+		// a resample of the sorted values is sorted as well if the values
+		// are repeated in their order as often as they are drawn
+		double[][] resampledValues = new double[pointsCount][bootstrapCount];
+		double[] resampledKnees = new double[bootstrapCount];
+		int[] counts = new int[sampleSize];
+		double[] resample = new double[sampleSize];
+		for (int b = 0; b < bootstrapCount; b++) {
+			Arrays.fill(counts, 0);
+			for (int i = 0; i < sampleSize; i++) {
+				counts[random.nextInt(sampleSize)]++;
+			}
+			int position = 0;
+			for (int i = 0; i < sampleSize; i++) {
+				for (int count = counts[i]; count > 0; count--) {
+					resample[position++] = sorted[i];
+				}
+			}
+
+			double[] curve = interpolate(resample, ranks, size);
+			for (int point = 0; point < pointsCount; point++) {
+				resampledValues[point][b] = curve[point];
+			}
+			resampledKnees[b] = curve[findKnee(ranks, curve, size)];
+		}
+
+		double lowerQuantile = (1 - confidence) / 2;
+		double upperQuantile = 1 - lowerQuantile;
+		double[] lowerValues = new double[pointsCount];
+		double[] upperValues = new double[pointsCount];
+		for (int point = 0; point < pointsCount; point++) {
+			Arrays.sort(resampledValues[point]);
+			lowerValues[point] = quantile(resampledValues[point],
+					lowerQuantile);
+			upperValues[point] = quantile(resampledValues[point],
+					upperQuantile);
+		}
+		Arrays.sort(resampledKnees);
+		return new SampledKDistancePlot(size, order, sampleSize, ranks,
+				values, lowerValues, upperValues, confidence, knee, quantile(
+						resampledKnees, lowerQuantile), quantile(
+						resampledKnees, upperQuantile), exact, stable,
+				complete);
+	}
+
+	/**
+	 * Determines if the knee has moved by at most the tolerance, it never is
+	 * in the first round
+	 */
+	private boolean isStable(double previousKnee, double knee) {
+		return Math.abs(knee - previousKnee) <= kneeTolerance * previousKnee;
+	}
+
+	/**
+	 * Reads the descending plot of all the lines at the given ranks off the
+	 * descending values of a sample, the value of a rank is the quantile of
+	 * the sample at the same fraction of the lines
+	 * 
+	 * @param sorted
+	 *            the values of the sample in descending order
+	 * @param ranks
+	 *            the ascending ranks of the plot points
+	 * @param size
+	 *            the number of all the lines
+	 * @return the values of the plot points
+	 */
+	private static double[] interpolate(double[] sorted, int[] ranks,
+			int size) {
+		double[] values = new double[ranks.length];
+		if (sorted.length == 0) {
+			return values;
+		}
+
+		int last = sorted.length - 1;
+		for (int point = 0; point < ranks.length; point++) {
+			double position = (ranks[point] + 0.5) * sorted.length / size
+					- 0.5;
+			position = Math.max(0, Math.min(last, position));
+			int i = (int) position;
+			double fraction = position - i;
+			values[point] = i == last ? sorted[i] : sorted[i] + fraction
+					* (sorted[i + 1] - sorted[i]);
+		}
+		return values;
+	}
+
+	/**
+	 * Finds the knee of a descending plot, the point lying farthest below
+	 * the chord between the ends of the plot scaled into the unit square
+	 * 
+	 * @return the index of the knee point, -1 if the plot has no points
+	 */
+	private static int findKnee(int[] ranks, double[] values, int size) {
+		int pointsCount = values.length;
+		if (pointsCount == 0) {
+			return -1;
+		}
+
+		double range = values[0] - values[pointsCount - 1];
+		if (!(range > 0)) {
+			return 0;
+		}
+
+		int knee = 0;
+		double largestGap = 0;
+		for (int point = 0; point < pointsCount; point++) {
+			double x = (double) ranks[point] / (size - 1);
+			double y = (values[point] - values[pointsCount - 1]) / range;
+			double gap = 1 - x - y;
+			if (gap > largestGap) {
+				largestGap = gap;
+				knee = point;
+			}
+		}
+		return knee;
+	}
+
+	/**
+	 * Returns the quantile of the ascending values by the nearest rank
+	 */
+	private static double quantile(double[] sorted, double fraction) {
+		return sorted[(int) Math.round(fraction * (sorted.length - 1))];
+	}
+
+	/**
+	 * Drops the values of the lines which have not been processed
+	 */
+	private static double[] removeMissingValues(double[] values) {
+		int count = 0;
+		double[] computed = new double[values.length];
+		for (double value : values) {
+			if (!Double.isNaN(value)) {
+				computed[count++] = value;
+			}
+		}
+		return Arrays.copyOf(computed, count);
+	}
+
+	/**
+	 * Sorts the values in descending order
+	 */
+	private static void sortDescending(double[] values) {
+		Arrays.sort(values);
+		for (int i = 0, j = values.length - 1; i < j; i++, j--) {
+			double value = values[i];
+			values[i] = values[j];
+			values[j] = value;
+		}
+	}
+
+	/**
+	 * Sample of the lines growing over the rounds, a line is drawn at most
+	 * once
+	 */
+	private abstract static class LineSample {
+		protected final int size;
+		protected final Random random;
+		protected final BitSet sampled;
+
+		public LineSample(int size, Random random) {
+			this.size = size;
+			this.random = random;
+			this.sampled = new BitSet(size);
+		}
+
+		/**
+		 * Grows the sample to about the target size
+		 * 
+		 * @param target
+		 *            the number of the sampled lines, less than the size of
+		 *            the data set
+		 * @param lines
+		 *            the sampled lines to append the new ones to
+		 */
+		public abstract void draw(int target, IntList lines);
+
+		/**
+		 * Appends all the lines which have not been sampled yet
+		 * 
+		 * @param lines
+		 *            the sampled lines
+		 */
+		public void drawRemaining(IntList lines) {
+			for (int line = sampled.nextClearBit(0); line < size; line = sampled
+					.nextClearBit(line + 1)) {
+				add(line, lines);
+			}
+		}
+
+		protected void add(int line, IntList lines) {
+			sampled.set(line);
+			lines.add(line);
+		}
+	}
+
+	/**
+	 * Sample taking one line from each of the target number of equal ranges
+	 * of the store. A range already holding a line sampled in an earlier
+	 * round keeps it, so doubling the sample adds a line to the half of
+	 * every range that has none.
+	 */
+	private static class StratifiedSample extends LineSample {
+
+		public StratifiedSample(int size, Random random) {
+			super(size, random);
+		}
+
+		@Override
+		public void draw(int target, IntList lines) {
+			for (int stratum = 0; stratum < target; stratum++) {
+				int from = (int) ((long) stratum * size / target);
+				int to = (int) ((long) (stratum + 1) * size / target);
+				int line = sampled.nextSetBit(from);
+				if (from < to && (line < 0 || line >= to)) {
+					add(from + random.nextInt(to - from), lines);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sample drawn uniformly without replacement by a partial Fisher-Yates
+	 * shuffle of the lines, only the displaced positions of the shuffle are
+	 * kept
+	 */
+	private static class RandomSample extends LineSample {
+		private final Map<Integer, Integer> displaced;
+		private int drawn;
+
+		public RandomSample(int size, Random random) {
+			super(size, random);
+			this.displaced = new HashMap<Integer, Integer>();
+		}
+
+		@Override
+		public void draw(int target, IntList lines) {
+			for (; drawn < target; drawn++) {
+				int position = drawn + random.nextInt(size - drawn);
+				Integer line = displaced.get(position);
+				Integer first = displaced.remove(drawn);
+				displaced.put(position, first == null ? drawn : first);
+				add(line == null ? position : line, lines);
+			}
+		}
+	}
+}
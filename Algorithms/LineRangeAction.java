@@ -0,0 +1,40 @@
+package Algorithms;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork/join task splitting a range of lines into batches and applying the
+ * processor to every line of a batch
+ *
+ */
+class LineRangeAction extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
+
+	private final ILineProcessor processor;
+	private final int from;
+	private final int to;
+	private final int batchSize;
+
+	public LineRangeAction(ILineProcessor processor, int from, int to,
+			int batchSize) {
+		this.processor = processor;
+		this.from = from;
+		this.to = to;
+		this.batchSize = batchSize;
+	}
+
+	@Override
+	protected void compute() {
+		if (to - from <= batchSize) {
+			for (int line = from; line < to; line++) {
+				processor.process(line);
+			}
+			return;
+		}
+
+		int middle = (from + to) >>> 1;
+		invokeAll(new LineRangeAction(processor, from, middle, batchSize),
+				new LineRangeAction(processor, middle, to, batchSize));
+	}
+}
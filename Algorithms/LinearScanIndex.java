@@ -0,0 +1,85 @@
+package Algorithms;
+
+import DataStructures.DoubleIntHeap;
+import DataStructures.IntList;
+import DataStructures.LineBlock;
+import DataStructures.LineStore;
+
+/**
+ * Neighbourhood "index" which compares the center line with every line of the
+ * store, the exact distances are only computed for the lines passing the
+ * lower bound filter, which are gathered into a block and measured in one
+ * batch
+ *
+ */
+public class LinearScanIndex implements INearestNeighbourIndex {
+
+	private final LineStore lines;
+	private final LowerBoundFilter filter;
+
+	public LinearScanIndex(LineStore lines) throws IllegalArgumentException {
+		if (lines == null) {
+			String errorMessage = "The lines argument is not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		this.lines = lines;
+		this.filter = new LowerBoundFilter(lines);
+	}
+
+	@Override
+	public LineStore getLines() {
+		return this.lines;
+	}
+
+	@Override
+	public void collectNeighbours(AbstractDistanceMeasure distanceMeasure,
+			int line, double eps, IntList neighbours) {
+		LineBlock candidates = AbstractDistanceMeasure.getCandidateBlock();
+		for (int neighbour = 0; neighbour < lines.size(); neighbour++) {
+			if (line != neighbour
+					&& !filter.exceeds(distanceMeasure, neighbour, line, eps)) {
+				candidates.add(lines, neighbour);
+			}
+		}
+		distanceMeasure.collectWithin(candidates, lines, line, eps, neighbours);
+	}
+
+	/**
+	 * Finds the distances to the k nearest neighbours keeping only the k
+	 * smallest distances seen so far in a bounded max-heap, so no distance
+	 * array of the size of the store is sorted
+	 */
+	@Override
+	public void findNearestDistances(AbstractDistanceMeasure distanceMeasure,
+			int line, int k, double[] nearest) throws IllegalArgumentException {
+		if (k < 1 || k >= lines.size() || k > nearest.length) {
+			String errorMessage = "The order of the nearest neighbour is "
+					+ "not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		// the k best distances are kept negated, so the top is the largest
+		DoubleIntHeap best = new DoubleIntHeap(k + 1);
+		for (int neighbour = 0; neighbour < lines.size(); neighbour++) {
+			if (line == neighbour
+					|| (best.size() == k && filter.exceeds(distanceMeasure,
+							neighbour, line, -best.peekKey()))) {
+				continue;
+			}
+
+			double distance = distanceMeasure.dist(lines, neighbour, line);
+			if (best.size() < k) {
+				best.add(-distance, neighbour);
+			} else if (distance < -best.peekKey()) {
+				best.poll();
+				best.add(-distance, neighbour);
+			}
+		}
+
+		for (int i = k - 1; i >= 0; i--) {
+			nearest[i] = -best.peekKey();
+			best.poll();
+		}
+	}
+}
@@ -0,0 +1,314 @@
+package Algorithms;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import DataStructures.IntList;
+import DataStructures.LineBlock;
+import DataStructures.LineStore;
+
+/**
+ * Approximate neighbourhood index hashing the lines into several tables with
+ * random projections. A line is described by six coordinates: the midpoint
+ * of its segment and its half direction, both derived from the end point and
+ * the direction of the store, the direction is turned so that its largest
+ * component is positive, because the reversed segment is the same one. Every
+ * table concatenates several hashes floor((a . v + b) / w) with a Gaussian
+ * vector a and an offset b drawn uniformly from [0, w), so the lines close in
+ * their description collide in a table with a high probability. The
+ * candidates of a query are the lines sharing a bucket with it in any table,
+ * their distances are computed exactly with the measure, so the index never
+ * reports a false neighbour but may miss some. More tables find more of the
+ * neighbours at the cost of more candidates, more hashes per table make the
+ * buckets smaller, a wider bucket finds more neighbours with more candidates.
+ * The recall of a setting can be measured with measureRecall, also for fewer
+ * tables than the index has. The clustering over this index is exact only if
+ * no neighbour is missed.
+ *
+ */
+public class LocalitySensitiveHashIndex implements INeighbourhoodIndex {
+
+	// Number of the hashed coordinates of a line
+	private static final int FEATURES_COUNT = 6;
+
+	// Multiplier combining the hashes of a table into its bucket key
+	private static final long KEY_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+	private final LineStore lines;
+	private final double bucketWidth;
+	private final int tablesCount;
+	private final int hashesPerTable;
+	private final LowerBoundFilter filter;
+
+	// The h-th hash of the table t projects on projections[t][h] and is
+	// shifted by offsets[t][h]
+	private final double[][][] projections;
+	private final double[][] offsets;
+
+	// Buckets of the table t in ascending order of their keys, the lines of
+	// the bucket b are bucketLines[t][bucketStart[t][b]..bucketStart[t][b+1])
+	private final long[][] bucketKeys;
+	private final int[][] bucketStart;
+	private final int[][] bucketLines;
+
+	/**
+	 * Hashes the lines of the store into the tables
+	 * 
+	 * @param lines
+	 *            the store of the lines to index
+	 * @param bucketWidth
+	 *            the width w of the buckets of a projection, it should be
+	 *            several times eps plus the typical line length
+	 * @param tablesCount
+	 *            the number of the hash tables
+	 * @param hashesPerTable
+	 *            the number of the hashes concatenated in a table
+	 * @param seed
+	 *            the seed of the random projections
+	 * @throws IllegalArgumentException
+	 *             if the store is null, the width is not positive or a count
+	 *             is not positive
+	 */
+	public LocalitySensitiveHashIndex(LineStore lines, double bucketWidth,
+			int tablesCount, int hashesPerTable, long seed)
+			throws IllegalArgumentException {
+		if (lines == null || !(bucketWidth > 0)
+				|| Double.isInfinite(bucketWidth) || tablesCount < 1
+				|| hashesPerTable < 1) {
+			String errorMessage = "The hashing arguments are not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		this.lines = lines;
+		this.bucketWidth = bucketWidth;
+		this.tablesCount = tablesCount;
+		this.hashesPerTable = hashesPerTable;
+		this.filter = new LowerBoundFilter(lines);
+
+		Random random = new Random(seed);
+		this.projections =
+				new double[tablesCount][hashesPerTable][FEATURES_COUNT];
+		this.offsets = new double[tablesCount][hashesPerTable];
+		for (int table = 0; table < tablesCount; table++) {
+			for (int hash = 0; hash < hashesPerTable; hash++) {
+				for (int i = 0; i < FEATURES_COUNT; i++) {
+					projections[table][hash][i] = random.nextGaussian();
+				}
+				offsets[table][hash] = random.nextDouble() * bucketWidth;
+			}
+		}
+
+		this.bucketKeys = new long[tablesCount][];
+		this.bucketStart = new int[tablesCount][];
+		this.bucketLines = new int[tablesCount][];
+		build();
+	}
+
+	@Override
+	public LineStore getLines() {
+		return this.lines;
+	}
+
+	public double getBucketWidth() {
+		return this.bucketWidth;
+	}
+
+	public int getTablesCount() {
+		return this.tablesCount;
+	}
+
+	public int getHashesPerTable() {
+		return this.hashesPerTable;
+	}
+
+	@Override
+	public void collectNeighbours(AbstractDistanceMeasure distanceMeasure,
+			int line, double eps, IntList neighbours) {
+		collectNeighbours(distanceMeasure, line, eps, tablesCount, neighbours);
+	}
+
+	/**
+	 * Measures the recall of the index, the fraction of the neighbours
+	 * within eps which are found, on a random sample of the query lines. The
+	 * exact neighbours are located with a linear scan.
+	 * 
+	 * @param distanceMeasure
+	 *            the measure of the distances between the lines
+	 * @param eps
+	 *            the radius of the neighbourhoods
+	 * @param tablesCount
+	 *            the number of the first tables to look the candidates up
+	 *            in, at most the number of the tables of the index
+	 * @param queriesCount
+	 *            the number of the query lines
+	 * @param seed
+	 *            the seed of the sample of the query lines
+	 * @return the recall between 0 and 1, 1 if the queries have no
+	 *         neighbours
+	 * @throws IllegalArgumentException
+	 *             if the measure is null or a count is out of its range
+	 */
+	public double measureRecall(AbstractDistanceMeasure distanceMeasure,
+			double eps, int tablesCount, int queriesCount, long seed)
+			throws IllegalArgumentException {
+		if (distanceMeasure == null || tablesCount < 1
+				|| tablesCount > this.tablesCount || queriesCount < 1) {
+			String errorMessage = "The recall arguments are not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		if (lines.size() == 0) {
+			return 1;
+		}
+
+		Random random = new Random(seed);
+		LinearScanIndex linearScan = new LinearScanIndex(lines);
+		IntList neighbours = new IntList();
+		long expectedCount = 0;
+		long foundCount = 0;
+		for (int query = 0; query < queriesCount; query++) {
+			int line = random.nextInt(lines.size());
+			neighbours.clear();
+			linearScan.collectNeighbours(distanceMeasure, line, eps,
+					neighbours);
+			expectedCount += neighbours.size();
+			neighbours.clear();
+			collectNeighbours(distanceMeasure, line, eps, tablesCount,
+					neighbours);
+			foundCount += neighbours.size();
+		}
+		return expectedCount == 0 ? 1 : (double) foundCount / expectedCount;
+	}
+
+	/**
+	 * Collects the neighbours found among the lines sharing a bucket with
+	 * the line in one of the first tables
+	 */
+	private void collectNeighbours(AbstractDistanceMeasure distanceMeasure,
+			int line, double eps, int tablesCount, IntList neighbours) {
+		double[] features = new double[FEATURES_COUNT];
+		describe(line, features);
+		IntList candidates = new IntList();
+		for (int table = 0; table < tablesCount; table++) {
+			int bucket = Arrays.binarySearch(bucketKeys[table],
+					computeKey(table, features));
+			if (bucket < 0) {
+				continue;
+			}
+
+			int end = bucketStart[table][bucket + 1];
+			for (int i = bucketStart[table][bucket]; i < end; i++) {
+				if (bucketLines[table][i] != line) {
+					candidates.add(bucketLines[table][i]);
+				}
+			}
+		}
+
+		// a line sharing buckets in several tables is measured once
+		int[] sortedCandidates = candidates.toArray();
+		Arrays.sort(sortedCandidates);
+		LineBlock block = AbstractDistanceMeasure.getCandidateBlock();
+		for (int i = 0; i < sortedCandidates.length; i++) {
+			int neighbour = sortedCandidates[i];
+			if ((i == 0 || neighbour != sortedCandidates[i - 1])
+					&& !filter.exceeds(distanceMeasure, neighbour, line, eps)) {
+				block.add(lines, neighbour);
+			}
+		}
+		distanceMeasure.collectWithin(block, lines, line, eps, neighbours);
+	}
+
+	/**
+	 * Sorts the lines of every table by their bucket keys
+	 */
+	private void build() {
+		int size = lines.size();
+		double[][] features = new double[size][FEATURES_COUNT];
+		for (int line = 0; line < size; line++) {
+			describe(line, features[line]);
+		}
+
+		long[] keys = new long[size];
+		for (int table = 0; table < tablesCount; table++) {
+			for (int line = 0; line < size; line++) {
+				keys[line] = computeKey(table, features[line]);
+			}
+
+			long[] sortedKeys = keys.clone();
+			Arrays.sort(sortedKeys);
+			int bucketsCount = 0;
+			for (int i = 0; i < size; i++) {
+				if (i == 0 || sortedKeys[i] != sortedKeys[i - 1]) {
+					sortedKeys[bucketsCount++] = sortedKeys[i];
+				}
+			}
+			bucketKeys[table] = Arrays.copyOf(sortedKeys, bucketsCount);
+
+			// the lines are counted and then filled into their buckets
+			int[] buckets = new int[size];
+			int[] start = new int[bucketsCount + 1];
+			for (int line = 0; line < size; line++) {
+				buckets[line] = Arrays.binarySearch(bucketKeys[table],
+						keys[line]);
+				start[buckets[line] + 1]++;
+			}
+			for (int bucket = 0; bucket < bucketsCount; bucket++) {
+				start[bucket + 1] += start[bucket];
+			}
+			int[] fill = Arrays.copyOf(start, bucketsCount);
+			int[] tableLines = new int[size];
+			for (int line = 0; line < size; line++) {
+				tableLines[fill[buckets[line]]++] = line;
+			}
+			bucketStart[table] = start;
+			bucketLines[table] = tableLines;
+		}
+	}
+
+	/**
+	 * Computes the hashed coordinates of a line: the midpoint of its segment
+	 * and its half direction with the largest component positive
+	 * 
+	 * @param line
+	 *            the index of the line
+	 * @param features
+	 *            the array to store the coordinates into
+	 */
+	private void describe(int line, double[] features) {
+		double halfX = lines.getDx(line) / 2.0;
+		double halfY = lines.getDy(line) / 2.0;
+		double halfZ = lines.getDz(line) / 2.0;
+		features[0] = lines.getAx(line) - halfX;
+		features[1] = lines.getAy(line) - halfY;
+		features[2] = lines.getAz(line) - halfZ;
+
+		double largest = halfX;
+		if (Math.abs(halfY) > Math.abs(largest)) {
+			largest = halfY;
+		}
+		if (Math.abs(halfZ) > Math.abs(largest)) {
+			largest = halfZ;
+		}
+		double sign = largest < 0 ? -1 : 1;
+		features[3] = sign * halfX;
+		features[4] = sign * halfY;
+		features[5] = sign * halfZ;
+	}
+
+	/**
+	 * Combines the hashes of the table into the key of the bucket of the
+	 * described line
+	 */
+	private long computeKey(int table, double[] features) {
+		long key = 0;
+		for (int hash = 0; hash < hashesPerTable; hash++) {
+			double projection = offsets[table][hash];
+			for (int i = 0; i < FEATURES_COUNT; i++) {
+				projection += projections[table][hash][i] * features[i];
+			}
+			key = key * KEY_MULTIPLIER
+					+ (long) Math.floor(projection / bucketWidth);
+		}
+		return key;
+	}
+}
@@ -0,0 +1,141 @@
+package Algorithms;
+
+import DataStructures.LineStore;
+import Utilities.LineUtils;
+import Utilities.VectorUtils;
+
+/**
+ * Cheap lower bounds of the distances between the lines of a store, which
+ * let the indices skip the exact distance computation for the pairs of lines
+ * which are certainly farther apart than the query distance. Every line is
+ * enclosed in its bounding box and in a sphere around its midpoint. The box
+ * bound is the norm of the gaps between the boxes of the store and holds for
+ * every measure. The sphere bound is the Eucledian distance between the
+ * spheres, it is compared with the query distance converted to the largest
+ * Eucledian distance it allows in the norm of the measure. Only the spheres
+ * are precomputed, their centers are rounded to floats and their radii grow
+ * by the rounding error and are rounded up, so every sphere still encloses
+ * its line. The bounds are compared with the rounding of the distance
+ * computation taken into account, so filtering never changes a result.
+ *
+ */
+public class LowerBoundFilter {
+
+	private final LineStore lines;
+	private final double maxAbsCoordinate;
+
+	// Midpoints of the lines rounded to floats and Eucledian half lengths
+	// grown by the rounding of the midpoints and rounded up
+	private final float[] centerX;
+	private final float[] centerY;
+	private final float[] centerZ;
+	private final float[] radius;
+
+	/**
+	 * Precomputes the bounding spheres of the lines of the store
+	 * 
+	 * @param lines
+	 *            the store of the lines, the lines must not change while the
+	 *            filter is used
+	 * @throws IllegalArgumentException
+	 *             if the store is null
+	 */
+	public LowerBoundFilter(LineStore lines) throws IllegalArgumentException {
+		if (lines == null) {
+			String errorMessage = "The lines argument is not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		int size = lines.size();
+		this.lines = lines;
+		this.maxAbsCoordinate = lines.computeMaxAbsCoordinate();
+		this.centerX = new float[size];
+		this.centerY = new float[size];
+		this.centerZ = new float[size];
+		this.radius = new float[size];
+		for (int line = 0; line < size; line++) {
+			// the ending point is computed in single precision as in Line
+			float ax = lines.getAx(line);
+			float ay = lines.getAy(line);
+			float az = lines.getAz(line);
+			double dx = ax - (ax - lines.getDx(line));
+			double dy = ay - (ay - lines.getDy(line));
+			double dz = az - (az - lines.getDz(line));
+			double x = ax - dx / 2;
+			double y = ay - dy / 2;
+			double z = az - dz / 2;
+			centerX[line] = (float) x;
+			centerY[line] = (float) y;
+			centerZ[line] = (float) z;
+			double errorX = centerX[line] - x;
+			double errorY = centerY[line] - y;
+			double errorZ = centerZ[line] - z;
+			radius[line] = roundUp(Math.sqrt(dx * dx + dy * dy + dz * dz) / 2
+					+ Math.sqrt(errorX * errorX + errorY * errorY + errorZ
+							* errorZ));
+		}
+	}
+
+	/**
+	 * Determines if the distance between two lines certainly exceeds the
+	 * given distance, in which case it does not need to be computed
+	 * 
+	 * @param distanceMeasure
+	 *            the measure of the distance
+	 * @param line1
+	 *            the index of the first line
+	 * @param line2
+	 *            the index of the second line
+	 * @param distance
+	 *            the distance to compare with
+	 * @return true if the distance between the lines computed by the measure
+	 *         would be larger than the given distance
+	 */
+	public boolean exceeds(AbstractDistanceMeasure distanceMeasure,
+			int line1, int line2, double distance) {
+		double bound = distance + LineUtils.DISTANCE_ROUNDING_RATIO
+				* (distance + maxAbsCoordinate);
+
+		// the spheres are farther apart than the Eucledian reach of the bound
+		double x = centerX[line1] - centerX[line2];
+		double y = centerY[line1] - centerY[line2];
+		double z = centerZ[line1] - centerZ[line2];
+		double reach = VectorUtils.getEucledianNormRatio(distanceMeasure
+				.getNorm()) * bound + radius[line1] + radius[line2];
+		if (x * x + y * y + z * z > reach * reach) {
+			return true;
+		}
+
+		double gapX = gap(lines.getMinX(line1), lines.getMaxX(line1),
+				lines.getMinX(line2), lines.getMaxX(line2));
+		double gapY = gap(lines.getMinY(line1), lines.getMaxY(line1),
+				lines.getMinY(line2), lines.getMaxY(line2));
+		double gapZ = gap(lines.getMinZ(line1), lines.getMaxZ(line1),
+				lines.getMinZ(line2), lines.getMaxZ(line2));
+		return distanceMeasure.boxDistance(gapX, gapY, gapZ) > bound;
+	}
+
+	/**
+	 * Computes the gap between two intervals, which is zero if they overlap
+	 */
+	private static double gap(float min1, float max1, float min2, float max2) {
+		return Math.max(0,
+				Math.max((double) min1 - max2, (double) min2 - max1));
+	}
+
+	/**
+	 * Rounds the value to the largest float which is not larger
+	 */
+	static float roundDown(double value) {
+		float rounded = (float) value;
+		return rounded > value ? Math.nextDown(rounded) : rounded;
+	}
+
+	/**
+	 * Rounds the value to the smallest float which is not smaller
+	 */
+	static float roundUp(double value) {
+		float rounded = (float) value;
+		return rounded < value ? Math.nextUp(rounded) : rounded;
+	}
+}
@@ -0,0 +1,381 @@
+package Algorithms;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import DataStructures.IntList;
+import DataStructures.Line;
+import DataStructures.LineBlock;
+import DataStructures.LineStore;
+
+/**
+ * Memory bounded cache of the distances and of the eps-neighbourhoods of the
+ * clustering runs of an analyzer. If the distances of all the pairs of lines
+ * fit into the memory limit, they are kept in an upper triangular store, so
+ * the distance of a pair is computed once for both of its orders and for all
+ * the following runs. The rest of the limit holds the neighbourhoods of the
+ * lines, the least recently used ones are evicted when it is exceeded. The
+ * neighbourhoods are reused by the runs with the same eps, measure and index.
+ * Sharing a distance between the two orders of a pair relies on the measure
+ * returning the same distance bit for bit when the lines are swapped, as
+ * AbstractDistanceMeasure requires and the kernel of LineUtils guarantees.
+ * The cache takes the lines as unchanged, it is cleared when a run uses
+ * another index, measure or eps, and it has to be cleared explicitly after
+ * the lines of the index change. The cache may be used by the threads of a
+ * parallel run.
+ *
+ */
+public class NeighbourhoodCache {
+
+	// Approximate memory taken by a cached neighbourhood besides its lines
+	private static final long NEIGHBOURHOOD_OVERHEAD = 64;
+
+	// Stored value of a pair whose distance has not been computed yet, the
+	// distances are stored as their raw bits plus one
+	private static final long EMPTY_DISTANCE = 0;
+
+	private static final ThreadLocal<LookupBuffer> LOOKUP_BUFFER =
+			new ThreadLocal<LookupBuffer>() {
+				@Override
+				protected LookupBuffer initialValue() {
+					return new LookupBuffer();
+				}
+			};
+
+	private final long memoryLimit;
+	private final LongAdder distanceHits;
+	private final LongAdder distanceMisses;
+	private final LongAdder neighbourhoodHits;
+	private final LongAdder neighbourhoodMisses;
+
+	// Run configuration the cached values belong to
+	private INeighbourhoodIndex index;
+	private AbstractDistanceMeasure distanceMeasure;
+	private double eps;
+
+	// Distances of the pairs i < j at j * (j - 1) / 2 + i, null if they do
+	// not fit into the limit
+	private AtomicLongArray distances;
+	private long distancesMemory;
+
+	// Neighbourhoods of the lines in the order of their last use
+	private final LinkedHashMap<Integer, int[]> neighbourhoods;
+	private long neighbourhoodsMemory;
+
+	/**
+	 * Creates the empty cache
+	 * 
+	 * @param memoryLimit
+	 *            the memory the cached values may take in bytes
+	 * @throws IllegalArgumentException
+	 *             if the limit is negative
+	 */
+	public NeighbourhoodCache(long memoryLimit)
+			throws IllegalArgumentException {
+		if (memoryLimit < 0) {
+			String errorMessage = "The memory limit argument is negative.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		this.memoryLimit = memoryLimit;
+		this.distanceHits = new LongAdder();
+		this.distanceMisses = new LongAdder();
+		this.neighbourhoodHits = new LongAdder();
+		this.neighbourhoodMisses = new LongAdder();
+		this.neighbourhoods = new LinkedHashMap<Integer, int[]>(16, 0.75f,
+				true);
+	}
+
+	/**
+	 * Removes all the cached values, the statistics are kept
+	 */
+	public synchronized void clear() {
+		index = null;
+		distanceMeasure = null;
+		distances = null;
+		distancesMemory = 0;
+		neighbourhoods.clear();
+		neighbourhoodsMemory = 0;
+	}
+
+	/**
+	 * Resets the hit and miss statistics
+	 */
+	public void resetStatistics() {
+		distanceHits.reset();
+		distanceMisses.reset();
+		neighbourhoodHits.reset();
+		neighbourhoodMisses.reset();
+	}
+
+	public long getMemoryLimit() {
+		return memoryLimit;
+	}
+
+	/**
+	 * Returns the memory taken by the cached values
+	 * 
+	 * @return the approximate size of the cached values in bytes
+	 */
+	public synchronized long getMemoryUsage() {
+		return distancesMemory + neighbourhoodsMemory;
+	}
+
+	/**
+	 * Determines if the distances of all the pairs of lines are cached
+	 * 
+	 * @return true if the triangular distance store is used
+	 */
+	public synchronized boolean isStoringDistances() {
+		return distances != null;
+	}
+
+	public long getDistanceHits() {
+		return distanceHits.sum();
+	}
+
+	public long getDistanceMisses() {
+		return distanceMisses.sum();
+	}
+
+	public long getNeighbourhoodHits() {
+		return neighbourhoodHits.sum();
+	}
+
+	public long getNeighbourhoodMisses() {
+		return neighbourhoodMisses.sum();
+	}
+
+	/**
+	 * Prepares the cache for a clustering run, the cached values are dropped
+	 * if they belong to another configuration
+	 * 
+	 * @param index
+	 *            the neighbourhood index of the run
+	 * @param distanceMeasure
+	 *            the measure of the analyzer
+	 * @param eps
+	 *            the radius of the neighbourhoods
+	 * @param measure
+	 *            the measure of the run, it may wrap the measure of the
+	 *            analyzer to count the distance evaluations
+	 * @return the measure of the run looking the distances up in the cache
+	 */
+	synchronized AbstractDistanceMeasure bind(INeighbourhoodIndex index,
+			AbstractDistanceMeasure distanceMeasure, double eps,
+			AbstractDistanceMeasure measure) {
+		if (index != this.index || distanceMeasure != this.distanceMeasure) {
+			clear();
+			this.index = index;
+			this.distanceMeasure = distanceMeasure;
+			this.eps = eps;
+
+			long size = index.getLines().size();
+			long pairs = size * (size - 1) / 2;
+			if (pairs > 0 && pairs <= Integer.MAX_VALUE
+					&& 8 * pairs <= memoryLimit) {
+				distances = new AtomicLongArray((int) pairs);
+				distancesMemory = 8 * pairs;
+			}
+		} else if (eps != this.eps) {
+			this.eps = eps;
+			neighbourhoods.clear();
+			neighbourhoodsMemory = 0;
+		}
+
+		if (distances == null) {
+			return measure;
+		}
+		return new CachingDistanceMeasure(measure, index.getLines(),
+				distances);
+	}
+
+	/**
+	 * Looks the neighbourhood of a line up
+	 * 
+	 * @param line
+	 *            the index of the center line
+	 * @param neighbours
+	 *            the list to be filled with the cached neighbours
+	 * @return true if the neighbourhood is cached
+	 */
+	boolean getNeighbours(int line, IntList neighbours) {
+		int[] cached;
+		synchronized (this) {
+			cached = neighbourhoods.get(line);
+		}
+		if (cached == null) {
+			neighbourhoodMisses.increment();
+			return false;
+		}
+
+		neighbourhoodHits.increment();
+		neighbours.clear();
+		for (int neighbour : cached) {
+			neighbours.add(neighbour);
+		}
+		return true;
+	}
+
+	/**
+	 * Caches the neighbourhood of a line evicting the least recently used
+	 * neighbourhoods if the limit is exceeded
+	 * 
+	 * @param line
+	 *            the index of the center line
+	 * @param neighbours
+	 *            the neighbours of the line
+	 */
+	void putNeighbours(int line, IntList neighbours) {
+		long memory = NEIGHBOURHOOD_OVERHEAD + 4L * neighbours.size();
+		int[] cached = neighbours.toArray();
+		synchronized (this) {
+			if (distancesMemory + memory > memoryLimit) {
+				return;
+			}
+
+			int[] previous = neighbourhoods.put(line, cached);
+			neighbourhoodsMemory += memory;
+			if (previous != null) {
+				neighbourhoodsMemory -= NEIGHBOURHOOD_OVERHEAD + 4L
+						* previous.length;
+			}
+
+			Iterator<Map.Entry<Integer, int[]>> eldest = neighbourhoods
+					.entrySet().iterator();
+			while (distancesMemory + neighbourhoodsMemory > memoryLimit) {
+				int[] evicted = eldest.next().getValue();
+				eldest.remove();
+				neighbourhoodsMemory -= NEIGHBOURHOOD_OVERHEAD + 4L
+						* evicted.length;
+			}
+		}
+	}
+
+	/**
+	 * Measure delegating to the measure of the run only for the pairs of
+	 * lines of the store whose distance is not cached yet
+	 */
+	private class CachingDistanceMeasure extends AbstractDistanceMeasure {
+
+		private final AbstractDistanceMeasure measure;
+		private final LineStore lines;
+		private final AtomicLongArray distances;
+
+		public CachingDistanceMeasure(AbstractDistanceMeasure measure,
+				LineStore lines, AtomicLongArray distances) {
+			this.measure = measure;
+			this.lines = lines;
+			this.distances = distances;
+		}
+
+		@Override
+		protected double dist(Line line1, Line line2) {
+			return measure.dist(line1, line2);
+		}
+
+		@Override
+		protected double dist(LineStore lines, int index1, int index2) {
+			if (lines != this.lines || index1 == index2) {
+				return measure.dist(lines, index1, index2);
+			}
+
+			int pair = pair(index1, index2);
+			long stored = distances.get(pair);
+			if (stored != EMPTY_DISTANCE) {
+				distanceHits.increment();
+				return Double.longBitsToDouble(stored - 1);
+			}
+
+			distanceMisses.increment();
+			double distance = measure.dist(lines, index1, index2);
+			distances.lazySet(pair, Double.doubleToRawLongBits(distance) + 1);
+			return distance;
+		}
+
+		/**
+		 * Looks the distances of the block up and measures the missing ones
+		 * in one batch
+		 */
+		@Override
+		protected void dist(LineBlock block, LineStore lines, int index,
+				double[] distances) {
+			if (lines != this.lines) {
+				measure.dist(block, lines, index, distances);
+				return;
+			}
+
+			// positions of the lines of the block whose distance is missing
+			LookupBuffer buffer = LOOKUP_BUFFER.get();
+			buffer.ensureCapacity(block.size());
+			LineBlock missing = buffer.missing;
+			int[] positions = buffer.positions;
+			missing.clear();
+			for (int i = 0; i < block.size(); i++) {
+				int line = block.getLine(i);
+				long stored = line == index ? EMPTY_DISTANCE : this.distances
+						.get(pair(line, index));
+				if (stored == EMPTY_DISTANCE) {
+					positions[missing.size()] = i;
+					missing.add(lines, line);
+				} else {
+					distances[i] = Double.longBitsToDouble(stored - 1);
+				}
+			}
+			distanceHits.add(block.size() - missing.size());
+			distanceMisses.add(missing.size());
+			if (missing.size() == 0) {
+				return;
+			}
+
+			double[] measured = buffer.measured;
+			measure.dist(missing, lines, index, measured);
+			for (int i = 0; i < missing.size(); i++) {
+				int line = missing.getLine(i);
+				distances[positions[i]] = measured[i];
+				if (line != index) {
+					this.distances.lazySet(pair(line, index),
+							Double.doubleToRawLongBits(measured[i]) + 1);
+				}
+			}
+		}
+
+		@Override
+		protected int getNorm() {
+			return measure.getNorm();
+		}
+
+		@Override
+		protected double boxDistance(double gapX, double gapY, double gapZ) {
+			return measure.boxDistance(gapX, gapY, gapZ);
+		}
+
+		private int pair(int index1, int index2) {
+			int low = Math.min(index1, index2);
+			int high = Math.max(index1, index2);
+			return (int) ((long) high * (high - 1) / 2 + low);
+		}
+	}
+
+	/**
+	 * Block of the lines whose distance is missing, their positions in the
+	 * looked up block and their measured distances, reused by the lookups of
+	 * a thread. The arrays keep the largest capacity a lookup has needed.
+	 */
+	private static class LookupBuffer {
+		private final LineBlock missing = new LineBlock();
+		private int[] positions = new int[0];
+		private double[] measured = new double[0];
+
+		private void ensureCapacity(int capacity) {
+			if (positions.length < capacity) {
+				int length = Math.max(capacity, 2 * positions.length);
+				positions = new int[length];
+				measured = new double[length];
+			}
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package Algorithms;
+
+import java.util.Arrays;
+
+import DataStructures.DoubleIntHeap;
+import DataStructures.IntList;
+import DataStructures.LineStore;
+
+/**
+ * OPTICS analyzer ordering the lines by their reachability. The ordering is
+ * computed once for the generating eps of the analyzer, the DBSCAN clusterings
+ * for all the smaller eps values are then extracted from it without computing
+ * any distances, see ReachabilityOrdering. The plain DBSCAN clustering and the
+ * k-distance plot of the base analyzer remain available.
+ *
+ */
+public class OPTICSAnalyzer extends DBSCANAnalyzer {
+
+	public OPTICSAnalyzer(AbstractDistanceMeasure distanceMeasure) {
+		super(distanceMeasure);
+	}
+
+	public OPTICSAnalyzer(AbstractDistanceMeasure distanceMeasure, double eps) {
+		super(distanceMeasure, eps);
+	}
+
+	/**
+	 * Orders the lines of the store by their reachability for the current eps
+	 * 
+	 * @param lines
+	 *            the store of the lines to order
+	 * @return the reachability ordering of the lines
+	 * @throws IllegalArgumentException
+	 *             if the store provided is null
+	 */
+	public ReachabilityOrdering computeOrdering(LineStore lines)
+			throws IllegalArgumentException {
+		if (lines == null) {
+			String errorMessage = "The lines argument is not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		return computeOrdering(new LinearScanIndex(lines));
+	}
+
+	/**
+	 * Orders the lines by their reachability for the current eps, the
+	 * eps-neighbourhoods are located with the given index. Every line is
+	 * expanded once: its neighbourhood is queried, its core distance is the
+	 * MinPts-th smallest distance to the neighbours and the neighbours waiting
+	 * in the seed queue get their reachability lowered.
+	 * 
+	 * @param index
+	 *            the neighbourhood index built over the store of the lines to
+	 *            order
+	 * @return the reachability ordering of the lines
+	 * @throws IllegalArgumentException
+	 *             if the index provided is null
+	 */
+	public ReachabilityOrdering computeOrdering(INeighbourhoodIndex index)
+			throws IllegalArgumentException {
+		if (index == null) {
+			String errorMessage = "The index argument is not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		LineStore lines = index.getLines();
+		int size = lines.size();
+		int[] order = new int[size];
+		double[] coreDistances = new double[size];
+		double[] reachabilities = new double[size];
+		double[] minReachabilities = new double[size];
+		int[] reachingCores = new int[size];
+		Arrays.fill(reachabilities, ReachabilityOrdering.UNDEFINED);
+		Arrays.fill(minReachabilities, ReachabilityOrdering.UNDEFINED);
+		Arrays.fill(reachingCores, ReachabilityOrdering.NO_LINE);
+
+		boolean[] processed = new boolean[size];
+		DoubleIntHeap seeds = new DoubleIntHeap();
+
+		// the distances to the neighbours are recorded by the range queries
+		RecordingDistanceMeasure measure = new RecordingDistanceMeasure(
+				getDistanceMeasure());
+		IntList neighbours = new IntList();
+		double[] distances = new double[16];
+		double[] sortedDistances = new double[16];
+		int ordered = 0;
+		for (int start = 0; start < size; start++) {
+			if (processed[start]) {
+				continue;
+			}
+
+			seeds.add(ReachabilityOrdering.UNDEFINED, start);
+			while (!seeds.isEmpty()) {
+				double reachability = seeds.peekKey();
+				int line = seeds.poll();
+
+				// the queue keeps outdated entries of the lowered lines
+				if (processed[line] || reachability != reachabilities[line]) {
+					continue;
+				}
+				processed[line] = true;
+				order[ordered++] = line;
+
+				measure.start(line);
+				getNeighbours(line, index, measure, neighbours);
+				if (distances.length < neighbours.size()) {
+					distances = new double[2 * neighbours.size()];
+					sortedDistances = new double[distances.length];
+				}
+				measure.getDistances(lines, neighbours, distances);
+				System.arraycopy(distances, 0, sortedDistances, 0,
+						neighbours.size());
+				coreDistances[line] = computeCoreDistance(sortedDistances,
+						neighbours.size());
+				if (coreDistances[line] == ReachabilityOrdering.UNDEFINED) {
+					continue;
+				}
+
+				for (int i = 0; i < neighbours.size(); i++) {
+					int neighbour = neighbours.get(i);
+					double neighbourReachability = Math.max(
+							coreDistances[line], distances[i]);
+
+					// the closest core reaching a line is kept even when the
+					// line has already been ordered, it places the border
+					// lines during the extraction
+					if (neighbourReachability < minReachabilities[neighbour]) {
+						minReachabilities[neighbour] = neighbourReachability;
+						reachingCores[neighbour] = line;
+					}
+					if (!processed[neighbour]
+							&& neighbourReachability
+									< reachabilities[neighbour]) {
+						reachabilities[neighbour] = neighbourReachability;
+						seeds.add(neighbourReachability, neighbour);
+					}
+				}
+			}
+		}
+
+		return new ReachabilityOrdering(lines, getEps(), order, coreDistances,
+				reachabilities, minReachabilities, reachingCores);
+	}
+
+	/**
+	 * Computes the core distance of a line, which is the MinPts-th smallest
+	 * distance to its neighbours
+	 * 
+	 * @param distances
+	 *            the distances to the neighbours, the array is reordered
+	 * @param count
+	 *            the number of the neighbours
+	 * @return the core distance or UNDEFINED if the line is not a core line
+	 */
+	private double computeCoreDistance(double[] distances, int count) {
+		int minPts = (int) getMinPts();
+		if (count < minPts) {
+			return ReachabilityOrdering.UNDEFINED;
+		}
+
+		Arrays.sort(distances, 0, count);
+		return distances[minPts - 1];
+	}
+}
@@ -0,0 +1,1171 @@
+package Algorithms;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import DataStructures.HeapLineStore;
+import DataStructures.IntList;
+import DataStructures.Line;
+import DataStructures.LineBlock;
+import DataStructures.LineStore;
+import DataStructures.MappedDisjointSet;
+import DataStructures.MappedIntArray;
+import DataStructures.Object3D;
+import Utilities.LineUtils;
+
+/**
+ * DBSCAN analyzer for the line sets larger than the memory, e.g. the stores
+ * of the mapped line files. The lines are spilled into a temporary file in
+ * blocks of BLOCK_LINES lines sorted along the Z-order curve of their
+ * midpoints, so that the lines of a block lie close together. The curve is
+ * cut into groups of lines, the lines are distributed into group files in
+ * one pass and a group fitting into the memory budget is sorted in memory.
+ * A larger group, e.g. the bulk of the lines next to a far outlier, is split
+ * again along the curve over the bounds of its own midpoints. The number of
+ * the group files written at once is bounded by the budget for their
+ * buffers. Only the bounding boxes of the blocks are kept in memory, the
+ * blocks are read into a cache of the least recently used blocks bounded by
+ * the budget. The eps-neighbourhoods of the lines of a block are located by
+ * streaming the blocks whose boxes come within eps of its box and measuring
+ * the lines which pass the box tests in batches with the measure of the
+ * analyzer. The first pass over the blocks finds the core lines and spills
+ * the neighbours of the other lines, the second one connects the
+ * neighbouring core lines in a disjoint-set forest and skips the pairs of
+ * lines which are already connected. The forest and the labels are kept in the
+ * memory-mapped int arrays. The clusters are numbered in the order of their
+ * smallest core line and a border line joins the cluster with the smallest
+ * number among its core neighbours, so the labels are exactly those of
+ * DBSCANAnalyzer. All the disk I/O of the lines is sequential or block-sized.
+ * The neighbourhood cache is not used.
+ *
+ */
+public class OutOfCoreDBSCANAnalyzer extends DBSCANAnalyzer {
+
+	// Number of the lines of a spilled block, the unit of the disk I/O
+	public static final int BLOCK_LINES = 4096;
+
+	// Approximate heap taken by a line of a block read into the cache: the
+	// spilled values, the core flag and the bounding box of the line
+	private static final int LOADED_LINE_BYTES = 64;
+
+	// Approximate heap taken by a line of a group sorted in memory: its
+	// index, its coordinates, its cluster and its key
+	private static final int SORTED_LINE_BYTES = 40;
+
+	// The smallest budget holds the blocks of a query and of a candidate
+	public static final long MIN_MEMORY_BUDGET = 4L * BLOCK_LINES
+			* LOADED_LINE_BYTES;
+
+	// Bytes of a spilled line: its index and its six coordinates
+	private static final int LINE_BYTES = 28;
+
+	// Number of the consecutive lines of a block sharing a bounding box
+	private static final int PAGE_LINES = 32;
+
+	// Bits of the cell coordinates along each axis of the Z-order keys
+	private static final int KEY_BITS = 10;
+
+	// Leading bits of the Z-order keys selecting the bin of a line in the
+	// histogram the groups are cut from
+	private static final int BIN_BITS = 15;
+	private static final int HISTOGRAM_BYTES = 4 << BIN_BITS;
+
+	// Buffer of a group file, all the files of a split are open at once, so
+	// their number is bounded by the budget and by the open files
+	private static final int GROUP_BUFFER_BYTES = BLOCK_LINES * LINE_BYTES;
+	private static final int MIN_FAN_OUT = 4;
+	private static final int MAX_FAN_OUT = 256;
+
+	private final long memoryBudget;
+	private final File directory;
+
+	/**
+	 * Creates the analyzer
+	 * 
+	 * @param distanceMeasure
+	 *            the measure of the distances
+	 * @param eps
+	 *            the epsilon parameter
+	 * @param memoryBudget
+	 *            the heap the spilled lines may take in bytes
+	 * @param directory
+	 *            the directory of the temporary files or null for the
+	 *            default temporary directory
+	 * @throws IllegalArgumentException
+	 *             if the budget is smaller than MIN_MEMORY_BUDGET
+	 */
+	public OutOfCoreDBSCANAnalyzer(AbstractDistanceMeasure distanceMeasure,
+			double eps, long memoryBudget, File directory)
+			throws IllegalArgumentException {
+		super(distanceMeasure, eps);
+		if (memoryBudget < MIN_MEMORY_BUDGET) {
+			String errorMessage = "The memory budget argument is not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		this.memoryBudget = memoryBudget;
+		this.directory = directory;
+	}
+
+	public long getMemoryBudget() {
+		return this.memoryBudget;
+	}
+
+	/**
+	 * Clusters the lines of the store without building an index over them,
+	 * the cluster IDs are assigned in the store
+	 * 
+	 * @param lines
+	 *            the store of the lines to cluster
+	 * @throws IllegalArgumentException
+	 *             if the store provided is null
+	 * @throws UncheckedIOException
+	 *             if a temporary file can not be written or read
+	 */
+	@Override
+	public void performClustering(LineStore lines)
+			throws IllegalArgumentException {
+		performClustering(lines, null);
+	}
+
+	/**
+	 * Clusters the lines of the index's store as performClustering of the
+	 * store does, the index itself is not queried
+	 * 
+	 * @param index
+	 *            the neighbourhood index built over the store of the lines to
+	 *            cluster
+	 * @param control
+	 *            the handle of the run, may be null
+	 * @return true if all the lines are clustered, false if the result is
+	 *         partial
+	 * @throws IllegalArgumentException
+	 *             if the index provided is null
+	 * @throws UncheckedIOException
+	 *             if a temporary file can not be written or read
+	 */
+	@Override
+	public boolean performClustering(INeighbourhoodIndex index,
+			ClusteringControl control) throws IllegalArgumentException {
+		if (index == null) {
+			String errorMessage = "The index argument is not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		return performClustering(index.getLines(), control);
+	}
+
+	/**
+	 * Clusters the lines of the store through the temporary files under the
+	 * control of the handle. The handle is notified of every line whose core
+	 * status has been determined, if the run is stopped all the lines are
+	 * labelled as noise.
+	 * 
+	 * @param lines
+	 *            the store of the lines to cluster
+	 * @param control
+	 *            the handle of the run, may be null
+	 * @return true if all the lines are clustered, false if the result is
+	 *         partial
+	 * @throws IllegalArgumentException
+	 *             if the store provided is null or too large for the mapped
+	 *             arrays
+	 * @throws UncheckedIOException
+	 *             if a temporary file can not be written or read
+	 */
+	public boolean performClustering(LineStore lines,
+			ClusteringControl control) throws IllegalArgumentException {
+		if (lines == null || lines.size() > MappedIntArray.MAX_SIZE) {
+			String errorMessage = "The lines argument is not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		long startTime = System.nanoTime();
+		AbstractDistanceMeasure measure = getDistanceMeasure(control);
+		if (control != null) {
+			control.start(lines.size());
+		}
+
+		List<File> files = new ArrayList<File>();
+		int coreLinesCount = 0;
+		try {
+			SpilledLines spilled = spill(lines, createFile("spill", files),
+					files);
+			try {
+				startTime = recordPhase("spilling", lines.size(), startTime);
+
+				// the forest of the core lines
+				MappedDisjointSet parents = MappedDisjointSet.create(
+						createFile("parents", files), lines.size());
+				File borderFile = createFile("border", files);
+				classify(spilled, measure, parents, borderFile, control);
+				startTime = recordPhase("core lines", lines.size(), startTime);
+
+				if (control == null || !control.isStopped()) {
+					connect(spilled, measure, parents, control);
+					startTime = recordPhase("connecting", lines.size(),
+							startTime);
+				}
+				if (control == null || !control.isStopped()) {
+					coreLinesCount = label(lines, parents, borderFile,
+							createFile("labels", files), control);
+				} else {
+					for (int line = 0; line < lines.size(); line++) {
+						lines.setCluster(line, Line.NO_CLUSTER_ASSIGNED);
+					}
+				}
+				recordPhase("labelling", lines.size(), startTime);
+			} finally {
+				spilled.close();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+
+		if (getMetrics() != null) {
+			getMetrics().recordClassification(lines, coreLinesCount);
+		}
+		if (control == null) {
+			return true;
+		}
+
+		control.finish();
+		return !control.isPartial();
+	}
+
+	/**
+	 * Writes the lines into the spill file in blocks sorted along the
+	 * Z-order curve
+	 * 
+	 * @throws IOException
+	 *             if a file can not be written or read
+	 */
+	private SpilledLines spill(LineStore lines, File spillFile,
+			List<File> files) throws IOException {
+		int size = lines.size();
+
+		// the bounds of the midpoints the cells of the keys divide
+		double[] low = new double[Object3D.SPACE_DIMENSION];
+		double[] high = new double[Object3D.SPACE_DIMENSION];
+		Arrays.fill(low, Double.POSITIVE_INFINITY);
+		Arrays.fill(high, Double.NEGATIVE_INFINITY);
+		double maxAbsCoordinate = 0;
+		for (int line = 0; line < size; line++) {
+			for (int axis = 0; axis < low.length; axis++) {
+				double start = getAbs(lines, line, axis);
+				double end = start - getDir(lines, line, axis);
+				double center = (start + end) / 2;
+				low[axis] = Math.min(low[axis], center);
+				high[axis] = Math.max(high[axis], center);
+				maxAbsCoordinate = Math.max(maxAbsCoordinate,
+						Math.max(Math.abs(start), Math.abs(end)));
+			}
+		}
+
+		SpilledLines spilled = new SpilledLines(spillFile, maxAbsCoordinate);
+		try {
+			spillPartition(new Partition(lines, null, size, low, high),
+					spilled, files);
+		} catch (IOException e) {
+			spilled.close();
+			throw e;
+		}
+		return spilled;
+	}
+
+	/**
+	 * Spills the lines of the partition, a partition larger than a group
+	 * sorted in memory is split into groups along the Z-order curve of its
+	 * own bounds and every group is spilled in turn
+	 * 
+	 * @throws IOException
+	 *             if a file can not be written or read
+	 */
+	private void spillPartition(Partition partition, SpilledLines spilled,
+			List<File> files) throws IOException {
+		int groupCapacity = getGroupCapacity();
+		List<Partition> groups = partition.size > groupCapacity ? split(
+				partition, files) : null;
+		if (groups != null) {
+			for (Partition group : groups) {
+				spillPartition(group, spilled, files);
+			}
+			return;
+		}
+
+		// the lines of a partition which can not be split, e.g. with all the
+		// midpoints equal, are sorted in groups in the order they are read
+		double[] scale = getScale(partition.low, partition.high);
+		PartitionReader reader = new PartitionReader(partition);
+		try {
+			for (int from = 0; from < partition.size; from += groupCapacity) {
+				int groupSize = Math.min(groupCapacity, partition.size - from);
+				int[] indices = new int[groupSize];
+				LineStore groupLines = new HeapLineStore(groupSize);
+				for (int line = 0; line < groupSize; line++) {
+					reader.next();
+					indices[line] = reader.index;
+					copyLine(reader.line, 0, groupLines, line);
+				}
+
+				// the positions in the group sorted by their keys
+				long[] keys = new long[groupSize];
+				for (int line = 0; line < groupSize; line++) {
+					keys[line] = (long) getKey(groupLines, line,
+							partition.low, scale) << 32 | line;
+				}
+				Arrays.sort(keys);
+				for (int block = 0; block < groupSize; block += BLOCK_LINES) {
+					spilled.append(indices, groupLines, keys, block,
+							Math.min(block + BLOCK_LINES, groupSize));
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		if (partition.file != null) {
+			partition.file.delete();
+		}
+	}
+
+	/**
+	 * Distributes the lines of the partition into group files. The groups
+	 * are runs of the bins of a histogram of the keys over the bounds of the
+	 * partition, they are cut so that there are at most as many groups as
+	 * the buffers of their files fit into the budget. A group is larger than
+	 * a group sorted in memory only if there are few groups or it is a
+	 * single bin, it is then split again over its own bounds, which are
+	 * smaller than those of the bin.
+	 * 
+	 * @return the groups or null if all the lines fall into one bin
+	 * @throws IOException
+	 *             if a file can not be written or read
+	 */
+	private List<Partition> split(Partition partition, List<File> files)
+			throws IOException {
+		double[] scale = getScale(partition.low, partition.high);
+		int binShift = Object3D.SPACE_DIMENSION * KEY_BITS - BIN_BITS;
+		int[] groupOfBin = new int[1 << BIN_BITS];
+		PartitionReader reader = new PartitionReader(partition);
+		try {
+			for (int line = 0; line < partition.size; line++) {
+				reader.next();
+				groupOfBin[getKey(reader.line, 0, partition.low,
+						scale) >>> binShift]++;
+			}
+		} finally {
+			reader.close();
+		}
+
+		// two neighbouring groups together exceed the cut, so there are
+		// fewer groups than fanOut
+		int fanOut = (int) Math.max(MIN_FAN_OUT, Math.min(MAX_FAN_OUT,
+				(memoryBudget - HISTOGRAM_BYTES) / GROUP_BUFFER_BYTES));
+		long cut = Math.max(getGroupCapacity(),
+				(2L * partition.size + fanOut - 2) / (fanOut - 1));
+		IntList groupSizes = new IntList();
+		groupSizes.add(0);
+		int binsCount = 0;
+		for (int bin = 0; bin < groupOfBin.length; bin++) {
+			int binSize = groupOfBin[bin];
+			int group = groupSizes.size() - 1;
+			if (binSize > 0) {
+				binsCount++;
+				if (groupSizes.get(group) > 0
+						&& groupSizes.get(group) + (long) binSize > cut) {
+					groupSizes.add(0);
+					group++;
+				}
+			}
+			groupSizes.set(group, groupSizes.get(group) + binSize);
+			groupOfBin[bin] = group;
+		}
+		if (binsCount < 2) {
+			return null;
+		}
+
+		int groupsCount = groupSizes.size();
+		double[][] lows = new double[groupsCount][Object3D.SPACE_DIMENSION];
+		double[][] highs = new double[groupsCount][Object3D.SPACE_DIMENSION];
+		File[] groupFiles = new File[groupsCount];
+		DataOutputStream[] outs = new DataOutputStream[groupsCount];
+		reader = new PartitionReader(partition);
+		try {
+			for (int group = 0; group < groupsCount; group++) {
+				Arrays.fill(lows[group], Double.POSITIVE_INFINITY);
+				Arrays.fill(highs[group], Double.NEGATIVE_INFINITY);
+				groupFiles[group] = createFile("group", files);
+				outs[group] = new DataOutputStream(new BufferedOutputStream(
+						new FileOutputStream(groupFiles[group]),
+						GROUP_BUFFER_BYTES));
+			}
+			for (int line = 0; line < partition.size; line++) {
+				reader.next();
+				int group = groupOfBin[getKey(reader.line, 0, partition.low,
+						scale) >>> binShift];
+				DataOutputStream out = outs[group];
+				out.writeInt(reader.index);
+				out.writeFloat(reader.line.getAx(0));
+				out.writeFloat(reader.line.getAy(0));
+				out.writeFloat(reader.line.getAz(0));
+				out.writeFloat(reader.line.getDx(0));
+				out.writeFloat(reader.line.getDy(0));
+				out.writeFloat(reader.line.getDz(0));
+				for (int axis = 0; axis < Object3D.SPACE_DIMENSION; axis++) {
+					double center = getCenter(reader.line, 0, axis);
+					lows[group][axis] = Math.min(lows[group][axis], center);
+					highs[group][axis] = Math.max(highs[group][axis], center);
+				}
+			}
+		} finally {
+			reader.close();
+			for (DataOutputStream out : outs) {
+				if (out != null) {
+					out.close();
+				}
+			}
+		}
+		if (partition.file != null) {
+			partition.file.delete();
+		}
+
+		List<Partition> groups = new ArrayList<Partition>();
+		for (int group = 0; group < groupsCount; group++) {
+			groups.add(new Partition(null, groupFiles[group], groupSizes
+					.get(group), lows[group], highs[group]));
+		}
+		return groups;
+	}
+
+	/**
+	 * Returns the number of the lines of a group sorted in memory within
+	 * the budget
+	 */
+	private int getGroupCapacity() {
+		return (int) Math.min(MappedIntArray.MAX_SIZE, Math.max(BLOCK_LINES,
+				memoryBudget / SORTED_LINE_BYTES));
+	}
+
+	/**
+	 * Determines the core lines block by block, marks them in the forest and
+	 * in the spill file and writes the neighbours of the other lines into the
+	 * border file
+	 * 
+	 * @throws IOException
+	 *             if a file can not be written or read
+	 */
+	private void classify(SpilledLines spilled,
+			AbstractDistanceMeasure measure, MappedDisjointSet parents,
+			File borderFile, ClusteringControl control) throws IOException {
+		double minPts = getMinPts();
+
+		// the neighbours kept for a line, all of them if it is not core
+		int kept = (int) Math.min(BLOCK_LINES, Math.ceil(minPts));
+		int[] counts = new int[BLOCK_LINES];
+		int[] neighbours = new int[BLOCK_LINES * Math.max(kept, 1)];
+		IntList lineNeighbours = new IntList();
+		DataOutputStream border = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(borderFile), BLOCK_LINES * LINE_BYTES));
+		try {
+			for (Block block : spilled.blocks) {
+				LoadedBlock query = spilled.load(block);
+				Arrays.fill(counts, 0, block.size, 0);
+				for (Block candidate : spilled.findCandidates(block,
+						measure, getEps())) {
+					LoadedBlock candidates = spilled.load(candidate);
+					for (int line = 0; line < block.size; line++) {
+						if (counts[line] >= minPts) {
+							continue;
+						}
+						lineNeighbours.clear();
+						spilled.collectNeighbours(measure, getEps(), query,
+								line, candidates, null, lineNeighbours);
+						for (int i = 0; i < lineNeighbours.size(); i++) {
+							if (counts[line] < kept) {
+								neighbours[line * kept + counts[line]] =
+										lineNeighbours.get(i);
+							}
+							counts[line]++;
+						}
+					}
+				}
+
+				for (int line = 0; line < block.size; line++) {
+					int index = query.lines[line];
+					if (counts[line] >= minPts) {
+						query.core[line] = true;
+						block.hasCoreLines = true;
+						parents.add(index);
+					} else {
+						border.writeInt(index);
+						border.writeInt(counts[line]);
+						for (int i = 0; i < counts[line]; i++) {
+							border.writeInt(neighbours[line * kept + i]);
+						}
+					}
+				}
+				spilled.writeCoreFlags(query);
+
+				if (control != null) {
+					for (int line = 0; line < block.size; line++) {
+						control.lineProcessed();
+					}
+					if (control.isStopped()) {
+						return;
+					}
+				}
+			}
+		} finally {
+			border.close();
+		}
+	}
+
+	/**
+	 * Joins every core line with its core neighbours in the forest, the
+	 * distances to the lines already in the set of the line are not computed
+	 * 
+	 * @throws IOException
+	 *             if the spill file can not be read
+	 */
+	private void connect(SpilledLines spilled,
+			AbstractDistanceMeasure measure, MappedDisjointSet parents,
+			ClusteringControl control) throws IOException {
+		IntList lineNeighbours = new IntList();
+		for (Block block : spilled.blocks) {
+			if (!block.hasCoreLines) {
+				continue;
+			}
+
+			LoadedBlock query = spilled.load(block);
+			for (Block candidate : spilled.findCandidates(block, measure,
+					getEps())) {
+				if (!candidate.hasCoreLines) {
+					continue;
+				}
+
+				LoadedBlock candidates = spilled.load(candidate);
+				for (int line = 0; line < block.size; line++) {
+					if (!query.core[line]) {
+						continue;
+					}
+					lineNeighbours.clear();
+					spilled.collectNeighbours(measure, getEps(), query, line,
+							candidates, parents, lineNeighbours);
+					for (int i = 0; i < lineNeighbours.size(); i++) {
+						parents.union(query.lines[line], lineNeighbours.get(i));
+					}
+				}
+			}
+			if (control != null && control.isStopped()) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Numbers the clusters, labels the border lines and assigns the labels
+	 * in the store
+	 * 
+	 * @return the number of the core lines
+	 * @throws IOException
+	 *             if a file can not be written or read
+	 */
+	private int label(LineStore lines, MappedDisjointSet parents,
+			File borderFile, File labelsFile, ClusteringControl control)
+			throws IOException {
+		int size = lines.size();
+		MappedIntArray labels = MappedIntArray.create(labelsFile, size);
+
+		// the root of a set is its smallest line, it precedes the other lines
+		// and is labelled first
+		int clusterIdentifier = Line.NO_CLUSTER_ASSIGNED;
+		int coreLinesCount = 0;
+		for (int line = 0; line < size; line++) {
+			if (!parents.contains(line)) {
+				labels.set(line, Line.NO_CLUSTER_ASSIGNED);
+				continue;
+			}
+
+			coreLinesCount++;
+			int root = parents.find(line);
+			if (root == line) {
+				labels.set(line, ++clusterIdentifier);
+				if (control != null) {
+					control.clusterFound();
+				}
+			} else {
+				labels.set(line, labels.get(root));
+			}
+		}
+
+		DataInputStream border = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(borderFile), BLOCK_LINES * LINE_BYTES));
+		try {
+			for (int i = coreLinesCount; i < size; i++) {
+				int line = border.readInt();
+				int count = border.readInt();
+				int cluster = Line.NO_CLUSTER_ASSIGNED;
+				for (int j = 0; j < count; j++) {
+					int neighbour = border.readInt();
+					if (parents.contains(neighbour)) {
+						int neighbourCluster = labels.get(neighbour);
+						if (cluster == Line.NO_CLUSTER_ASSIGNED
+								|| neighbourCluster < cluster) {
+							cluster = neighbourCluster;
+						}
+					}
+				}
+				labels.set(line, cluster);
+			}
+		} finally {
+			border.close();
+		}
+
+		for (int line = 0; line < size; line++) {
+			lines.setCluster(line, labels.get(line));
+		}
+		return coreLinesCount;
+	}
+
+	/**
+	 * Computes the scales of the cells of the keys over the bounds of the
+	 * midpoints
+	 */
+	private static double[] getScale(double[] low, double[] high) {
+		double[] scale = new double[low.length];
+		for (int axis = 0; axis < low.length; axis++) {
+			scale[axis] = high[axis] > low[axis] ? ((1 << KEY_BITS) - 1)
+					/ (high[axis] - low[axis]) : 0;
+		}
+		return scale;
+	}
+
+	/**
+	 * Computes the Z-order key of the cell of the line's midpoint
+	 */
+	private static int getKey(LineStore lines, int line, double[] low,
+			double[] scale) {
+		int key = 0;
+		for (int axis = 0; axis < low.length; axis++) {
+			double center = getCenter(lines, line, axis);
+			int cell = (int) ((center - low[axis]) * scale[axis]);
+			cell = Math.max(0, Math.min((1 << KEY_BITS) - 1, cell));
+			for (int bit = 0; bit < KEY_BITS; bit++) {
+				key |= (cell >>> bit & 1)
+						<< (Object3D.SPACE_DIMENSION * bit + axis);
+			}
+		}
+		return key;
+	}
+
+	private static double getCenter(LineStore lines, int line, int axis) {
+		double start = getAbs(lines, line, axis);
+		return (start + (start - getDir(lines, line, axis))) / 2;
+	}
+
+	private static void copyLine(LineStore source, int sourceLine,
+			LineStore target, int targetLine) {
+		target.setLine(targetLine, source.getAx(sourceLine),
+				source.getAy(sourceLine), source.getAz(sourceLine),
+				source.getDx(sourceLine), source.getDy(sourceLine),
+				source.getDz(sourceLine));
+	}
+
+	private static double getAbs(LineStore lines, int line, int axis) {
+		switch (axis) {
+		case 0:
+			return lines.getAx(line);
+		case 1:
+			return lines.getAy(line);
+		default:
+			return lines.getAz(line);
+		}
+	}
+
+	private static double getDir(LineStore lines, int line, int axis) {
+		switch (axis) {
+		case 0:
+			return lines.getDx(line);
+		case 1:
+			return lines.getDy(line);
+		default:
+			return lines.getDz(line);
+		}
+	}
+
+	/**
+	 * Creates a temporary file which is deleted at the end of the run
+	 * 
+	 * @throws IOException
+	 *             if the file can not be created
+	 */
+	private File createFile(String prefix, List<File> files)
+			throws IOException {
+		File file = File.createTempFile("dbscan-" + prefix, ".tmp", directory);
+		files.add(file);
+		return file;
+	}
+
+	/**
+	 * Records the time of the phase if the metrics are collected
+	 * 
+	 * @return the start time of the next phase
+	 */
+	private long recordPhase(String phase, int lines, long startTime) {
+		if (getMetrics() == null) {
+			return startTime;
+		}
+
+		getMetrics().recordPhase(phase, lines, startTime);
+		return System.nanoTime();
+	}
+
+	/**
+	 * Lines to spill with the bounds of their midpoints, either all the lines
+	 * of the store or the lines of a group file
+	 */
+	private static class Partition {
+		private final LineStore lines;
+		private final File file;
+		private final int size;
+		private final double[] low;
+		private final double[] high;
+
+		public Partition(LineStore lines, File file, int size, double[] low,
+				double[] high) {
+			this.lines = lines;
+			this.file = file;
+			this.size = size;
+			this.low = low;
+			this.high = high;
+		}
+	}
+
+	/**
+	 * Sequential reader of the lines of a partition, the line read last is
+	 * kept at the position 0 of a store of one line
+	 */
+	private static class PartitionReader {
+		private final LineStore lines;
+		private final DataInputStream in;
+		private final LineStore line;
+		private int index;
+		private int position;
+
+		public PartitionReader(Partition partition) throws IOException {
+			this.lines = partition.lines;
+			this.in = partition.file == null ? null : new DataInputStream(
+					new BufferedInputStream(new FileInputStream(
+							partition.file), GROUP_BUFFER_BYTES));
+			this.line = new HeapLineStore(1);
+		}
+
+		public void next() throws IOException {
+			if (in == null) {
+				index = position;
+				copyLine(lines, position, line, 0);
+			} else {
+				index = in.readInt();
+				line.setLine(0, in.readFloat(), in.readFloat(),
+						in.readFloat(), in.readFloat(), in.readFloat(),
+						in.readFloat());
+			}
+			position++;
+		}
+
+		public void close() throws IOException {
+			if (in != null) {
+				in.close();
+			}
+		}
+	}
+
+	/**
+	 * Bounding box of a spilled block and its place in the spill file
+	 */
+	private static class Block {
+		private final long offset;
+		private final int size;
+		private final float[] box;
+		private boolean hasCoreLines;
+
+		public Block(long offset, int size, float[] box) {
+			this.offset = offset;
+			this.size = size;
+			this.box = box;
+		}
+	}
+
+	/**
+	 * Block read from the spill file, the boxes of its lines and of its pages
+	 * of PAGE_LINES lines are stored as minX, minY, minZ, maxX, maxY, maxZ
+	 */
+	private static class LoadedBlock {
+		private final Block block;
+		private final int[] lines;
+		private final boolean[] core;
+		private final LineStore store;
+		private final float[] boxes;
+		private final float[] pageBoxes;
+
+		public LoadedBlock(Block block) {
+			int size = block.size;
+			this.block = block;
+			this.lines = new int[size];
+			this.core = new boolean[size];
+			this.store = new HeapLineStore(size);
+			this.boxes = new float[6 * size];
+			this.pageBoxes =
+					new float[6 * ((size + PAGE_LINES - 1) / PAGE_LINES)];
+		}
+	}
+
+	/**
+	 * Spill file of the blocks with the cache of the blocks read from it.
+	 * A block is stored as the column of the line indices, the index of a
+	 * core line complemented, followed by the columns of the coordinates.
+	 */
+	private class SpilledLines {
+		private final RandomAccessFile file;
+		private final FileChannel channel;
+		private final List<Block> blocks;
+		private final double maxAbsCoordinate;
+		private final ByteBuffer buffer;
+		private final LinkedHashMap<Block, LoadedBlock> cache;
+		private final int cacheCapacity;
+
+		// Query line and the gathered candidates at the following positions,
+		// the positions of the candidates in their block
+		private final LineStore scratch;
+		private final LineBlock gathered;
+		private final int[] positions;
+		private final IntList found;
+
+		public SpilledLines(File spillFile, double maxAbsCoordinate)
+				throws IOException {
+			this.file = new RandomAccessFile(spillFile, "rw");
+			this.channel = file.getChannel();
+			this.blocks = new ArrayList<Block>();
+			this.maxAbsCoordinate = maxAbsCoordinate;
+			this.buffer = ByteBuffer.allocateDirect(BLOCK_LINES * LINE_BYTES)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			this.cache = new LinkedHashMap<Block, LoadedBlock>(16, 0.75f, true);
+			this.cacheCapacity = (int) Math.min(Integer.MAX_VALUE,
+					memoryBudget / ((long) BLOCK_LINES * LOADED_LINE_BYTES)
+							- 1);
+			this.scratch = new HeapLineStore(BLOCK_LINES + 1);
+			this.gathered = new LineBlock(BLOCK_LINES);
+			this.positions = new int[BLOCK_LINES + 1];
+			this.found = new IntList();
+		}
+
+		/**
+		 * Appends a block of the sorted lines of a group to the file
+		 * 
+		 * @throws IOException
+		 *             if the file can not be written
+		 */
+		public void append(int[] indices, LineStore groupLines, long[] keys,
+				int from, int to) throws IOException {
+			float[] box = new float[6];
+			Arrays.fill(box, 0, 3, Float.POSITIVE_INFINITY);
+			Arrays.fill(box, 3, 6, Float.NEGATIVE_INFINITY);
+			buffer.clear();
+			for (int i = from; i < to; i++) {
+				buffer.putInt(indices[(int) keys[i]]);
+			}
+			for (int column = 0; column < 6; column++) {
+				for (int i = from; i < to; i++) {
+					int line = (int) keys[i];
+					switch (column) {
+					case 0:
+						buffer.putFloat(groupLines.getAx(line));
+						break;
+					case 1:
+						buffer.putFloat(groupLines.getAy(line));
+						break;
+					case 2:
+						buffer.putFloat(groupLines.getAz(line));
+						break;
+					case 3:
+						buffer.putFloat(groupLines.getDx(line));
+						break;
+					case 4:
+						buffer.putFloat(groupLines.getDy(line));
+						break;
+					default:
+						buffer.putFloat(groupLines.getDz(line));
+					}
+				}
+			}
+			for (int i = from; i < to; i++) {
+				int line = (int) keys[i];
+				for (int axis = 0; axis < 3; axis++) {
+					double start = getAbs(groupLines, line, axis);
+					double end = start - getDir(groupLines, line, axis);
+					box[axis] = Math.min(box[axis],
+							LowerBoundFilter.roundDown(Math.min(start, end)));
+					box[axis + 3] = Math.max(box[axis + 3],
+							LowerBoundFilter.roundUp(Math.max(start, end)));
+				}
+			}
+
+			Block block = new Block(channel.size(), to - from, box);
+			buffer.flip();
+			long position = block.offset;
+			while (buffer.hasRemaining()) {
+				position += channel.write(buffer, position);
+			}
+			blocks.add(block);
+		}
+
+		/**
+		 * Returns the block from the cache or reads it from the file evicting
+		 * the least recently used block if the cache is full
+		 * 
+		 * @throws IOException
+		 *             if the file can not be read
+		 */
+		public LoadedBlock load(Block block) throws IOException {
+			LoadedBlock loaded = cache.get(block);
+			if (loaded != null) {
+				return loaded;
+			}
+
+			buffer.clear();
+			buffer.limit(block.size * LINE_BYTES);
+			long position = block.offset;
+			while (buffer.hasRemaining()) {
+				int read = channel.read(buffer, position);
+				if (read < 0) {
+					throw new IOException("The spill file is damaged.");
+				}
+				position += read;
+			}
+			buffer.flip();
+
+			int size = block.size;
+			loaded = new LoadedBlock(block);
+			for (int i = 0; i < size; i++) {
+				int index = buffer.getInt(4 * i);
+				loaded.core[i] = index < 0;
+				loaded.lines[i] = index < 0 ? ~index : index;
+			}
+			int columns = 4 * size;
+			for (int i = 0; i < size; i++) {
+				loaded.store.setLine(i, buffer.getFloat(columns + 4 * i),
+						buffer.getFloat(columns + 4 * (size + i)),
+						buffer.getFloat(columns + 4 * (2 * size + i)),
+						buffer.getFloat(columns + 4 * (3 * size + i)),
+						buffer.getFloat(columns + 4 * (4 * size + i)),
+						buffer.getFloat(columns + 4 * (5 * size + i)));
+			}
+
+			float[] pageBoxes = loaded.pageBoxes;
+			for (int i = 0; i < size; i++) {
+				int page = 6 * (i / PAGE_LINES);
+				if (i % PAGE_LINES == 0) {
+					Arrays.fill(pageBoxes, page, page + 3,
+							Float.POSITIVE_INFINITY);
+					Arrays.fill(pageBoxes, page + 3, page + 6,
+							Float.NEGATIVE_INFINITY);
+				}
+				for (int axis = 0; axis < 3; axis++) {
+					double start = getAbs(loaded.store, i, axis);
+					double end = start - getDir(loaded.store, i, axis);
+					float min = LowerBoundFilter.roundDown(Math.min(start,
+							end));
+					float max = LowerBoundFilter.roundUp(Math.max(start,
+							end));
+					loaded.boxes[6 * i + axis] = min;
+					loaded.boxes[6 * i + axis + 3] = max;
+					pageBoxes[page + axis] = Math.min(pageBoxes[page + axis],
+							min);
+					pageBoxes[page + axis + 3] = Math.max(
+							pageBoxes[page + axis + 3], max);
+				}
+			}
+
+			if (cache.size() >= cacheCapacity) {
+				Iterator<Map.Entry<Block, LoadedBlock>> eldest = cache
+						.entrySet().iterator();
+				eldest.next();
+				eldest.remove();
+			}
+			cache.put(block, loaded);
+			return loaded;
+		}
+
+		/**
+		 * Writes the core flags of the block into its index column
+		 * 
+		 * @throws IOException
+		 *             if the file can not be written
+		 */
+		public void writeCoreFlags(LoadedBlock loaded) throws IOException {
+			buffer.clear();
+			for (int i = 0; i < loaded.lines.length; i++) {
+				buffer.putInt(loaded.core[i] ? ~loaded.lines[i]
+						: loaded.lines[i]);
+			}
+			buffer.flip();
+			long position = loaded.block.offset;
+			while (buffer.hasRemaining()) {
+				position += channel.write(buffer, position);
+			}
+		}
+
+		/**
+		 * Finds the blocks whose boxes come within eps of the box of the
+		 * block, the block itself comes first
+		 */
+		public List<Block> findCandidates(Block block,
+				AbstractDistanceMeasure measure, double eps) {
+			double bound = getBound(eps);
+			List<Block> candidates = new ArrayList<Block>();
+			candidates.add(block);
+			for (Block candidate : blocks) {
+				if (candidate != block
+						&& measure.boxDistance(
+								gap(block.box, 0, candidate.box, 0, 0),
+								gap(block.box, 0, candidate.box, 0, 1),
+								gap(block.box, 0, candidate.box, 0, 2))
+								<= bound) {
+					candidates.add(candidate);
+				}
+			}
+			return candidates;
+		}
+
+		/**
+		 * Adds the lines of the candidate block within eps of the query line
+		 * to the neighbours, the query line itself is not added
+		 * 
+		 * @param measure
+		 *            the measure of the distances
+		 * @param eps
+		 *            the radius of the neighbourhood
+		 * @param query
+		 *            the block of the query line
+		 * @param line
+		 *            the position of the query line in its block
+		 * @param candidates
+		 *            the block of the candidate lines
+		 * @param parents
+		 *            the forest of the core lines to add only the core lines
+		 *            which are not yet in the set of the query line, null to
+		 *            add all the lines
+		 * @param neighbours
+		 *            the list to add the indices of the neighbours to
+		 */
+		public void collectNeighbours(AbstractDistanceMeasure measure,
+				double eps, LoadedBlock query, int line,
+				LoadedBlock candidates, MappedDisjointSet parents,
+				IntList neighbours) {
+			double bound = getBound(eps);
+			int root = parents == null ? -1 : parents.find(query.lines[line]);
+			float[] box = query.boxes;
+			int boxOffset = 6 * line;
+			LineStore lines = query.store;
+			scratch.setLine(0, lines.getAx(line), lines.getAy(line),
+					lines.getAz(line), lines.getDx(line), lines.getDy(line),
+					lines.getDz(line));
+			gathered.clear();
+			LineStore candidateLines = candidates.store;
+			for (int page = 0; 6 * page < candidates.pageBoxes.length; page++) {
+				if (exceeds(measure, box, boxOffset, candidates.pageBoxes,
+						6 * page, bound)) {
+					continue;
+				}
+
+				int to = Math.min(candidates.lines.length, (page + 1)
+						* PAGE_LINES);
+				for (int i = page * PAGE_LINES; i < to; i++) {
+					if (candidates.lines[i] == query.lines[line]
+							|| exceeds(measure, box, boxOffset,
+									candidates.boxes, 6 * i, bound)) {
+						continue;
+					}
+					if (parents != null
+							&& (!candidates.core[i] || parents
+									.find(candidates.lines[i]) == root)) {
+						continue;
+					}
+					int position = gathered.size() + 1;
+					scratch.setLine(position, candidateLines.getAx(i),
+							candidateLines.getAy(i), candidateLines.getAz(i),
+							candidateLines.getDx(i), candidateLines.getDy(i),
+							candidateLines.getDz(i));
+					positions[position] = i;
+					gathered.add(scratch, position);
+				}
+			}
+			if (gathered.size() == 0) {
+				return;
+			}
+
+			found.clear();
+			measure.collectWithin(gathered, scratch, 0, eps, found);
+			for (int i = 0; i < found.size(); i++) {
+				neighbours.add(candidates.lines[positions[found.get(i)]]);
+			}
+		}
+
+		public void close() throws IOException {
+			cache.clear();
+			file.close();
+		}
+
+		/**
+		 * Returns the distance the box bounds are compared with, it allows
+		 * for the rounding of the distance computation
+		 */
+		private double getBound(double eps) {
+			return eps + LineUtils.DISTANCE_ROUNDING_RATIO
+					* (eps + maxAbsCoordinate);
+		}
+	}
+
+	/**
+	 * Determines if the boxes at the offsets are farther apart than the bound
+	 */
+	private static boolean exceeds(AbstractDistanceMeasure measure,
+			float[] boxes1, int offset1, float[] boxes2, int offset2,
+			double bound) {
+		return measure.boxDistance(gap(boxes1, offset1, boxes2, offset2, 0),
+				gap(boxes1, offset1, boxes2, offset2, 1),
+				gap(boxes1, offset1, boxes2, offset2, 2)) > bound;
+	}
+
+	/**
+	 * Computes the gap between two boxes along the axis, which is zero if
+	 * they overlap
+	 */
+	private static double gap(float[] boxes1, int offset1, float[] boxes2,
+			int offset2, int axis) {
+		return Math.max(0, Math.max((double) boxes1[offset1 + axis]
+				- boxes2[offset2 + axis + 3], (double) boxes2[offset2 + axis]
+				- boxes1[offset1 + axis + 3]));
+	}
+}
@@ -0,0 +1,287 @@
+package Algorithms;
+
+import java.util.concurrent.ForkJoinPool;
+
+import DataStructures.ConcurrentDisjointSet;
+import DataStructures.IntList;
+import DataStructures.Line;
+import DataStructures.LineStore;
+
+/**
+ * DBSCAN analyzer running on a fork/join pool. The eps-neighbourhoods of all
+ * the lines are located in parallel, the neighbouring core lines are then
+ * connected in a lock-free disjoint-set forest. The clusters are numbered in
+ * the order of their smallest core line and a border line joins the cluster
+ * with the smallest number among its core neighbours, which is exactly the
+ * labeling of the sequential algorithm. The k-distance plot values are
+ * computed in parallel as well.
+ *
+ */
+public class ParallelDBSCANAnalyzer extends DBSCANAnalyzer {
+
+	// Number of lines processed by one task without further splitting
+	private static final int BATCH_SIZE = 256;
+
+	private final ForkJoinPool pool;
+
+	public ParallelDBSCANAnalyzer(AbstractDistanceMeasure distanceMeasure,
+			ForkJoinPool pool) throws IllegalArgumentException {
+		super(distanceMeasure);
+		if (pool == null) {
+			String errorMessage = "The pool argument is not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		this.pool = pool;
+	}
+
+	public ParallelDBSCANAnalyzer(AbstractDistanceMeasure distanceMeasure,
+			double eps, ForkJoinPool pool) throws IllegalArgumentException {
+		this(distanceMeasure, pool);
+		setEps(eps);
+	}
+
+	/**
+	 * Clusters the lines of the store into classes by applying DBSCAN
+	 * algorithm in parallel under the control of the handle, the
+	 * eps-neighbourhoods are located with the given index. If the run is
+	 * stopped while the neighbourhoods are located, the clusters are formed by
+	 * the processed lines only, so a cluster may be split, and the lines which
+	 * have not been processed are labelled as noise.
+	 * 
+	 * @param index
+	 *            the neighbourhood index built over the store of the lines to
+	 *            cluster, it must allow concurrent queries
+	 * @param control
+	 *            the handle of the run, may be null
+	 * @return true if all the lines are clustered, false if the result is
+	 *         partial
+	 * @throws IllegalArgumentException
+	 *             if the index provided is null
+	 */
+	@Override
+	public boolean performClustering(final INeighbourhoodIndex index,
+			final ClusteringControl control) throws IllegalArgumentException {
+		if (index == null) {
+			String errorMessage = "The index argument is not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		long startTime = System.nanoTime();
+		final LineStore lines = index.getLines();
+		final AbstractDistanceMeasure measure = getDistanceMeasure(index,
+				control);
+		if (control != null) {
+			control.start(lines.size());
+		}
+		final int[][] neighbours = new int[lines.size()][];
+		final boolean[] core = new boolean[lines.size()];
+		final ConcurrentDisjointSet components = new ConcurrentDisjointSet(
+				lines.size());
+
+		// locate the neighbourhoods and the core lines
+		run(lines.size(), new ILineProcessor() {
+			@Override
+			public void process(int line) {
+				if (control != null && control.isStopped()) {
+					return;
+				}
+
+				IntList lineNeighbours = new IntList();
+				getCachedNeighbours(line, index, measure, lineNeighbours);
+				neighbours[line] = lineNeighbours.toArray();
+				core[line] = neighbours[line].length >= getMinPts();
+				if (control != null) {
+					control.lineProcessed();
+				}
+			}
+		});
+		startTime = recordPhase("neighbourhoods", lines.size(), startTime);
+
+		// connect the neighbouring core lines, the neighbourhoods are
+		// symmetric so every pair is connected from its smaller line
+		run(lines.size(), new ILineProcessor() {
+			@Override
+			public void process(int line) {
+				if (core[line]) {
+					for (int neighbour : neighbours[line]) {
+						if (neighbour > line && core[neighbour]) {
+							components.union(line, neighbour);
+						}
+					}
+				}
+			}
+		});
+
+		startTime = recordPhase("components", lines.size(), startTime);
+
+		// number the clusters in the order of their smallest core line, which
+		// is the representative of the set
+		final int[] clusterIdentifiers = new int[lines.size()];
+		int clusterIdentifier = Line.NO_CLUSTER_ASSIGNED;
+		int coreLinesCount = 0;
+		for (int line = 0; line < lines.size(); line++) {
+			if (core[line]) {
+				coreLinesCount++;
+				if (components.find(line) == line) {
+					clusterIdentifiers[line] = ++clusterIdentifier;
+					if (control != null) {
+						control.clusterFound();
+					}
+				}
+			}
+		}
+
+		// label the core lines with their clusters and the border lines with
+		// the first cluster reaching them
+		run(lines.size(), new ILineProcessor() {
+			@Override
+			public void process(int line) {
+				int cluster = Line.NO_CLUSTER_ASSIGNED;
+				if (core[line]) {
+					cluster = clusterIdentifiers[components.find(line)];
+				} else if (neighbours[line] != null) {
+					for (int neighbour : neighbours[line]) {
+						if (core[neighbour]) {
+							int neighbourCluster = clusterIdentifiers[components
+									.find(neighbour)];
+							if (cluster == Line.NO_CLUSTER_ASSIGNED
+									|| neighbourCluster < cluster) {
+								cluster = neighbourCluster;
+							}
+						}
+					}
+				}
+				lines.setCluster(line, cluster);
+			}
+		});
+		recordPhase("labeling", lines.size(), startTime);
+		if (getMetrics() != null) {
+			getMetrics().recordClassification(lines, coreLinesCount);
+		}
+		if (control == null) {
+			return true;
+		}
+
+		control.finish();
+		return !control.isPartial();
+	}
+
+	/**
+	 * Records the time of the phase if the metrics are collected
+	 * 
+	 * @param phase
+	 *            the name of the phase
+	 * @param lines
+	 *            the number of the lines processed by the phase
+	 * @param startTime
+	 *            the value of System.nanoTime at the start of the phase
+	 * @return the start time of the next phase
+	 */
+	private long recordPhase(String phase, int lines, long startTime) {
+		if (getMetrics() == null) {
+			return startTime;
+		}
+
+		getMetrics().recordPhase(phase, lines, startTime);
+		return System.nanoTime();
+	}
+
+	/**
+	 * Performs the k-th distance calculation from every line in parallel
+	 * 
+	 * @param index
+	 *            the nearest neighbour index of the lines, it must allow
+	 *            concurrent queries
+	 * @param maxOrder
+	 *            the largest of the orders
+	 * @param orders
+	 *            the orders of the nearest neighbour
+	 * @param kDistances
+	 *            the arrays to store the k-th distances of the lines into, one
+	 *            for each of the orders
+	 * @param control
+	 *            the handle of the run to notify after every line from the
+	 *            threads of the pool, may be null, the distances of the lines
+	 *            left after a stop are not computed
+	 */
+	@Override
+	protected void calculateKDistances(final INearestNeighbourIndex index,
+			final int maxOrder, final int[] orders,
+			final double[][] kDistances, final ClusteringControl control) {
+		final AbstractDistanceMeasure measure = getDistanceMeasure(control);
+		run(index.getLines().size(), new ILineProcessor() {
+			@Override
+			public void process(int line) {
+				if (control != null && control.isStopped()) {
+					return;
+				}
+
+				double[] nearest = new double[maxOrder];
+				index.findNearestDistances(measure, line, maxOrder, nearest);
+				for (int i = 0; i < orders.length; i++) {
+					kDistances[i][line] = nearest[orders[i] - 1];
+				}
+				if (control != null) {
+					control.lineProcessed();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Performs the k-th distance calculation from the sampled lines in
+	 * parallel
+	 * 
+	 * @param index
+	 *            the nearest neighbour index of all the lines, it must allow
+	 *            concurrent queries
+	 * @param order
+	 *            the order of the nearest neighbour
+	 * @param sample
+	 *            the sampled lines
+	 * @param from
+	 *            the first sampled line to compute the distance of
+	 * @param kDistances
+	 *            the array to store the k-th distances of the sampled lines
+	 *            into
+	 * @param control
+	 *            the handle of the run to notify after every line from the
+	 *            threads of the pool, may be null
+	 */
+	@Override
+	protected void calculateSampleKDistances(
+			final INearestNeighbourIndex index, final int order,
+			final int[] sample, int from, final double[] kDistances,
+			final ClusteringControl control) {
+		final AbstractDistanceMeasure measure = getDistanceMeasure(control);
+		pool.invoke(new LineRangeAction(new ILineProcessor() {
+			@Override
+			public void process(int i) {
+				if (control != null && control.isStopped()) {
+					return;
+				}
+
+				double[] nearest = new double[order];
+				index.findNearestDistances(measure, sample[i], order, nearest);
+				kDistances[i] = nearest[order - 1];
+				if (control != null) {
+					control.lineProcessed();
+				}
+			}
+		}, from, sample.length, BATCH_SIZE));
+	}
+
+	/**
+	 * Applies the processor to all the lines on the pool and waits for the
+	 * completion
+	 * 
+	 * @param size
+	 *            the number of lines
+	 * @param processor
+	 *            the processor of a single line
+	 */
+	private void run(int size, ILineProcessor processor) {
+		pool.invoke(new LineRangeAction(processor, 0, size, BATCH_SIZE));
+	}
+}
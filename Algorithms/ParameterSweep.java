@@ -0,0 +1,377 @@
+package Algorithms;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+import DataStructures.IntList;
+import DataStructures.Line;
+import DataStructures.LineBlock;
+import DataStructures.LineStore;
+
+/**
+ * Sweep of the DBSCAN parameters over one weighted neighbour graph. The
+ * eps-neighbourhoods of all the lines are located once for the largest eps
+ * together with the distances to the neighbours, sorted by the distance. The
+ * neighbourhood of a line for a smaller eps is then a prefix of its sorted
+ * neighbours, so the clustering for any eps up to the largest one and any
+ * MinPts is derived from the graph without computing a distance. The labels
+ * of a derived clustering are exactly those of DBSCANAnalyzer with the same
+ * parameters: the clusters are numbered in the order of their smallest core
+ * line and a border line joins the cluster with the smallest number among
+ * its core neighbours. The graph is built and the settings of a sweep are
+ * derived in parallel on the pool.
+ *
+ */
+public class ParameterSweep {
+
+	// Number of lines located by one task without further splitting
+	private static final int BATCH_SIZE = 256;
+
+	private final ForkJoinPool pool;
+	private final double maxEps;
+	private final int size;
+
+	// Neighbours of every line sorted by their distance to the line
+	private final int[][] neighbours;
+	private final double[][] distances;
+
+	/**
+	 * Builds the neighbour graph of the lines for the largest eps
+	 * 
+	 * @param index
+	 *            the neighbourhood index built over the store of the lines,
+	 *            it must allow concurrent queries
+	 * @param distanceMeasure
+	 *            the measure of the distances between the lines
+	 * @param maxEps
+	 *            the largest eps of the sweep
+	 * @param pool
+	 *            the pool to run the sweep on
+	 * @throws IllegalArgumentException
+	 *             if an argument is null or maxEps is negative
+	 */
+	public ParameterSweep(final INeighbourhoodIndex index,
+			final AbstractDistanceMeasure distanceMeasure,
+			final double maxEps, ForkJoinPool pool)
+			throws IllegalArgumentException {
+		if (index == null || distanceMeasure == null || !(maxEps >= 0)
+				|| pool == null) {
+			String errorMessage = "The sweep arguments are not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		this.pool = pool;
+		this.maxEps = maxEps;
+		this.size = index.getLines().size();
+		this.neighbours = new int[size][];
+		this.distances = new double[size][];
+
+		final LineStore lines = index.getLines();
+		pool.invoke(new LineRangeAction(new ILineProcessor() {
+			@Override
+			public void process(int line) {
+				IntList lineNeighbours = new IntList();
+				index.collectNeighbours(distanceMeasure, line, maxEps,
+						lineNeighbours);
+				LineBlock block = new LineBlock(lineNeighbours.size());
+				for (int i = 0; i < lineNeighbours.size(); i++) {
+					block.add(lines, lineNeighbours.get(i));
+				}
+
+				// the index measures the neighbour against the line
+				double[] lineDistances = new double[block.size()];
+				distanceMeasure.dist(block, lines, line, lineDistances);
+				int[] sortedNeighbours = lineNeighbours.toArray();
+				sort(lineDistances, sortedNeighbours, 0,
+						sortedNeighbours.length - 1);
+				neighbours[line] = sortedNeighbours;
+				distances[line] = lineDistances;
+			}
+		}, 0, size, BATCH_SIZE));
+	}
+
+	/**
+	 * Returns the largest eps the clusterings can be derived for
+	 * 
+	 * @return the eps of the graph
+	 */
+	public double getMaxEps() {
+		return this.maxEps;
+	}
+
+	/**
+	 * Derives the clustering of the lines for the given parameters
+	 * 
+	 * @param eps
+	 *            the radius of the neighbourhoods, at most the largest eps
+	 * @param minPts
+	 *            the minimal number of neighbours of a core line, the line
+	 *            itself is not counted
+	 * @return the cluster identifiers of the lines, Line.NO_CLUSTER_ASSIGNED
+	 *         for the noise
+	 * @throws IllegalArgumentException
+	 *             if eps is out of the range of the graph or minPts is
+	 *             negative
+	 */
+	public int[] computeLabels(double eps, int minPts)
+			throws IllegalArgumentException {
+		if (!(eps >= 0 && eps <= maxEps) || minPts < 0) {
+			String errorMessage = "The clustering parameters are not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		// the number of the neighbours within eps, negated for the core
+		// lines
+		int[] counts = new int[size];
+		for (int line = 0; line < size; line++) {
+			int count = countWithin(distances[line], eps);
+			counts[line] = count >= minPts ? -count - 1 : count;
+		}
+
+		int[] labels = new int[size];
+		Arrays.fill(labels, Line.NO_CLUSTER_ASSIGNED);
+		int clusterIdentifier = Line.NO_CLUSTER_ASSIGNED;
+		IntList stack = new IntList();
+		for (int line = 0; line < size; line++) {
+			if (counts[line] >= 0
+					|| labels[line] != Line.NO_CLUSTER_ASSIGNED) {
+				continue;
+			}
+
+			// the cluster of the smallest core line not yet labelled
+			labels[line] = ++clusterIdentifier;
+			stack.add(line);
+			while (stack.size() > 0) {
+				int current = stack.removeLast();
+				int count = -counts[current] - 1;
+				for (int i = 0; i < count; i++) {
+					int neighbour = neighbours[current][i];
+					if (counts[neighbour] < 0
+							&& labels[neighbour] == Line.NO_CLUSTER_ASSIGNED) {
+						labels[neighbour] = clusterIdentifier;
+						stack.add(neighbour);
+					}
+				}
+			}
+		}
+
+		// the border lines join the smallest cluster of their core neighbours
+		for (int line = 0; line < size; line++) {
+			if (counts[line] < 0) {
+				continue;
+			}
+			for (int i = 0; i < counts[line]; i++) {
+				int neighbour = neighbours[line][i];
+				if (counts[neighbour] < 0
+						&& (labels[line] == Line.NO_CLUSTER_ASSIGNED
+								|| labels[neighbour] < labels[line])) {
+					labels[line] = labels[neighbour];
+				}
+			}
+		}
+		return labels;
+	}
+
+	/**
+	 * Derives the clusterings for all the combinations of the parameters in
+	 * parallel
+	 * 
+	 * @param epsValues
+	 *            the values of eps, each at most the largest eps
+	 * @param minPtsValues
+	 *            the values of MinPts
+	 * @return the table of the cluster counts and noise ratios
+	 * @throws IllegalArgumentException
+	 *             if an array is null or a value is not valid
+	 */
+	public Table sweep(double[] epsValues, int[] minPtsValues)
+			throws IllegalArgumentException {
+		if (epsValues == null || minPtsValues == null) {
+			String errorMessage = "The parameter arguments are not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+		for (double eps : epsValues) {
+			if (!(eps >= 0 && eps <= maxEps)) {
+				String errorMessage = "The eps values are not valid.";
+				throw new IllegalArgumentException(errorMessage);
+			}
+		}
+		for (int minPts : minPtsValues) {
+			if (minPts < 0) {
+				String errorMessage = "The MinPts values are not valid.";
+				throw new IllegalArgumentException(errorMessage);
+			}
+		}
+
+		final double[] sweptEps = epsValues.clone();
+		final int[] sweptMinPts = minPtsValues.clone();
+		final int[][] clustersCounts = new int[sweptEps.length][];
+		final int[][] noiseCounts = new int[sweptEps.length][];
+		for (int e = 0; e < sweptEps.length; e++) {
+			clustersCounts[e] = new int[sweptMinPts.length];
+			noiseCounts[e] = new int[sweptMinPts.length];
+		}
+		pool.invoke(new LineRangeAction(new ILineProcessor() {
+			@Override
+			public void process(int setting) {
+				int e = setting / sweptMinPts.length;
+				int m = setting % sweptMinPts.length;
+				int[] labels = computeLabels(sweptEps[e], sweptMinPts[m]);
+				int maxCluster = Line.NO_CLUSTER_ASSIGNED;
+				for (int label : labels) {
+					if (label == Line.NO_CLUSTER_ASSIGNED) {
+						noiseCounts[e][m]++;
+					}
+					maxCluster = Math.max(maxCluster, label);
+				}
+				clustersCounts[e][m] = maxCluster + 1;
+			}
+		}, 0, sweptEps.length * sweptMinPts.length, 1));
+		return new Table(sweptEps, sweptMinPts, clustersCounts, noiseCounts,
+				size);
+	}
+
+	/**
+	 * Counts the sorted distances which are at most eps
+	 */
+	private static int countWithin(double[] sortedDistances, double eps) {
+		int low = 0;
+		int high = sortedDistances.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (sortedDistances[middle] <= eps) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Sorts the distances in ascending order moving the lines along, the
+	 * lines with equal distances are ordered by their index
+	 */
+	private static void sort(double[] distances, int[] lines, int from,
+			int to) {
+		while (from < to) {
+			int middle = (from + to) >>> 1;
+			double pivotDistance = distances[middle];
+			int pivotLine = lines[middle];
+			int i = from;
+			int j = to;
+			while (i <= j) {
+				while (compare(distances[i], lines[i], pivotDistance,
+						pivotLine) < 0) {
+					i++;
+				}
+				while (compare(distances[j], lines[j], pivotDistance,
+						pivotLine) > 0) {
+					j--;
+				}
+				if (i <= j) {
+					double distance = distances[i];
+					distances[i] = distances[j];
+					distances[j] = distance;
+					int line = lines[i];
+					lines[i] = lines[j];
+					lines[j] = line;
+					i++;
+					j--;
+				}
+			}
+
+			// recurse into the smaller part to bound the stack depth
+			if (j - from < to - i) {
+				sort(distances, lines, from, j);
+				from = i;
+			} else {
+				sort(distances, lines, i, to);
+				to = j;
+			}
+		}
+	}
+
+	private static int compare(double distance1, int line1, double distance2,
+			int line2) {
+		int result = Double.compare(distance1, distance2);
+		return result != 0 ? result : Integer.compare(line1, line2);
+	}
+
+	/**
+	 * Table of the cluster counts and noise ratios of a sweep, indexed by the
+	 * positions of eps and MinPts in the swept values
+	 */
+	public static class Table {
+
+		private final double[] epsValues;
+		private final int[] minPtsValues;
+		private final int[][] clustersCounts;
+		private final int[][] noiseCounts;
+		private final int linesCount;
+
+		private Table(double[] epsValues, int[] minPtsValues,
+				int[][] clustersCounts, int[][] noiseCounts, int linesCount) {
+			this.epsValues = epsValues;
+			this.minPtsValues = minPtsValues;
+			this.clustersCounts = clustersCounts;
+			this.noiseCounts = noiseCounts;
+			this.linesCount = linesCount;
+		}
+
+		public double[] getEpsValues() {
+			return epsValues.clone();
+		}
+
+		public int[] getMinPtsValues() {
+			return minPtsValues.clone();
+		}
+
+		public int getClustersCount(int epsPosition, int minPtsPosition) {
+			return clustersCounts[epsPosition][minPtsPosition];
+		}
+
+		public int getNoiseCount(int epsPosition, int minPtsPosition) {
+			return noiseCounts[epsPosition][minPtsPosition];
+		}
+
+		/**
+		 * Returns the fraction of the lines labelled as noise
+		 * 
+		 * @param epsPosition
+		 *            the position of eps in the swept values
+		 * @param minPtsPosition
+		 *            the position of MinPts in the swept values
+		 * @return the noise ratio between 0 and 1
+		 */
+		public double getNoiseRatio(int epsPosition, int minPtsPosition) {
+			return linesCount == 0 ? 0
+					: (double) noiseCounts[epsPosition][minPtsPosition]
+							/ linesCount;
+		}
+
+		/**
+		 * Formats the table with a row for every eps and a column for every
+		 * MinPts, a cell holds the cluster count and the noise ratio
+		 */
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder("eps \\ minPts");
+			for (int minPts : minPtsValues) {
+				builder.append(String.format(Locale.ROOT, "%14d", minPts));
+			}
+			builder.append('\n');
+			for (int e = 0; e < epsValues.length; e++) {
+				builder.append(String.format(Locale.ROOT, "%12g",
+						epsValues[e]));
+				for (int m = 0; m < minPtsValues.length; m++) {
+					builder.append(String.format(Locale.ROOT, "%7d/%5.1f%%",
+							clustersCounts[e][m], 100 * getNoiseRatio(e, m)));
+				}
+				builder.append('\n');
+			}
+			return builder.toString();
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package Algorithms;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import DataStructures.HeapLineStore;
+import DataStructures.IntList;
+import DataStructures.LineStore;
+import Utilities.VectorUtils;
+
+/**
+ * Worker process of PartitionedDBSCANAnalyzer. The worker reads one partition
+ * from its standard input: the parameters of the clustering and the lines of
+ * the partition, every line with its region and its global index. The home
+ * lines come with the inner halo of the lines within eps of them and the outer
+ * halo of the lines within eps of the inner halo, so the neighbourhoods of the
+ * home and of the inner halo lines lie within the partition and their core
+ * lines are found exactly. The partition is clustered by DBSCANAnalyzer over a
+ * bounding volume hierarchy, the smallest exact core line of every local
+ * cluster is taken as its representative. The worker writes for every home line
+ * in the order of the input its global index and whether it is a core line. A
+ * core line is followed by the representative of its local cluster and its core
+ * neighbours in the inner halo, which connect it to the clusters of other
+ * partitions, another line by the distinct representatives of the local
+ * clusters of its core neighbours, among which its cluster is chosen. The lines
+ * are written as their global indices.
+ *
+ */
+public class PartitionWorker {
+
+	public static void main(String[] args) {
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					System.in));
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(System.out));
+			processPartition(in, out);
+			out.flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Reads a partition, clusters its home lines and writes the result
+	 * 
+	 * @param in
+	 *            the stream of the partition
+	 * @param out
+	 *            the stream of the result
+	 * @throws IOException
+	 *             if a stream fails or the partition is not valid
+	 */
+	static void processPartition(DataInputStream in, DataOutputStream out)
+			throws IOException {
+		int norm = in.readInt();
+		double eps = in.readDouble();
+		double minPts = in.readDouble();
+		int homeCount = in.readInt();
+		int innerHaloCount = in.readInt();
+		int outerHaloCount = in.readInt();
+		if (homeCount < 0 || innerHaloCount < 0 || outerHaloCount < 0) {
+			throw new IOException("The partition is damaged.");
+		}
+
+		// the home lines come first in the store, the inner halo next
+		int[] globalLines = new int[homeCount + innerHaloCount
+				+ outerHaloCount];
+		int[] regionEnds = { 0, homeCount, homeCount + innerHaloCount };
+		int[] regionLimits = { homeCount, homeCount + innerHaloCount,
+				globalLines.length };
+		LineStore lines = new HeapLineStore(globalLines.length);
+		for (int i = 0; i < globalLines.length; i++) {
+			int region = in.readByte();
+			if (region < PartitionedDBSCANAnalyzer.HOME_REGION
+					|| region > PartitionedDBSCANAnalyzer.OUTER_HALO_REGION
+					|| regionEnds[region] == regionLimits[region]) {
+				throw new IOException("The partition is damaged.");
+			}
+			int line = regionEnds[region]++;
+			globalLines[line] = in.readInt();
+			lines.setLine(line, in.readFloat(), in.readFloat(),
+					in.readFloat(), in.readFloat(), in.readFloat(),
+					in.readFloat());
+		}
+
+		PartitionAnalyzer analyzer = new PartitionAnalyzer(
+				createDistanceMeasure(norm), eps, homeCount, homeCount
+						+ innerHaloCount);
+		if (analyzer.getMinPts() != minPts) {
+			throw new IOException("The partition MinPts is not valid.");
+		}
+		analyzer.performClustering(new BoundingVolumeHierarchy(lines));
+
+		// the lines are visited in the order of the store, so the first
+		// exact core line of a local cluster is its smallest one
+		int[] representatives = new int[globalLines.length];
+		Arrays.fill(representatives, -1);
+		for (int line = 0; line < homeCount + innerHaloCount; line++) {
+			int cluster = lines.getCluster(line);
+			if (analyzer.isCore(line) && representatives[cluster] == -1) {
+				representatives[cluster] = line;
+			}
+		}
+
+		IntList written = new IntList();
+		for (int line = 0; line < homeCount; line++) {
+			boolean core = analyzer.isCore(line);
+			out.writeInt(globalLines[line]);
+			out.writeBoolean(core);
+			written.clear();
+			if (core) {
+				out.writeInt(globalLines[representatives[lines
+						.getCluster(line)]]);
+				for (int neighbour : analyzer.getNeighbours(line)) {
+					if (neighbour >= homeCount && analyzer.isCore(neighbour)) {
+						written.add(globalLines[neighbour]);
+					}
+				}
+			} else {
+				for (int neighbour : analyzer.getNeighbours(line)) {
+					if (analyzer.isCore(neighbour)) {
+						int representative = globalLines[representatives[lines
+								.getCluster(neighbour)]];
+						if (!written.contains(representative)) {
+							written.add(representative);
+						}
+					}
+				}
+			}
+			out.writeInt(written.size());
+			for (int i = 0; i < written.size(); i++) {
+				out.writeInt(written.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Creates the measure of the given norm
+	 * 
+	 * @throws IOException
+	 *             if the norm is not known
+	 */
+	private static AbstractDistanceMeasure createDistanceMeasure(int norm)
+			throws IOException {
+		switch (norm) {
+		case VectorUtils.MANHATTAN_NORM:
+			return new ManhattanDistanceMeasure();
+		case VectorUtils.EUCLEDIAN_NORM:
+			return new EucledianDistanceMeasure();
+		case VectorUtils.CHEBYSHEV_NORM:
+			return new ChebyshevDistanceMeasure();
+		default:
+			throw new IOException("The partition norm is not valid.");
+		}
+	}
+
+	/**
+	 * Analyzer of a partition keeping the neighbourhoods of the home lines
+	 * and the neighbour counts of the home and the inner halo lines, whose
+	 * neighbourhoods are exact
+	 */
+	private static class PartitionAnalyzer extends DBSCANAnalyzer {
+
+		private final int[][] neighbours;
+		private final int[] neighboursCounts;
+
+		public PartitionAnalyzer(AbstractDistanceMeasure distanceMeasure,
+				double eps, int homeCount, int exactCount) {
+			super(distanceMeasure, eps);
+			this.neighbours = new int[homeCount][];
+			this.neighboursCounts = new int[exactCount];
+		}
+
+		@Override
+		protected void getCachedNeighbours(int line,
+				INeighbourhoodIndex index, AbstractDistanceMeasure measure,
+				IntList lineNeighbours) {
+			super.getCachedNeighbours(line, index, measure, lineNeighbours);
+			if (line < neighbours.length) {
+				neighbours[line] = lineNeighbours.toArray();
+			}
+			if (line < neighboursCounts.length) {
+				neighboursCounts[line] = lineNeighbours.size();
+			}
+		}
+
+		/**
+		 * Determines if a home or an inner halo line is a core line
+		 */
+		public boolean isCore(int line) {
+			return line < neighboursCounts.length
+					&& neighboursCounts[line] >= getMinPts();
+		}
+
+		public int[] getNeighbours(int line) {
+			return neighbours[line];
+		}
+	}
+}
@@ -0,0 +1,662 @@
+package Algorithms;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import DataStructures.Line;
+import DataStructures.LineStore;
+import DataStructures.MappedDisjointSet;
+import DataStructures.MappedIntArray;
+import DataStructures.Object3D;
+import Utilities.LineUtils;
+
+/**
+ * DBSCAN analyzer splitting the space into partitions which are clustered by
+ * separate worker JVMs, see PartitionWorker. The lines are cut into slabs along
+ * the axis of the largest spread by the lower ends of their bounding boxes, the
+ * slabs hold equal numbers of home lines as far as a histogram of the lower
+ * ends allows, one slab for each worker. A partition also holds the halo of its
+ * slab: the inner halo of the lines of the other slabs whose bounding boxes
+ * come within eps of the home lines, they include all the neighbours of the
+ * home lines, and the outer halo of the lines coming within eps of the boxes of
+ * the inner halo, they include all the neighbours of the inner halo. The store
+ * is streamed in a few passes for the histogram, the bounds and the sizes of
+ * the slabs and once for every partition, so it may be a MappedLineStore larger
+ * than the heap. The workers talk to the analyzer over the pipes of their
+ * standard streams and run concurrently, their results are spooled into
+ * temporary files. The core lines and the local clusters reported by the
+ * workers are merged in a memory-mapped disjoint-set forest over the links
+ * between the core lines of different partitions and the labels are kept in a
+ * memory-mapped int array until they are written into the store. The clusters
+ * are numbered in the order of their smallest core line and a border line joins
+ * the cluster with the smallest number among its core neighbours, so the labels
+ * are exactly those of DBSCANAnalyzer. The workers compute the distances with
+ * the built-in measure of the norm of the analyzer's measure.
+ *
+ */
+public class PartitionedDBSCANAnalyzer extends DBSCANAnalyzer {
+
+	// Regions of a line with respect to a slab, see PartitionWorker
+	static final int HOME_REGION = 0;
+	static final int INNER_HALO_REGION = 1;
+	static final int OUTER_HALO_REGION = 2;
+	static final int OUTSIDE_REGION = 3;
+
+	// Number of the bins of the histogram the slabs are cut from
+	private static final int HISTOGRAM_BINS = 1 << 16;
+
+	// Buffer of the streams of a partition and of its result
+	private static final int BUFFER_BYTES = 1 << 16;
+
+	private final int workersCount;
+	private final File directory;
+	private final List<String> workerOptions;
+
+	/**
+	 * Creates the analyzer keeping its temporary files in the default
+	 * temporary directory
+	 * 
+	 * @param distanceMeasure
+	 *            the measure of the distances, the workers use the built-in
+	 *            measure of its norm
+	 * @param eps
+	 *            the epsilon parameter
+	 * @param workersCount
+	 *            the number of the partitions and of the worker JVMs
+	 * @throws IllegalArgumentException
+	 *             if the number of the workers is not positive
+	 */
+	public PartitionedDBSCANAnalyzer(AbstractDistanceMeasure distanceMeasure,
+			double eps, int workersCount) throws IllegalArgumentException {
+		this(distanceMeasure, eps, workersCount, null);
+	}
+
+	/**
+	 * Creates the analyzer
+	 * 
+	 * @param distanceMeasure
+	 *            the measure of the distances, the workers use the built-in
+	 *            measure of its norm
+	 * @param eps
+	 *            the epsilon parameter
+	 * @param workersCount
+	 *            the number of the partitions and of the worker JVMs
+	 * @param directory
+	 *            the directory of the temporary files or null for the
+	 *            default temporary directory
+	 * @throws IllegalArgumentException
+	 *             if the number of the workers is not positive
+	 */
+	public PartitionedDBSCANAnalyzer(AbstractDistanceMeasure distanceMeasure,
+			double eps, int workersCount, File directory)
+			throws IllegalArgumentException {
+		super(distanceMeasure, eps);
+		if (workersCount < 1) {
+			String errorMessage = "The workers count argument is not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		this.workersCount = workersCount;
+		this.directory = directory;
+		this.workerOptions = new ArrayList<String>();
+	}
+
+	/**
+	 * Sets the options of the worker JVMs, e.g. their heap size
+	 * 
+	 * @param options
+	 *            the options passed to the java command of a worker
+	 */
+	public void setWorkerOptions(String... options) {
+		workerOptions.clear();
+		workerOptions.addAll(Arrays.asList(options));
+	}
+
+	/**
+	 * Clusters the lines of the index's store by the workers under the
+	 * control of the handle, the index itself is not queried. The handle is
+	 * notified of every home line whose result has been received, if the run
+	 * is stopped the remaining workers are terminated and the clusters are
+	 * formed by the received results only: the lines whose results have not
+	 * been received are labelled as noise unless a received result shows
+	 * them as core lines.
+	 * 
+	 * @param index
+	 *            the neighbourhood index built over the store of the lines to
+	 *            cluster
+	 * @param control
+	 *            the handle of the run, may be null
+	 * @return true if all the lines are clustered, false if the result is
+	 *         partial
+	 * @throws IllegalArgumentException
+	 *             if the index provided is null or its store is too large for
+	 *             the mapped arrays
+	 * @throws UncheckedIOException
+	 *             if a worker cannot be started or fails or a temporary file
+	 *             can not be written or read
+	 */
+	@Override
+	public boolean performClustering(INeighbourhoodIndex index,
+			final ClusteringControl control) throws IllegalArgumentException {
+		if (index == null
+				|| index.getLines().size() > MappedIntArray.MAX_SIZE) {
+			String errorMessage = "The index argument is not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		long startTime = System.nanoTime();
+		final LineStore lines = index.getLines();
+		if (control != null) {
+			control.start(lines.size());
+		}
+
+		List<File> files = new ArrayList<File>();
+		int coreLinesCount;
+		try {
+			final Partitioning partitioning = partition(lines);
+			startTime = recordPhase("partitioning", lines.size(), startTime);
+
+			int partitionsCount = partitioning.slabs.length;
+			final File[] resultFiles = new File[partitionsCount];
+			final int[] resultsCounts = new int[partitionsCount];
+			for (int slab = 0; slab < partitionsCount; slab++) {
+				resultFiles[slab] = createFile("result", files);
+			}
+			Thread[] threads = new Thread[partitionsCount];
+			final IOException[] failures = new IOException[partitionsCount];
+			for (int i = 0; i < threads.length; i++) {
+				final int slab = i;
+				threads[i] = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							resultsCounts[slab] = runWorker(lines,
+									partitioning, slab, resultFiles[slab],
+									control);
+						} catch (IOException e) {
+							failures[slab] = e;
+						}
+					}
+				}, "partition-" + i);
+				threads[i].start();
+			}
+			try {
+				for (Thread thread : threads) {
+					thread.join();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(
+						"The partitioned clustering was interrupted.", e);
+			}
+			for (IOException failure : failures) {
+				if (failure != null) {
+					throw failure;
+				}
+			}
+			startTime = recordPhase("workers", lines.size(), startTime);
+
+			coreLinesCount = merge(lines, resultFiles, resultsCounts, files,
+					control);
+			recordPhase("merge", lines.size(), startTime);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+
+		if (getMetrics() != null) {
+			getMetrics().recordClassification(lines, coreLinesCount);
+		}
+		if (control == null) {
+			return true;
+		}
+
+		control.finish();
+		return !control.isPartial();
+	}
+
+	/**
+	 * Cuts the lines into the slabs along the axis of the largest spread and
+	 * finds the bounds and the sizes of the slabs and of their halos in
+	 * several passes over the store
+	 * 
+	 * @param lines
+	 *            the store of the lines
+	 * @return the slabs with at least one home line
+	 */
+	private Partitioning partition(LineStore lines) {
+		int size = lines.size();
+		double[] low = new double[Object3D.SPACE_DIMENSION];
+		double[] high = new double[Object3D.SPACE_DIMENSION];
+		Arrays.fill(low, Double.POSITIVE_INFINITY);
+		Arrays.fill(high, Double.NEGATIVE_INFINITY);
+		double maxAbsCoordinate = 0;
+		for (int line = 0; line < size; line++) {
+			for (int axis = 0; axis < low.length; axis++) {
+				double min = getMin(lines, line, axis);
+				double max = getMax(lines, line, axis);
+				low[axis] = Math.min(low[axis], min);
+				high[axis] = Math.max(high[axis], min);
+				maxAbsCoordinate = Math.max(maxAbsCoordinate,
+						Math.max(-min, max));
+			}
+		}
+		int axis = 0;
+		for (int i = 1; i < low.length; i++) {
+			if (high[i] - low[i] > high[axis] - low[axis]) {
+				axis = i;
+			}
+		}
+
+		double eps = getEps();
+		Partitioning partitioning = new Partitioning(axis, low[axis],
+				high[axis] > low[axis] ? HISTOGRAM_BINS
+						/ (high[axis] - low[axis]) : 0, eps
+						+ LineUtils.DISTANCE_ROUNDING_RATIO
+						* (eps + maxAbsCoordinate));
+
+		// the slabs are runs of the bins holding about equal numbers of the
+		// lower ends of the boxes
+		int[] histogram = new int[HISTOGRAM_BINS];
+		for (int line = 0; line < size; line++) {
+			histogram[partitioning.getBin(lines, line)]++;
+		}
+		int partitionsCount = Math.min(workersCount, size);
+		int slabsCount = 0;
+		long counted = 0;
+		int bin = 0;
+		for (int slab = 0; slab < partitionsCount; slab++) {
+			long target = (long) size * (slab + 1) / partitionsCount;
+			boolean empty = true;
+			while (bin < HISTOGRAM_BINS
+					&& (counted < target || slab == partitionsCount - 1)) {
+				counted += histogram[bin];
+				empty &= histogram[bin] == 0;
+				partitioning.slabOfBin[bin++] = slabsCount;
+			}
+			if (!empty) {
+				slabsCount++;
+			}
+		}
+
+		Slab[] slabs = new Slab[slabsCount];
+		for (int slab = 0; slab < slabsCount; slab++) {
+			slabs[slab] = new Slab();
+		}
+		for (int line = 0; line < size; line++) {
+			Slab slab = slabs[partitioning.getSlab(lines, line)];
+			slab.homeCount++;
+			slab.homeLow = Math.min(slab.homeLow, getMin(lines, line, axis));
+			slab.homeHigh = Math.max(slab.homeHigh, getMax(lines, line, axis));
+		}
+		partitioning.slabs = slabs;
+
+		// the outer halo surrounds the boxes of the inner halo, which may
+		// reach far beyond the home lines
+		for (Slab slab : slabs) {
+			slab.haloLow = slab.homeLow;
+			slab.haloHigh = slab.homeHigh;
+		}
+		for (int line = 0; line < size; line++) {
+			for (int slab = 0; slab < slabsCount; slab++) {
+				if (partitioning.isInnerHalo(lines, line, slab)) {
+					Slab bounds = slabs[slab];
+					bounds.innerHaloCount++;
+					bounds.haloLow = Math.min(bounds.haloLow,
+							getMin(lines, line, axis));
+					bounds.haloHigh = Math.max(bounds.haloHigh,
+							getMax(lines, line, axis));
+				}
+			}
+		}
+		for (int line = 0; line < size; line++) {
+			for (int slab = 0; slab < slabsCount; slab++) {
+				int region = partitioning.getRegion(lines, line, slab);
+				if (region == OUTER_HALO_REGION) {
+					slabs[slab].outerHaloCount++;
+				}
+			}
+		}
+		return partitioning;
+	}
+
+	/**
+	 * Streams a partition to a new worker JVM and spools its result into the
+	 * result file
+	 * 
+	 * @return the number of the home lines whose results have been received
+	 * @throws IOException
+	 *             if the worker cannot be started or fails
+	 */
+	private int runWorker(LineStore lines, Partitioning partitioning,
+			int slab, File resultFile, ClusteringControl control)
+			throws IOException {
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin"
+				+ File.separator + "java");
+		command.addAll(workerOptions);
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(PartitionWorker.class.getName());
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+		Process process = builder.start();
+		int resultsCount = 0;
+		try {
+			// the worker reads the whole partition before it writes
+			Slab bounds = partitioning.slabs[slab];
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(process.getOutputStream(),
+							BUFFER_BYTES));
+			out.writeInt(getDistanceMeasure().getNorm());
+			out.writeDouble(getEps());
+			out.writeDouble(getMinPts());
+			out.writeInt(bounds.homeCount);
+			out.writeInt(bounds.innerHaloCount);
+			out.writeInt(bounds.outerHaloCount);
+			for (int line = 0; line < lines.size(); line++) {
+				int region = partitioning.getRegion(lines, line, slab);
+				if (region != OUTSIDE_REGION) {
+					out.writeByte(region);
+					out.writeInt(line);
+					out.writeFloat(lines.getAx(line));
+					out.writeFloat(lines.getAy(line));
+					out.writeFloat(lines.getAz(line));
+					out.writeFloat(lines.getDx(line));
+					out.writeFloat(lines.getDy(line));
+					out.writeFloat(lines.getDz(line));
+				}
+			}
+			out.close();
+
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					process.getInputStream(), BUFFER_BYTES));
+			DataOutputStream result = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(resultFile),
+							BUFFER_BYTES));
+			try {
+				for (; resultsCount < bounds.homeCount; resultsCount++) {
+					int line = in.readInt();
+					boolean core = in.readBoolean();
+					result.writeInt(line);
+					result.writeBoolean(core);
+					if (core) {
+						result.writeInt(in.readInt());
+					}
+					int count = in.readInt();
+					result.writeInt(count);
+					for (int i = 0; i < count; i++) {
+						result.writeInt(in.readInt());
+					}
+					if (control != null && control.lineProcessed()) {
+						return resultsCount + 1;
+					}
+				}
+			} finally {
+				result.close();
+			}
+			in.close();
+
+			if (process.waitFor() != 0) {
+				throw new IOException("The partition worker failed.");
+			}
+			return resultsCount;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("The partition worker was interrupted.", e);
+		} finally {
+			process.destroy();
+		}
+	}
+
+	/**
+	 * Merges the local clusters of the partitions, numbers the clusters,
+	 * labels the border lines and assigns the labels in the store
+	 * 
+	 * @return the number of the core lines
+	 * @throws IOException
+	 *             if a file can not be written or read
+	 */
+	private int merge(LineStore lines, File[] resultFiles,
+			int[] resultsCounts, List<File> files, ClusteringControl control)
+			throws IOException {
+		int size = lines.size();
+		MappedDisjointSet components = MappedDisjointSet.create(
+				createFile("parents", files), size);
+		for (int slab = 0; slab < resultFiles.length; slab++) {
+			DataInputStream result = openResult(resultFiles[slab]);
+			try {
+				for (int i = 0; i < resultsCounts[slab]; i++) {
+					int line = result.readInt();
+					boolean core = result.readBoolean();
+					if (core) {
+						int localRoot = result.readInt();
+						components.add(line);
+						components.add(localRoot);
+						components.union(line, localRoot);
+					}
+					int count = result.readInt();
+					for (int j = 0; j < count; j++) {
+						int linked = result.readInt();
+						if (core) {
+							components.add(linked);
+							components.union(line, linked);
+						}
+					}
+				}
+			} finally {
+				result.close();
+			}
+		}
+
+		// the root of a set is its smallest line, it precedes the other lines
+		// and is numbered first
+		MappedIntArray labels = MappedIntArray.create(
+				createFile("labels", files), size);
+		int clusterIdentifier = Line.NO_CLUSTER_ASSIGNED;
+		int coreLinesCount = 0;
+		for (int line = 0; line < size; line++) {
+			if (!components.contains(line)) {
+				labels.set(line, Line.NO_CLUSTER_ASSIGNED);
+				continue;
+			}
+
+			coreLinesCount++;
+			int root = components.find(line);
+			if (root == line) {
+				labels.set(line, ++clusterIdentifier);
+				if (control != null) {
+					control.clusterFound();
+				}
+			} else {
+				labels.set(line, labels.get(root));
+			}
+		}
+
+		// a border line joins the smallest cluster among the local clusters
+		// of its core neighbours
+		for (int slab = 0; slab < resultFiles.length; slab++) {
+			DataInputStream result = openResult(resultFiles[slab]);
+			try {
+				for (int i = 0; i < resultsCounts[slab]; i++) {
+					int line = result.readInt();
+					boolean core = result.readBoolean();
+					if (core) {
+						result.readInt();
+					}
+					int count = result.readInt();
+					int cluster = Line.NO_CLUSTER_ASSIGNED;
+					for (int j = 0; j < count; j++) {
+						int neighbourCluster = labels.get(result.readInt());
+						if (core || neighbourCluster
+								== Line.NO_CLUSTER_ASSIGNED) {
+							continue;
+						}
+						if (cluster == Line.NO_CLUSTER_ASSIGNED
+								|| neighbourCluster < cluster) {
+							cluster = neighbourCluster;
+						}
+					}
+					if (!core) {
+						labels.set(line, cluster);
+					}
+				}
+			} finally {
+				result.close();
+			}
+		}
+
+		for (int line = 0; line < size; line++) {
+			lines.setCluster(line, labels.get(line));
+		}
+		return coreLinesCount;
+	}
+
+	private static DataInputStream openResult(File resultFile)
+			throws IOException {
+		return new DataInputStream(new BufferedInputStream(new FileInputStream(
+				resultFile), BUFFER_BYTES));
+	}
+
+	private File createFile(String prefix, List<File> files)
+			throws IOException {
+		File file = File.createTempFile("dbscan-" + prefix, ".tmp", directory);
+		files.add(file);
+		return file;
+	}
+
+	/**
+	 * Records the time of the phase if the metrics are collected
+	 * 
+	 * @return the start time of the next phase
+	 */
+	private long recordPhase(String phase, int lines, long startTime) {
+		if (getMetrics() == null) {
+			return startTime;
+		}
+
+		getMetrics().recordPhase(phase, lines, startTime);
+		return System.nanoTime();
+	}
+
+	private static float getMin(LineStore lines, int line, int axis) {
+		switch (axis) {
+		case 0:
+			return lines.getMinX(line);
+		case 1:
+			return lines.getMinY(line);
+		default:
+			return lines.getMinZ(line);
+		}
+	}
+
+	private static float getMax(LineStore lines, int line, int axis) {
+		switch (axis) {
+		case 0:
+			return lines.getMaxX(line);
+		case 1:
+			return lines.getMaxY(line);
+		default:
+			return lines.getMaxZ(line);
+		}
+	}
+
+	/**
+	 * Cut of the axis into the slabs, a line is a home line of the slab of
+	 * the histogram bin of the lower end of its box
+	 */
+	private static class Partitioning {
+		private final int axis;
+		private final double low;
+		private final double scale;
+		private final double padding;
+		private final int[] slabOfBin;
+		private Slab[] slabs;
+
+		public Partitioning(int axis, double low, double scale,
+				double padding) {
+			this.axis = axis;
+			this.low = low;
+			this.scale = scale;
+			this.padding = padding;
+			this.slabOfBin = new int[HISTOGRAM_BINS];
+		}
+
+		public int getBin(LineStore lines, int line) {
+			int bin = (int) ((getMin(lines, line, axis) - low) * scale);
+			return Math.max(0, Math.min(HISTOGRAM_BINS - 1, bin));
+		}
+
+		public int getSlab(LineStore lines, int line) {
+			return slabOfBin[getBin(lines, line)];
+		}
+
+		/**
+		 * Determines if the line of another slab comes within eps of the
+		 * home lines of the slab along the axis
+		 */
+		public boolean isInnerHalo(LineStore lines, int line, int slab) {
+			Slab bounds = slabs[slab];
+			return getSlab(lines, line) != slab
+					&& getGap(lines, line, bounds.homeLow, bounds.homeHigh)
+						<= padding;
+		}
+
+		/**
+		 * Determines the region of the line with respect to the slab: a home
+		 * line, a line whose box comes within eps of the home lines along
+		 * the axis, a line within eps of the inner halo, or a line outside of
+		 * the partition. The bounds of the halo must be known.
+		 */
+		public int getRegion(LineStore lines, int line, int slab) {
+			if (getSlab(lines, line) == slab) {
+				return HOME_REGION;
+			}
+
+			Slab bounds = slabs[slab];
+			if (getGap(lines, line, bounds.homeLow, bounds.homeHigh)
+					<= padding) {
+				return INNER_HALO_REGION;
+			}
+			if (getGap(lines, line, bounds.haloLow, bounds.haloHigh)
+					<= padding) {
+				return OUTER_HALO_REGION;
+			}
+			return OUTSIDE_REGION;
+		}
+
+		private double getGap(LineStore lines, int line, double low,
+				double high) {
+			return Math.max(getMin(lines, line, axis) - high,
+					low - getMax(lines, line, axis));
+		}
+	}
+
+	/**
+	 * Bounds of the boxes of the home lines of a slab and of the home and the
+	 * inner halo lines along the axis and the sizes of the regions of its
+	 * partition
+	 */
+	private static class Slab {
+		private int homeCount;
+		private int innerHaloCount;
+		private int outerHaloCount;
+		private double homeLow = Double.POSITIVE_INFINITY;
+		private double homeHigh = Double.NEGATIVE_INFINITY;
+		private double haloLow;
+		private double haloHigh;
+	}
+}
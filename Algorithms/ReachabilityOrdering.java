@@ -0,0 +1,182 @@
+package Algorithms;
+
+import java.util.Arrays;
+
+import DataStructures.Line;
+import DataStructures.LineStore;
+
+/**
+ * Result of the OPTICS analyzer: the lines in the order of their expansion
+ * together with their core distances and reachabilities. For every eps not
+ * larger than the generating eps the core lines and the noise lines are
+ * exactly those of DBSCAN, and the core lines fall into the same clusters
+ * which are numbered in the order of their smallest core line as well. A
+ * border line reached by several clusters may join another one of them than
+ * with DBSCAN.
+ *
+ */
+public class ReachabilityOrdering {
+
+	// Core distance or reachability of a line which is not defined within the
+	// generating eps
+	public static final double UNDEFINED = Double.POSITIVE_INFINITY;
+
+	// Marks a line reached by no core line
+	public static final int NO_LINE = -1;
+
+	private final LineStore lines;
+	private final double generatingEps;
+	private final int[] order;
+	private final double[] coreDistances;
+	private final double[] reachabilities;
+
+	// The smallest reachability of a line from any core line and that core
+	// line, also defined for the lines ordered before the core line
+	private final double[] minReachabilities;
+	private final int[] reachingCores;
+
+	ReachabilityOrdering(LineStore lines, double generatingEps, int[] order,
+			double[] coreDistances, double[] reachabilities,
+			double[] minReachabilities, int[] reachingCores) {
+		this.lines = lines;
+		this.generatingEps = generatingEps;
+		this.order = order;
+		this.coreDistances = coreDistances;
+		this.reachabilities = reachabilities;
+		this.minReachabilities = minReachabilities;
+		this.reachingCores = reachingCores;
+	}
+
+	/**
+	 * Returns the store of the ordered lines
+	 * 
+	 * @return the store of the lines
+	 */
+	public LineStore getLines() {
+		return this.lines;
+	}
+
+	/**
+	 * Returns the eps the ordering has been computed for
+	 * 
+	 * @return the generating eps
+	 */
+	public double getGeneratingEps() {
+		return this.generatingEps;
+	}
+
+	/**
+	 * Returns the number of the ordered lines
+	 * 
+	 * @return the size of the ordering
+	 */
+	public int size() {
+		return this.order.length;
+	}
+
+	/**
+	 * Returns the line at the given position of the ordering
+	 * 
+	 * @param position
+	 *            the position in the ordering
+	 * @return the index of the line
+	 */
+	public int getLine(int position) {
+		return this.order[position];
+	}
+
+	/**
+	 * Returns the core distance of a line
+	 * 
+	 * @param line
+	 *            the index of the line
+	 * @return the core distance or UNDEFINED if the line is not a core line
+	 *         for the generating eps
+	 */
+	public double getCoreDistance(int line) {
+		return this.coreDistances[line];
+	}
+
+	/**
+	 * Returns the reachability of a line from the lines ordered before it
+	 * 
+	 * @param line
+	 *            the index of the line
+	 * @return the reachability or UNDEFINED if the line starts a new part of
+	 *         the ordering
+	 */
+	public double getReachability(int line) {
+		return this.reachabilities[line];
+	}
+
+	/**
+	 * Returns the reachabilities in the order of the lines, which are the
+	 * values of the reachability plot
+	 * 
+	 * @return the reachability plot values
+	 */
+	public double[] getReachabilityPlotValues() {
+		double[] values = new double[order.length];
+		for (int position = 0; position < order.length; position++) {
+			values[position] = reachabilities[order[position]];
+		}
+		return values;
+	}
+
+	/**
+	 * Extracts the DBSCAN clustering for the given eps in linear time, the
+	 * cluster IDs are assigned in the store. A core line with the reachability
+	 * above eps starts a new cluster and the following core lines join it,
+	 * a border line joins the cluster of its closest core line.
+	 * 
+	 * @param eps
+	 *            the epsilon parameter, not larger than the generating eps
+	 * @return the number of the clusters
+	 * @throws IllegalArgumentException
+	 *             if eps is negative or exceeds the generating eps
+	 */
+	public int extractDBSCANClustering(double eps)
+			throws IllegalArgumentException {
+		if (!(eps >= 0 && eps <= generatingEps)) {
+			String errorMessage = "The eps can not exceed the generating eps "
+					+ "of the ordering.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		// number the runs of the core lines along the ordering
+		int[] runs = new int[order.length];
+		int runsCount = 0;
+		for (int position = 0; position < order.length; position++) {
+			int line = order[position];
+			if (coreDistances[line] <= eps) {
+				if (reachabilities[line] > eps) {
+					runsCount++;
+				}
+				runs[line] = runsCount - 1;
+			}
+		}
+
+		// renumber the runs in the order of their smallest core line
+		int[] clusterIdentifiers = new int[runsCount];
+		Arrays.fill(clusterIdentifiers, Line.NO_CLUSTER_ASSIGNED);
+		int clustersCount = 0;
+		for (int line = 0; line < order.length; line++) {
+			if (coreDistances[line] <= eps
+					&& clusterIdentifiers[runs[line]]
+							== Line.NO_CLUSTER_ASSIGNED) {
+				clusterIdentifiers[runs[line]] = clustersCount++;
+			}
+		}
+
+		for (int line = 0; line < order.length; line++) {
+			int cluster = Line.NO_CLUSTER_ASSIGNED;
+			if (coreDistances[line] <= eps) {
+				cluster = clusterIdentifiers[runs[line]];
+			} else if (minReachabilities[line] <= eps) {
+				cluster = clusterIdentifiers[runs[reachingCores[line]]];
+			}
+			lines.setCluster(line, cluster);
+		}
+		return clustersCount;
+	}
+}
@@ -0,0 +1,117 @@
+package Algorithms;
+
+import DataStructures.IntList;
+import DataStructures.Line;
+import DataStructures.LineBlock;
+import DataStructures.LineStore;
+
+/**
+ * Measure delegating to another one and recording the distances of the lines
+ * measured against the center line of a range query, so that the distances
+ * to the neighbours found by the query can be taken without measuring them
+ * again. The recorder is used by one thread at a time.
+ *
+ */
+class RecordingDistanceMeasure extends AbstractDistanceMeasure {
+
+	private final AbstractDistanceMeasure distanceMeasure;
+	private final IntList lines;
+	private double[] distances;
+	private int center;
+
+	public RecordingDistanceMeasure(AbstractDistanceMeasure distanceMeasure) {
+		this.distanceMeasure = distanceMeasure;
+		this.lines = new IntList();
+		this.distances = new double[16];
+		this.center = -1;
+	}
+
+	/**
+	 * Forgets the recorded distances and starts recording the distances to
+	 * the given center line
+	 * 
+	 * @param center
+	 *            the index of the center line of the next range query
+	 */
+	public void start(int center) {
+		this.center = center;
+		lines.clear();
+	}
+
+	/**
+	 * Takes the distances from the center line to its neighbours found by
+	 * the range query. The neighbours are matched with the recorded lines in
+	 * the order they were measured in, which is the order the indices add
+	 * them in, a neighbour which was not recorded is measured.
+	 * 
+	 * @param store
+	 *            the store of the lines
+	 * @param neighbours
+	 *            the neighbours of the center line
+	 * @param neighbourDistances
+	 *            the array to store the distances into, at least of the size
+	 *            of the neighbours
+	 */
+	public void getDistances(LineStore store, IntList neighbours,
+			double[] neighbourDistances) {
+		int recorded = 0;
+		for (int i = 0; i < neighbours.size(); i++) {
+			int neighbour = neighbours.get(i);
+			while (recorded < lines.size()
+					&& lines.get(recorded) != neighbour) {
+				recorded++;
+			}
+			if (recorded < lines.size()) {
+				neighbourDistances[i] = distances[recorded++];
+			} else {
+				neighbourDistances[i] = distanceMeasure.dist(store, neighbour,
+						center);
+			}
+		}
+	}
+
+	@Override
+	protected double dist(Line line1, Line line2) {
+		return distanceMeasure.dist(line1, line2);
+	}
+
+	@Override
+	protected double dist(LineStore lines, int index1, int index2) {
+		double distance = distanceMeasure.dist(lines, index1, index2);
+		if (index2 == center) {
+			record(index1, distance);
+		}
+		return distance;
+	}
+
+	@Override
+	protected void dist(LineBlock block, LineStore lines, int index,
+			double[] distances) {
+		distanceMeasure.dist(block, lines, index, distances);
+		if (index == center) {
+			for (int i = 0; i < block.size(); i++) {
+				record(block.getLine(i), distances[i]);
+			}
+		}
+	}
+
+	@Override
+	protected int getNorm() {
+		return distanceMeasure.getNorm();
+	}
+
+	@Override
+	protected double boxDistance(double gapX, double gapY, double gapZ) {
+		return distanceMeasure.boxDistance(gapX, gapY, gapZ);
+	}
+
+	private void record(int line, double distance) {
+		if (lines.size() == distances.length) {
+			double[] grown = new double[2 * distances.length];
+			System.arraycopy(distances, 0, grown, 0, distances.length);
+			distances = grown;
+		}
+		distances[lines.size()] = distance;
+		lines.add(line);
+	}
+}
@@ -0,0 +1,173 @@
+package Algorithms;
+
+import java.util.Locale;
+
+/**
+ * K-distance plot of all the lines estimated from a sample by
+ * KDistanceSampler. The plot is given at a number of points, each point has
+ * the rank of a line in the descending plot of all the lines, the estimated
+ * k-distance at that rank and the bootstrap confidence band around it. The
+ * knee of the plot suggests the eps parameter, its k-distance comes with a
+ * confidence interval as well. An exact plot has all the lines sampled and
+ * bands of zero width.
+ *
+ */
+public class SampledKDistancePlot {
+
+	private final int linesCount;
+	private final int order;
+	private final int sampleSize;
+	private final int[] ranks;
+	private final double[] values;
+	private final double[] lowerValues;
+	private final double[] upperValues;
+	private final double confidence;
+	private final int kneePoint;
+	private final double kneeLowerValue;
+	private final double kneeUpperValue;
+	private final boolean exact;
+	private final boolean stable;
+	private final boolean complete;
+
+	SampledKDistancePlot(int linesCount, int order, int sampleSize,
+			int[] ranks, double[] values, double[] lowerValues,
+			double[] upperValues, double confidence, int kneePoint,
+			double kneeLowerValue, double kneeUpperValue, boolean exact,
+			boolean stable, boolean complete) {
+		this.linesCount = linesCount;
+		this.order = order;
+		this.sampleSize = sampleSize;
+		this.ranks = ranks;
+		this.values = values;
+		this.lowerValues = lowerValues;
+		this.upperValues = upperValues;
+		this.confidence = confidence;
+		this.kneePoint = kneePoint;
+		this.kneeLowerValue = kneeLowerValue;
+		this.kneeUpperValue = kneeUpperValue;
+		this.exact = exact;
+		this.stable = stable;
+		this.complete = complete;
+	}
+
+	public int getLinesCount() {
+		return linesCount;
+	}
+
+	public int getOrder() {
+		return order;
+	}
+
+	public int getSampleSize() {
+		return sampleSize;
+	}
+
+	public int getPointsCount() {
+		return ranks.length;
+	}
+
+	/**
+	 * Returns the rank of a point in the descending plot of all the lines
+	 * 
+	 * @param point
+	 *            the index of the point
+	 * @return the rank between 0 and the number of the lines - 1, ascending
+	 *         with the points
+	 */
+	public int getRank(int point) {
+		return ranks[point];
+	}
+
+	/**
+	 * Returns the estimated k-distance of a point
+	 * 
+	 * @param point
+	 *            the index of the point
+	 * @return the k-distance, descending with the points
+	 */
+	public double getValue(int point) {
+		return values[point];
+	}
+
+	public double getLowerValue(int point) {
+		return lowerValues[point];
+	}
+
+	public double getUpperValue(int point) {
+		return upperValues[point];
+	}
+
+	/**
+	 * Returns the confidence level of the bands
+	 * 
+	 * @return the level between 0 and 1
+	 */
+	public double getConfidence() {
+		return confidence;
+	}
+
+	/**
+	 * Returns the point of the knee of the plot
+	 * 
+	 * @return the index of the point, -1 if the plot has no points
+	 */
+	public int getKneePoint() {
+		return kneePoint;
+	}
+
+	/**
+	 * Returns the k-distance at the knee of the plot, the estimate of eps
+	 * 
+	 * @return the k-distance, NaN if the plot has no points
+	 */
+	public double getKneeValue() {
+		return kneePoint < 0 ? Double.NaN : values[kneePoint];
+	}
+
+	public double getKneeLowerValue() {
+		return kneeLowerValue;
+	}
+
+	public double getKneeUpperValue() {
+		return kneeUpperValue;
+	}
+
+	/**
+	 * Determines if all the lines have been sampled
+	 * 
+	 * @return true if the plot is exact
+	 */
+	public boolean isExact() {
+		return exact;
+	}
+
+	/**
+	 * Determines if the knee has moved by at most the tolerance of the
+	 * sampler in the last round
+	 * 
+	 * @return true if the knee is stable, false if the sample has stopped
+	 *         growing at its largest size or after a stop
+	 */
+	public boolean isStable() {
+		return stable;
+	}
+
+	/**
+	 * Determines if the run has not been stopped
+	 * 
+	 * @return false if the plot is estimated from a partial round
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT, "%d-distance plot of %d lines, "
+				+ "%d sampled: knee at eps %.4g in [%.4g, %.4g] at %.1f%%%s%s",
+				order, linesCount, sampleSize, getKneeValue(), kneeLowerValue,
+				kneeUpperValue, 100 * confidence,
+				exact ? ", exact" : stable ? "" : ", not stable",
+				complete ? "" : ", partial");
+	}
+}
@@ -0,0 +1,320 @@
+package Algorithms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import DataStructures.IntList;
+import DataStructures.Line;
+import DataStructures.LineStore;
+
+/**
+ * DBSCAN clustering over a sliding window of a line stream. The window holds
+ * at most the given number of the latest lines which are younger than the
+ * given age, the older lines expire when a new line arrives or the time is
+ * advanced. The window is clustered incrementally, so the work per line is
+ * bounded by the neighbourhoods it touches, and the changed clusters are
+ * reported to the listeners before the call returns. The clusters are the
+ * components of IncrementalDBSCANAnalyzer, which keep their IDs while they
+ * do not split or merge into a larger one.
+ *
+ */
+public class StreamingDBSCANAnalyzer {
+
+	// Window bounds which disable the limit of the line count or of the age
+	public static final int UNBOUNDED_LINES = Integer.MAX_VALUE;
+	public static final long UNBOUNDED_AGE = Long.MAX_VALUE;
+
+	private final int maxLines;
+	private final long maxAge;
+	private final List<IClusterChangeListener> listeners;
+
+	// Lines of the window from the oldest one in a circular buffer
+	private int[] windowLines;
+	private long[] windowTimestamps;
+	private int windowHead;
+	private int windowSize;
+	private long lastTimestamp;
+
+	// Lines changed by the current update, marked with the current stamp,
+	// and the last reported clusters of the lines
+	private final IntList changedLines;
+	private int[] changeStamps;
+	private int changeStamp;
+	private int[] reportedClusters;
+
+	private final WindowAnalyzer analyzer;
+
+	/**
+	 * Creates the analyzer of the empty window
+	 * 
+	 * @param distanceMeasure
+	 *            the measure of the distances between the lines
+	 * @param eps
+	 *            the epsilon parameter
+	 * @param maxLines
+	 *            the largest number of the lines in the window or
+	 *            UNBOUNDED_LINES
+	 * @param maxAge
+	 *            the age at which a line leaves the window, in the units of
+	 *            the timestamps, or UNBOUNDED_AGE
+	 * @throws IllegalArgumentException
+	 *             if eps or a window bound is not positive
+	 */
+	public StreamingDBSCANAnalyzer(AbstractDistanceMeasure distanceMeasure,
+			double eps, int maxLines, long maxAge)
+			throws IllegalArgumentException {
+		if (maxLines < 1 || maxAge < 1) {
+			String errorMessage = "The window bounds must be positive.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		this.maxLines = maxLines;
+		this.maxAge = maxAge;
+		this.listeners = new ArrayList<IClusterChangeListener>();
+		this.windowLines = new int[16];
+		this.windowTimestamps = new long[16];
+		this.lastTimestamp = Long.MIN_VALUE;
+		this.changedLines = new IntList();
+		this.changeStamps = new int[0];
+		this.changeStamp = 1;
+		this.reportedClusters = new int[0];
+		this.analyzer = new WindowAnalyzer(distanceMeasure, eps);
+	}
+
+	/**
+	 * Registers the listener to notify about the cluster changes
+	 * 
+	 * @param listener
+	 *            the listener to add
+	 */
+	public void addClusterChangeListener(IClusterChangeListener listener) {
+		if (listener == null) {
+			String errorMessage = "The listener argument is not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		listeners.add(listener);
+	}
+
+	/**
+	 * Unregisters the listener
+	 * 
+	 * @param listener
+	 *            the listener to remove
+	 */
+	public void removeClusterChangeListener(IClusterChangeListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Returns the number of the lines in the window
+	 * 
+	 * @return the size of the window
+	 */
+	public int size() {
+		return this.windowSize;
+	}
+
+	/**
+	 * Determines if the line with the given index is in the window
+	 * 
+	 * @param line
+	 *            the index of the line
+	 * @return true if the line is in the window
+	 */
+	public boolean contains(int line) {
+		return this.analyzer.contains(line);
+	}
+
+	/**
+	 * Returns the last reported cluster of the line
+	 * 
+	 * @param line
+	 *            the index of the line
+	 * @return the cluster or NO_COMPONENT for a noise line or a line out of
+	 *         the window
+	 */
+	public int getCluster(int line) {
+		return analyzer.contains(line) ? reportedClusters[line]
+				: IncrementalDBSCANAnalyzer.NO_COMPONENT;
+	}
+
+	/**
+	 * Returns the store of the lines, see DynamicGridIndex.getLines
+	 * 
+	 * @return the store of the lines
+	 */
+	public LineStore getLines() {
+		return this.analyzer.getLines();
+	}
+
+	/**
+	 * Assigns the cluster IDs of a DBSCAN run over the window to the lines in
+	 * the store, see IncrementalDBSCANAnalyzer.assignClusters
+	 * 
+	 * @return the number of the clusters
+	 */
+	public int assignClusters() {
+		return this.analyzer.assignClusters();
+	}
+
+	/**
+	 * Adds the line arriving at the given time to the window
+	 * 
+	 * @param line
+	 *            the arriving line
+	 * @param timestamp
+	 *            the arrival time, not smaller than the previous one
+	 * @return the index of the line in the store
+	 * @throws IllegalArgumentException
+	 *             if the line is null or the time goes back
+	 */
+	public int addLine(Line line, long timestamp)
+			throws IllegalArgumentException {
+		if (line == null) {
+			String errorMessage = "The line argument is not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		return addLine(line.getAx(), line.getAy(), line.getAz(), line.getDx(),
+				line.getDy(), line.getDz(), timestamp);
+	}
+
+	/**
+	 * Adds the line arriving at the given time to the window. The expired
+	 * lines and the oldest lines exceeding the size of the window leave it
+	 * first.
+	 * 
+	 * @param timestamp
+	 *            the arrival time, not smaller than the previous one
+	 * @return the index of the line in the store
+	 * @throws IllegalArgumentException
+	 *             if the time goes back
+	 */
+	public int addLine(float absX, float absY, float absZ, float dirX,
+			float dirY, float dirZ, long timestamp)
+			throws IllegalArgumentException {
+		advance(timestamp);
+		while (windowSize >= maxLines) {
+			expireOldest();
+		}
+
+		int line = analyzer.addLine(absX, absY, absZ, dirX, dirY, dirZ);
+		if (windowSize == windowLines.length) {
+			growWindow();
+		}
+		int tail = (windowHead + windowSize++) % windowLines.length;
+		windowLines[tail] = line;
+		windowTimestamps[tail] = timestamp;
+		reportChanges();
+		return line;
+	}
+
+	/**
+	 * Moves the time of the window forward, the expired lines leave it
+	 * 
+	 * @param timestamp
+	 *            the current time, not smaller than the previous one
+	 * @throws IllegalArgumentException
+	 *             if the time goes back
+	 */
+	public void advanceTime(long timestamp) throws IllegalArgumentException {
+		advance(timestamp);
+		reportChanges();
+	}
+
+	private void advance(long timestamp) throws IllegalArgumentException {
+		if (timestamp < lastTimestamp) {
+			String errorMessage = "The timestamp can not precede the "
+					+ "previous one.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		lastTimestamp = timestamp;
+		while (windowSize > 0
+				&& timestamp - windowTimestamps[windowHead] >= maxAge) {
+			expireOldest();
+		}
+	}
+
+	/**
+	 * Removes the oldest line from the window and notifies the listeners
+	 */
+	private void expireOldest() {
+		int line = windowLines[windowHead];
+		windowHead = (windowHead + 1) % windowLines.length;
+		windowSize--;
+		analyzer.removeLine(line);
+
+		int cluster = reportedClusters[line];
+		reportedClusters[line] = IncrementalDBSCANAnalyzer.NO_COMPONENT;
+		for (IClusterChangeListener listener : listeners) {
+			listener.lineExpired(line, cluster);
+		}
+	}
+
+	/**
+	 * Notifies the listeners about the lines of the window whose cluster
+	 * differs from the reported one
+	 */
+	private void reportChanges() {
+		for (int i = 0; i < changedLines.size(); i++) {
+			int line = changedLines.get(i);
+			if (!analyzer.contains(line)) {
+				continue;
+			}
+
+			int cluster = analyzer.getComponent(line);
+			if (cluster != reportedClusters[line]) {
+				int oldCluster = reportedClusters[line];
+				reportedClusters[line] = cluster;
+				for (IClusterChangeListener listener : listeners) {
+					listener.clusterChanged(line, oldCluster, cluster);
+				}
+			}
+		}
+		changedLines.clear();
+		changeStamp++;
+	}
+
+	private void growWindow() {
+		int[] lines = new int[2 * windowLines.length];
+		long[] timestamps = new long[lines.length];
+		for (int i = 0; i < windowSize; i++) {
+			lines[i] = windowLines[(windowHead + i) % windowLines.length];
+			timestamps[i] = windowTimestamps[(windowHead + i)
+					% windowLines.length];
+		}
+		windowLines = lines;
+		windowTimestamps = timestamps;
+		windowHead = 0;
+	}
+
+	/**
+	 * Incremental analyzer of the window collecting the changed lines
+	 */
+	private class WindowAnalyzer extends IncrementalDBSCANAnalyzer {
+
+		public WindowAnalyzer(AbstractDistanceMeasure distanceMeasure,
+				double eps) throws IllegalArgumentException {
+			super(distanceMeasure, eps);
+		}
+
+		@Override
+		protected void lineChanged(int line) {
+			if (line >= changeStamps.length) {
+				int capacity = Math.max(line + 1, getLines().size());
+				int oldCapacity = reportedClusters.length;
+				changeStamps = Arrays.copyOf(changeStamps, capacity);
+				reportedClusters = Arrays.copyOf(reportedClusters, capacity);
+				Arrays.fill(reportedClusters, oldCapacity, capacity,
+						IncrementalDBSCANAnalyzer.NO_COMPONENT);
+			}
+			if (changeStamps[line] != changeStamp) {
+				changeStamps[line] = changeStamp;
+				changedLines.add(line);
+			}
+		}
+	}
+}
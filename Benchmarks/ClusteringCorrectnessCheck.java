@@ -0,0 +1,476 @@
+package Benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import Algorithms.AbstractDistanceMeasure;
+import Algorithms.ApproximateDBSCANAnalyzer;
+import Algorithms.BoundingVolumeHierarchy;
+import Algorithms.ChebyshevDistanceMeasure;
+import Algorithms.ClusteringControl;
+import Algorithms.DBSCANAnalyzer;
+import Algorithms.EucledianDistanceMeasure;
+import Algorithms.GridIndex;
+import Algorithms.IncrementalDBSCANAnalyzer;
+import Algorithms.INeighbourhoodIndex;
+import Algorithms.KDistanceSampler;
+import Algorithms.LinearScanIndex;
+import Algorithms.LocalitySensitiveHashIndex;
+import Algorithms.ManhattanDistanceMeasure;
+import Algorithms.NeighbourhoodCache;
+import Algorithms.OPTICSAnalyzer;
+import Algorithms.OutOfCoreDBSCANAnalyzer;
+import Algorithms.ParameterSweep;
+import Algorithms.PartitionedDBSCANAnalyzer;
+import Algorithms.ParallelDBSCANAnalyzer;
+import Algorithms.SampledKDistancePlot;
+import DataStructures.HeapLineStore;
+import DataStructures.IntList;
+import DataStructures.Line;
+import DataStructures.LineStore;
+import DataStructures.Object3D;
+import Utilities.LineBundleGenerator;
+import Utilities.LineUtils;
+import Utilities.VectorUtils;
+
+/**
+ * Correctness harness of the optimized paths. The reference labels are
+ * computed from the definition of DBSCAN with the plain distance kernel over
+ * all the pairs of lines: the clusters are the components of the core lines
+ * numbered in the order of their smallest core line and a border line gets
+ * the smallest cluster among its core neighbours. The labels of every index,
+ * the hash index with buckets wide enough to be exact among them, of the
+ * parallel and of the incremental analyzer, of the runs with a neighbourhood
+ * cache, of the partitioned and of the out-of-core analyzer and of the
+ * parameter sweep for several MinPts values must be equal to them,
+ * the clustering extracted from the OPTICS ordering must have the same core
+ * and noise lines, the approximate clustering must have the same core and
+ * noise lines and clusters between those of eps and of the enlarged eps,
+ * and the k-distance plots, also the one sampled from all the lines, must be
+ * equal to the sorted reference distances. The out-of-core analyzer is
+ * checked also on a larger set with a far outlier against the labels of
+ * DBSCANAnalyzer. The mismatches are printed and the exit status is 1 if
+ * there are any.
+ *
+ * Usage: ClusteringCorrectnessCheck [size [seeds]]
+ *
+ */
+public class ClusteringCorrectnessCheck {
+
+	private static final int MIN_PTS = 2 * Object3D.SPACE_DIMENSION - 1;
+	private static final double[] EPS_VALUES = { 1, 2, 4 };
+	private static final int[] SWEEP_MIN_PTS_VALUES = { 2, MIN_PTS, 12 };
+	private static final int PARTITIONS = 3;
+	private static final double APPROXIMATION_RHO = 0.5;
+	private static final double LSH_BUCKET_WIDTH = 1e9;
+
+	// The skewed lines are more than the group of the smallest budget
+	private static final int SKEWED_SIZE = 40000;
+	private static final long SKEWED_SEED = 1;
+	private static final double SKEWED_EPS = 0.5;
+	private static final float SKEWED_OUTLIER = 1e7f;
+
+	private static int failuresCount;
+
+	public static void main(String[] args) {
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 3000;
+		int seeds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+		AbstractDistanceMeasure[] measures = { new ManhattanDistanceMeasure(),
+				new EucledianDistanceMeasure(),
+				new ChebyshevDistanceMeasure() };
+		int[] norms = { VectorUtils.MANHATTAN_NORM,
+				VectorUtils.EUCLEDIAN_NORM, VectorUtils.CHEBYSHEV_NORM };
+		ForkJoinPool pool = new ForkJoinPool();
+		int checksCount = 0;
+		try {
+			for (int seed = 1; seed <= seeds; seed++) {
+				LineStore lines = new LineBundleGenerator(seed, 10,
+						1 + seed % 3, 10, 0.2, 0.3).generate(size);
+				for (int m = 0; m < measures.length; m++) {
+					for (double eps : EPS_VALUES) {
+						String name = "seed " + seed + " norm " + norms[m]
+								+ " eps " + eps;
+						check(name, lines, measures[m], norms[m], eps, pool);
+						checksCount++;
+					}
+				}
+			}
+			checkSkewed();
+			checksCount++;
+		} finally {
+			pool.shutdown();
+		}
+
+		System.out.println(checksCount + " configurations checked, "
+				+ failuresCount + " failures");
+		if (failuresCount > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Checks the out-of-core analyzer on lines more than the groups sorted in
+	 * memory with a far outlier squeezing all the other lines into one cell
+	 * of the Z-order curve, against the labels of DBSCANAnalyzer
+	 */
+	private static void checkSkewed() {
+		LineStore generated = new LineBundleGenerator(SKEWED_SEED, 10, 2, 10,
+				0.2, 0.3).generate(SKEWED_SIZE);
+		LineStore lines = new HeapLineStore(SKEWED_SIZE + 1);
+		for (int line = 0; line < SKEWED_SIZE; line++) {
+			lines.setLine(line, generated.getAx(line), generated.getAy(line),
+					generated.getAz(line), generated.getDx(line),
+					generated.getDy(line), generated.getDz(line));
+		}
+		lines.setLine(SKEWED_SIZE, SKEWED_OUTLIER, SKEWED_OUTLIER,
+				SKEWED_OUTLIER, 1, 1, 1);
+
+		AbstractDistanceMeasure measure = new EucledianDistanceMeasure();
+		new DBSCANAnalyzer(measure, SKEWED_EPS).performClustering(
+				new BoundingVolumeHierarchy(lines));
+		int[] expected = new int[lines.size()];
+		for (int line = 0; line < expected.length; line++) {
+			expected[line] = lines.getCluster(line);
+		}
+
+		lines.resetClusters();
+		new OutOfCoreDBSCANAnalyzer(measure, SKEWED_EPS,
+				OutOfCoreDBSCANAnalyzer.MIN_MEMORY_BUDGET, null)
+				.performClustering(lines);
+		compare("skewed outOfCore", expected, lines, false);
+	}
+
+	/**
+	 * Checks all the paths against the reference on one configuration
+	 */
+	private static void check(String name, LineStore lines,
+			AbstractDistanceMeasure measure, int norm, double eps,
+			ForkJoinPool pool) {
+		int size = lines.size();
+		double[][] distances = new double[size][size];
+		for (int line = 0; line < size; line++) {
+			for (int neighbour = 0; neighbour < size; neighbour++) {
+				distances[line][neighbour] = LineUtils
+						.computeDistanceBetweenTheLines(lines, neighbour, line,
+								norm, null);
+			}
+		}
+		int[] reference = referenceLabels(distances, eps, MIN_PTS);
+
+		// the buckets of the hash index are wide enough to hold all the lines
+		INeighbourhoodIndex[] indices = { new LinearScanIndex(lines),
+				new GridIndex(lines, eps), new BoundingVolumeHierarchy(lines),
+				new LocalitySensitiveHashIndex(lines, LSH_BUCKET_WIDTH, 2, 2,
+						1) };
+		String[] indexNames = { "linearScan", "grid", "bvh", "lsh" };
+		for (int i = 0; i < indices.length; i++) {
+			lines.resetClusters();
+			new DBSCANAnalyzer(measure, eps).performClustering(indices[i]);
+			compare(name + " " + indexNames[i], reference, lines, false);
+
+			lines.resetClusters();
+			new ParallelDBSCANAnalyzer(measure, eps, pool)
+					.performClustering(indices[i]);
+			compare(name + " parallel " + indexNames[i], reference, lines,
+					false);
+		}
+
+		// the distance store caches every pair, the small cache only some
+		// neighbourhoods, each cache is checked on a first and a reused run
+		NeighbourhoodCache[] caches = {
+				new NeighbourhoodCache(8L * size * size),
+				new NeighbourhoodCache(32L * size) };
+		for (int c = 0; c < caches.length; c++) {
+			DBSCANAnalyzer analyzer = new DBSCANAnalyzer(measure, eps);
+			analyzer.setCache(caches[c]);
+			DBSCANAnalyzer parallel = new ParallelDBSCANAnalyzer(measure, eps,
+					pool);
+			parallel.setCache(caches[c]);
+			for (int run = 0; run < 2; run++) {
+				lines.resetClusters();
+				analyzer.performClustering(indices[2]);
+				compare(name + " cache " + c + " run " + run, reference, lines,
+						false);
+				lines.resetClusters();
+				parallel.performClustering(indices[2]);
+				compare(name + " parallel cache " + c + " run " + run,
+						reference, lines, false);
+			}
+		}
+
+		// the sweep graph is built for the largest eps and cut down
+		ParameterSweep sweep = new ParameterSweep(indices[2], measure,
+				EPS_VALUES[EPS_VALUES.length - 1], pool);
+		for (int minPts : SWEEP_MIN_PTS_VALUES) {
+			int[] expected = minPts == MIN_PTS ? reference : referenceLabels(
+					distances, eps, minPts);
+			compare(name + " sweep minPts " + minPts, expected,
+					sweep.computeLabels(eps, minPts));
+		}
+
+		lines.resetClusters();
+		new PartitionedDBSCANAnalyzer(measure, eps, PARTITIONS)
+				.performClustering(indices[0]);
+		compare(name + " partitioned", reference, lines, false);
+
+		// the smallest budget caches a few blocks
+		lines.resetClusters();
+		new OutOfCoreDBSCANAnalyzer(measure, eps,
+				OutOfCoreDBSCANAnalyzer.MIN_MEMORY_BUDGET, null)
+				.performClustering(lines);
+		compare(name + " outOfCore", reference, lines, false);
+
+		// the approximate clusters lie between those of eps and of the
+		// enlarged eps
+		lines.resetClusters();
+		ApproximateDBSCANAnalyzer.Result result = new ApproximateDBSCANAnalyzer(
+				measure, eps, APPROXIMATION_RHO).performApproximateClustering(
+				indices[1], null);
+		compareApproximate(name + " approximate", reference, referenceLabels(
+				distances, (1 + APPROXIMATION_RHO) * eps, MIN_PTS),
+				result.getCoreLinesCount(), lines);
+
+		IncrementalDBSCANAnalyzer incremental = new IncrementalDBSCANAnalyzer(
+				measure, eps);
+		for (int line = 0; line < size; line++) {
+			incremental.addLine(lines.getLine(line));
+		}
+		incremental.assignClusters();
+		compare(name + " incremental", reference, incremental.getLines(),
+				false);
+
+		lines.resetClusters();
+		new OPTICSAnalyzer(measure, 2 * eps).computeOrdering(lines)
+				.extractDBSCANClustering(eps);
+		compare(name + " optics", reference, lines, true);
+
+		// the plots do not depend on eps
+		if (eps == EPS_VALUES[0]) {
+			double[] expected = new double[size];
+			for (int line = 0; line < size; line++) {
+				double[] row = distances[line].clone();
+				row[line] = Double.POSITIVE_INFINITY;
+				Arrays.sort(row);
+				expected[line] = row[MIN_PTS - 1];
+			}
+			Arrays.sort(expected);
+			for (int i = 0, j = size - 1; i < j; i++, j--) {
+				double value = expected[i];
+				expected[i] = expected[j];
+				expected[j] = value;
+			}
+
+			compare(name + " kDistance bvh", expected,
+					new DBSCANAnalyzer(measure)
+							.getDistanceValuesForEpsilonEstimate(
+									new BoundingVolumeHierarchy(lines)));
+			compare(name + " kDistance parallel bvh", expected,
+					new ParallelDBSCANAnalyzer(measure, pool)
+							.getDistanceValuesForEpsilonEstimate(
+									new BoundingVolumeHierarchy(lines)));
+
+			// a sample reaching the size of the data set takes all the lines
+			KDistanceSampler sampler = new KDistanceSampler(size);
+			sampler.setSampleSizes(size / 4, size);
+			sampler.setKneeTolerance(0);
+			compareSampled(name + " kDistance sampled", expected,
+					new ParallelDBSCANAnalyzer(measure, pool)
+							.getSampledDistanceValuesForEpsilonEstimate(
+									new BoundingVolumeHierarchy(lines),
+									sampler, (ClusteringControl) null));
+		}
+	}
+
+	/**
+	 * Computes the labels of DBSCAN from its definition
+	 */
+	private static int[] referenceLabels(double[][] distances, double eps,
+			int minPts) {
+		int size = distances.length;
+		boolean[] core = new boolean[size];
+		for (int line = 0; line < size; line++) {
+			int neighboursCount = 0;
+			for (int neighbour = 0; neighbour < size; neighbour++) {
+				if (neighbour != line && distances[line][neighbour] <= eps) {
+					neighboursCount++;
+				}
+			}
+			core[line] = neighboursCount >= minPts;
+		}
+
+		int[] labels = new int[size];
+		Arrays.fill(labels, Line.NO_CLUSTER_ASSIGNED);
+		int clustersCount = 0;
+		IntList stack = new IntList();
+		for (int line = 0; line < size; line++) {
+			if (!core[line] || labels[line] != Line.NO_CLUSTER_ASSIGNED) {
+				continue;
+			}
+
+			labels[line] = clustersCount;
+			stack.add(line);
+			while (stack.size() > 0) {
+				int current = stack.removeLast();
+				for (int neighbour = 0; neighbour < size; neighbour++) {
+					if (neighbour != current && core[neighbour]
+							&& labels[neighbour] == Line.NO_CLUSTER_ASSIGNED
+							&& distances[current][neighbour] <= eps) {
+						labels[neighbour] = clustersCount;
+						stack.add(neighbour);
+					}
+				}
+			}
+			clustersCount++;
+		}
+
+		for (int line = 0; line < size; line++) {
+			if (core[line]) {
+				continue;
+			}
+			for (int neighbour = 0; neighbour < size; neighbour++) {
+				if (core[neighbour]
+						&& distances[line][neighbour] <= eps
+						&& (labels[line] == Line.NO_CLUSTER_ASSIGNED
+								|| labels[neighbour] < labels[line])) {
+					labels[line] = labels[neighbour];
+				}
+			}
+		}
+
+		// mark the border lines to let them be skipped
+		for (int line = 0; line < size; line++) {
+			if (!core[line] && labels[line] != Line.NO_CLUSTER_ASSIGNED) {
+				labels[line] = -labels[line] - 2;
+			}
+		}
+		return labels;
+	}
+
+	/**
+	 * Compares the labels of the store with the reference, the border lines
+	 * are skipped if requested
+	 */
+	private static void compare(String name, int[] reference, LineStore lines,
+			boolean skipBorderLines) {
+		int mismatchesCount = 0;
+		for (int line = 0; line < reference.length; line++) {
+			int expected = reference[line];
+			if (expected < Line.NO_CLUSTER_ASSIGNED) {
+				if (skipBorderLines) {
+					continue;
+				}
+				expected = -expected - 2;
+			}
+			if (lines.getCluster(line) != expected) {
+				mismatchesCount++;
+			}
+		}
+		report(name, mismatchesCount);
+	}
+
+	/**
+	 * Checks the guarantees of the approximate labels of the store: the core
+	 * lines and the noise lines are those of the reference, the reference
+	 * clusters of the core lines are not split and the clusters of the core
+	 * lines are not split by the upper reference of the enlarged eps
+	 */
+	private static void compareApproximate(String name, int[] reference,
+			int[] upperReference, int coreLinesCount, LineStore lines) {
+		int mismatchesCount = 0;
+		int referenceCoreLinesCount = 0;
+		int[] approximateClusters = new int[reference.length];
+		int[] upperClusters = new int[reference.length];
+		Arrays.fill(approximateClusters, Line.NO_CLUSTER_ASSIGNED);
+		Arrays.fill(upperClusters, Line.NO_CLUSTER_ASSIGNED);
+		for (int line = 0; line < reference.length; line++) {
+			int cluster = lines.getCluster(line);
+			if (reference[line] == Line.NO_CLUSTER_ASSIGNED) {
+				if (cluster != Line.NO_CLUSTER_ASSIGNED) {
+					mismatchesCount++;
+				}
+				continue;
+			}
+			if (cluster == Line.NO_CLUSTER_ASSIGNED) {
+				mismatchesCount++;
+				continue;
+			}
+			if (reference[line] < Line.NO_CLUSTER_ASSIGNED) {
+				continue;
+			}
+
+			referenceCoreLinesCount++;
+			if (approximateClusters[reference[line]]
+					== Line.NO_CLUSTER_ASSIGNED) {
+				approximateClusters[reference[line]] = cluster;
+			}
+			if (upperClusters[cluster] == Line.NO_CLUSTER_ASSIGNED) {
+				upperClusters[cluster] = upperReference[line];
+			}
+			if (approximateClusters[reference[line]] != cluster
+					|| upperClusters[cluster] != upperReference[line]) {
+				mismatchesCount++;
+			}
+		}
+		if (coreLinesCount != referenceCoreLinesCount) {
+			mismatchesCount++;
+		}
+		report(name, mismatchesCount);
+	}
+
+	/**
+	 * Compares the labels with the reference
+	 */
+	private static void compare(String name, int[] reference, int[] labels) {
+		int mismatchesCount = 0;
+		for (int line = 0; line < reference.length; line++) {
+			int expected = reference[line];
+			if (expected < Line.NO_CLUSTER_ASSIGNED) {
+				expected = -expected - 2;
+			}
+			if (labels[line] != expected) {
+				mismatchesCount++;
+			}
+		}
+		report(name, mismatchesCount);
+	}
+
+	/**
+	 * Compares the k-distance plot values with the reference
+	 */
+	private static void compare(String name, double[] expected,
+			double[] values) {
+		int mismatchesCount = 0;
+		for (int i = 0; i < expected.length; i++) {
+			if (Double.compare(expected[i], values[i]) != 0) {
+				mismatchesCount++;
+			}
+		}
+		report(name, mismatchesCount);
+	}
+
+	/**
+	 * Checks that the sampled plot is exact and its points and bands are
+	 * the values of the expected plot at their ranks
+	 */
+	private static void compareSampled(String name, double[] expected,
+			SampledKDistancePlot plot) {
+		int mismatchesCount = plot.isExact() ? 0 : 1;
+		for (int point = 0; point < plot.getPointsCount(); point++) {
+			double value = expected[plot.getRank(point)];
+			if (Double.compare(value, plot.getValue(point)) != 0
+					|| Double.compare(value, plot.getLowerValue(point)) != 0
+					|| Double.compare(value, plot.getUpperValue(point)) != 0) {
+				mismatchesCount++;
+			}
+		}
+		report(name, mismatchesCount);
+	}
+
+	private static void report(String name, int mismatchesCount) {
+		if (mismatchesCount > 0) {
+			System.out.println(name + ": " + mismatchesCount + " mismatches");
+			failuresCount++;
+		}
+	}
+}
@@ -0,0 +1,372 @@
+package Benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+import Algorithms.AbstractDistanceMeasure;
+import Algorithms.ApproximateDBSCANAnalyzer;
+import Algorithms.BoundingVolumeHierarchy;
+import Algorithms.ChebyshevDistanceMeasure;
+import Algorithms.DBSCANAnalyzer;
+import Algorithms.EucledianDistanceMeasure;
+import Algorithms.GridIndex;
+import Algorithms.INearestNeighbourIndex;
+import Algorithms.IProgressListener;
+import Algorithms.INeighbourhoodIndex;
+import Algorithms.KDistanceSampler;
+import Algorithms.LinearScanIndex;
+import Algorithms.LocalitySensitiveHashIndex;
+import Algorithms.ManhattanDistanceMeasure;
+import Algorithms.ParallelDBSCANAnalyzer;
+import Algorithms.ParameterSweep;
+import Algorithms.SampledKDistancePlot;
+import DataStructures.IntList;
+import DataStructures.Line;
+import DataStructures.LineBlock;
+import DataStructures.LineStore;
+import Utilities.LineBundleGenerator;
+import Utilities.LineUtils;
+import Utilities.VectorUtils;
+
+/**
+ * Benchmark suite of the hot paths: the closest points, the distance kernel of
+ * LineUtils and its batch version, which runs over the Vector API when the
+ * jdk.incubator.vector module is added, and its scalar loop for each of the
+ * norms, the eps-neighbourhood queries of each measure on each index, the exact
+ * and the approximate clustering, the clustering over the hash index, the
+ * parameter sweep and the exact and the sampled k-distance plot. The lines are
+ * produced by LineBundleGenerator with fixed seeds for a dense and a sparse
+ * configuration and each of the given sizes, so the runs are repeatable. Every
+ * benchmark is warmed up before it is measured and the mean, the standard
+ * deviation and the minimum of the measured iterations are reported.
+ *
+ * Usage: LineBenchmark [sizes [seed [filter]]], e.g. LineBenchmark
+ * 5000,20000 1 clustering runs the benchmarks whose names contain
+ * "clustering" on 5000 and on 20000 lines.
+ *
+ */
+public class LineBenchmark {
+
+	private static final int WARMUP_ITERATIONS = 5;
+	private static final int MEASURED_ITERATIONS = 10;
+
+	// Number of the line pairs measured by one iteration of a kernel
+	private static final int KERNEL_PAIRS = 1000000;
+
+	// Number of the query lines of one iteration of a neighbourhood benchmark
+	private static final int QUERIES = 1000;
+
+	// Largest store clustered by the linear scan in reasonable time
+	private static final int MAX_LINEAR_SCAN_SIZE = 20000;
+
+	// The grid cells are as large as the segments, which are longer than eps
+	private static final double SEGMENT_LENGTH = 20;
+	private static final double EPS = 2;
+
+	// Approximation factors of the approximate clustering
+	private static final double[] APPROXIMATION_RHO_VALUES = { 0.1, 1 };
+
+	// Hash tables of the hash index, its buckets are twice as wide as the
+	// segments are long
+	private static final int LSH_TABLES = 8;
+	private static final int LSH_HASHES_PER_TABLE = 2;
+
+	// Consumes the results so that the measured code is not eliminated
+	private static volatile double sink;
+
+	public static void main(String[] args) {
+		String[] sizes = (args.length > 0 ? args[0] : "20000").split(",");
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+		String filter = args.length > 2 ? args[2] : "";
+
+		ForkJoinPool pool = new ForkJoinPool();
+		try {
+			for (String size : sizes) {
+				run(new LineBundleGenerator(seed, 40, 2, SEGMENT_LENGTH, 0.1,
+						0.2).generate(Integer.parseInt(size)), "dense", pool,
+						filter);
+				run(new LineBundleGenerator(seed, 40, 10, SEGMENT_LENGTH, 0.3,
+						0.5).generate(Integer.parseInt(size)), "sparse", pool,
+						filter);
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Runs the benchmarks on the lines of the store
+	 */
+	private static void run(final LineStore lines, String configuration,
+			final ForkJoinPool pool, String filter) {
+		String prefix = configuration + "/" + lines.size() + "/";
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+
+		final Line[] objects = new Line[Math.min(lines.size(), 1000)];
+		for (int i = 0; i < objects.length; i++) {
+			objects[i] = lines.getLine(i);
+		}
+		benchmarks.add(new Benchmark(prefix + "closestPoints", KERNEL_PAIRS) {
+			@Override
+			public double run() {
+				double sum = 0;
+				for (int i = 0; i < KERNEL_PAIRS; i++) {
+					sum += LineUtils
+							.findClosestPointsBetweenTheLines(
+									objects[i % objects.length],
+									objects[(i * 7 + 1) % objects.length])
+							.getLeftElement().getX();
+				}
+				return sum;
+			}
+		});
+
+		String[] normNames = { "manhattan", "eucledian", "chebyshev" };
+		final int[] norms = { VectorUtils.MANHATTAN_NORM,
+				VectorUtils.EUCLEDIAN_NORM, VectorUtils.CHEBYSHEV_NORM };
+		final LineBlock block = new LineBlock(objects.length);
+		for (int i = 0; i < objects.length; i++) {
+			block.add(lines, i);
+		}
+		for (int n = 0; n < norms.length; n++) {
+			final int norm = norms[n];
+			benchmarks.add(new Benchmark(prefix + "distance/" + normNames[n],
+					KERNEL_PAIRS) {
+				@Override
+				public double run() {
+					double sum = 0;
+					for (int i = 0; i < KERNEL_PAIRS; i++) {
+						sum += LineUtils.computeDistanceBetweenTheLines(lines,
+								i % lines.size(), (i * 7 + 1) % lines.size(),
+								norm, null);
+					}
+					return sum;
+				}
+			});
+			benchmarks.add(new Benchmark(prefix + "distance/batch/"
+					+ normNames[n], KERNEL_PAIRS) {
+				@Override
+				public double run() {
+					double sum = 0;
+					double[] distances = new double[block.size()];
+					for (int i = 0; i < KERNEL_PAIRS; i += block.size()) {
+						LineUtils.computeDistancesBetweenTheLines(block, lines,
+								(i * 7 + 1) % lines.size(), norm, distances);
+						sum += distances[i % block.size()];
+					}
+					return sum;
+				}
+			});
+			benchmarks.add(new Benchmark(prefix + "distance/batch/scalar/"
+					+ normNames[n], KERNEL_PAIRS) {
+				@Override
+				public double run() {
+					double sum = 0;
+					double[] distances = new double[block.size()];
+					for (int i = 0; i < KERNEL_PAIRS; i += block.size()) {
+						LineUtils.computeScalarDistancesBetweenTheLines(block,
+								lines, (i * 7 + 1) % lines.size(), norm,
+								distances);
+						sum += distances[i % block.size()];
+					}
+					return sum;
+				}
+			});
+		}
+
+		AbstractDistanceMeasure[] measures = { new ManhattanDistanceMeasure(),
+				new EucledianDistanceMeasure(),
+				new ChebyshevDistanceMeasure() };
+		final LinearScanIndex linearScan = new LinearScanIndex(lines);
+		final GridIndex grid = new GridIndex(lines, SEGMENT_LENGTH);
+		final BoundingVolumeHierarchy hierarchy = new BoundingVolumeHierarchy(
+				lines);
+		INeighbourhoodIndex[] indices = { linearScan, grid, hierarchy };
+		String[] indexNames = { "linearScan", "grid", "bvh" };
+		for (int m = 0; m < measures.length; m++) {
+			for (int i = 0; i < indices.length; i++) {
+				benchmarks.add(neighbourhoodBenchmark(prefix + "neighbours/"
+						+ normNames[m] + "/" + indexNames[i], measures[m],
+						indices[i], i == 0 ? QUERIES / 10 : QUERIES));
+			}
+		}
+
+		final EucledianDistanceMeasure measure = new EucledianDistanceMeasure();
+		int first = lines.size() > MAX_LINEAR_SCAN_SIZE ? 1 : 0;
+		for (int i = first; i < indices.length; i++) {
+			final INeighbourhoodIndex index = indices[i];
+			benchmarks.add(new Benchmark(prefix + "clustering/"
+					+ indexNames[i], 1) {
+				@Override
+				public double run() {
+					new DBSCANAnalyzer(measure, EPS).performClustering(index);
+					return lines.getCluster(0);
+				}
+			});
+		}
+		final LocalitySensitiveHashIndex hashIndex =
+				new LocalitySensitiveHashIndex(lines, 2 * SEGMENT_LENGTH,
+						LSH_TABLES, LSH_HASHES_PER_TABLE, 1);
+		benchmarks.add(new Benchmark(prefix + "clustering/lsh", 1) {
+			@Override
+			public double run() {
+				new DBSCANAnalyzer(measure, EPS).performClustering(hashIndex);
+				return lines.getCluster(0);
+			}
+		});
+		benchmarks.add(new Benchmark(prefix + "clustering/parallel/grid", 1) {
+			@Override
+			public double run() {
+				new ParallelDBSCANAnalyzer(measure, EPS, pool)
+						.performClustering(grid);
+				return lines.getCluster(0);
+			}
+		});
+
+		for (final double rho : APPROXIMATION_RHO_VALUES) {
+			benchmarks.add(new Benchmark(prefix + "clustering/approximate/rho"
+					+ rho + "/grid", 1) {
+				@Override
+				public double run() {
+					return new ApproximateDBSCANAnalyzer(measure, EPS, rho)
+							.performApproximateClustering(grid, null)
+							.getClustersCount();
+				}
+			});
+		}
+
+		// the 40 settings of a tuning grid around eps and the default MinPts
+		final double[] sweepEps = new double[8];
+		for (int i = 0; i < sweepEps.length; i++) {
+			sweepEps[i] = EPS * (i + 1) / 4;
+		}
+		final int[] sweepMinPts = { 3, 4, 5, 7, 10 };
+		benchmarks.add(new Benchmark(prefix + "clustering/sweep40/grid", 1) {
+			@Override
+			public double run() {
+				return new ParameterSweep(grid, measure,
+						sweepEps[sweepEps.length - 1], pool).sweep(sweepEps,
+						sweepMinPts).getClustersCount(0, 0);
+			}
+		});
+
+		INearestNeighbourIndex[] nearestIndices = { linearScan, hierarchy };
+		for (int i = first; i < nearestIndices.length; i++) {
+			final INearestNeighbourIndex index = nearestIndices[i];
+			benchmarks.add(new Benchmark(prefix + "kDistance/"
+					+ indexNames[2 * i], 1) {
+				@Override
+				public double run() {
+					return new DBSCANAnalyzer(measure)
+							.getDistanceValuesForEpsilonEstimate(index)[0];
+				}
+			});
+		}
+		benchmarks.add(new Benchmark(prefix + "kDistance/parallel/bvh", 1) {
+			@Override
+			public double run() {
+				return new ParallelDBSCANAnalyzer(measure, pool)
+						.getDistanceValuesForEpsilonEstimate(hierarchy)[0];
+			}
+		});
+		benchmarks.add(new Benchmark(prefix + "kDistance/sampled/bvh", 1) {
+			@Override
+			public double run() {
+				SampledKDistancePlot plot = new DBSCANAnalyzer(measure)
+						.getSampledDistanceValuesForEpsilonEstimate(hierarchy,
+								new KDistanceSampler(1),
+								(IProgressListener) null);
+				return plot.getKneeValue();
+			}
+		});
+
+		for (Benchmark benchmark : benchmarks) {
+			if (benchmark.name.contains(filter)) {
+				benchmark.measure();
+			}
+		}
+	}
+
+	/**
+	 * Creates the benchmark of the neighbourhood queries of evenly spread
+	 * lines
+	 */
+	private static Benchmark neighbourhoodBenchmark(String name,
+			final AbstractDistanceMeasure measure,
+			final INeighbourhoodIndex index, final int queries) {
+		return new Benchmark(name, queries) {
+			@Override
+			public double run() {
+				IntList neighbours = new IntList();
+				int size = index.getLines().size();
+				double sum = 0;
+				for (int i = 0; i < queries; i++) {
+					neighbours.clear();
+					index.collectNeighbours(measure,
+							(int) ((long) i * size / queries), EPS, neighbours);
+					sum += neighbours.size();
+				}
+				return sum;
+			}
+		};
+	}
+
+	/**
+	 * Measured piece of code
+	 */
+	private static abstract class Benchmark {
+
+		private final String name;
+		private final int operations;
+
+		/**
+		 * @param name
+		 *            the name of the benchmark
+		 * @param operations
+		 *            the number of the operations performed by one run
+		 */
+		public Benchmark(String name, int operations) {
+			this.name = name;
+			this.operations = operations;
+		}
+
+		/**
+		 * Runs the measured code once
+		 * 
+		 * @return a value depending on the result of the code
+		 */
+		public abstract double run();
+
+		/**
+		 * Warms the code up, measures it and prints the times per run and per
+		 * operation in milliseconds and nanoseconds
+		 */
+		public void measure() {
+			for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+				sink += run();
+			}
+
+			double[] times = new double[MEASURED_ITERATIONS];
+			double mean = 0;
+			double min = Double.POSITIVE_INFINITY;
+			for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+				long start = System.nanoTime();
+				sink += run();
+				times[i] = (System.nanoTime() - start) / 1e6;
+				mean += times[i] / MEASURED_ITERATIONS;
+				min = Math.min(min, times[i]);
+			}
+
+			double variance = 0;
+			for (double time : times) {
+				variance += (time - mean) * (time - mean);
+			}
+			double deviation = Math.sqrt(variance / (MEASURED_ITERATIONS - 1));
+			System.out.println(String.format(Locale.ROOT,
+					"%-45s %12.3f ms/run +- %8.3f (min %10.3f) %12.1f ns/op",
+					name, mean, deviation, min, mean * 1e6 / operations));
+		}
+	}
+}
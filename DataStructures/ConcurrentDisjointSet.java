@@ -0,0 +1,82 @@
+package DataStructures;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Lock-free disjoint-set forest over the elements 0..size-1. A root is always
+ * linked under the smaller root, so the representative of every set is its
+ * smallest element. The paths are halved with compare-and-set while finding,
+ * any number of threads may find and union concurrently.
+ *
+ */
+public class ConcurrentDisjointSet {
+
+	private final AtomicIntegerArray m_parents;
+
+	/**
+	 * Creates the forest where every element is a set of its own
+	 * 
+	 * @param size
+	 *            the number of elements
+	 */
+	public ConcurrentDisjointSet(int size) {
+		this.m_parents = new AtomicIntegerArray(size);
+		for (int i = 0; i < size; i++) {
+			m_parents.set(i, i);
+		}
+	}
+
+	/**
+	 * Finds the representative of the set of the element
+	 * 
+	 * @param element
+	 *            the element to look for
+	 * @return the smallest element of the set
+	 */
+	public int find(int element) {
+		int current = element;
+		int parent = m_parents.get(current);
+		while (parent != current) {
+			int grandParent = m_parents.get(parent);
+			if (parent != grandParent) {
+				m_parents.compareAndSet(current, parent, grandParent);
+			}
+			current = parent;
+			parent = m_parents.get(current);
+		}
+		return current;
+	}
+
+	/**
+	 * Merges the sets of two elements
+	 * 
+	 * @param element1
+	 *            the element of the first set
+	 * @param element2
+	 *            the element of the second set
+	 */
+	public void union(int element1, int element2) {
+		while (true) {
+			int root1 = find(element1);
+			int root2 = find(element2);
+			if (root1 == root2) {
+				return;
+			}
+
+			int larger = Math.max(root1, root2);
+			int smaller = Math.min(root1, root2);
+			if (m_parents.compareAndSet(larger, larger, smaller)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of elements
+	 * 
+	 * @return the size of the forest
+	 */
+	public int size() {
+		return m_parents.length();
+	}
+}
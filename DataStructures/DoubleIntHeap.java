@@ -0,0 +1,140 @@
+package DataStructures;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of primitive (double key, int value) pairs. A max-heap is
+ * obtained by adding the negated keys.
+ *
+ */
+public class DoubleIntHeap {
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private double[] m_keys;
+	private int[] m_values;
+	private int m_size;
+
+	public DoubleIntHeap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public DoubleIntHeap(int capacity) throws IllegalArgumentException {
+		if (capacity < 0) {
+			String errorMessage = "The capacity argument is negative.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		this.m_keys = new double[Math.max(capacity, 1)];
+		this.m_values = new int[Math.max(capacity, 1)];
+		this.m_size = 0;
+	}
+
+	/**
+	 * Adds the pair to the heap
+	 * 
+	 * @param key
+	 *            the key to order the pair by
+	 * @param value
+	 *            the value of the pair
+	 */
+	public void add(double key, int value) {
+		if (m_size == m_keys.length) {
+			m_keys = Arrays.copyOf(m_keys, m_keys.length * 2);
+			m_values = Arrays.copyOf(m_values, m_values.length * 2);
+		}
+
+		int position = m_size++;
+		while (position > 0) {
+			int parent = (position - 1) >>> 1;
+			if (m_keys[parent] <= key) {
+				break;
+			}
+			m_keys[position] = m_keys[parent];
+			m_values[position] = m_values[parent];
+			position = parent;
+		}
+		m_keys[position] = key;
+		m_values[position] = value;
+	}
+
+	/**
+	 * Returns the smallest key of the heap
+	 * 
+	 * @return the smallest key
+	 */
+	public double peekKey() {
+		return m_keys[0];
+	}
+
+	/**
+	 * Returns the value of the pair with the smallest key
+	 * 
+	 * @return the value of the top pair
+	 */
+	public int peekValue() {
+		return m_values[0];
+	}
+
+	/**
+	 * Removes the pair with the smallest key from the heap
+	 * 
+	 * @return the value of the removed pair
+	 * @throws IllegalStateException
+	 *             if the heap is empty
+	 */
+	public int poll() throws IllegalStateException {
+		if (m_size == 0) {
+			String errorMessage = "The heap is empty.";
+			throw new IllegalStateException(errorMessage);
+		}
+
+		int top = m_values[0];
+		m_size--;
+		double key = m_keys[m_size];
+		int value = m_values[m_size];
+		int position = 0;
+		while (true) {
+			int child = 2 * position + 1;
+			if (child >= m_size) {
+				break;
+			}
+			if (child + 1 < m_size && m_keys[child + 1] < m_keys[child]) {
+				child++;
+			}
+			if (key <= m_keys[child]) {
+				break;
+			}
+			m_keys[position] = m_keys[child];
+			m_values[position] = m_values[child];
+			position = child;
+		}
+		m_keys[position] = key;
+		m_values[position] = value;
+		return top;
+	}
+
+	/**
+	 * Returns the number of pairs in the heap
+	 * 
+	 * @return the size of the heap
+	 */
+	public int size() {
+		return m_size;
+	}
+
+	/**
+	 * Determines if the heap holds no pairs
+	 * 
+	 * @return true if the heap is empty
+	 */
+	public boolean isEmpty() {
+		return m_size == 0;
+	}
+
+	/**
+	 * Removes all the pairs from the heap keeping its capacity
+	 */
+	public void clear() {
+		m_size = 0;
+	}
+}
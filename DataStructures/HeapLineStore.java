@@ -0,0 +1,103 @@
+package DataStructures;
+
+/**
+ * Store of the lines kept in the primitive columns on the heap, a line costs
+ * 24 bytes of coordinates plus its cluster identifier
+ *
+ */
+public class HeapLineStore extends LineStore {
+
+	// Absolute coordinates of the line end points
+	private final float[] m_absX;
+	private final float[] m_absY;
+	private final float[] m_absZ;
+
+	// Directional coordinates from the line start point
+	private final float[] m_dirX;
+	private final float[] m_dirY;
+	private final float[] m_dirZ;
+
+	// Assigned clusters of the lines, see Line.NO_CLUSTER_ASSIGNED
+	private final int[] m_clusterIdentifiers;
+
+	/**
+	 * Creates the store for the given number of lines, all the coordinates
+	 * are zero and no clusters are assigned
+	 * 
+	 * @param size
+	 *            the number of lines in the store
+	 * @throws IllegalArgumentException
+	 *             if the size is negative
+	 */
+	public HeapLineStore(int size) throws IllegalArgumentException {
+		if (size < 0) {
+			String errorMessage = "The size argument is negative.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		this.m_absX = new float[size];
+		this.m_absY = new float[size];
+		this.m_absZ = new float[size];
+		this.m_dirX = new float[size];
+		this.m_dirY = new float[size];
+		this.m_dirZ = new float[size];
+		this.m_clusterIdentifiers = new int[size];
+		resetClusters();
+	}
+
+	@Override
+	public int size() {
+		return m_absX.length;
+	}
+
+	@Override
+	public void setLine(int index, float absX, float absY, float absZ,
+			float dirX, float dirY, float dirZ) {
+		m_absX[index] = absX;
+		m_absY[index] = absY;
+		m_absZ[index] = absZ;
+		m_dirX[index] = dirX;
+		m_dirY[index] = dirY;
+		m_dirZ[index] = dirZ;
+	}
+
+	@Override
+	public float getAx(int index) {
+		return m_absX[index];
+	}
+
+	@Override
+	public float getAy(int index) {
+		return m_absY[index];
+	}
+
+	@Override
+	public float getAz(int index) {
+		return m_absZ[index];
+	}
+
+	@Override
+	public float getDx(int index) {
+		return m_dirX[index];
+	}
+
+	@Override
+	public float getDy(int index) {
+		return m_dirY[index];
+	}
+
+	@Override
+	public float getDz(int index) {
+		return m_dirZ[index];
+	}
+
+	@Override
+	public int getCluster(int index) {
+		return m_clusterIdentifiers[index];
+	}
+
+	@Override
+	public void setCluster(int index, int cluster) {
+		m_clusterIdentifiers[index] = cluster;
+	}
+}
@@ -0,0 +1,139 @@
+package DataStructures;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive int values, used to keep line indices without
+ * boxing them
+ *
+ */
+public class IntList {
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private int[] m_values;
+	private int m_size;
+
+	public IntList() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public IntList(int capacity) throws IllegalArgumentException {
+		if (capacity < 0) {
+			String errorMessage = "The capacity argument is negative.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		this.m_values = new int[Math.max(capacity, 1)];
+		this.m_size = 0;
+	}
+
+	public IntList(IntList other) {
+		this(other.m_size);
+		System.arraycopy(other.m_values, 0, this.m_values, 0, other.m_size);
+		this.m_size = other.m_size;
+	}
+
+	/**
+	 * Appends the value to the end of the list
+	 * 
+	 * @param value
+	 *            the value to append
+	 */
+	public void add(int value) {
+		if (m_size == m_values.length) {
+			m_values = Arrays.copyOf(m_values, m_values.length * 2);
+		}
+		m_values[m_size++] = value;
+	}
+
+	/**
+	 * Returns the value at the given position
+	 * 
+	 * @param index
+	 *            the position in the list
+	 * @return the value stored at the position
+	 */
+	public int get(int index) {
+		return m_values[index];
+	}
+
+	/**
+	 * Replaces the value at the given position
+	 * 
+	 * @param index
+	 *            the position in the list
+	 * @param value
+	 *            the value to store at the position
+	 */
+	public void set(int index, int value) {
+		m_values[index] = value;
+	}
+
+	/**
+	 * Removes the last value of the list
+	 * 
+	 * @return the removed value
+	 */
+	public int removeLast() {
+		return m_values[--m_size];
+	}
+
+	/**
+	 * Removes the first occurrence of the value moving the last value into
+	 * its position, so the order of the values is not kept
+	 * 
+	 * @param value
+	 *            the value to remove
+	 * @return true if the value has been found
+	 */
+	public boolean remove(int value) {
+		for (int i = 0; i < m_size; i++) {
+			if (m_values[i] == value) {
+				m_values[i] = m_values[--m_size];
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the number of values in the list
+	 * 
+	 * @return the size of the list
+	 */
+	public int size() {
+		return m_size;
+	}
+
+	/**
+	 * Determines if the list holds the given value
+	 * 
+	 * @param value
+	 *            the value to look for
+	 * @return true if the value is in the list
+	 */
+	public boolean contains(int value) {
+		for (int i = 0; i < m_size; i++) {
+			if (m_values[i] == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Removes all the values from the list keeping its capacity
+	 */
+	public void clear() {
+		m_size = 0;
+	}
+
+	/**
+	 * Copies the values of the list into a new array
+	 * 
+	 * @return the array of the list values
+	 */
+	public int[] toArray() {
+		return Arrays.copyOf(m_values, m_size);
+	}
+}
@@ -0,0 +1,133 @@
+package DataStructures;
+
+import java.util.Arrays;
+
+/**
+ * Growable block of lines gathered from a store into contiguous primitive
+ * columns, so that the distances from one line to all the lines of the block
+ * can be computed in a single pass over the columns. The block remembers the
+ * store index of every gathered line.
+ *
+ */
+public class LineBlock {
+	private static final int DEFAULT_CAPACITY = 64;
+
+	private int[] m_lines;
+	private float[] m_absX;
+	private float[] m_absY;
+	private float[] m_absZ;
+	private float[] m_dirX;
+	private float[] m_dirY;
+	private float[] m_dirZ;
+	private int m_size;
+
+	public LineBlock() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public LineBlock(int capacity) throws IllegalArgumentException {
+		if (capacity < 0) {
+			String errorMessage = "The capacity argument is negative.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		allocate(Math.max(capacity, 1));
+		this.m_size = 0;
+	}
+
+	/**
+	 * Appends the coordinates of a line of the store to the end of the block
+	 * 
+	 * @param lines
+	 *            the store of the line
+	 * @param line
+	 *            the index of the line in the store
+	 */
+	public void add(LineStore lines, int line) {
+		if (m_size == m_lines.length) {
+			allocate(m_lines.length * 2);
+		}
+		m_lines[m_size] = line;
+		m_absX[m_size] = lines.getAx(line);
+		m_absY[m_size] = lines.getAy(line);
+		m_absZ[m_size] = lines.getAz(line);
+		m_dirX[m_size] = lines.getDx(line);
+		m_dirY[m_size] = lines.getDy(line);
+		m_dirZ[m_size] = lines.getDz(line);
+		m_size++;
+	}
+
+	/**
+	 * Returns the store index of the line at the given position
+	 * 
+	 * @param position
+	 *            the position in the block
+	 * @return the index of the line in its store
+	 */
+	public int getLine(int position) {
+		return m_lines[position];
+	}
+
+	/**
+	 * Returns the number of lines in the block
+	 * 
+	 * @return the size of the block
+	 */
+	public int size() {
+		return m_size;
+	}
+
+	/**
+	 * Removes all the lines from the block keeping its capacity
+	 */
+	public void clear() {
+		m_size = 0;
+	}
+
+	// The columns are shared with the block, only their first size() values
+	// belong to the gathered lines
+
+	public float[] getAbsXColumn() {
+		return m_absX;
+	}
+
+	public float[] getAbsYColumn() {
+		return m_absY;
+	}
+
+	public float[] getAbsZColumn() {
+		return m_absZ;
+	}
+
+	public float[] getDirXColumn() {
+		return m_dirX;
+	}
+
+	public float[] getDirYColumn() {
+		return m_dirY;
+	}
+
+	public float[] getDirZColumn() {
+		return m_dirZ;
+	}
+
+	private void allocate(int capacity) {
+		if (m_lines == null) {
+			m_lines = new int[capacity];
+			m_absX = new float[capacity];
+			m_absY = new float[capacity];
+			m_absZ = new float[capacity];
+			m_dirX = new float[capacity];
+			m_dirY = new float[capacity];
+			m_dirZ = new float[capacity];
+		} else {
+			m_lines = Arrays.copyOf(m_lines, capacity);
+			m_absX = Arrays.copyOf(m_absX, capacity);
+			m_absY = Arrays.copyOf(m_absY, capacity);
+			m_absZ = Arrays.copyOf(m_absZ, capacity);
+			m_dirX = Arrays.copyOf(m_dirX, capacity);
+			m_dirY = Arrays.copyOf(m_dirY, capacity);
+			m_dirZ = Arrays.copyOf(m_dirZ, capacity);
+		}
+	}
+}
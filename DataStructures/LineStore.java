@@ -0,0 +1,269 @@
+package DataStructures;
+
+import java.util.List;
+
+/**
+ * Column-oriented storage of line information. A line is identified by its
+ * index in the store, the implementations keep its coordinates and its
+ * cluster identifier in primitive columns, see HeapLineStore and
+ * MappedLineStore. The bounding boxes and the line objects are derived from
+ * the accessors of the columns.
+ *
+ */
+public abstract class LineStore {
+
+	/**
+	 * Copies the coordinates of the given lines into a new store, the index of
+	 * a line in the store is its index in the list
+	 * 
+	 * @param lines
+	 *            the lines to copy
+	 * @return the store holding the lines
+	 * @throws IllegalArgumentException
+	 *             if the list of lines provided is null
+	 */
+	public static LineStore fromLines(List<Line> lines)
+			throws IllegalArgumentException {
+		if (lines == null) {
+			String errorMessage = "The lines argument is not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		LineStore store = new HeapLineStore(lines.size());
+		int index = 0;
+		for (Line line : lines) {
+			store.setLine(index++, line.getAx(), line.getAy(), line.getAz(),
+					line.getDx(), line.getDy(), line.getDz());
+		}
+		return store;
+	}
+
+	/**
+	 * Returns the number of lines in the store
+	 * 
+	 * @return the number of lines
+	 */
+	public abstract int size();
+
+	/**
+	 * Sets the coordinates of the line with the given index
+	 * 
+	 * @param index
+	 *            the index of the line
+	 * @param absX
+	 *            absolute x coordinate
+	 * @param absY
+	 *            absolute y coordinate
+	 * @param absZ
+	 *            absolute z coordinate
+	 * @param dirX
+	 *            directional x coordinate
+	 * @param dirY
+	 *            directional y coordinate
+	 * @param dirZ
+	 *            directional z coordinate
+	 */
+	public abstract void setLine(int index, float absX, float absY,
+			float absZ, float dirX, float dirY, float dirZ);
+
+	/**
+	 * Gets the absolute X coordinate of the line
+	 * 
+	 * @param index
+	 *            the index of the line
+	 * @return absolute X coordinate
+	 */
+	public abstract float getAx(int index);
+
+	/**
+	 * Gets the absolute Y coordinate of the line
+	 * 
+	 * @param index
+	 *            the index of the line
+	 * @return absolute Y coordinate
+	 */
+	public abstract float getAy(int index);
+
+	/**
+	 * Gets the absolute Z coordinate of the line
+	 * 
+	 * @param index
+	 *            the index of the line
+	 * @return absolute Z coordinate
+	 */
+	public abstract float getAz(int index);
+
+	/**
+	 * Gets the directional X coordinate of the line
+	 * 
+	 * @param index
+	 *            the index of the line
+	 * @return directional X coordinate
+	 */
+	public abstract float getDx(int index);
+
+	/**
+	 * Gets the directional Y coordinate of the line
+	 * 
+	 * @param index
+	 *            the index of the line
+	 * @return directional Y coordinate
+	 */
+	public abstract float getDy(int index);
+
+	/**
+	 * Gets the directional Z coordinate of the line
+	 * 
+	 * @param index
+	 *            the index of the line
+	 * @return directional Z coordinate
+	 */
+	public abstract float getDz(int index);
+
+	/**
+	 * Gets the minimal X coordinate of the line's bounding box
+	 * 
+	 * @param index
+	 *            the index of the line
+	 * @return minimal X coordinate of the line's end points
+	 */
+	public float getMinX(int index) {
+		return Math.min(getAx(index), getAx(index) - getDx(index));
+	}
+
+	/**
+	 * Gets the minimal Y coordinate of the line's bounding box
+	 * 
+	 * @param index
+	 *            the index of the line
+	 * @return minimal Y coordinate of the line's end points
+	 */
+	public float getMinY(int index) {
+		return Math.min(getAy(index), getAy(index) - getDy(index));
+	}
+
+	/**
+	 * Gets the minimal Z coordinate of the line's bounding box
+	 * 
+	 * @param index
+	 *            the index of the line
+	 * @return minimal Z coordinate of the line's end points
+	 */
+	public float getMinZ(int index) {
+		return Math.min(getAz(index), getAz(index) - getDz(index));
+	}
+
+	/**
+	 * Gets the maximal X coordinate of the line's bounding box
+	 * 
+	 * @param index
+	 *            the index of the line
+	 * @return maximal X coordinate of the line's end points
+	 */
+	public float getMaxX(int index) {
+		return Math.max(getAx(index), getAx(index) - getDx(index));
+	}
+
+	/**
+	 * Gets the maximal Y coordinate of the line's bounding box
+	 * 
+	 * @param index
+	 *            the index of the line
+	 * @return maximal Y coordinate of the line's end points
+	 */
+	public float getMaxY(int index) {
+		return Math.max(getAy(index), getAy(index) - getDy(index));
+	}
+
+	/**
+	 * Gets the maximal Z coordinate of the line's bounding box
+	 * 
+	 * @param index
+	 *            the index of the line
+	 * @return maximal Z coordinate of the line's end points
+	 */
+	public float getMaxZ(int index) {
+		return Math.max(getAz(index), getAz(index) - getDz(index));
+	}
+
+	/**
+	 * Computes the largest absolute coordinate of the end points of all the
+	 * lines in the store
+	 * 
+	 * @return the largest absolute coordinate
+	 */
+	public double computeMaxAbsCoordinate() {
+		double max = 0;
+		for (int index = 0; index < size(); index++) {
+			max = Math.max(max, Math.max(-getMinX(index), getMaxX(index)));
+			max = Math.max(max, Math.max(-getMinY(index), getMaxY(index)));
+			max = Math.max(max, Math.max(-getMinZ(index), getMaxZ(index)));
+		}
+		return max;
+	}
+
+	/**
+	 * Returns the assigned cluster ID of the line
+	 * 
+	 * @param index
+	 *            the index of the line
+	 * @return cluster ID
+	 */
+	public abstract int getCluster(int index);
+
+	/**
+	 * Assigns the line to cluster ID
+	 * 
+	 * @param index
+	 *            the index of the line
+	 * @param cluster
+	 *            the given cluster ID
+	 */
+	public abstract void setCluster(int index, int cluster);
+
+	/**
+	 * Marks all the lines of the store as not assigned to any cluster
+	 */
+	public void resetClusters() {
+		for (int i = 0; i < size(); i++) {
+			setCluster(i, Line.NO_CLUSTER_ASSIGNED);
+		}
+	}
+
+	/**
+	 * Creates the line object from the line with the given index
+	 * 
+	 * @param index
+	 *            the index of the line
+	 * @return the line with the same coordinates and cluster ID
+	 */
+	public Line getLine(int index) {
+		Line line = new Line(getAx(index), getAy(index), getAz(index),
+				getDx(index), getDy(index), getDz(index));
+		line.setCluster(getCluster(index));
+		return line;
+	}
+
+	/**
+	 * Assigns the cluster IDs of the store to the lines the store was created
+	 * from
+	 * 
+	 * @param lines
+	 *            the lines in the order of the store indices
+	 * @throws IllegalArgumentException
+	 *             if the lines do not correspond to the store
+	 */
+	public void copyClustersTo(List<Line> lines)
+			throws IllegalArgumentException {
+		if (lines == null || lines.size() != size()) {
+			String errorMessage = "The lines argument does not match the "
+					+ "store.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		int index = 0;
+		for (Line line : lines) {
+			line.setCluster(getCluster(index++));
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package DataStructures;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Disjoint-set forest over a subset of the elements 0..size-1 kept in a
+ * memory-mapped int array, see MappedIntArray. An element joins the forest
+ * as a set of its own when it is added, the other elements belong to no set.
+ * A root is always linked under the smaller root, so the representative of
+ * every set is its smallest element. The forest is used by one thread at a
+ * time.
+ *
+ */
+public class MappedDisjointSet {
+
+	// The parent of an added element plus one, zero for the other elements
+	private final MappedIntArray m_parents;
+
+	private MappedDisjointSet(MappedIntArray parents) {
+		this.m_parents = parents;
+	}
+
+	/**
+	 * Creates the file of the forest and maps it into memory
+	 *
+	 * @param file
+	 *            the file to create or to overwrite
+	 * @param size
+	 *            the number of the elements
+	 * @return the forest without any sets
+	 * @throws IOException
+	 *             if the file can not be written
+	 */
+	public static MappedDisjointSet create(File file, int size)
+			throws IOException {
+		return new MappedDisjointSet(MappedIntArray.create(file, size));
+	}
+
+	public int size() {
+		return m_parents.size();
+	}
+
+	/**
+	 * Determines if the element belongs to a set
+	 *
+	 * @param element
+	 *            the element
+	 * @return true if the element has been added
+	 */
+	public boolean contains(int element) {
+		return m_parents.get(element) != 0;
+	}
+
+	/**
+	 * Adds the element as a set of its own unless it belongs to a set
+	 *
+	 * @param element
+	 *            the element to add
+	 */
+	public void add(int element) {
+		if (m_parents.get(element) == 0) {
+			m_parents.set(element, element + 1);
+		}
+	}
+
+	/**
+	 * Finds the representative of the set of an added element halving the
+	 * path
+	 *
+	 * @param element
+	 *            the element to look for
+	 * @return the smallest element of the set
+	 */
+	public int find(int element) {
+		while (true) {
+			int parent = m_parents.get(element) - 1;
+			if (parent == element) {
+				return element;
+			}
+			int grandparent = m_parents.get(parent) - 1;
+			m_parents.set(element, grandparent + 1);
+			element = grandparent;
+		}
+	}
+
+	/**
+	 * Merges the sets of two added elements
+	 *
+	 * @param element1
+	 *            the element of the first set
+	 * @param element2
+	 *            the element of the second set
+	 */
+	public void union(int element1, int element2) {
+		int root1 = find(element1);
+		int root2 = find(element2);
+		if (root1 < root2) {
+			m_parents.set(root2, root1 + 1);
+		} else if (root2 < root1) {
+			m_parents.set(root1, root2 + 1);
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package DataStructures;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Array of int values kept in a memory-mapped file, so that the values live
+ * in the page cache of the operating system instead of the heap and are
+ * written back to the disk when the memory is needed. The values are stored
+ * little-endian, a new array is filled with zeros.
+ *
+ */
+public class MappedIntArray {
+
+	// The largest number of values, a mapping can not exceed 2 GB
+	public static final int MAX_SIZE = Integer.MAX_VALUE / 4;
+
+	private final int m_size;
+	private final MappedByteBuffer m_mapping;
+	private final IntBuffer m_values;
+
+	private MappedIntArray(int size, MappedByteBuffer mapping) {
+		this.m_size = size;
+		this.m_mapping = mapping;
+		this.m_values = mapping.asIntBuffer();
+	}
+
+	/**
+	 * Creates the file of the array and maps it into memory
+	 * 
+	 * @param file
+	 *            the file to create or to overwrite
+	 * @param size
+	 *            the number of the values
+	 * @return the array of zeros
+	 * @throws IOException
+	 *             if the file can not be written
+	 */
+	public static MappedIntArray create(File file, int size)
+			throws IOException {
+		if (file == null || size < 0 || size > MAX_SIZE) {
+			String errorMessage = "The arguments of the array file are not "
+					+ "valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		try {
+			randomAccessFile.setLength(0);
+			randomAccessFile.setLength(4L * size);
+			MappedByteBuffer mapping = randomAccessFile.getChannel().map(
+					FileChannel.MapMode.READ_WRITE, 0, 4L * size);
+			mapping.order(ByteOrder.LITTLE_ENDIAN);
+			return new MappedIntArray(size, mapping);
+		} finally {
+			// the mapping stays valid after the channel is closed
+			randomAccessFile.close();
+		}
+	}
+
+	public int size() {
+		return m_size;
+	}
+
+	public int get(int index) {
+		return m_values.get(index);
+	}
+
+	public void set(int index, int value) {
+		m_values.put(index, value);
+	}
+
+	/**
+	 * Forces the changes of the values to the disk
+	 */
+	public void flush() {
+		m_mapping.force();
+	}
+}
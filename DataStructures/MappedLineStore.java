@@ -0,0 +1,298 @@
+package DataStructures;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Store of the lines kept in a memory-mapped binary line file. The file
+ * starts with a header of HEADER_SIZE bytes: the magic number, the format
+ * version, the flags, a reserved int and the number of lines as a long,
+ * followed by a reserved long. The header is followed by the columns of the
+ * absolute and of the directional coordinates as float32 values in the order
+ * absX, absY, absZ, dirX, dirY, dirZ and by the optional int32 column of the
+ * cluster IDs, all little-endian. The columns are read directly from the
+ * mapping, nothing is copied on loading. If the file has the cluster column
+ * and is opened for writing, the assigned clusters are written back into it,
+ * otherwise they are kept in memory.
+ *
+ */
+public class MappedLineStore extends LineStore {
+
+	public static final int MAGIC = 0x454E494C;
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 32;
+
+	// Flag of the files having the column of the cluster IDs
+	public static final int CLUSTERS_FLAG = 1;
+
+	// The largest number of lines, a mapped column can not exceed 2 GB
+	public static final int MAX_SIZE = Integer.MAX_VALUE / 4;
+
+	private static final int COORDINATE_COLUMNS = 6;
+	private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+	private final int m_size;
+	private final MappedByteBuffer[] m_mappedColumns;
+	private final FloatBuffer m_absX;
+	private final FloatBuffer m_absY;
+	private final FloatBuffer m_absZ;
+	private final FloatBuffer m_dirX;
+	private final FloatBuffer m_dirY;
+	private final FloatBuffer m_dirZ;
+
+	// Cluster IDs in the mapped column or in memory
+	private final IntBuffer m_clusterIdentifiers;
+	private final boolean m_clusterColumn;
+
+	private MappedLineStore(int size, MappedByteBuffer[] mappedColumns,
+			IntBuffer clusterIdentifiers, boolean clusterColumn) {
+		this.m_size = size;
+		this.m_mappedColumns = mappedColumns;
+		this.m_absX = mappedColumns[0].asFloatBuffer();
+		this.m_absY = mappedColumns[1].asFloatBuffer();
+		this.m_absZ = mappedColumns[2].asFloatBuffer();
+		this.m_dirX = mappedColumns[3].asFloatBuffer();
+		this.m_dirY = mappedColumns[4].asFloatBuffer();
+		this.m_dirZ = mappedColumns[5].asFloatBuffer();
+		this.m_clusterIdentifiers = clusterIdentifiers;
+		this.m_clusterColumn = clusterColumn;
+	}
+
+	/**
+	 * Maps the line file into memory
+	 * 
+	 * @param file
+	 *            the line file
+	 * @param writable
+	 *            true to allow writing the coordinates and the cluster column
+	 *            of the file
+	 * @return the store of the lines of the file
+	 * @throws IOException
+	 *             if the file can not be read or is not a valid line file
+	 */
+	public static MappedLineStore open(File file, boolean writable)
+			throws IOException {
+		if (file == null) {
+			String errorMessage = "The file argument is not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file,
+				writable ? "rw" : "r");
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			if (channel.size() < HEADER_SIZE) {
+				throw new IOException("The file is not a line file: " + file);
+			}
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+				throw new IOException("The file is not a line file: " + file);
+			}
+
+			boolean clusterColumn = (header.getInt(8) & CLUSTERS_FLAG) != 0;
+			long size = header.getLong(16);
+			int columns = COORDINATE_COLUMNS + (clusterColumn ? 1 : 0);
+			if (size < 0 || size > MAX_SIZE
+					|| channel.size() != HEADER_SIZE + columns * 4 * size) {
+				throw new IOException("The line file is damaged: " + file);
+			}
+
+			FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE
+					: FileChannel.MapMode.READ_ONLY;
+			MappedByteBuffer[] mappedColumns = new MappedByteBuffer[columns];
+			for (int column = 0; column < columns; column++) {
+				mappedColumns[column] = channel.map(mode, HEADER_SIZE + column
+						* 4 * size, 4 * size);
+				mappedColumns[column].order(ByteOrder.LITTLE_ENDIAN);
+			}
+
+			IntBuffer clusterIdentifiers;
+			if (clusterColumn && writable) {
+				clusterIdentifiers = mappedColumns[COORDINATE_COLUMNS]
+						.asIntBuffer();
+			} else {
+				clusterIdentifiers = IntBuffer.allocate((int) size);
+				if (clusterColumn) {
+					clusterIdentifiers.put(mappedColumns[COORDINATE_COLUMNS]
+							.asIntBuffer());
+				} else {
+					for (int index = 0; index < size; index++) {
+						clusterIdentifiers.put(index, Line.NO_CLUSTER_ASSIGNED);
+					}
+				}
+			}
+			return new MappedLineStore((int) size, mappedColumns,
+					clusterIdentifiers, clusterColumn && writable);
+		} finally {
+			// the mapping stays valid after the channel is closed
+			randomAccessFile.close();
+		}
+	}
+
+	/**
+	 * Writes the lines of the store into a new line file
+	 * 
+	 * @param lines
+	 *            the store of the lines to write
+	 * @param file
+	 *            the file to create or to overwrite
+	 * @param withClusters
+	 *            true to write the cluster column with the assigned clusters
+	 * @throws IOException
+	 *             if the file can not be written
+	 */
+	public static void write(LineStore lines, File file, boolean withClusters)
+			throws IOException {
+		if (lines == null || file == null || lines.size() > MAX_SIZE) {
+			String errorMessage = "The arguments of the line file are not "
+					+ "valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		try {
+			randomAccessFile.setLength(0);
+			FileChannel channel = randomAccessFile.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC).putInt(VERSION)
+					.putInt(withClusters ? CLUSTERS_FLAG : 0).putInt(0)
+					.putLong(lines.size()).putLong(0);
+
+			int columns = COORDINATE_COLUMNS + (withClusters ? 1 : 0);
+			for (int column = 0; column < columns; column++) {
+				for (int index = 0; index < lines.size(); index++) {
+					if (!buffer.hasRemaining()) {
+						drain(buffer, channel);
+					}
+					switch (column) {
+					case 0:
+						buffer.putFloat(lines.getAx(index));
+						break;
+					case 1:
+						buffer.putFloat(lines.getAy(index));
+						break;
+					case 2:
+						buffer.putFloat(lines.getAz(index));
+						break;
+					case 3:
+						buffer.putFloat(lines.getDx(index));
+						break;
+					case 4:
+						buffer.putFloat(lines.getDy(index));
+						break;
+					case 5:
+						buffer.putFloat(lines.getDz(index));
+						break;
+					default:
+						buffer.putInt(lines.getCluster(index));
+					}
+				}
+			}
+			drain(buffer, channel);
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+
+	private static void drain(ByteBuffer buffer, FileChannel channel)
+			throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Determines if the assigned clusters are written into the file
+	 * 
+	 * @return true if the file has the cluster column and is writable
+	 */
+	public boolean hasClusterColumn() {
+		return this.m_clusterColumn;
+	}
+
+	/**
+	 * Forces the changes of the mapped columns to the disk
+	 */
+	public void flush() {
+		if (m_mappedColumns[0].isReadOnly()) {
+			return;
+		}
+
+		for (MappedByteBuffer column : m_mappedColumns) {
+			column.force();
+		}
+	}
+
+	@Override
+	public int size() {
+		return m_size;
+	}
+
+	/**
+	 * Sets the coordinates of the line with the given index in the mapping
+	 * 
+	 * @throws java.nio.ReadOnlyBufferException
+	 *             if the file is not opened for writing
+	 */
+	@Override
+	public void setLine(int index, float absX, float absY, float absZ,
+			float dirX, float dirY, float dirZ) {
+		m_absX.put(index, absX);
+		m_absY.put(index, absY);
+		m_absZ.put(index, absZ);
+		m_dirX.put(index, dirX);
+		m_dirY.put(index, dirY);
+		m_dirZ.put(index, dirZ);
+	}
+
+	@Override
+	public float getAx(int index) {
+		return m_absX.get(index);
+	}
+
+	@Override
+	public float getAy(int index) {
+		return m_absY.get(index);
+	}
+
+	@Override
+	public float getAz(int index) {
+		return m_absZ.get(index);
+	}
+
+	@Override
+	public float getDx(int index) {
+		return m_dirX.get(index);
+	}
+
+	@Override
+	public float getDy(int index) {
+		return m_dirY.get(index);
+	}
+
+	@Override
+	public float getDz(int index) {
+		return m_dirZ.get(index);
+	}
+
+	@Override
+	public int getCluster(int index) {
+		return m_clusterIdentifiers.get(index);
+	}
+
+	@Override
+	public void setCluster(int index, int cluster) {
+		m_clusterIdentifiers.put(index, cluster);
+	}
+}
@@ -0,0 +1,33 @@
+package Utilities;
+
+import DataStructures.LineBlock;
+import DataStructures.LineStore;
+
+/**
+ * Kernel of the distances between the lines of a block and a line of a
+ * store, see LineUtils.computeDistancesBetweenTheLines. The distances of an
+ * implementation are bit for bit those of the scalar kernel.
+ *
+ */
+interface IBatchDistanceKernel {
+
+	/**
+	 * Computes the distances between two closest points of every line of the
+	 * block and a line of the store
+	 * 
+	 * @param block
+	 *            the block of the first lines' segments
+	 * @param lines
+	 *            the store of the second line
+	 * @param index
+	 *            the index of the second line's segment
+	 * @param norm
+	 *            the norm to measure the distance with, one of the norm
+	 *            constants of VectorUtils
+	 * @param distances
+	 *            the array to store the distances into, at least of the size
+	 *            of the block
+	 */
+	void computeDistances(LineBlock block, LineStore lines, int index,
+			int norm, double[] distances);
+}
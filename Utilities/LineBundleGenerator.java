@@ -0,0 +1,189 @@
+package Utilities;
+
+import java.util.Random;
+
+import DataStructures.HeapLineStore;
+import DataStructures.LineStore;
+
+/**
+ * Seeded generator of synthetic line sets for the benchmarks and the
+ * correctness checks. The lines form bundles of segments running along the
+ * random axis of the bundle around its center, mixed with uniformly scattered
+ * noise segments. The bundles differ in the number of their lines and in
+ * their radius, so their densities vary. A part of the bundle segments is
+ * skewed away from the axis, the rest is parallel to it. The same seed and
+ * parameters always produce the same lines.
+ *
+ */
+public class LineBundleGenerator {
+
+	// Edge length of the cube the bundle centers and the noise lie in
+	public static final double WORLD_SIZE = 1000;
+
+	private final long seed;
+	private final int bundlesCount;
+	private final double bundleRadius;
+	private final double segmentLength;
+	private final double noiseRatio;
+	private final double skewRatio;
+
+	/**
+	 * Creates the generator
+	 * 
+	 * @param seed
+	 *            the seed of the random numbers
+	 * @param bundlesCount
+	 *            the number of the bundles
+	 * @param bundleRadius
+	 *            the mean standard deviation of the distance of the bundle
+	 *            segments from the axis of the bundle
+	 * @param segmentLength
+	 *            the mean length of the segments
+	 * @param noiseRatio
+	 *            the fraction of the noise segments, between 0 and 1
+	 * @param skewRatio
+	 *            the fraction of the skewed segments in the bundles, between
+	 *            0 and 1
+	 * @throws IllegalArgumentException
+	 *             if a parameter is out of its range
+	 */
+	public LineBundleGenerator(long seed, int bundlesCount,
+			double bundleRadius, double segmentLength, double noiseRatio,
+			double skewRatio) throws IllegalArgumentException {
+		if (bundlesCount < 1 || !(bundleRadius >= 0) || !(segmentLength > 0)
+				|| !(noiseRatio >= 0 && noiseRatio <= 1)
+				|| !(skewRatio >= 0 && skewRatio <= 1)) {
+			String errorMessage = "The generator arguments are not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		this.seed = seed;
+		this.bundlesCount = bundlesCount;
+		this.bundleRadius = bundleRadius;
+		this.segmentLength = segmentLength;
+		this.noiseRatio = noiseRatio;
+		this.skewRatio = skewRatio;
+	}
+
+	/**
+	 * Generates the lines, the bundles are interleaved in the store
+	 * 
+	 * @param size
+	 *            the number of the lines
+	 * @return the store of the generated lines
+	 * @throws IllegalArgumentException
+	 *             if the size is negative
+	 */
+	public LineStore generate(int size) throws IllegalArgumentException {
+		if (size < 0) {
+			String errorMessage = "The size argument is not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		Random random = new Random(seed);
+
+		// centers, unit axes, radii and cumulative weights of the bundles
+		double[][] centers = new double[bundlesCount][3];
+		double[][] axes = new double[bundlesCount][3];
+		double[] radii = new double[bundlesCount];
+		double[] weights = new double[bundlesCount];
+		double totalWeight = 0;
+		for (int bundle = 0; bundle < bundlesCount; bundle++) {
+			for (int i = 0; i < 3; i++) {
+				centers[bundle][i] = random.nextDouble() * WORLD_SIZE;
+			}
+			randomDirection(random, axes[bundle]);
+			radii[bundle] = bundleRadius * (0.5 + 1.5 * random.nextDouble());
+			totalWeight += 0.2 + random.nextDouble();
+			weights[bundle] = totalWeight;
+		}
+
+		LineStore lines = new HeapLineStore(size);
+		double[] start = new double[3];
+		double[] direction = new double[3];
+		for (int line = 0; line < size; line++) {
+			double length = segmentLength * (0.8 + 0.4 * random.nextDouble());
+			if (random.nextDouble() < noiseRatio) {
+				for (int i = 0; i < 3; i++) {
+					start[i] = random.nextDouble() * WORLD_SIZE;
+				}
+				randomDirection(random, direction);
+			} else {
+				int bundle = pickBundle(weights, random.nextDouble()
+						* totalWeight);
+				double along = (random.nextDouble() - 0.5) * 2 * segmentLength;
+				for (int i = 0; i < 3; i++) {
+					start[i] = centers[bundle][i] + along * axes[bundle][i]
+							+ random.nextGaussian() * radii[bundle];
+					direction[i] = axes[bundle][i];
+				}
+				if (random.nextDouble() < skewRatio) {
+					skew(random, direction);
+				}
+			}
+
+			lines.setLine(line, (float) start[0], (float) start[1],
+					(float) start[2], (float) (length * direction[0]),
+					(float) (length * direction[1]),
+					(float) (length * direction[2]));
+		}
+		return lines;
+	}
+
+	/**
+	 * Finds the bundle whose cumulative weight first exceeds the value
+	 */
+	private static int pickBundle(double[] weights, double value) {
+		int low = 0;
+		int high = weights.length - 1;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (weights[middle] > value) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Fills the vector with a uniformly distributed unit direction
+	 */
+	private static void randomDirection(Random random, double[] direction) {
+		double length;
+		do {
+			for (int i = 0; i < 3; i++) {
+				direction[i] = random.nextGaussian();
+			}
+			length = Math.sqrt(direction[0] * direction[0] + direction[1]
+					* direction[1] + direction[2] * direction[2]);
+		} while (length < 1e-6);
+
+		for (int i = 0; i < 3; i++) {
+			direction[i] /= length;
+		}
+	}
+
+	/**
+	 * Turns the unit direction by a random angle of up to about 45 degrees
+	 */
+	private static void skew(Random random, double[] direction) {
+		double[] turn = new double[3];
+		randomDirection(random, turn);
+		double length = 0;
+		for (int i = 0; i < 3; i++) {
+			direction[i] += random.nextDouble() * turn[i];
+			length += direction[i] * direction[i];
+		}
+
+		length = Math.sqrt(length);
+		if (length < 1e-6) {
+			randomDirection(random, direction);
+			return;
+		}
+		for (int i = 0; i < 3; i++) {
+			direction[i] /= length;
+		}
+	}
+}
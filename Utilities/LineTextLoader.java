@@ -0,0 +1,470 @@
+package Utilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import DataStructures.HeapLineStore;
+import DataStructures.LineStore;
+
+/**
+ * Loader of the text files with a line per row given by six numbers in the
+ * order absX, absY, absZ, dirX, dirY, dirZ, separated by commas, semicolons
+ * or white space. The file is split into byte ranges which are mapped and
+ * parsed in parallel, a range takes the rows starting in it. The numbers are
+ * parsed from the bytes directly, only the numbers which can not be converted
+ * exactly with double arithmetic are passed to Float.parseFloat. Empty rows
+ * and rows starting with '#' are skipped, the malformed rows are skipped and
+ * reported with their line numbers.
+ *
+ */
+public class LineTextLoader {
+
+	// The number of the malformed rows reported with a message
+	public static final int MAX_REPORTED_ROWS = 1000;
+
+	// The longest row, a range only maps that far beyond its end
+	public static final int MAX_ROW_LENGTH = 1 << 16;
+
+	private static final int COORDINATES = 6;
+	private static final int MIN_CHUNK_SIZE = 1 << 16;
+	private static final int MAX_CHUNK_SIZE = 1 << 24;
+	private static final int MAX_FAST_DIGITS = 15;
+	private static final int MAX_SIGNIFICANT_DIGITS = 18;
+
+	// Powers of ten exactly representable as doubles
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4,
+			1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+			1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	private final ForkJoinPool pool;
+	private int malformedRowsCount;
+	private final List<String> malformedRows;
+
+	public LineTextLoader(ForkJoinPool pool) throws IllegalArgumentException {
+		if (pool == null) {
+			String errorMessage = "The pool argument is not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		this.pool = pool;
+		this.malformedRows = new ArrayList<String>();
+	}
+
+	/**
+	 * Returns the number of the malformed rows of the last loaded file
+	 * 
+	 * @return the number of the skipped malformed rows
+	 */
+	public int getMalformedRowsCount() {
+		return this.malformedRowsCount;
+	}
+
+	/**
+	 * Returns the messages of the first MAX_REPORTED_ROWS malformed rows of
+	 * the last loaded file in the order of the rows
+	 * 
+	 * @return the messages starting with the line numbers of the rows
+	 */
+	public List<String> getMalformedRows() {
+		return this.malformedRows;
+	}
+
+	/**
+	 * Loads the lines of the text file into a new store, the index of a line
+	 * is the number of the valid rows before it
+	 * 
+	 * @param file
+	 *            the text file to load
+	 * @return the store of the lines
+	 * @throws IOException
+	 *             if the file can not be read
+	 */
+	public LineStore load(File file) throws IOException {
+		if (file == null) {
+			String errorMessage = "The file argument is not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+
+		malformedRowsCount = 0;
+		malformedRows.clear();
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			final FileChannel channel = randomAccessFile.getChannel();
+			final long fileSize = channel.size();
+			long chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(
+					MAX_CHUNK_SIZE, fileSize / (4 * pool.getParallelism())));
+
+			List<Callable<Chunk>> parsers = new ArrayList<Callable<Chunk>>();
+			for (long start = 0; start < fileSize; start += chunkSize) {
+				final long chunkStart = start;
+				final long chunkEnd = Math.min(fileSize, start + chunkSize);
+				parsers.add(new Callable<Chunk>() {
+					@Override
+					public Chunk call() throws IOException {
+						Chunk chunk = new Chunk();
+						chunk.parse(channel, chunkStart, chunkEnd, fileSize);
+						return chunk;
+					}
+				});
+			}
+			final List<Chunk> chunks = invokeAll(parsers);
+
+			// the chunks are placed by the counts of the preceding chunks
+			int linesCount = 0;
+			long rowsCount = 0;
+			final int[] offsets = new int[chunks.size()];
+			for (int i = 0; i < chunks.size(); i++) {
+				Chunk chunk = chunks.get(i);
+				offsets[i] = linesCount;
+				linesCount += chunk.linesCount;
+				for (int j = 0; j < chunk.malformedRowMessages.size(); j++) {
+					if (malformedRows.size() < MAX_REPORTED_ROWS) {
+						malformedRows.add("Line "
+								+ (rowsCount + chunk.malformedRowNumbers[j] + 1)
+								+ ": " + chunk.malformedRowMessages.get(j));
+					}
+				}
+				malformedRowsCount += chunk.malformedRowsCount;
+				rowsCount += chunk.rowsCount;
+			}
+
+			final LineStore lines = new HeapLineStore(linesCount);
+			List<Callable<Chunk>> copiers = new ArrayList<Callable<Chunk>>();
+			for (int i = 0; i < chunks.size(); i++) {
+				final Chunk chunk = chunks.get(i);
+				final int offset = offsets[i];
+				copiers.add(new Callable<Chunk>() {
+					@Override
+					public Chunk call() {
+						float[] values = chunk.coordinates;
+						for (int line = 0; line < chunk.linesCount; line++) {
+							int value = COORDINATES * line;
+							lines.setLine(offset + line, values[value],
+									values[value + 1], values[value + 2],
+									values[value + 3], values[value + 4],
+									values[value + 5]);
+						}
+						return chunk;
+					}
+				});
+			}
+			invokeAll(copiers);
+			return lines;
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+
+	/**
+	 * Runs the tasks on the pool and collects their results in order
+	 */
+	private List<Chunk> invokeAll(List<Callable<Chunk>> tasks)
+			throws IOException {
+		List<Chunk> results = new ArrayList<Chunk>(tasks.size());
+		try {
+			for (Future<Chunk> future : pool.invokeAll(tasks)) {
+				results.add(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("The loading has been interrupted.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+		return results;
+	}
+
+	/**
+	 * The lines of the rows starting in a byte range of the file
+	 */
+	private static class Chunk {
+		private float[] coordinates = new float[COORDINATES * 1024];
+		private int linesCount;
+		private long rowsCount;
+
+		// Malformed rows by their number within the chunk
+		private long[] malformedRowNumbers = new long[16];
+		private final List<String> malformedRowMessages =
+				new ArrayList<String>();
+		private int malformedRowsCount;
+
+		// State of the parser
+		private MappedByteBuffer buffer;
+		private int position;
+		private final float[] row = new float[COORDINATES];
+		private boolean rowHasValues;
+
+		/**
+		 * Parses the rows starting in the range start..end of the file
+		 */
+		public void parse(FileChannel channel, long start, long end,
+				long fileSize) throws IOException {
+			// a row starts in the range if it starts at its first byte or
+			// follows the new line before it
+			long mapStart = Math.max(0, start - 1);
+			long mapEnd = Math.min(fileSize, end + MAX_ROW_LENGTH);
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart,
+					mapEnd - mapStart);
+			position = 0;
+			if (start > 0) {
+				while (position < buffer.limit()
+						&& buffer.get(position) != '\n') {
+					position++;
+				}
+				position++;
+			}
+
+			int rowsEnd = (int) (end - mapStart);
+			while (position < rowsEnd) {
+				String error = parseRow();
+				if (position == buffer.limit() && mapEnd < fileSize
+						&& buffer.get(position - 1) != '\n') {
+					addMalformedRow("The row is longer than " + MAX_ROW_LENGTH
+							+ " bytes.");
+					rowsCount++;
+					break;
+				}
+				if (error != null) {
+					addMalformedRow(error);
+				} else if (rowHasValues) {
+					addLine();
+				}
+				rowsCount++;
+			}
+			buffer = null;
+		}
+
+		/**
+		 * Parses the row at the current position and moves past its end
+		 * 
+		 * @return the error message or null if the row is valid, empty or a
+		 *         comment
+		 */
+		private String parseRow() {
+			int limit = buffer.limit();
+			int count = 0;
+			String error = null;
+			rowHasValues = false;
+			while (true) {
+				while (position < limit && isSeparator(buffer.get(position))) {
+					position++;
+				}
+				if (position == limit || buffer.get(position) == '\n') {
+					break;
+				}
+				if (count == 0 && buffer.get(position) == '#') {
+					skipRow();
+					return null;
+				}
+
+				int numberStart = position;
+				float value = parseNumber();
+				if (Float.isNaN(value) && error == null) {
+					error = "The value \"" + token(numberStart)
+							+ "\" is not a number.";
+				}
+				if (count < COORDINATES) {
+					row[count] = value;
+				}
+				count++;
+			}
+			if (position < limit) {
+				position++;
+			}
+
+			if (error != null) {
+				return error;
+			}
+			if (count != 0 && count != COORDINATES) {
+				return "Expected " + COORDINATES + " numbers, found " + count
+						+ ".";
+			}
+			rowHasValues = count != 0;
+			return null;
+		}
+
+		/**
+		 * Parses the number at the current position and moves past it
+		 * 
+		 * @return the value or NaN if the token is not a number
+		 */
+		private float parseNumber() {
+			int limit = buffer.limit();
+			int start = position;
+			boolean negative = false;
+			if (buffer.get(position) == '-' || buffer.get(position) == '+') {
+				negative = buffer.get(position) == '-';
+				position++;
+			}
+
+			long mantissa = 0;
+			int digits = 0;
+			int exponent = 0;
+			boolean anyDigit = false;
+			boolean exact = true;
+			boolean fraction = false;
+			while (position < limit) {
+				byte symbol = buffer.get(position);
+				if (symbol >= '0' && symbol <= '9') {
+					anyDigit = true;
+					if (digits < MAX_SIGNIFICANT_DIGITS) {
+						mantissa = 10 * mantissa + (symbol - '0');
+						if (mantissa != 0) {
+							digits++;
+						}
+						if (fraction) {
+							exponent--;
+						}
+					} else {
+						exact = exact && symbol == '0';
+						if (!fraction) {
+							exponent++;
+						}
+					}
+				} else if (symbol == '.' && !fraction) {
+					fraction = true;
+				} else {
+					break;
+				}
+				position++;
+			}
+
+			if (anyDigit && position < limit
+					&& (buffer.get(position) == 'e'
+							|| buffer.get(position) == 'E')) {
+				position++;
+				boolean negativeExponent = false;
+				if (position < limit
+						&& (buffer.get(position) == '-'
+								|| buffer.get(position) == '+')) {
+					negativeExponent = buffer.get(position) == '-';
+					position++;
+				}
+				int exponentValue = 0;
+				boolean exponentDigit = false;
+				while (position < limit && buffer.get(position) >= '0'
+						&& buffer.get(position) <= '9') {
+					exponentValue = Math.min(100000, 10 * exponentValue
+							+ (buffer.get(position) - '0'));
+					exponentDigit = true;
+					position++;
+				}
+				anyDigit = exponentDigit;
+				exponent += negativeExponent ? -exponentValue : exponentValue;
+			}
+
+			if (!anyDigit || (position < limit
+					&& !isSeparator(buffer.get(position))
+					&& buffer.get(position) != '\n')) {
+				// words such as NaN or Infinity end up here as well
+				skipToken();
+				return parseToken(start);
+			}
+			if (mantissa == 0) {
+				return negative ? -0f : 0f;
+			}
+			if (!exact || digits > MAX_FAST_DIGITS
+					|| Math.abs(exponent) >= POWERS_OF_TEN.length) {
+				return parseToken(start);
+			}
+
+			double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent]
+					: mantissa / POWERS_OF_TEN[-exponent];
+
+			// the rounding to float is ambiguous if the rounded double lies
+			// halfway between two floats or the float is subnormal
+			if (value < Float.MIN_NORMAL
+					|| (Double.doubleToRawLongBits(value) & 0x1FFFFFFFL)
+							== 0x10000000L) {
+				return parseToken(start);
+			}
+			return negative ? (float) -value : (float) value;
+		}
+
+		/**
+		 * Parses the token from the start to the current position with
+		 * Float.parseFloat
+		 * 
+		 * @return the value or NaN if the token is not a number
+		 */
+		private float parseToken(int start) {
+			String token = token(start);
+			try {
+				// the type suffixes accepted by Float.parseFloat are not
+				// numbers of the format
+				char last = token.charAt(token.length() - 1);
+				if (last == 'f' || last == 'F' || last == 'd' || last == 'D') {
+					return Float.NaN;
+				}
+				return Float.parseFloat(token);
+			} catch (NumberFormatException e) {
+				return Float.NaN;
+			}
+		}
+
+		private String token(int start) {
+			byte[] bytes = new byte[position - start];
+			for (int i = 0; i < bytes.length; i++) {
+				bytes[i] = buffer.get(start + i);
+			}
+			return new String(bytes, StandardCharsets.ISO_8859_1);
+		}
+
+		private void skipToken() {
+			while (position < buffer.limit()
+					&& !isSeparator(buffer.get(position))
+					&& buffer.get(position) != '\n') {
+				position++;
+			}
+		}
+
+		private void skipRow() {
+			while (position < buffer.limit() && buffer.get(position) != '\n') {
+				position++;
+			}
+			if (position < buffer.limit()) {
+				position++;
+			}
+		}
+
+		private static boolean isSeparator(byte symbol) {
+			return symbol == ' ' || symbol == ',' || symbol == ';'
+					|| symbol == '\t' || symbol == '\r';
+		}
+
+		private void addLine() {
+			if (COORDINATES * (linesCount + 1) > coordinates.length) {
+				coordinates = Arrays.copyOf(coordinates,
+						2 * coordinates.length);
+			}
+			System.arraycopy(row, 0, coordinates, COORDINATES * linesCount,
+					COORDINATES);
+			linesCount++;
+		}
+
+		private void addMalformedRow(String message) {
+			if (malformedRowsCount == malformedRowNumbers.length) {
+				malformedRowNumbers = Arrays.copyOf(malformedRowNumbers,
+						2 * malformedRowNumbers.length);
+			}
+			malformedRowNumbers[malformedRowsCount++] = rowsCount;
+			if (malformedRowMessages.size() < MAX_REPORTED_ROWS) {
+				malformedRowMessages.add(message);
+			}
+		}
+	}
+}
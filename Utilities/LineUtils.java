@@ -1,22 +1,22 @@
 package Utilities;
 
 import DataStructures.Line;
+import DataStructures.LineBlock;
+import DataStructures.LineStore;
 import DataStructures.Object3D;
 import DataStructures.Pair;
 
 public class LineUtils {
 
-	/**
-	 * Determines the directing vector of a given 3D line
-	 * 
-	 * @param line1
-	 *            the 3D line segment
-	 * 
-	 * @return the 3D vector which specifies the direction of this line
-	 */
-	private static Object3D getLineDirectingVector(Line line) {
-		return new Object3D(-line.getDx(), -line.getDy(), -line.getDz());
-	}
+	// Relative padding of bounding box tests covering the rounding of the
+	// distance computation, so that a box test never rejects a line which is
+	// within the distance according to computeDistanceBetweenTheLines
+	public static final double DISTANCE_ROUNDING_RATIO = 1e-9;
+
+	// Vector API kernel of the batch distances, null if the
+	// jdk.incubator.vector module is not present
+	private static final IBatchDistanceKernel VECTOR_KERNEL =
+			loadVectorKernel();
 
 	/**
 	 * Locates the closest point between two 3D line segments parameterizing
@@ -42,32 +42,16 @@ public class LineUtils {
 			throw new IllegalArgumentException(errorMessage);
 		}
 
+		double[] segmentsParameters = new double[2];
+		computeDistanceBetweenTheLines(line1, line2,
+				VectorUtils.EUCLEDIAN_NORM, segmentsParameters);
+		double s = segmentsParameters[0];
+		double t = segmentsParameters[1];
+
 		Object3D p0 = line1.getStartingPoint();
 		Object3D p1 = line1.getEndingPoint();
 		Object3D q0 = line2.getStartingPoint();
 		Object3D q1 = line2.getEndingPoint();
-
-		Object3D line1DirectingVector = getLineDirectingVector(line1);
-		Object3D line2DirectingVector = getLineDirectingVector(line2);
-
-		double a = VectorUtils.calculateDotProduct(line1DirectingVector,
-				line1DirectingVector);
-		double b = VectorUtils.calculateDotProduct(line1DirectingVector,
-				line2DirectingVector);
-		double c = VectorUtils.calculateDotProduct(line2DirectingVector,
-				line2DirectingVector);
-		double d = VectorUtils.calculateDotProduct(line1DirectingVector,
-				VectorUtils.getDifference(p0, q0));
-		double e = VectorUtils.calculateDotProduct(line2DirectingVector,
-				VectorUtils.getDifference(p0, q0));
-		double squaredCrossProduct = a * c - b * b;
-		Pair<Double, Double> segmentsParameters = squaredCrossProduct > 0 ? computeParametersForNonParallel(
-				squaredCrossProduct, a, b, c, d, e)
-				: computeParametersForParallel(a, b, c, d, e);
-
-		double s = segmentsParameters.getLeftElement();
-		double t = segmentsParameters.getRightElement();
-
 		Object3D closesPointBelongingToFirstLine = new Object3D((1 - s)
 				* p0.getX() + s * p1.getX(), (1 - s) * p0.getY() + s
 				* p1.getY(), (1 - s) * p0.getZ() + s * p1.getZ());
@@ -79,78 +63,410 @@ public class LineUtils {
 	}
 
 	/**
-	 * Determines the parameters s and t in case two 3D segments are parallel
-	 * and, therefore, their cross product is zero.
+	 * Computes the distance between two closest points of the given lines
+	 * without creating any intermediate objects
+	 * 
+	 * @param line1
+	 *            the first line's segment
+	 * @param line2
+	 *            the second line's segment
+	 * @param norm
+	 *            the norm to measure the distance with, one of the norm
+	 *            constants of VectorUtils
+	 * @param parameters
+	 *            the array to store the parameters s and t of the closest
+	 *            points into, may be null
 	 * 
-	 * @return the pair of parameters s and t
+	 * @return the distance between two closest points
 	 */
-	private static Pair<Double, Double> computeParametersForParallel(double a,
-			double b, double c, double d, double e) {
-		if (e <= 0) {
-			return Pair.createPair((-d <= 0 ? 0 : (-d >= a ? 1 : -d / a)), 0d);
-		} else if (e >= c) {
-			return Pair.createPair((b - d <= 0 ? 0 : (b - d >= a ? 1 : (b - d)
-					/ a)), 1d);
-		}
+	public static double computeDistanceBetweenTheLines(Line line1,
+			Line line2, int norm, double[] parameters) {
+		return computeDistanceBetweenTheLines(line1.getAx(), line1.getAy(),
+				line1.getAz(), line1.getDx(), line1.getDy(), line1.getDz(),
+				line2.getAx(), line2.getAy(), line2.getAz(), line2.getDx(),
+				line2.getDy(), line2.getDz(), norm, parameters);
+	}
 
-		return Pair.createPair(0d, e / c);
+	/**
+	 * Computes the distance between two closest points of the lines of the
+	 * store without creating any intermediate objects
+	 * 
+	 * @param lines
+	 *            the store of the lines
+	 * @param index1
+	 *            the index of the first line's segment
+	 * @param index2
+	 *            the index of the second line's segment
+	 * @param norm
+	 *            the norm to measure the distance with, one of the norm
+	 *            constants of VectorUtils
+	 * @param parameters
+	 *            the array to store the parameters s and t of the closest
+	 *            points into, may be null
+	 * 
+	 * @return the distance between two closest points
+	 */
+	public static double computeDistanceBetweenTheLines(LineStore lines,
+			int index1, int index2, int norm, double[] parameters) {
+		return computeDistanceBetweenTheLines(lines.getAx(index1),
+				lines.getAy(index1), lines.getAz(index1), lines.getDx(index1),
+				lines.getDy(index1), lines.getDz(index1), lines.getAx(index2),
+				lines.getAy(index2), lines.getAz(index2), lines.getDx(index2),
+				lines.getDy(index2), lines.getDz(index2), norm, parameters);
 	}
 
 	/**
-	 * Determines the parameters s and t in case two 3D segments are not parallel
-	 * and, therefore, their squared cross product is greater than zero.
+	 * Computes the distance between two closest points of the segments given
+	 * by their raw coordinates. The closest points are located as in
+	 * findClosestPointsBetweenTheLines, but all the intermediate values are
+	 * kept in primitive locals, so the computation does not allocate. The
+	 * rounding of the computation depends on which segment is the first one,
+	 * so the segments are measured in the order of their coordinates and the
+	 * distance is the same bit for bit when they are swapped.
 	 * 
-	 * @return the pair of parameters s and t
+	 * @param parameters
+	 *            the array to store the parameters s and t of the closest
+	 *            points into, may be null
+	 * 
+	 * @return the distance between two closest points
 	 */
-	private static Pair<Double, Double> computeParametersForNonParallel(
-			double squaredCrossProduct, double a, double b, double c, double d,
-			double e) {
-		double s = 0;
-		double t = 0;
-		double be = b * e;
-		double cd = c * d;
-		if (be < cd) {
-			if (e <= 0) {
-				s = (-d >= a ? 1 : (-d > 0 ? -d / a : 0));
-				t = 0;
-			} else if (e < c) {
-				s = 0;
-				t = e / c;
-			} else {
-				s = (b - d >= a ? 1 : (b - d > 0 ? (b - d) / a : 0));
-				t = 1;
-			}
-		} else {
-			s = be - cd;
-			if (s >= squaredCrossProduct) {
-				if (b + e <= 0) {
-					s = (-d <= 0 ? 0 : (-d < s ? -d / a : 1));
+	public static double computeDistanceBetweenTheLines(float absX1,
+			float absY1, float absZ1, float dirX1, float dirY1, float dirZ1,
+			float absX2, float absY2, float absZ2, float dirX2, float dirY2,
+			float dirZ2, int norm, double[] parameters) {
+		if (isOrdered(absX1, absY1, absZ1, dirX1, dirY1, dirZ1, absX2, absY2,
+				absZ2, dirX2, dirY2, dirZ2)) {
+			return computeOrderedDistance(absX1, absY1, absZ1, dirX1, dirY1,
+					dirZ1, absX2, absY2, absZ2, dirX2, dirY2, dirZ2, norm,
+					parameters);
+		}
+
+		double distance = computeOrderedDistance(absX2, absY2, absZ2, dirX2,
+				dirY2, dirZ2, absX1, absY1, absZ1, dirX1, dirY1, dirZ1, norm,
+				parameters);
+		if (parameters != null) {
+			double s = parameters[1];
+			parameters[1] = parameters[0];
+			parameters[0] = s;
+		}
+		return distance;
+	}
+
+	/**
+	 * Determines if the first segment precedes the second one or equals it
+	 * in the lexicographic order of their coordinates, the order in which
+	 * the segments are measured
+	 */
+	static boolean isOrdered(float absX1, float absY1, float absZ1,
+			float dirX1, float dirY1, float dirZ1, float absX2, float absY2,
+			float absZ2, float dirX2, float dirY2, float dirZ2) {
+		int order = Float.compare(absX1, absX2);
+		if (order == 0) {
+			order = Float.compare(absY1, absY2);
+		}
+		if (order == 0) {
+			order = Float.compare(absZ1, absZ2);
+		}
+		if (order == 0) {
+			order = Float.compare(dirX1, dirX2);
+		}
+		if (order == 0) {
+			order = Float.compare(dirY1, dirY2);
+		}
+		if (order == 0) {
+			order = Float.compare(dirZ1, dirZ2);
+		}
+		return order <= 0;
+	}
+
+	/**
+	 * Computes the distance between two closest points of the segments in
+	 * the given order
+	 */
+	private static double computeOrderedDistance(float absX1, float absY1,
+			float absZ1, float dirX1, float dirY1, float dirZ1, float absX2,
+			float absY2, float absZ2, float dirX2, float dirY2, float dirZ2,
+			int norm, double[] parameters) {
+		// directing vectors of the lines
+		double ux = -dirX1;
+		double uy = -dirY1;
+		double uz = -dirZ1;
+		double vx = -dirX2;
+		double vy = -dirY2;
+		double vz = -dirZ2;
+
+		// difference between the starting points
+		double wx = (double) absX1 - absX2;
+		double wy = (double) absY1 - absY2;
+		double wz = (double) absZ1 - absZ2;
+
+		double a = ux * ux + uy * uy + uz * uz;
+		double b = ux * vx + uy * vy + uz * vz;
+		double c = vx * vx + vy * vy + vz * vz;
+		double d = ux * wx + uy * wy + uz * wz;
+		double e = vx * wx + vy * wy + vz * wz;
+		double squaredCrossProduct = a * c - b * b;
+
+		double s;
+		double t;
+		if (squaredCrossProduct > 0) {
+			// the segments are not parallel
+			double be = b * e;
+			double cd = c * d;
+			if (be < cd) {
+				if (e <= 0) {
+					s = (-d >= a ? 1 : (-d > 0 ? -d / a : 0));
 					t = 0;
-				} else if (b + e < c) {
-					s = 1;
-					t = (b + e) / c;
+				} else if (e < c) {
+					s = 0;
+					t = e / c;
 				} else {
-					s = (b - d <= 0 ? 0 : (b - d < a ? (b - d) / a : 1));
+					s = (b - d >= a ? 1 : (b - d > 0 ? (b - d) / a : 0));
 					t = 1;
 				}
 			} else {
-				double ate = a * e;
-				double btd = b * d;
-				if (ate <= btd) {
-					s = (-d <= 0 ? 0 : (-d >= a ? 1 : -d / a));
-					t = 0;
-				} else {
-					t = ate - btd;
-					if (t >= squaredCrossProduct) {
-						s = (b - d <= 0 ? 0 : (b - d >= a ? 1 : (b - d) / a));
+				s = be - cd;
+				if (s >= squaredCrossProduct) {
+					if (b + e <= 0) {
+						s = (-d <= 0 ? 0 : (-d < a ? -d / a : 1));
+						t = 0;
+					} else if (b + e < c) {
+						s = 1;
+						t = (b + e) / c;
+					} else {
+						s = (b - d <= 0 ? 0 : (b - d < a ? (b - d) / a : 1));
 						t = 1;
+					}
+				} else {
+					double ate = a * e;
+					double btd = b * d;
+					if (ate <= btd) {
+						s = (-d <= 0 ? 0 : (-d >= a ? 1 : -d / a));
+						t = 0;
 					} else {
-						s /= squaredCrossProduct;
-						t /= squaredCrossProduct;
+						t = ate - btd;
+						if (t >= squaredCrossProduct) {
+							s = (b - d <= 0 ? 0 : (b - d >= a ? 1 : (b - d)
+									/ a));
+							t = 1;
+						} else {
+							s /= squaredCrossProduct;
+							t /= squaredCrossProduct;
+						}
 					}
 				}
 			}
+		} else {
+			// the segments are parallel, their cross product is zero
+			if (e <= 0) {
+				s = (-d <= 0 ? 0 : (-d >= a ? 1 : -d / a));
+				t = 0;
+			} else if (e >= c) {
+				s = (b - d <= 0 ? 0 : (b - d >= a ? 1 : (b - d) / a));
+				t = 1;
+			} else {
+				s = 0;
+				t = e / c;
+			}
+		}
+
+		if (parameters != null) {
+			parameters[0] = s;
+			parameters[1] = t;
+		}
+
+		// the ending points are computed in single precision as in Line
+		double x = ((1 - s) * absX1 + s * (absX1 - dirX1))
+				- ((1 - t) * absX2 + t * (absX2 - dirX2));
+		double y = ((1 - s) * absY1 + s * (absY1 - dirY1))
+				- ((1 - t) * absY2 + t * (absY2 - dirY2));
+		double z = ((1 - s) * absZ1 + s * (absZ1 - dirZ1))
+				- ((1 - t) * absZ2 + t * (absZ2 - dirZ2));
+		return VectorUtils.calculateNorm(x, y, z, norm);
+	}
+
+	/**
+	 * Computes the distances between two closest points of every line of the
+	 * block and a line of the store, the i-th distance is bit for bit the one
+	 * computeDistanceBetweenTheLines returns for the i-th line of the block
+	 * and the line of the store, in either order. The distances are computed
+	 * by VectorizedDistanceKernel if the jdk.incubator.vector module is
+	 * present, otherwise by computeScalarDistancesBetweenTheLines.
+	 * 
+	 * @param block
+	 *            the block of the first lines' segments
+	 * @param lines
+	 *            the store of the second line
+	 * @param index
+	 *            the index of the second line's segment
+	 * @param norm
+	 *            the norm to measure the distance with, one of the norm
+	 *            constants of VectorUtils
+	 * @param distances
+	 *            the array to store the distances into, at least of the size
+	 *            of the block
+	 */
+	public static void computeDistancesBetweenTheLines(LineBlock block,
+			LineStore lines, int index, int norm, double[] distances) {
+		if (VECTOR_KERNEL != null) {
+			VECTOR_KERNEL.computeDistances(block, lines, index, norm,
+					distances);
+		} else {
+			computeScalarDistancesBetweenTheLines(block, lines, index, norm,
+					distances);
+		}
+	}
+
+	/**
+	 * Determines if the batch distances are computed by the Vector API
+	 * kernel
+	 * 
+	 * @return true if the jdk.incubator.vector module is present and the
+	 *         platform has double vectors
+	 */
+	public static boolean isVectorKernelAvailable() {
+		return VECTOR_KERNEL != null;
+	}
+
+	/**
+	 * Computes the distances between two closest points of every line of the
+	 * block and a line of the store one line after another, the fallback of
+	 * the Vector API kernel. The i-th distance is bit for bit the one
+	 * computeDistanceBetweenTheLines returns for the i-th line of the block
+	 * and the line of the store, in either order. The branches choosing the
+	 * parameters of the closest points are rewritten as selects between the
+	 * candidate parameters of all the cases, so the loop over the columns
+	 * runs without data dependent jumps: the segments are parallel or the
+	 * closest point of the infinite lines lies before line1 (the s = 0 edge),
+	 * it lies beyond line1 (the s = 1 edge) or within it, and in each case t
+	 * is clamped to its low end, to its high end or kept. A clamped parameter
+	 * of line1 is the clamped projection, which equals all the nested
+	 * conditions of the scalar kernel for a non-degenerate line1 and gives
+	 * the same closest point for a degenerate one. The two lines of a pair
+	 * are selected into line1 and line2 in the order of their coordinates as
+	 * in the scalar kernel.
+	 * 
+	 * @param block
+	 *            the block of the first lines' segments
+	 * @param lines
+	 *            the store of the second line
+	 * @param index
+	 *            the index of the second line's segment
+	 * @param norm
+	 *            the norm to measure the distance with, one of the norm
+	 *            constants of VectorUtils
+	 * @param distances
+	 *            the array to store the distances into, at least of the size
+	 *            of the block
+	 */
+	public static void computeScalarDistancesBetweenTheLines(
+			LineBlock block,
+			LineStore lines, int index, int norm, double[] distances) {
+		float absXC = lines.getAx(index);
+		float absYC = lines.getAy(index);
+		float absZC = lines.getAz(index);
+		float dirXC = lines.getDx(index);
+		float dirYC = lines.getDy(index);
+		float dirZC = lines.getDz(index);
+
+		float[] absX = block.getAbsXColumn();
+		float[] absY = block.getAbsYColumn();
+		float[] absZ = block.getAbsZColumn();
+		float[] dirX = block.getDirXColumn();
+		float[] dirY = block.getDirYColumn();
+		float[] dirZ = block.getDirZColumn();
+		int size = block.size();
+		for (int i = 0; i < size; i++) {
+			float absXB = absX[i];
+			float absYB = absY[i];
+			float absZB = absZ[i];
+			float dirXB = dirX[i];
+			float dirYB = dirY[i];
+			float dirZB = dirZ[i];
+			boolean ordered = isOrdered(absXB, absYB, absZB, dirXB, dirYB,
+					dirZB, absXC, absYC, absZC, dirXC, dirYC, dirZC);
+			float absX1 = ordered ? absXB : absXC;
+			float absY1 = ordered ? absYB : absYC;
+			float absZ1 = ordered ? absZB : absZC;
+			float dirX1 = ordered ? dirXB : dirXC;
+			float dirY1 = ordered ? dirYB : dirYC;
+			float dirZ1 = ordered ? dirZB : dirZC;
+			float absX2 = ordered ? absXC : absXB;
+			float absY2 = ordered ? absYC : absYB;
+			float absZ2 = ordered ? absZC : absZB;
+			float dirX2 = ordered ? dirXC : dirXB;
+			float dirY2 = ordered ? dirYC : dirYB;
+			float dirZ2 = ordered ? dirZC : dirZB;
+
+			double ux = -dirX1;
+			double uy = -dirY1;
+			double uz = -dirZ1;
+			double vx = -dirX2;
+			double vy = -dirY2;
+			double vz = -dirZ2;
+			double wx = (double) absX1 - absX2;
+			double wy = (double) absY1 - absY2;
+			double wz = (double) absZ1 - absZ2;
+
+			double a = ux * ux + uy * uy + uz * uz;
+			double b = ux * vx + uy * vy + uz * vz;
+			double c = vx * vx + vy * vy + vz * vz;
+			double d = ux * wx + uy * wy + uz * wz;
+			double e = vx * wx + vy * wy + vz * wz;
+			double squaredCrossProduct = a * c - b * b;
+
+			// clamped parameters of line1 on the t = 0 and t = 1 edges
+			boolean degenerate = !(a > 0);
+			double s0 = degenerate ? 0 : Math.min(1, Math.max(0, -d / a));
+			double s1 = degenerate ? 0 : Math.min(1,
+					Math.max(0, (b - d) / a));
+
+			// numerator and denominator of t and the parameter of line1 in
+			// the case t is not clamped
+			double numeratorS = b * e - c * d;
+			boolean lowS = !(squaredCrossProduct > 0) || numeratorS < 0;
+			boolean highS = !lowS && numeratorS >= squaredCrossProduct;
+			double numeratorT = lowS ? e : (highS ? b + e : a * e - b * d);
+			double denominatorT = lowS || highS ? c : squaredCrossProduct;
+			double middleS = lowS ? 0 : (highS ? 1 : numeratorS
+					/ squaredCrossProduct);
+
+			boolean lowT = numeratorT <= 0;
+			boolean highT = !lowT && numeratorT >= denominatorT;
+			double s = lowT ? s0 : (highT ? s1 : middleS);
+			double t = lowT ? 0 : (highT ? 1 : numeratorT / denominatorT);
+
+			double x = ((1 - s) * absX1 + s * (absX1 - dirX1))
+					- ((1 - t) * absX2 + t * (absX2 - dirX2));
+			double y = ((1 - s) * absY1 + s * (absY1 - dirY1))
+					- ((1 - t) * absY2 + t * (absY2 - dirY2));
+			double z = ((1 - s) * absZ1 + s * (absZ1 - dirZ1))
+					- ((1 - t) * absZ2 + t * (absZ2 - dirZ2));
+			distances[i] = VectorUtils.calculateNorm(x, y, z, norm);
+		}
+	}
+
+	/**
+	 * Loads the Vector API kernel, its class is only resolved when the
+	 * jdk.incubator.vector module is in the boot layer
+	 * 
+	 * @return the kernel or null if the module or double vectors are not
+	 *         available
+	 */
+	private static IBatchDistanceKernel loadVectorKernel() {
+		if (!ModuleLayer.boot().findModule("jdk.incubator.vector")
+				.isPresent()) {
+			return null;
+		}
+
+		try {
+			return (IBatchDistanceKernel) Class
+					.forName("Utilities.VectorizedDistanceKernel")
+					.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			return null;
+		} catch (LinkageError e) {
+			return null;
 		}
-		return Pair.createPair(s, t);
 	}
 }
@@ -3,6 +3,9 @@ package Utilities;
 import DataStructures.Object3D;
 
 public class VectorUtils {
+	public static final int MANHATTAN_NORM = 1;
+	public static final int EUCLEDIAN_NORM = 2;
+	public static final int CHEBYSHEV_NORM = 3;
 
 	/**
 	 * Calculates the difference 3D vector of the given vector objects by
@@ -51,4 +54,64 @@ public class VectorUtils {
 		return o1.getX() * o2.getX() + o1.getY() * o2.getY() + o1.getZ()
 				* o2.getZ();
 	}
+
+	/**
+	 * Calculates the norm of the 3D vector given by its components
+	 * 
+	 * @param x
+	 *            the x component of the vector
+	 * @param y
+	 *            the y component of the vector
+	 * @param z
+	 *            the z component of the vector
+	 * @param norm
+	 *            the norm to calculate: MANHATTAN_NORM for the 1-norm,
+	 *            EUCLEDIAN_NORM for the 2-norm or CHEBYSHEV_NORM for the
+	 *            infinity norm
+	 * 
+	 * @return the norm of the vector
+	 * @throws IllegalArgumentException
+	 *             if the norm given is not known
+	 */
+	public static double calculateNorm(double x, double y, double z, int norm)
+			throws IllegalArgumentException {
+		switch (norm) {
+		case MANHATTAN_NORM:
+			return Math.abs(x) + Math.abs(y) + Math.abs(z);
+		case EUCLEDIAN_NORM:
+			return Math.sqrt(x * x + y * y + z * z);
+		case CHEBYSHEV_NORM:
+			return Math.max(Math.max(Math.abs(x), Math.abs(y)), Math.abs(z));
+		default:
+			String errorMessage = "The norm argument is not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+	}
+
+	/**
+	 * Returns the largest ratio of the Eucledian norm of a 3D vector to its
+	 * norm of the given kind, so a vector whose norm is r lies in the
+	 * Eucledian sphere of the radius r times the ratio
+	 * 
+	 * @param norm
+	 *            the norm of the vector: MANHATTAN_NORM, EUCLEDIAN_NORM or
+	 *            CHEBYSHEV_NORM
+	 * 
+	 * @return the ratio of the norms
+	 * @throws IllegalArgumentException
+	 *             if the norm given is not known
+	 */
+	public static double getEucledianNormRatio(int norm)
+			throws IllegalArgumentException {
+		switch (norm) {
+		case MANHATTAN_NORM:
+		case EUCLEDIAN_NORM:
+			return 1;
+		case CHEBYSHEV_NORM:
+			return Math.sqrt(3);
+		default:
+			String errorMessage = "The norm argument is not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+	}
 }
@@ -0,0 +1,322 @@
+package Utilities;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import DataStructures.LineBlock;
+import DataStructures.LineStore;
+
+/**
+ * Batch distance kernel over the Vector API of the jdk.incubator.vector
+ * module. It runs the selects of the scalar batch kernel of LineUtils on
+ * whole vectors of lines. A scalar pass puts every line of the block and the
+ * center line in the order of their coordinates and widens them into
+ * per-thread double columns, together with the ending points, which are
+ * computed in single precision as in Line. A vector pass computes the
+ * parameters of the closest points into two more columns and a last pass
+ * the distances, the passes are kept apart so that the compiler inlines all
+ * their vector operations. The parameters and the distances are computed
+ * with the same operations in the same order as in the scalar kernel, so
+ * every lane gets the distance of the scalar kernel bit for bit, except
+ * that a NaN distance may have other NaN bits. The lines past the last whole
+ * vector and the small blocks are measured by the scalar kernel. The class
+ * is only loaded by LineUtils when the module is present, it is compiled and
+ * run with --add-modules jdk.incubator.vector.
+ *
+ */
+final class VectorizedDistanceKernel implements IBatchDistanceKernel {
+
+	private static final VectorSpecies<Double> DOUBLES =
+			DoubleVector.SPECIES_PREFERRED;
+
+	// Blocks of fewer lines are measured by the scalar kernel, the passes over
+	// the columns do not pay off for them
+	private static final int MIN_BLOCK_SIZE = 4 * DOUBLES.length();
+
+	private static final ThreadLocal<Columns> COLUMNS =
+			new ThreadLocal<Columns>() {
+				@Override
+				protected Columns initialValue() {
+					return new Columns();
+				}
+			};
+
+	/**
+	 * Creates the kernel
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             if the vectors of the platform hold less than two doubles
+	 */
+	VectorizedDistanceKernel() throws UnsupportedOperationException {
+		if (DOUBLES.length() < 2) {
+			String errorMessage = "The platform has no double vectors.";
+			throw new UnsupportedOperationException(errorMessage);
+		}
+	}
+
+	@Override
+	public void computeDistances(LineBlock block, LineStore lines, int index,
+			int norm, double[] distances) {
+		if (norm != VectorUtils.MANHATTAN_NORM
+				&& norm != VectorUtils.EUCLEDIAN_NORM
+				&& norm != VectorUtils.CHEBYSHEV_NORM) {
+			String errorMessage = "The norm argument is not valid.";
+			throw new IllegalArgumentException(errorMessage);
+		}
+		if (block.size() < MIN_BLOCK_SIZE) {
+			LineUtils.computeScalarDistancesBetweenTheLines(block, lines,
+					index, norm, distances);
+			return;
+		}
+
+		int bound = DOUBLES.loopBound(block.size());
+		Columns columns = COLUMNS.get();
+		columns.widen(block, bound, lines, index);
+		computeParameters(columns, bound);
+		computeDistances(columns, bound, norm, distances);
+
+		float absXC = lines.getAx(index);
+		float absYC = lines.getAy(index);
+		float absZC = lines.getAz(index);
+		float dirXC = lines.getDx(index);
+		float dirYC = lines.getDy(index);
+		float dirZC = lines.getDz(index);
+		float[] absX = block.getAbsXColumn();
+		float[] absY = block.getAbsYColumn();
+		float[] absZ = block.getAbsZColumn();
+		float[] dirX = block.getDirXColumn();
+		float[] dirY = block.getDirYColumn();
+		float[] dirZ = block.getDirZColumn();
+		for (int i = bound; i < block.size(); i++) {
+			distances[i] = LineUtils.computeDistanceBetweenTheLines(absX[i],
+					absY[i], absZ[i], dirX[i], dirY[i], dirZ[i], absXC, absYC,
+					absZC, dirXC, dirYC, dirZC, norm, null);
+		}
+	}
+
+	/**
+	 * Computes the parameters of the closest points of the widened pairs of
+	 * lines, see LineUtils.computeScalarDistancesBetweenTheLines
+	 */
+	private static void computeParameters(Columns columns, int size) {
+		for (int i = 0; i < size; i += DOUBLES.length()) {
+			DoubleVector ux = DoubleVector.fromArray(DOUBLES, columns.ux, i);
+			DoubleVector uy = DoubleVector.fromArray(DOUBLES, columns.uy, i);
+			DoubleVector uz = DoubleVector.fromArray(DOUBLES, columns.uz, i);
+			DoubleVector vx = DoubleVector.fromArray(DOUBLES, columns.vx, i);
+			DoubleVector vy = DoubleVector.fromArray(DOUBLES, columns.vy, i);
+			DoubleVector vz = DoubleVector.fromArray(DOUBLES, columns.vz, i);
+			DoubleVector wx = DoubleVector.fromArray(DOUBLES, columns.startX1,
+					i).sub(DoubleVector.fromArray(DOUBLES, columns.startX2, i));
+			DoubleVector wy = DoubleVector.fromArray(DOUBLES, columns.startY1,
+					i).sub(DoubleVector.fromArray(DOUBLES, columns.startY2, i));
+			DoubleVector wz = DoubleVector.fromArray(DOUBLES, columns.startZ1,
+					i).sub(DoubleVector.fromArray(DOUBLES, columns.startZ2, i));
+
+			DoubleVector a = ux.mul(ux).add(uy.mul(uy)).add(uz.mul(uz));
+			DoubleVector b = ux.mul(vx).add(uy.mul(vy)).add(uz.mul(vz));
+			DoubleVector c = vx.mul(vx).add(vy.mul(vy)).add(vz.mul(vz));
+			DoubleVector d = ux.mul(wx).add(uy.mul(wy)).add(uz.mul(wz));
+			DoubleVector e = vx.mul(wx).add(vy.mul(wy)).add(vz.mul(wz));
+			DoubleVector squaredCrossProduct = a.mul(c).sub(b.mul(b));
+
+			// clamped parameters of line1 on the t = 0 and t = 1 edges
+			VectorMask<Double> degenerate = a.compare(VectorOperators.GT, 0.0)
+					.not();
+			DoubleVector s0 = d.neg().div(a).max(0.0).min(1.0)
+					.blend(0.0, degenerate);
+			DoubleVector s1 = b.sub(d).div(a).max(0.0).min(1.0)
+					.blend(0.0, degenerate);
+
+			// numerator and denominator of t and the parameter of line1 in
+			// the case t is not clamped
+			DoubleVector numeratorS = b.mul(e).sub(c.mul(d));
+			VectorMask<Double> lowS = squaredCrossProduct
+					.compare(VectorOperators.GT, 0.0).not()
+					.or(numeratorS.compare(VectorOperators.LT, 0.0));
+			VectorMask<Double> highS = lowS.not().and(
+					numeratorS.compare(VectorOperators.GE,
+							squaredCrossProduct));
+			DoubleVector numeratorT = a.mul(e).sub(b.mul(d))
+					.blend(b.add(e), highS).blend(e, lowS);
+			DoubleVector denominatorT = squaredCrossProduct.blend(c,
+					lowS.or(highS));
+			DoubleVector middleS = numeratorS.div(squaredCrossProduct)
+					.blend(1.0, highS).blend(0.0, lowS);
+
+			VectorMask<Double> lowT = numeratorT.compare(VectorOperators.LE,
+					0.0);
+			VectorMask<Double> highT = lowT.not().and(
+					numeratorT.compare(VectorOperators.GE, denominatorT));
+			middleS.blend(s1, highT).blend(s0, lowT).intoArray(columns.s, i);
+			numeratorT.div(denominatorT).blend(1.0, highT).blend(0.0, lowT)
+					.intoArray(columns.t, i);
+		}
+	}
+
+	/**
+	 * Computes the distances between the closest points of the widened pairs
+	 * of lines at their parameters
+	 */
+	private static void computeDistances(Columns columns, int size, int norm,
+			double[] distances) {
+		DoubleVector one = DoubleVector.broadcast(DOUBLES, 1.0);
+		for (int i = 0; i < size; i += DOUBLES.length()) {
+			DoubleVector s = DoubleVector.fromArray(DOUBLES, columns.s, i);
+			DoubleVector t = DoubleVector.fromArray(DOUBLES, columns.t, i);
+			DoubleVector oneMinusS = one.sub(s);
+			DoubleVector oneMinusT = one.sub(t);
+			DoubleVector x = oneMinusS
+					.mul(DoubleVector.fromArray(DOUBLES, columns.startX1, i))
+					.add(s.mul(
+							DoubleVector.fromArray(DOUBLES, columns.endX1, i)))
+					.sub(oneMinusT.mul(
+							DoubleVector.fromArray(DOUBLES, columns.startX2, i))
+							.add(t.mul(DoubleVector.fromArray(DOUBLES,
+									columns.endX2, i))));
+			DoubleVector y = oneMinusS
+					.mul(DoubleVector.fromArray(DOUBLES, columns.startY1, i))
+					.add(s.mul(
+							DoubleVector.fromArray(DOUBLES, columns.endY1, i)))
+					.sub(oneMinusT.mul(
+							DoubleVector.fromArray(DOUBLES, columns.startY2, i))
+							.add(t.mul(DoubleVector.fromArray(DOUBLES,
+									columns.endY2, i))));
+			DoubleVector z = oneMinusS
+					.mul(DoubleVector.fromArray(DOUBLES, columns.startZ1, i))
+					.add(s.mul(
+							DoubleVector.fromArray(DOUBLES, columns.endZ1, i)))
+					.sub(oneMinusT.mul(
+							DoubleVector.fromArray(DOUBLES, columns.startZ2, i))
+							.add(t.mul(DoubleVector.fromArray(DOUBLES,
+									columns.endZ2, i))));
+			DoubleVector distance;
+			if (norm == VectorUtils.MANHATTAN_NORM) {
+				distance = x.abs().add(y.abs()).add(z.abs());
+			} else if (norm == VectorUtils.EUCLEDIAN_NORM) {
+				distance = x.mul(x).add(y.mul(y)).add(z.mul(z)).sqrt();
+			} else {
+				distance = x.abs().max(y.abs()).max(z.abs());
+			}
+			distance.intoArray(distances, i);
+		}
+	}
+
+	/**
+	 * Double columns of the pairs of lines of a block and of their
+	 * parameters, reused by the queries of a thread. Line1 of a pair
+	 * precedes line2 in the order of their coordinates, u and v are the
+	 * negated directions of the lines.
+	 */
+	private static class Columns {
+		private double[] startX1 = new double[0];
+		private double[] startY1 = new double[0];
+		private double[] startZ1 = new double[0];
+		private double[] endX1 = new double[0];
+		private double[] endY1 = new double[0];
+		private double[] endZ1 = new double[0];
+		private double[] ux = new double[0];
+		private double[] uy = new double[0];
+		private double[] uz = new double[0];
+		private double[] startX2 = new double[0];
+		private double[] startY2 = new double[0];
+		private double[] startZ2 = new double[0];
+		private double[] endX2 = new double[0];
+		private double[] endY2 = new double[0];
+		private double[] endZ2 = new double[0];
+		private double[] vx = new double[0];
+		private double[] vy = new double[0];
+		private double[] vz = new double[0];
+		private double[] s = new double[0];
+		private double[] t = new double[0];
+
+		/**
+		 * Widens the first lines of the block paired with the center line
+		 * into the columns
+		 */
+		public void widen(LineBlock block, int size, LineStore lines,
+				int index) {
+			ensureCapacity(size);
+			float absXC = lines.getAx(index);
+			float absYC = lines.getAy(index);
+			float absZC = lines.getAz(index);
+			float dirXC = lines.getDx(index);
+			float dirYC = lines.getDy(index);
+			float dirZC = lines.getDz(index);
+			float[] absX = block.getAbsXColumn();
+			float[] absY = block.getAbsYColumn();
+			float[] absZ = block.getAbsZColumn();
+			float[] dirX = block.getDirXColumn();
+			float[] dirY = block.getDirYColumn();
+			float[] dirZ = block.getDirZColumn();
+			for (int i = 0; i < size; i++) {
+				if (LineUtils.isOrdered(absX[i], absY[i], absZ[i], dirX[i],
+						dirY[i], dirZ[i], absXC, absYC, absZC, dirXC, dirYC,
+						dirZC)) {
+					setLine1(i, absX[i], absY[i], absZ[i], dirX[i], dirY[i],
+							dirZ[i]);
+					setLine2(i, absXC, absYC, absZC, dirXC, dirYC, dirZC);
+				} else {
+					setLine1(i, absXC, absYC, absZC, dirXC, dirYC, dirZC);
+					setLine2(i, absX[i], absY[i], absZ[i], dirX[i], dirY[i],
+							dirZ[i]);
+				}
+			}
+		}
+
+		private void setLine1(int i, float absX, float absY, float absZ,
+				float dirX, float dirY, float dirZ) {
+			startX1[i] = absX;
+			startY1[i] = absY;
+			startZ1[i] = absZ;
+			endX1[i] = absX - dirX;
+			endY1[i] = absY - dirY;
+			endZ1[i] = absZ - dirZ;
+			ux[i] = -dirX;
+			uy[i] = -dirY;
+			uz[i] = -dirZ;
+		}
+
+		private void setLine2(int i, float absX, float absY, float absZ,
+				float dirX, float dirY, float dirZ) {
+			startX2[i] = absX;
+			startY2[i] = absY;
+			startZ2[i] = absZ;
+			endX2[i] = absX - dirX;
+			endY2[i] = absY - dirY;
+			endZ2[i] = absZ - dirZ;
+			vx[i] = -dirX;
+			vy[i] = -dirY;
+			vz[i] = -dirZ;
+		}
+
+		private void ensureCapacity(int capacity) {
+			if (s.length >= capacity) {
+				return;
+			}
+
+			int length = Math.max(capacity, 2 * s.length);
+			startX1 = new double[length];
+			startY1 = new double[length];
+			startZ1 = new double[length];
+			endX1 = new double[length];
+			endY1 = new double[length];
+			endZ1 = new double[length];
+			ux = new double[length];
+			uy = new double[length];
+			uz = new double[length];
+			startX2 = new double[length];
+			startY2 = new double[length];
+			startZ2 = new double[length];
+			endX2 = new double[length];
+			endY2 = new double[length];
+			endZ2 = new double[length];
+			vx = new double[length];
+			vy = new double[length];
+			vz = new double[length];
+			s = new double[length];
+			t = new double[length];
+		}
+	}
+}
@@ -2,12 +2,23 @@ package Visualizer;
 
 import java.awt.Color;
 import java.awt.Graphics;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.JPanel;
+import javax.swing.SwingWorker;
 
+import Algorithms.BoundingVolumeHierarchy;
 import Algorithms.DBSCANAnalyzer;
+import Algorithms.IProgressListener;
+import Algorithms.KDistanceSampler;
+import Algorithms.SampledKDistancePlot;
 import DataStructures.Line;
+import DataStructures.LineStore;
 
 public class KDistancePlotPanel extends JPanel {
 
@@ -16,11 +27,23 @@ public class KDistancePlotPanel extends JPanel {
 	private static final int AXIS_OFFSET = 100;
 	private static final int LABELS_OFFSET = 80;
 	private static final int SCALING_FACTOR = 5;
+	private static final int LABELS_COUNT = 8;
+	private static final Color BAND_COLOR = new Color(190, 200, 255);
 	private final int width;
 	private final int height;
 
-	private final List<Line> lines;
-	private final DBSCANAnalyzer analyzer;
+	private List<Line> lines;
+	private DBSCANAnalyzer analyzer;
+	// The sampler of the plot of a large data set, the plot is exact without
+	// it
+	private KDistanceSampler sampler;
+
+	// The plot is computed once off the event dispatch thread and kept until
+	// the lines or the analyzer change
+	private PlotPoints plotPoints;
+	private KDistancePlotWorker worker;
+	private int progress;
+	private String failureMessage;
 
 	public KDistancePlotPanel(int width, int height, List<Line> lines,
 			DBSCANAnalyzer analyzer) {
@@ -29,6 +52,99 @@ public class KDistancePlotPanel extends JPanel {
 		this.lines = lines;
 		this.analyzer = analyzer;
 		this.setBackground(Color.white);
+		recompute();
+	}
+
+	/**
+	 * Replaces the lines of the plot and starts computing the new plot
+	 * 
+	 * @param lines
+	 *            the lines to be clustered
+	 */
+	public void setLines(List<Line> lines) {
+		this.lines = lines;
+		recompute();
+	}
+
+	/**
+	 * Replaces the analyzer of the plot and starts computing the new plot
+	 * 
+	 * @param analyzer
+	 *            the analyzer to compute the plot values with
+	 */
+	public void setAnalyzer(DBSCANAnalyzer analyzer) {
+		this.analyzer = analyzer;
+		recompute();
+	}
+
+	/**
+	 * Replaces the sampler of the plot and starts computing the new plot, a
+	 * sampled plot is drawn with its confidence band and its knee
+	 * 
+	 * @param sampler
+	 *            the sampler estimating the plot or null to compute the exact
+	 *            plot
+	 */
+	public void setSampler(KDistanceSampler sampler) {
+		this.sampler = sampler;
+		recompute();
+	}
+
+	/**
+	 * Drops the cached plot and starts computing it in the background, e.g.
+	 * after the lines have been modified
+	 */
+	public void recompute() {
+		cancelComputation();
+		plotPoints = null;
+		progress = 0;
+		failureMessage = null;
+		worker = new KDistancePlotWorker(lines, analyzer, sampler, width
+				- AXIS_OFFSET);
+		worker.addPropertyChangeListener(new PropertyChangeListener() {
+			@Override
+			public void propertyChange(PropertyChangeEvent event) {
+				if ("progress".equals(event.getPropertyName())
+						&& event.getSource() == worker) {
+					progress = (Integer) event.getNewValue();
+					repaint();
+				}
+			}
+		});
+		worker.execute();
+		repaint();
+	}
+
+	/**
+	 * Stops the background computation of the plot, if any
+	 */
+	public void cancelComputation() {
+		if (worker != null && !worker.isDone()) {
+			worker.cancel(true);
+		}
+		worker = null;
+	}
+
+	/**
+	 * Restarts the computation cancelled when the panel was removed, e.g. when
+	 * its dialog or tab is rebuilt
+	 */
+	@Override
+	public void addNotify() {
+		super.addNotify();
+		if (plotPoints == null && worker == null) {
+			recompute();
+		}
+	}
+
+	/**
+	 * Cancels the computation of the plot, it is restarted when the panel is
+	 * added again
+	 */
+	@Override
+	public void removeNotify() {
+		cancelComputation();
+		super.removeNotify();
 	}
 
 	@Override
@@ -42,22 +158,231 @@ public class KDistancePlotPanel extends JPanel {
 		g.drawLine(this.width, this.height - AXIS_OFFSET, 0, this.height
 				- AXIS_OFFSET);
 
+		if (plotPoints == null) {
+			g.setColor(Color.GRAY);
+			String status = failureMessage != null ? failureMessage
+					: worker == null ? "The computation has been cancelled."
+							: "Computing the k-distance plot... " + progress
+									+ "%";
+			g.drawString(status, AXIS_OFFSET * 2, LABELS_OFFSET * 2);
+			return;
+		}
+
+		int pointsCount = plotPoints.xs.length;
+		if (plotPoints.lowerValues != null) {
+			g.setColor(BAND_COLOR);
+			for (int i = 0; i < pointsCount; i++) {
+				int xCoord = AXIS_OFFSET + plotPoints.xs[i] + POINT_WIDTH / 2;
+				g.drawLine(xCoord, this.height - AXIS_OFFSET
+						- (int) plotPoints.upperValues[i] * SCALING_FACTOR,
+						xCoord, this.height - AXIS_OFFSET
+								- (int) plotPoints.lowerValues[i]
+								* SCALING_FACTOR);
+			}
+		}
+
 		g.setColor(Color.BLUE);
-		Double[] linesDistance = analyzer
-				.getDistanceValuesForEpsilonEstimate(lines);
-		int datasetLength = linesDistance.length;
-		for (int i = 0; i < datasetLength; i++) {
-			int xScale = datasetLength > (width - AXIS_OFFSET) ? i
-					/ (datasetLength / (width - AXIS_OFFSET)) : i
-					* ((width - AXIS_OFFSET) / datasetLength);
-			int xCoord = AXIS_OFFSET + xScale;
-			int intValue = linesDistance[i].intValue();
-			g.drawOval(xCoord, this.height - AXIS_OFFSET - intValue
+		int labelsStep = Math.max(1, pointsCount / LABELS_COUNT);
+		for (int i = 0; i < pointsCount; i++) {
+			int xCoord = AXIS_OFFSET + plotPoints.xs[i];
+			int maxValue = (int) plotPoints.maxValues[i];
+			int minValue = (int) plotPoints.minValues[i];
+			g.drawOval(xCoord, this.height - AXIS_OFFSET - maxValue
 					* SCALING_FACTOR, POINT_WIDTH, POINT_WIDTH);
-			if (i % (datasetLength / 8) == 0) {
-				g.drawString(Integer.toString(intValue), xCoord, this.height
+			if (minValue != maxValue) {
+				g.drawOval(xCoord, this.height - AXIS_OFFSET - minValue
+						* SCALING_FACTOR, POINT_WIDTH, POINT_WIDTH);
+			}
+			if (i % labelsStep == 0) {
+				g.drawString(Integer.toString(maxValue), xCoord, this.height
 						- LABELS_OFFSET);
 			}
 		}
+
+		if (plotPoints.description != null) {
+			g.setColor(Color.RED);
+			if (plotPoints.kneePoint >= 0) {
+				int kneeValue =
+						(int) plotPoints.maxValues[plotPoints.kneePoint];
+				g.fillOval(AXIS_OFFSET + plotPoints.xs[plotPoints.kneePoint],
+						this.height - AXIS_OFFSET - kneeValue * SCALING_FACTOR,
+						POINT_WIDTH + 2, POINT_WIDTH + 2);
+			}
+			g.setColor(Color.GRAY);
+			g.drawString(plotPoints.description, AXIS_OFFSET * 2,
+					LABELS_OFFSET + LABELS_OFFSET / 4);
+		}
+	}
+
+	/**
+	 * Plot values reduced to at most one point per pixel column, each point
+	 * keeps the largest and the smallest value falling into its column. The
+	 * points of a sampled plot keep the outer ends of the confidence bands
+	 * falling into their columns as well.
+	 */
+	private static class PlotPoints {
+		private final int[] xs;
+		private final double[] maxValues;
+		private final double[] minValues;
+		private final double[] lowerValues;
+		private final double[] upperValues;
+		private final int kneePoint;
+		private final String description;
+
+		/**
+		 * Downsamples the plot values to the given number of pixel columns
+		 * 
+		 * @param values
+		 *            the plot values in descending order
+		 * @param columns
+		 *            the width of the plot in pixels
+		 */
+		public PlotPoints(double[] values, int columns) {
+			lowerValues = null;
+			upperValues = null;
+			kneePoint = -1;
+			description = null;
+			columns = Math.max(1, columns);
+			if (values.length <= columns) {
+				xs = new int[values.length];
+				maxValues = values.clone();
+				minValues = values.clone();
+				int step = values.length == 0 ? 0 : columns / values.length;
+				for (int i = 0; i < values.length; i++) {
+					xs[i] = i * step;
+				}
+				return;
+			}
+
+			xs = new int[columns];
+			maxValues = new double[columns];
+			minValues = new double[columns];
+			for (int column = 0; column < columns; column++) {
+				int from = (int) ((long) column * values.length / columns);
+				int to = (int) ((long) (column + 1) * values.length / columns);
+				xs[column] = column;
+				maxValues[column] = values[from];
+				minValues[column] = values[from];
+				for (int i = from + 1; i < to; i++) {
+					maxValues[column] = Math.max(maxValues[column], values[i]);
+					minValues[column] = Math.min(minValues[column], values[i]);
+				}
+			}
+		}
+
+		/**
+		 * Downsamples the points of a sampled plot to the given number of
+		 * pixel columns
+		 * 
+		 * @param plot
+		 *            the plot estimated from a sample
+		 * @param columns
+		 *            the width of the plot in pixels
+		 */
+		public PlotPoints(SampledKDistancePlot plot, int columns) {
+			columns = Math.max(1, columns);
+			int pointsCount = plot.getPointsCount();
+			int[] pointColumns = new int[pointsCount];
+			double[] pointMaxValues = new double[pointsCount];
+			double[] pointMinValues = new double[pointsCount];
+			double[] pointLowerValues = new double[pointsCount];
+			double[] pointUpperValues = new double[pointsCount];
+			int knee = -1;
+			int count = 0;
+			for (int point = 0; point < pointsCount; point++) {
+				int column = (int) ((long) plot.getRank(point) * columns / plot
+						.getLinesCount());
+				if (count == 0 || pointColumns[count - 1] != column) {
+					pointColumns[count] = column;
+					pointMaxValues[count] = plot.getValue(point);
+					pointMinValues[count] = plot.getValue(point);
+					pointLowerValues[count] = plot.getLowerValue(point);
+					pointUpperValues[count] = plot.getUpperValue(point);
+					count++;
+				} else {
+					int last = count - 1;
+					pointMaxValues[last] = Math.max(pointMaxValues[last],
+							plot.getValue(point));
+					pointMinValues[last] = Math.min(pointMinValues[last],
+							plot.getValue(point));
+					pointLowerValues[last] = Math.min(pointLowerValues[last],
+							plot.getLowerValue(point));
+					pointUpperValues[last] = Math.max(pointUpperValues[last],
+							plot.getUpperValue(point));
+				}
+				if (point == plot.getKneePoint()) {
+					knee = count - 1;
+				}
+			}
+
+			xs = Arrays.copyOf(pointColumns, count);
+			maxValues = Arrays.copyOf(pointMaxValues, count);
+			minValues = Arrays.copyOf(pointMinValues, count);
+			lowerValues = Arrays.copyOf(pointLowerValues, count);
+			upperValues = Arrays.copyOf(pointUpperValues, count);
+			kneePoint = knee;
+			description = plot.toString();
+		}
+	}
+
+	/**
+	 * Computes and downsamples the plot values in the background. The
+	 * computation is stopped at the next processed line once the worker is
+	 * cancelled.
+	 */
+	private class KDistancePlotWorker extends SwingWorker<PlotPoints, Void>
+			implements IProgressListener {
+		private final List<Line> lines;
+		private final DBSCANAnalyzer analyzer;
+		private final KDistanceSampler sampler;
+		private final int columns;
+
+		public KDistancePlotWorker(List<Line> lines, DBSCANAnalyzer analyzer,
+				KDistanceSampler sampler, int columns) {
+			this.lines = lines;
+			this.analyzer = analyzer;
+			this.sampler = sampler;
+			this.columns = columns;
+		}
+
+		@Override
+		protected PlotPoints doInBackground() {
+			LineStore store = LineStore.fromLines(lines);
+			if (sampler != null) {
+				return new PlotPoints(
+						analyzer.getSampledDistanceValuesForEpsilonEstimate(
+								new BoundingVolumeHierarchy(store), sampler,
+								this), columns);
+			}
+
+			double[] values = analyzer.getDistanceValuesForEpsilonEstimate(
+					new BoundingVolumeHierarchy(store), this);
+			return new PlotPoints(values, columns);
+		}
+
+		@Override
+		public void progressChanged(int processedLines, int totalLines) {
+			if (isCancelled()) {
+				throw new CancellationException();
+			}
+			setProgress((int) (100L * processedLines / totalLines));
+		}
+
+		@Override
+		protected void done() {
+			if (worker != this || isCancelled()) {
+				return;
+			}
+
+			try {
+				plotPoints = get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				failureMessage = "The k-distance plot can not be computed: "
+						+ e.getCause().getMessage();
+			}
+			repaint();
+		}
 	}
 }